@@ -4,16 +4,21 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.eventbus.EventBus;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import fi.thl.termed.domain.event.NodeEvent;
+import fi.thl.termed.util.event.AsyncDispatchingEventBus;
 import fi.thl.termed.util.json.FastUUIDTypeAdapter;
 import fi.thl.termed.util.json.ImmutableListDeserializer;
 import fi.thl.termed.util.json.ImmutableMultimapTypeAdapterFactory;
 import fi.thl.termed.util.json.LocalDateTimeAsZonedTypeAdapter;
 import fi.thl.termed.util.json.MultimapTypeAdapterFactory;
 import fi.thl.termed.util.json.StreamTypeAdapterFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -39,9 +44,20 @@ public class Application extends SpringBootServletInitializer {
         .create();
   }
 
+  /**
+   * Node events are dispatched to subscribers asynchronously, other events synchronously.
+   */
   @Bean
-  public EventBus eventBus() {
-    return new EventBus();
+  public EventBus eventBus(MeterRegistry meterRegistry,
+      @Value("${fi.thl.termed.nodeEvents.queueCapacity:10000}") int queueCapacity,
+      @Value("${fi.thl.termed.nodeEvents.coalesceWindowMillis:100}") long coalesceWindowMillis,
+      @Value("${fi.thl.termed.nodeEvents.maxCoalescedNodes:1000}") int maxCoalescedNodes) {
+    return new AsyncDispatchingEventBus<>(NodeEvent.class,
+        NodeEvent::isSync,
+        (first, later) -> first.coalesce(later, maxCoalescedNodes),
+        queueCapacity,
+        Duration.ofMillis(coalesceWindowMillis),
+        meterRegistry);
   }
 
   @Bean
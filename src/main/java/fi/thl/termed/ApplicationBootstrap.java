@@ -30,8 +30,8 @@ import org.springframework.stereotype.Component;
 
 /**
  * If no users found, adds default user (admin). Adds default properties (defined in
- * src/resources/default/properties.json. Runs full re-indexing if index is empty e.g. in the case
- * of it been deleted
+ * src/resources/default/properties.json. Posts application ready event which starts full
+ * re-indexing in the background if index is empty e.g. in the case of it been deleted
  */
 @Component
 public class ApplicationBootstrap implements ApplicationListener<ContextRefreshedEvent> {
@@ -1,9 +1,13 @@
 package fi.thl.termed;
 
+import static fi.thl.termed.util.EventBusUtils.register;
+
+import com.google.common.eventbus.EventBus;
 import com.google.gson.Gson;
 import fi.thl.termed.util.jena.JenaModelMessageConverter;
 import fi.thl.termed.util.rdf.RdfMediaTypes;
 import fi.thl.termed.util.spring.http.MediaTypes;
+import fi.thl.termed.web.RevisionETagInterceptor;
 import java.util.Collection;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
@@ -13,6 +17,7 @@ import org.springframework.format.FormatterRegistry;
 import org.springframework.http.MediaType;
 import org.springframework.http.converter.json.GsonHttpMessageConverter;
 import org.springframework.web.servlet.config.annotation.ContentNegotiationConfigurer;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.PathMatchConfigurer;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -22,19 +27,32 @@ public class ApplicationWebConfiguration implements WebMvcConfigurer {
   @Autowired
   private Gson gson;
 
+  @Autowired
+  private EventBus eventBus;
+
+  @Autowired
+  private RevisionETagInterceptor revisionETagInterceptor;
+
   @Override
   public void configurePathMatch(PathMatchConfigurer config) {
     config.setUseSuffixPatternMatch(true);
   }
 
+  @Override
+  public void addInterceptors(InterceptorRegistry registry) {
+    registry.addInterceptor(register(eventBus, revisionETagInterceptor)).addPathPatterns("/api/**");
+  }
+
   @Override
   public void configureContentNegotiation(ContentNegotiationConfigurer config) {
     config
         .favorParameter(true)
         .favorPathExtension(true)
+        .defaultContentType(MediaType.APPLICATION_JSON_UTF8, MediaType.ALL)
         .mediaType("json", MediaType.APPLICATION_JSON_UTF8)
         .mediaType("xml", MediaTypes.TEXT_XML)
         .mediaType("csv", MediaTypes.TEXT_CSV)
+        .mediaType("cbor", MediaTypes.APPLICATION_CBOR)
         .mediaType("jsonld", RdfMediaTypes.LD_JSON)
         .mediaType("rdf", RdfMediaTypes.RDF_XML)
         .mediaType("ttl", RdfMediaTypes.TURTLE)
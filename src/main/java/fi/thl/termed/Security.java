@@ -60,6 +60,8 @@ public class Security {
       http.csrf().disable();
 
       http.authorizeRequests()
+          // readiness is probed by e.g. load balancers without credentials
+          .requestMatchers(EndpointRequest.to("readiness")).permitAll()
           // secure actuator endpoints
           .requestMatchers(EndpointRequest.toAnyEndpoint()).hasAuthority(SUPERUSER.toString())
           .anyRequest().authenticated();
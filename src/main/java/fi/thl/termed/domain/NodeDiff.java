@@ -0,0 +1,202 @@
+package fi.thl.termed.domain;
+
+import static java.util.Objects.requireNonNull;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Attribute level changes of a node between two revisions. Values of each attribute are compared
+ * as multisets, a changed value is reported as one removed and one added value.
+ */
+public final class NodeDiff {
+
+  private final UUID id;
+  private final TypeId type;
+  private final RevisionType change;
+
+  private final ValueChange<String> code;
+  private final ValueChange<String> uri;
+
+  private final ImmutableMap<String, ValuesDiff<StrictLangValue>> properties;
+  private final ImmutableMap<String, ValuesDiff<NodeId>> references;
+
+  public NodeDiff(NodeId nodeId, RevisionType change,
+      ValueChange<String> code, ValueChange<String> uri,
+      Map<String, ValuesDiff<StrictLangValue>> properties,
+      Map<String, ValuesDiff<NodeId>> references) {
+    this.id = requireNonNull(nodeId).getId();
+    this.type = nodeId.getType();
+    this.change = requireNonNull(change);
+    this.code = code;
+    this.uri = uri;
+    this.properties = ImmutableMap.copyOf(properties);
+    this.references = ImmutableMap.copyOf(references);
+  }
+
+  public NodeId identifier() {
+    return new NodeId(id, type);
+  }
+
+  public RevisionType getChange() {
+    return change;
+  }
+
+  public Optional<ValueChange<String>> getCode() {
+    return Optional.ofNullable(code);
+  }
+
+  public Optional<ValueChange<String>> getUri() {
+    return Optional.ofNullable(uri);
+  }
+
+  public ImmutableMap<String, ValuesDiff<StrictLangValue>> getProperties() {
+    return properties;
+  }
+
+  public ImmutableMap<String, ValuesDiff<NodeId>> getReferences() {
+    return references;
+  }
+
+  public boolean isEmpty() {
+    return code == null && uri == null && properties.isEmpty() && references.isEmpty();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    NodeDiff nodeDiff = (NodeDiff) o;
+    return Objects.equals(id, nodeDiff.id) &&
+        Objects.equals(type, nodeDiff.type) &&
+        change == nodeDiff.change &&
+        Objects.equals(code, nodeDiff.code) &&
+        Objects.equals(uri, nodeDiff.uri) &&
+        Objects.equals(properties, nodeDiff.properties) &&
+        Objects.equals(references, nodeDiff.references);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(id, type, change, code, uri, properties, references);
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+        .add("id", id)
+        .add("type", type)
+        .add("change", change)
+        .add("code", code)
+        .add("uri", uri)
+        .add("properties", properties)
+        .add("references", references)
+        .toString();
+  }
+
+  public static final class ValueChange<T> {
+
+    private final T from;
+    private final T to;
+
+    public ValueChange(T from, T to) {
+      this.from = from;
+      this.to = to;
+    }
+
+    public Optional<T> getFrom() {
+      return Optional.ofNullable(from);
+    }
+
+    public Optional<T> getTo() {
+      return Optional.ofNullable(to);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      ValueChange<?> that = (ValueChange<?>) o;
+      return Objects.equals(from, that.from) &&
+          Objects.equals(to, that.to);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(from, to);
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+          .add("from", from)
+          .add("to", to)
+          .toString();
+    }
+
+  }
+
+  public static final class ValuesDiff<T> {
+
+    private final ImmutableList<T> added;
+    private final ImmutableList<T> removed;
+
+    public ValuesDiff(Iterable<T> added, Iterable<T> removed) {
+      this.added = ImmutableList.copyOf(added);
+      this.removed = ImmutableList.copyOf(removed);
+    }
+
+    public ImmutableList<T> getAdded() {
+      return added;
+    }
+
+    public ImmutableList<T> getRemoved() {
+      return removed;
+    }
+
+    public boolean isEmpty() {
+      return added.isEmpty() && removed.isEmpty();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      ValuesDiff<?> that = (ValuesDiff<?>) o;
+      return Objects.equals(added, that.added) &&
+          Objects.equals(removed, that.removed);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(added, removed);
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+          .add("added", added)
+          .add("removed", removed)
+          .toString();
+    }
+
+  }
+
+}
@@ -0,0 +1,114 @@
+package fi.thl.termed.domain;
+
+import static java.util.Objects.requireNonNull;
+
+import com.google.common.base.MoreObjects;
+import fi.thl.termed.util.collect.Identifiable;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Pending delivery of node changes in a revision to a webhook. Deliveries failed too many times
+ * are marked dead.
+ */
+public final class WebhookDelivery implements Identifiable<Long> {
+
+  private final Long id;
+  private final UUID webhookId;
+  private final Long revision;
+  private final int attempts;
+  private final String lastError;
+  private final boolean dead;
+
+  private WebhookDelivery(Long id, UUID webhookId, Long revision, int attempts, String lastError,
+      boolean dead) {
+    this.id = requireNonNull(id);
+    this.webhookId = requireNonNull(webhookId);
+    this.revision = requireNonNull(revision);
+    this.attempts = attempts;
+    this.lastError = lastError;
+    this.dead = dead;
+  }
+
+  public static WebhookDelivery of(Long id, UUID webhookId, Long revision) {
+    return new WebhookDelivery(id, webhookId, revision, 0, null, false);
+  }
+
+  public static WebhookDelivery of(Long id, UUID webhookId, Long revision, int attempts,
+      String lastError, boolean dead) {
+    return new WebhookDelivery(id, webhookId, revision, attempts, lastError, dead);
+  }
+
+  /**
+   * Returns delivery with one more failed attempt, marked dead if attempts reach maxAttempts.
+   */
+  public WebhookDelivery failed(String error, int maxAttempts) {
+    return new WebhookDelivery(id, webhookId, revision, attempts + 1, error,
+        attempts + 1 >= maxAttempts);
+  }
+
+  @Override
+  public Long identifier() {
+    return id;
+  }
+
+  public Long getId() {
+    return id;
+  }
+
+  public UUID getWebhookId() {
+    return webhookId;
+  }
+
+  public Long getRevision() {
+    return revision;
+  }
+
+  public int getAttempts() {
+    return attempts;
+  }
+
+  public Optional<String> getLastError() {
+    return Optional.ofNullable(lastError);
+  }
+
+  public boolean isDead() {
+    return dead;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    WebhookDelivery that = (WebhookDelivery) o;
+    return attempts == that.attempts &&
+        dead == that.dead &&
+        Objects.equals(id, that.id) &&
+        Objects.equals(webhookId, that.webhookId) &&
+        Objects.equals(revision, that.revision) &&
+        Objects.equals(lastError, that.lastError);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(id, webhookId, revision, attempts, lastError, dead);
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+        .add("id", id)
+        .add("webhookId", webhookId)
+        .add("revision", revision)
+        .add("attempts", attempts)
+        .add("lastError", lastError)
+        .add("dead", dead)
+        .toString();
+  }
+
+}
@@ -10,4 +10,9 @@ public class NodeDeletedEvent extends NodeEvent {
     super(user, date, async, nodes);
   }
 
+  @Override
+  NodeDeletedEvent withNodes(LocalDateTime date, List<NodeId> nodes) {
+    return new NodeDeletedEvent(getUser(), date, isSync(), nodes);
+  }
+
 }
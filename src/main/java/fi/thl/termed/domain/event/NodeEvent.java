@@ -1,9 +1,11 @@
 package fi.thl.termed.domain.event;
 
+import com.google.common.collect.ImmutableList;
 import fi.thl.termed.domain.NodeId;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 
 public abstract class NodeEvent implements TermedEvent {
 
@@ -35,6 +37,25 @@ public abstract class NodeEvent implements TermedEvent {
     return nodes;
   }
 
+  /**
+   * Combines this event with a later event of the same type, user and delivery mode, if combined
+   * event has at most maxNodes nodes.
+   */
+  public Optional<NodeEvent> coalesce(NodeEvent later, int maxNodes) {
+    if (getClass() != later.getClass() || sync || later.sync
+        || !Objects.equals(user, later.user)
+        || nodes.size() + later.nodes.size() > maxNodes) {
+      return Optional.empty();
+    }
+
+    return Optional.of(withNodes(later.date, ImmutableList.<NodeId>builder()
+        .addAll(nodes)
+        .addAll(later.nodes)
+        .build()));
+  }
+
+  abstract NodeEvent withNodes(LocalDateTime date, List<NodeId> nodes);
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
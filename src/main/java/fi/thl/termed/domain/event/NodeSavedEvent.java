@@ -10,4 +10,9 @@ public class NodeSavedEvent extends NodeEvent {
     super(user, date, async, nodes);
   }
 
+  @Override
+  NodeSavedEvent withNodes(LocalDateTime date, List<NodeId> nodes) {
+    return new NodeSavedEvent(getUser(), date, isSync(), nodes);
+  }
+
 }
@@ -1,5 +1,7 @@
 package fi.thl.termed.service.dump;
 
+import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
+import static fi.thl.termed.util.query.AndSpecification.and;
 import static fi.thl.termed.util.query.OrSpecification.or;
 import static java.util.stream.Collectors.toList;
 
@@ -14,14 +16,18 @@ import fi.thl.termed.domain.TypeId;
 import fi.thl.termed.domain.User;
 import fi.thl.termed.service.graph.specification.GraphById;
 import fi.thl.termed.service.node.specification.NodesByGraphId;
+import fi.thl.termed.service.node.specification.NodesByTypeId;
 import fi.thl.termed.service.type.specification.TypesByGraphId;
+import fi.thl.termed.util.concurrent.PipelineExecutor;
 import fi.thl.termed.util.query.Query;
 import fi.thl.termed.util.query.Select;
 import fi.thl.termed.util.query.Specification;
 import fi.thl.termed.util.service.SaveMode;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.service.WriteOptions;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 class DelegatingDumpService implements Service<DumpId, Dump> {
@@ -29,14 +35,24 @@ class DelegatingDumpService implements Service<DumpId, Dump> {
   private Service<GraphId, Graph> graphService;
   private Service<TypeId, Type> typeService;
   private Service<NodeId, Node> nodeService;
+  private PipelineExecutor exportPipeline;
 
   DelegatingDumpService(
       Service<GraphId, Graph> graphService,
       Service<TypeId, Type> typeService,
       Service<NodeId, Node> nodeService) {
+    this(graphService, typeService, nodeService, PipelineExecutor.direct());
+  }
+
+  DelegatingDumpService(
+      Service<GraphId, Graph> graphService,
+      Service<TypeId, Type> typeService,
+      Service<NodeId, Node> nodeService,
+      PipelineExecutor exportPipeline) {
     this.graphService = graphService;
     this.typeService = typeService;
     this.nodeService = nodeService;
+    this.exportPipeline = exportPipeline;
   }
 
   @Override
@@ -64,15 +80,32 @@ class DelegatingDumpService implements Service<DumpId, Dump> {
         new Query<>(or(dumpId.getGraphIds().stream()
             .map(id -> new TypesByGraphId(id.getId()))
             .collect(toList())));
-    Query<NodeId, Node> nodeSpecification =
-        new Query<>(or(dumpId.getGraphIds().stream()
-            .map(id -> new NodesByGraphId(id.getId()))
-            .collect(toList())));
+
+    if (exportPipeline.isDirect()) {
+      Query<NodeId, Node> nodeSpecification =
+          new Query<>(or(dumpId.getGraphIds().stream()
+              .map(id -> new NodesByGraphId(id.getId()))
+              .collect(toList())));
+
+      return Optional.of(new Dump(
+          graphService.values(graphSpecification, u),
+          typeService.values(typeSpecification, u),
+          nodeService.values(nodeSpecification, u)));
+    }
+
+    List<Type> types = toListAndClose(typeService.values(typeSpecification, u));
+
+    // read nodes of each type concurrently, nodes are still returned type by type in type order
+    List<Supplier<Stream<Node>>> nodePartitions = types.stream()
+        .map(type -> (Supplier<Stream<Node>>) () -> nodeService.values(new Query<>(and(
+            new NodesByGraphId(type.getGraphId()),
+            new NodesByTypeId(type.getId()))), u))
+        .collect(toList());
 
     return Optional.of(new Dump(
         graphService.values(graphSpecification, u),
-        typeService.values(typeSpecification, u),
-        nodeService.values(nodeSpecification, u)));
+        types.stream(),
+        exportPipeline.concat(nodePartitions)));
   }
 
   @Override
@@ -11,17 +11,26 @@ import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeId;
 import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.service.dump.internal.JdbcDumpRestoreCheckpointDao;
+import fi.thl.termed.util.concurrent.PipelineExecutor;
+import fi.thl.termed.util.dao.AuthorizedDao;
+import fi.thl.termed.util.dao.Dao;
 import fi.thl.termed.util.service.ProfilingService;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.service.WriteLoggingService;
 import fi.thl.termed.util.service.WritePreAuthorizingService;
+import javax.sql.DataSource;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
 public class DumpServiceConfiguration {
 
+  @Autowired
+  private DataSource dataSource;
+
   @Autowired
   private Service<GraphId, Graph> graphService;
 
@@ -31,10 +40,15 @@ public class DumpServiceConfiguration {
   @Autowired
   private Service<NodeId, Node> nodeService;
 
+  @Value("${fi.thl.termed.dumpExportPipeline.threads:0}")
+  private int dumpExportPipelineThreads;
+  @Value("${fi.thl.termed.dumpExportPipeline.bufferSize:1000}")
+  private int dumpExportPipelineBufferSize;
+
   @Bean
   public Service<DumpId, Dump> dumpService() {
     Service<DumpId, Dump> service =
-        new DelegatingDumpService(graphService, typeService, nodeService);
+        new DelegatingDumpService(graphService, typeService, nodeService, dumpExportPipeline());
 
     service = new WritePreAuthorizingService<>(service,
         (user) -> user.getAppRole() == SUPERUSER || user.getAppRole() == ADMIN,
@@ -47,4 +61,24 @@ public class DumpServiceConfiguration {
     return service;
   }
 
+  /**
+   * Worker pool for dump exports. Node partitions (one per type) are read and serialized
+   * concurrently but written in deterministic order.
+   */
+  @Bean
+  public PipelineExecutor dumpExportPipeline() {
+    return PipelineExecutor.newPipelineExecutor("dump-export-pipeline",
+        dumpExportPipelineThreads, dumpExportPipelineBufferSize);
+  }
+
+  /**
+   * Stores last committed chunk number of each resumable dump restore.
+   */
+  @Bean
+  public Dao<String, Long> dumpRestoreCheckpointDao() {
+    return new AuthorizedDao<>(new JdbcDumpRestoreCheckpointDao(dataSource),
+        (user, id, permission) ->
+            user.getAppRole() == SUPERUSER || user.getAppRole() == ADMIN);
+  }
+
 }
@@ -0,0 +1,69 @@
+package fi.thl.termed.service.dump.internal;
+
+import fi.thl.termed.util.dao.AbstractJdbcDao;
+import fi.thl.termed.util.query.SqlSpecification;
+import java.util.Optional;
+import java.util.stream.Stream;
+import javax.sql.DataSource;
+import org.springframework.jdbc.core.RowMapper;
+
+public class JdbcDumpRestoreCheckpointDao extends AbstractJdbcDao<String, Long> {
+
+  public JdbcDumpRestoreCheckpointDao(DataSource dataSource) {
+    super(dataSource);
+  }
+
+  @Override
+  public void insert(String id, Long checkpoint) {
+    jdbcTemplate.update(
+        "insert into dump_restore_checkpoint (id, checkpoint) values (?, ?)", id, checkpoint);
+  }
+
+  @Override
+  public void update(String id, Long checkpoint) {
+    jdbcTemplate.update(
+        "update dump_restore_checkpoint set checkpoint = ? where id = ?", checkpoint, id);
+  }
+
+  @Override
+  public void delete(String id) {
+    jdbcTemplate.update("delete from dump_restore_checkpoint where id = ?", id);
+  }
+
+  @Override
+  protected <E> Stream<E> get(SqlSpecification<String, Long> specification,
+      RowMapper<E> mapper) {
+    return jdbcTemplate.queryForStream(
+        String.format("select * from dump_restore_checkpoint where %s",
+            specification.sqlQueryTemplate()),
+        specification.sqlQueryParameters(), mapper);
+  }
+
+  @Override
+  public boolean exists(String id) {
+    return jdbcTemplate.queryForOptional(
+        "select count(*) from dump_restore_checkpoint where id = ?",
+        Long.class,
+        id)
+        .orElseThrow(IllegalStateException::new) > 0;
+  }
+
+  @Override
+  protected <E> Optional<E> get(String id, RowMapper<E> mapper) {
+    return jdbcTemplate.queryForFirst(
+        "select * from dump_restore_checkpoint where id = ?",
+        mapper,
+        id);
+  }
+
+  @Override
+  protected RowMapper<String> buildKeyMapper() {
+    return (rs, rowNum) -> rs.getString("id");
+  }
+
+  @Override
+  protected RowMapper<Long> buildValueMapper() {
+    return (rs, rowNum) -> rs.getLong("checkpoint");
+  }
+
+}
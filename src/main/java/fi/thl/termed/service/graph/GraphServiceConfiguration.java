@@ -2,6 +2,7 @@ package fi.thl.termed.service.graph;
 
 import static fi.thl.termed.util.EventBusUtils.register;
 import static fi.thl.termed.util.dao.CachedSystemDao.cache;
+import static fi.thl.termed.util.dao.VersionedSystemDao.versioned;
 
 import com.google.common.eventbus.EventBus;
 import fi.thl.termed.domain.AppRole;
@@ -22,6 +23,7 @@ import fi.thl.termed.service.graph.internal.JdbcGraphRoleDao;
 import fi.thl.termed.util.dao.AuthorizedDao;
 import fi.thl.termed.util.dao.Dao;
 import fi.thl.termed.util.dao.SystemDao;
+import fi.thl.termed.util.dao.VersionedSystemDao;
 import fi.thl.termed.util.permission.DaoPermissionEvaluator;
 import fi.thl.termed.util.permission.DisjunctionPermissionEvaluator;
 import fi.thl.termed.util.permission.PermissionEvaluator;
@@ -29,6 +31,7 @@ import fi.thl.termed.util.service.ProfilingService;
 import fi.thl.termed.util.service.ReadWriteSynchronizedService;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.service.TransactionalService;
+import fi.thl.termed.util.service.VersionedService;
 import fi.thl.termed.util.service.WriteLoggingService;
 import javax.sql.DataSource;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -48,10 +51,11 @@ public class GraphServiceConfiguration {
   @Autowired
   private EventBus eventBus;
 
-  private SystemDao<ObjectRolePermission<GraphId>, GrantedPermission> graphPermissionSystemDao;
+  private VersionedSystemDao<ObjectRolePermission<GraphId>, GrantedPermission>
+      graphPermissionSystemDao;
 
   @Bean
-  public Service<GraphId, Graph> graphService() {
+  public VersionedService<GraphId, Graph> graphService() {
     Service<GraphId, Graph> service = graphRepository();
 
     service = new TransactionalService<>(service, transactionManager);
@@ -62,13 +66,14 @@ public class GraphServiceConfiguration {
     service = new InitializingGraphService(service);
     service = new ReadWriteSynchronizedService<>(service);
 
-    return service;
+    return new VersionedService<>(service);
   }
 
   @Bean
   public PermissionEvaluator<GraphId> graphEvaluator() {
     return new DisjunctionPermissionEvaluator<>(
-        appAdminEvaluator(), new DaoPermissionEvaluator<>(graphPermissionSystemDao()));
+        appAdminEvaluator(),
+        register(eventBus, new DaoPermissionEvaluator<>(graphPermissionSystemDao())));
   }
 
   private Service<GraphId, Graph> graphRepository() {
@@ -88,7 +93,8 @@ public class GraphServiceConfiguration {
   }
 
   private Dao<ObjectRolePermission<GraphId>, GrantedPermission> graphPermissionDao() {
-    return new AuthorizedDao<>(graphPermissionSystemDao(), appAdminEvaluator());
+    return new AuthorizedDao<>(
+        register(eventBus, cache(graphPermissionSystemDao())), appAdminEvaluator());
   }
 
   private Dao<PropertyValueId<GraphId>, LangValue> graphPropertyDao() {
@@ -104,10 +110,12 @@ public class GraphServiceConfiguration {
     return register(eventBus, cache(new JdbcGraphRoleDao(dataSource)));
   }
 
-  // this instance is shared internally between other DAOs and evaluators
-  private SystemDao<ObjectRolePermission<GraphId>, GrantedPermission> graphPermissionSystemDao() {
+  // this instance is shared internally between other DAOs and evaluators, evaluator compiles
+  // permissions from this uncached instance so that it never reads entries not yet cleared from a
+  // cache
+  private VersionedSystemDao<ObjectRolePermission<GraphId>, GrantedPermission> graphPermissionSystemDao() {
     if (graphPermissionSystemDao == null) {
-      graphPermissionSystemDao = register(eventBus, cache(new JdbcGraphPermissionsDao(dataSource)));
+      graphPermissionSystemDao = versioned(new JdbcGraphPermissionsDao(dataSource));
     }
     return graphPermissionSystemDao;
   }
@@ -7,6 +7,7 @@ import static fi.thl.termed.util.spring.jdbc.SpringJdbcUtils.getDatabaseProductN
 
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
+import com.google.gson.Gson;
 import fi.thl.termed.domain.AppRole;
 import fi.thl.termed.domain.Empty;
 import fi.thl.termed.domain.Graph;
@@ -29,11 +30,14 @@ import fi.thl.termed.service.node.internal.NodeMetadataInitializingService;
 import fi.thl.termed.service.node.internal.DocumentToNode;
 import fi.thl.termed.service.node.internal.IdInitializingNodeService;
 import fi.thl.termed.service.node.internal.IndexedNodeService;
+import fi.thl.termed.service.node.internal.JdbcNodeChangeDao;
+import fi.thl.termed.service.node.internal.JdbcNodeCheckpointDao;
 import fi.thl.termed.service.node.internal.JdbcNodeDao;
 import fi.thl.termed.service.node.internal.JdbcNodeIndexingQueueDao;
 import fi.thl.termed.service.node.internal.JdbcNodeIndexingQueueItemDao;
 import fi.thl.termed.service.node.internal.JdbcNodeReferenceAttributeValueDao;
 import fi.thl.termed.service.node.internal.JdbcNodeReferenceAttributeValueRevisionDao;
+import fi.thl.termed.service.node.internal.JdbcNodeRevisionCompactionDao;
 import fi.thl.termed.service.node.internal.JdbcNodeRevisionDao;
 import fi.thl.termed.service.node.internal.JdbcNodeSequenceDao;
 import fi.thl.termed.service.node.internal.JdbcNodeTextAttributeValueDao;
@@ -44,19 +48,29 @@ import fi.thl.termed.service.node.internal.JdbcPostgresNodeReferenceAttributeVal
 import fi.thl.termed.service.node.internal.JdbcPostgresNodeRevisionDao;
 import fi.thl.termed.service.node.internal.JdbcPostgresNodeTextAttributeValueDao;
 import fi.thl.termed.service.node.internal.JdbcPostgresNodeTextAttributeValueRevisionDao;
+import fi.thl.termed.service.node.internal.NodeChangeFeed;
+import fi.thl.termed.service.node.internal.NodeIndexSnapshotWriter;
 import fi.thl.termed.service.node.internal.NodeRepository;
+import fi.thl.termed.service.node.internal.NodeRevisionCompactor;
+import fi.thl.termed.service.node.internal.NodeRevisionDiffer;
 import fi.thl.termed.service.node.internal.NodeRevisionRepository;
 import fi.thl.termed.service.node.internal.NodeToDocument;
 import fi.thl.termed.service.node.internal.NodeWriteEventPostingService;
 import fi.thl.termed.service.node.internal.ReadAuthorizedNodeService;
+import fi.thl.termed.service.node.internal.ReferenceHierarchyIndex;
 import fi.thl.termed.service.node.internal.RevisionInitializingNodeService;
+import fi.thl.termed.service.node.internal.VisibleNodeChanges;
+import fi.thl.termed.service.node.internal.WebhookOutboxWritingNodeService;
+import fi.thl.termed.service.revision.internal.PendingRevisions;
+import fi.thl.termed.service.webhook.internal.WebhookOutbox;
 import fi.thl.termed.util.collect.Tuple2;
+import fi.thl.termed.util.concurrent.PipelineExecutor;
 import fi.thl.termed.util.dao.AuthorizedDao;
 import fi.thl.termed.util.dao.JdbcSystemSequenceDao;
 import fi.thl.termed.util.dao.SystemDao;
 import fi.thl.termed.util.dao.SystemSequenceDao;
 import fi.thl.termed.util.dao.TransactionalSystemDao;
-import fi.thl.termed.util.index.Index;
+import fi.thl.termed.util.index.IndexStatus;
 import fi.thl.termed.util.index.lucene.LuceneIndex;
 import fi.thl.termed.util.permission.DisjunctionPermissionEvaluator;
 import fi.thl.termed.util.permission.PermissionEvaluator;
@@ -65,12 +79,13 @@ import fi.thl.termed.util.service.DaoNamedSequenceService;
 import fi.thl.termed.util.service.ForwardingNamedSequenceService;
 import fi.thl.termed.util.service.NamedSequenceService;
 import fi.thl.termed.util.service.ProfilingService;
-import fi.thl.termed.util.service.SequenceService;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.service.SynchronizedNamedSequenceService;
 import fi.thl.termed.util.service.TransactionalNamedSequenceService;
 import fi.thl.termed.util.service.TransactionalService;
 import fi.thl.termed.util.service.WriteLoggingService;
+import java.nio.file.Paths;
+import java.time.Duration;
 import javax.sql.DataSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -98,7 +113,7 @@ public class NodeServiceConfiguration {
   @Autowired
   private Service<GraphId, Graph> graphService;
   @Autowired
-  private SequenceService revisionSeqService;
+  private PendingRevisions pendingRevisions;
   @Autowired
   private Service<Long, Revision> revisionService;
   @Value("${fi.thl.termed.defaultNamespace:}")
@@ -106,6 +121,30 @@ public class NodeServiceConfiguration {
 
   @Value("${fi.thl.termed.index:}")
   private String indexPath;
+  @Value("${fi.thl.termed.indexSnapshot:}")
+  private String indexSnapshotPath;
+
+  @Value("${fi.thl.termed.nodeRevisionCheckpointInterval:100}")
+  private int nodeRevisionCheckpointInterval;
+
+  @Value("${fi.thl.termed.revisionCompaction.keepAll:}")
+  private String revisionCompactionKeepAll;
+  @Value("${fi.thl.termed.revisionCompaction.keepDaily:}")
+  private String revisionCompactionKeepDaily;
+  @Value("${fi.thl.termed.revisionCompaction.interval:PT1H}")
+  private String revisionCompactionInterval;
+  @Value("${fi.thl.termed.revisionCompaction.batchSize:100}")
+  private int revisionCompactionBatchSize;
+  @Value("${fi.thl.termed.revisionCompaction.archive:}")
+  private String revisionCompactionArchive;
+
+  @Value("${fi.thl.termed.nodeSavePipeline.threads:0}")
+  private int nodeSavePipelineThreads;
+  @Value("${fi.thl.termed.nodeSavePipeline.bufferSize:1000}")
+  private int nodeSavePipelineBufferSize;
+
+  @Autowired
+  private WebhookOutbox webhookOutbox;
 
   @Autowired
   private EventBus eventBus;
@@ -115,46 +154,120 @@ public class NodeServiceConfiguration {
   @Bean
   public Service<NodeId, Node> nodeService() {
     Service<NodeId, Node> service = nodeRepository();
+    service = new WebhookOutboxWritingNodeService(service, webhookOutbox);
     service = new TransactionalService<>(service, transactionManager);
 
     service = new IndexedNodeService(service,
         nodeIndex(),
+        nodeIndexStatus(),
         nodeIndexingQueueSequenceDao(),
         nodeIndexingQueueDao(),
-        nodeIndexingQueueItemDao());
+        nodeIndexingQueueItemDao(),
+        nodeRevisionService(),
+        visibleNodeChanges());
     eventBus.register(service);
 
-    service = new ReadAuthorizedNodeService(service,
+    service = new ReadAuthorizedNodeService(service, typeService,
         typeEvaluator, textAttributeEvaluator, referenceAttributeEvaluator);
 
     service = new WriteLoggingService<>(service, packageName + ".WriteLoggingService");
     service = new NodeWriteEventPostingService(service, nodeRevisionService(), eventBus);
-    service = new RevisionInitializingNodeService(service, revisionSeqService, revisionService);
+    service = new RevisionInitializingNodeService(service, pendingRevisions, revisionService);
 
     service = new NodeMetadataInitializingService(service, nodeSequenceService(),
         typeService::get, graphService::get, ns);
-    service = new AttributeValueInitializingNodeService(service, typeService::get);
+    service = new AttributeValueInitializingNodeService(service, typeService::get,
+        nodeSavePipeline());
     service = new ProfilingService<>(service, packageName + ".ProfilingService", 500);
 
-    service = new IdInitializingNodeService(service);
-
-    return service;
-  }
+    service = new IdInitializingNodeService(service, nodeSavePipeline());
 
-  @Bean
-  public Service<RevisionId<NodeId>, Tuple2<RevisionType, Node>> nodeRevisionService() {
-    Service<RevisionId<NodeId>, Tuple2<RevisionType, Node>> service = nodeRevisionRepository();
-    service = new TransactionalService<>(service, transactionManager);
     return service;
   }
 
-  private Index<NodeId, Node> nodeIndex() {
+  // closed by IndexedNodeService on application shutdown
+  @Bean(destroyMethod = "")
+  public LuceneIndex<NodeId, Node> nodeIndex() {
     return new LuceneIndex<>(
         indexPath,
+        indexSnapshotPath,
         newConverter(NodeId::toString, NodeId::fromString),
         newConverter(new NodeToDocument(), new DocumentToNode()));
   }
 
+  @Bean
+  public NodeIndexSnapshotWriter nodeIndexSnapshotWriter() {
+    return new NodeIndexSnapshotWriter(nodeIndex(), nodeIndexingQueueDao(), pendingRevisions);
+  }
+
+  @Bean
+  public NodeChangeFeed nodeChangeFeed() {
+    NodeChangeFeed feed = new NodeChangeFeed(new JdbcNodeChangeDao(dataSource),
+        nodeRevEvaluator(), nodeRevisionService(), revisionService, pendingRevisions);
+    eventBus.register(feed);
+    pendingRevisions.addCompletionListener(feed::notifyWaitingReaders);
+    return feed;
+  }
+
+  @Bean
+  public ReferenceHierarchyIndex referenceHierarchyIndex() {
+    ReferenceHierarchyIndex index = new ReferenceHierarchyIndex(dataSource);
+    eventBus.register(index);
+    return index;
+  }
+
+  @Bean
+  public VisibleNodeChanges visibleNodeChanges() {
+    return new VisibleNodeChanges(nodeIndexingQueueDao(), nodeIndex());
+  }
+
+  @Bean
+  public NodeRevisionDiffer nodeRevisionDiffer() {
+    return new NodeRevisionDiffer(new JdbcNodeChangeDao(dataSource), nodeRevisionService());
+  }
+
+  @Bean
+  public NodeRevisionCompactor nodeRevisionCompactor(Gson gson) {
+    NodeRevisionCompactor compactor = new NodeRevisionCompactor(
+        new JdbcNodeRevisionCompactionDao(dataSource),
+        // compacted revisions are not worth checkpointing
+        nodeRevisionRepository(0), revisionService, pendingRevisions, visibleNodeChanges(),
+        transactionManager, gson,
+        revisionCompactionKeepAll.isEmpty() ? null : Duration.parse(revisionCompactionKeepAll),
+        revisionCompactionKeepDaily.isEmpty() ? null : Duration.parse(revisionCompactionKeepDaily),
+        Duration.parse(revisionCompactionInterval),
+        revisionCompactionBatchSize,
+        revisionCompactionArchive.isEmpty() ? null : Paths.get(revisionCompactionArchive));
+    eventBus.register(compactor);
+    return compactor;
+  }
+
+  /**
+   * Status of the node index. Node queries fall back to SQL until the index has been built.
+   */
+  @Bean
+  public IndexStatus nodeIndexStatus() {
+    return new IndexStatus();
+  }
+
+  /**
+   * Worker pool for CPU-bound stages of node stream saves (e.g. parsing and value initialization).
+   * Stages reading or writing the database are always run on the request thread.
+   */
+  @Bean
+  public PipelineExecutor nodeSavePipeline() {
+    return PipelineExecutor.newPipelineExecutor("node-save-pipeline",
+        nodeSavePipelineThreads, nodeSavePipelineBufferSize);
+  }
+
+  @Bean
+  public Service<RevisionId<NodeId>, Tuple2<RevisionType, Node>> nodeRevisionService() {
+    Service<RevisionId<NodeId>, Tuple2<RevisionType, Node>> service =
+        nodeRevisionRepository(nodeRevisionCheckpointInterval);
+    service = new TransactionalService<>(service, transactionManager);
+    return service;
+  }
+
   private Service<NodeId, Node> nodeRepository() {
     return new NodeRepository(
         new AuthorizedDao<>(nodeSystemDao(), nodeEvaluator()),
@@ -186,12 +299,20 @@ public class NodeServiceConfiguration {
     return sequenceService;
   }
 
-  private Service<RevisionId<NodeId>, Tuple2<RevisionType, Node>> nodeRevisionRepository() {
+  private Service<RevisionId<NodeId>, Tuple2<RevisionType, Node>> nodeRevisionRepository(
+      int checkpointInterval) {
     return new NodeRevisionRepository(
         new AuthorizedDao<>(nodeRevSysDao(), nodeRevEvaluator()),
         new AuthorizedDao<>(textAttributeValueRevSysDao(), textAttributeValueRevEvaluator()),
         new AuthorizedDao<>(referenceAttributeValueRevSysDao(), refAttributeValueRevEvaluator()),
-        revisionService, revisionSeqService);
+        new AuthorizedDao<>(new JdbcNodeCheckpointDao(dataSource), nodeRevEvaluator()),
+        new AuthorizedDao<>(textAttributeValueCheckpointSysDao(),
+            textAttributeValueRevEvaluator()),
+        new AuthorizedDao<>(referenceAttributeValueCheckpointSysDao(),
+            refAttributeValueRevEvaluator()),
+        checkpointInterval,
+        transactionManager,
+        revisionService, pendingRevisions);
   }
 
   private PermissionEvaluator<TypeId> nodeSequenceEvaluator() {
@@ -276,6 +397,20 @@ public class NodeServiceConfiguration {
     return new JdbcPostgresNodeReferenceAttributeValueRevisionDao(dao, dataSource);
   }
 
+  private SystemDao<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, StrictLangValue>> textAttributeValueCheckpointSysDao() {
+    String table = "node_text_attribute_value_checkpoint";
+    SystemDao<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, StrictLangValue>> dao =
+        new JdbcNodeTextAttributeValueRevisionDao(dataSource, table);
+    return new JdbcPostgresNodeTextAttributeValueRevisionDao(dao, dataSource, table);
+  }
+
+  private SystemDao<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, NodeId>> referenceAttributeValueCheckpointSysDao() {
+    String table = "node_reference_attribute_value_checkpoint";
+    SystemDao<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, NodeId>> dao =
+        new JdbcNodeReferenceAttributeValueRevisionDao(dataSource, table);
+    return new JdbcPostgresNodeReferenceAttributeValueRevisionDao(dao, dataSource, table);
+  }
+
   private SystemSequenceDao nodeIndexingQueueSequenceDao() {
     return new JdbcSystemSequenceDao(dataSource, "node_indexing_queue_seq");
   }
@@ -4,9 +4,11 @@ import static com.google.common.collect.Multimaps.filterValues;
 import static com.google.common.collect.Multimaps.transformEntries;
 import static org.assertj.core.util.Strings.isNullOrEmpty;
 
+import com.google.common.base.Throwables;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeId;
 import fi.thl.termed.domain.ReferenceAttribute;
@@ -17,6 +19,7 @@ import fi.thl.termed.domain.TextAttributeId;
 import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.TypeId;
 import fi.thl.termed.domain.User;
+import fi.thl.termed.util.concurrent.PipelineExecutor;
 import fi.thl.termed.util.service.ForwardingService;
 import fi.thl.termed.util.service.SaveMode;
 import fi.thl.termed.util.service.Service;
@@ -30,32 +33,39 @@ import java.util.stream.Stream;
 
 /**
  * Sets regular expressions to text attribute values and ranges to reference attribute values.
+ *
+ * Types are loaded on the calling thread, attribute values of streamed nodes are then resolved
+ * in given pipeline executor.
  */
 public class AttributeValueInitializingNodeService extends ForwardingService<NodeId, Node> {
 
   private BiFunction<TypeId, User, Type> typeSource;
+  private PipelineExecutor pipeline;
 
   public AttributeValueInitializingNodeService(Service<NodeId, Node> delegate,
       BiFunction<TypeId, User, Optional<Type>> typeSource) {
+    this(delegate, typeSource, PipelineExecutor.direct());
+  }
+
+  public AttributeValueInitializingNodeService(Service<NodeId, Node> delegate,
+      BiFunction<TypeId, User, Optional<Type>> typeSource, PipelineExecutor pipeline) {
     super(delegate);
     this.typeSource = (t, u) -> typeSource.apply(t, u)
         .orElseThrow(() -> new BadRequestException("Type '" + t.getId() + "' not found"));
+    this.pipeline = pipeline;
   }
 
   @Override
   public void save(Stream<Node> nodes, SaveMode mode, WriteOptions opts, User user) {
-    LoadingCache<TextAttributeId, TextAttribute> textAttrCache = initTextAttrCache(user);
-    LoadingCache<ReferenceAttributeId, ReferenceAttribute> refAttrCache = initRefAttrCache(user);
-    super.save(
-        nodes.map(node -> resolveAttributes(node, textAttrCache, refAttrCache)),
-        mode, opts, user);
+    super.save(resolveAttributes(nodes, user), mode, opts, user);
   }
 
   @Override
   public NodeId save(Node node, SaveMode mode, WriteOptions opts, User user) {
-    LoadingCache<TextAttributeId, TextAttribute> textAttributeCache = initTextAttrCache(user);
+    LoadingCache<TypeId, Type> typeCache = initTypeCache(user);
+    LoadingCache<TextAttributeId, TextAttribute> textAttributeCache = initTextAttrCache(typeCache);
     LoadingCache<ReferenceAttributeId, ReferenceAttribute> refAttributeCache = initRefAttrCache(
-        user);
+        typeCache);
     return super.save(
         resolveAttributes(node, textAttributeCache, refAttributeCache), mode, opts, user);
   }
@@ -63,16 +73,29 @@ public class AttributeValueInitializingNodeService extends ForwardingService<Nod
   @Override
   public void saveAndDelete(Stream<Node> saves, Stream<NodeId> deletes, SaveMode mode,
       WriteOptions opts, User user) {
-    LoadingCache<TextAttributeId, TextAttribute> textAttrCache = initTextAttrCache(user);
-    LoadingCache<ReferenceAttributeId, ReferenceAttribute> refAttrCache = initRefAttrCache(user);
-    super.saveAndDelete(
-        saves.map(node -> resolveAttributes(node, textAttrCache, refAttrCache)),
-        deletes, mode, opts, user);
+    super.saveAndDelete(resolveAttributes(saves, user), deletes, mode, opts, user);
+  }
+
+  private Stream<Node> resolveAttributes(Stream<Node> nodes, User user) {
+    LoadingCache<TypeId, Type> typeCache = initTypeCache(user);
+    LoadingCache<TextAttributeId, TextAttribute> textAttrCache = initTextAttrCache(typeCache);
+    LoadingCache<ReferenceAttributeId, ReferenceAttribute> refAttrCache = initRefAttrCache(
+        typeCache);
+
+    // load types in this thread, workers only read the caches
+    return pipeline.map(
+        nodes.peek(node -> get(typeCache, node.getType())),
+        node -> resolveAttributes(node, textAttrCache, refAttrCache));
+  }
+
+  private LoadingCache<TypeId, Type> initTypeCache(User user) {
+    return CacheBuilder.newBuilder().build(CacheLoader.from(t -> typeSource.apply(t, user)));
   }
 
-  private LoadingCache<TextAttributeId, TextAttribute> initTextAttrCache(User user) {
+  private LoadingCache<TextAttributeId, TextAttribute> initTextAttrCache(
+      LoadingCache<TypeId, Type> typeCache) {
     Function<TextAttributeId, TextAttribute> textAttrLoader =
-        attr -> typeSource.apply(attr.getDomainId(), user)
+        attr -> get(typeCache, attr.getDomainId())
             .getTextAttributes().stream()
             .filter(typeAttr -> Objects.equals(typeAttr.getId(), attr.getId()))
             .findAny()
@@ -82,9 +105,10 @@ public class AttributeValueInitializingNodeService extends ForwardingService<Nod
     return CacheBuilder.newBuilder().build(CacheLoader.from(textAttrLoader::apply));
   }
 
-  private LoadingCache<ReferenceAttributeId, ReferenceAttribute> initRefAttrCache(User user) {
+  private LoadingCache<ReferenceAttributeId, ReferenceAttribute> initRefAttrCache(
+      LoadingCache<TypeId, Type> typeCache) {
     Function<ReferenceAttributeId, ReferenceAttribute> refAttrLoader =
-        attr -> typeSource.apply(attr.getDomainId(), user)
+        attr -> get(typeCache, attr.getDomainId())
             .getReferenceAttributes().stream()
             .filter(typeAttr -> Objects.equals(typeAttr.getId(), attr.getId()))
             .findAny()
@@ -94,6 +118,16 @@ public class AttributeValueInitializingNodeService extends ForwardingService<Nod
     return CacheBuilder.newBuilder().build(CacheLoader.from(refAttrLoader::apply));
   }
 
+  // rethrows loader exceptions as is, e.g. so that unknown types are reported as bad requests
+  private static <K, V> V get(LoadingCache<K, V> cache, K key) {
+    try {
+      return cache.getUnchecked(key);
+    } catch (UncheckedExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw e;
+    }
+  }
+
   private Node resolveAttributes(Node node,
       LoadingCache<TextAttributeId, TextAttribute> textAttributeCache,
       LoadingCache<ReferenceAttributeId, ReferenceAttribute> refAttributeCache) {
@@ -103,14 +137,14 @@ public class AttributeValueInitializingNodeService extends ForwardingService<Nod
             transformEntries(
                 filterValues(node.getProperties(), v -> !isNullOrEmpty(v.getValue())),
                 (attributeId, value) -> {
-                  TextAttribute attribute = textAttributeCache.getUnchecked(
+                  TextAttribute attribute = get(textAttributeCache,
                       new TextAttributeId(node.getType(), attributeId));
                   return new StrictLangValue(value.getLang(), value.getValue(),
                       attribute.getRegex());
                 }))
         .references(
             transformEntries(node.getReferences(), (attributeId, value) -> {
-              ReferenceAttribute attribute = refAttributeCache.getUnchecked(
+              ReferenceAttribute attribute = get(refAttributeCache,
                   new ReferenceAttributeId(node.getType(), attributeId));
               return new NodeId(value.getId(), attribute.getRange());
             }))
@@ -7,6 +7,7 @@ import fi.thl.termed.domain.ErrorCode;
 import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeId;
 import fi.thl.termed.domain.User;
+import fi.thl.termed.util.concurrent.PipelineExecutor;
 import fi.thl.termed.util.service.ForwardingService;
 import fi.thl.termed.util.service.SaveMode;
 import fi.thl.termed.util.service.Service;
@@ -20,13 +21,20 @@ import java.util.stream.Stream;
  */
 public class IdInitializingNodeService extends ForwardingService<NodeId, Node> {
 
+  private PipelineExecutor pipeline;
+
   public IdInitializingNodeService(Service<NodeId, Node> delegate) {
+    this(delegate, PipelineExecutor.direct());
+  }
+
+  public IdInitializingNodeService(Service<NodeId, Node> delegate, PipelineExecutor pipeline) {
     super(delegate);
+    this.pipeline = pipeline;
   }
 
   @Override
   public void save(Stream<Node> nodes, SaveMode mode, WriteOptions opts, User user) {
-    super.save(nodes.map(this::resolveId), mode, opts, user);
+    super.save(pipeline.map(nodes, this::resolveId), mode, opts, user);
   }
 
   @Override
@@ -37,7 +45,7 @@ public class IdInitializingNodeService extends ForwardingService<NodeId, Node> {
   @Override
   public void saveAndDelete(Stream<Node> saves, Stream<NodeId> deletes, SaveMode mode,
       WriteOptions opts, User user) {
-    super.saveAndDelete(saves.map(this::resolveId), deletes, mode, opts, user);
+    super.saveAndDelete(pipeline.map(saves, this::resolveId), deletes, mode, opts, user);
   }
 
   private Node resolveId(Node node) {
@@ -7,24 +7,30 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Streams;
 import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import fi.thl.termed.domain.AppRole;
 import fi.thl.termed.domain.Empty;
 import fi.thl.termed.domain.IndexingQueueItemId;
 import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.RevisionId;
+import fi.thl.termed.domain.RevisionType;
 import fi.thl.termed.domain.User;
 import fi.thl.termed.domain.event.ApplicationReadyEvent;
 import fi.thl.termed.domain.event.ApplicationShutdownEvent;
 import fi.thl.termed.domain.event.ReindexEvent;
 import fi.thl.termed.service.node.specification.NodeIndexingQueueItemsByQueueId;
+import fi.thl.termed.service.node.specification.NodeRevisionsGreaterOrEqualToRevisionNumber;
 import fi.thl.termed.service.node.specification.NodesByGraphId;
 import fi.thl.termed.service.node.specification.NodesById;
 import fi.thl.termed.service.node.specification.NodesByTypeId;
 import fi.thl.termed.util.collect.StreamUtils;
 import fi.thl.termed.util.collect.Tuple;
+import fi.thl.termed.util.collect.Tuple2;
 import fi.thl.termed.util.dao.SystemDao;
 import fi.thl.termed.util.dao.SystemSequenceDao;
 import fi.thl.termed.util.index.Index;
+import fi.thl.termed.util.index.IndexStatus;
 import fi.thl.termed.util.index.lucene.LuceneIndex;
 import fi.thl.termed.util.query.AndSpecification;
 import fi.thl.termed.util.query.CompositeSpecification;
@@ -37,15 +43,21 @@ import fi.thl.termed.util.query.Queries;
 import fi.thl.termed.util.query.Query;
 import fi.thl.termed.util.query.Select;
 import fi.thl.termed.util.query.SelectAll;
+import fi.thl.termed.util.query.SortRelevance;
 import fi.thl.termed.util.query.Specification;
+import fi.thl.termed.util.query.SpecificationUtils;
 import fi.thl.termed.util.query.Specifications;
 import fi.thl.termed.util.service.ForwardingService;
 import fi.thl.termed.util.service.SaveMode;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.service.WriteOptions;
+import fi.thl.termed.util.spring.exception.ServiceUnavailableException;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -57,36 +69,87 @@ public class IndexedNodeService extends ForwardingService<NodeId, Node> {
 
   private Logger log = LoggerFactory.getLogger(getClass());
 
+  /**
+   * Commit data key for the revision number that index snapshots are known to be up to date with.
+   */
+  public static final String SNAPSHOT_REVISION = "revision";
+
+  // indexing queues are indexed and removed in chunks of this size
+  private static final int QUEUE_CHUNK_SIZE = 10_000;
+
   private Index<NodeId, Node> index;
+  private IndexStatus indexStatus;
 
   private SystemSequenceDao nodeIndexingQueueSequenceDao;
   private SystemDao<Long, Empty> nodeIndexingQueueDao;
   private SystemDao<IndexingQueueItemId<NodeId>, Empty> nodeIndexingQueueItemDao;
+  private Service<RevisionId<NodeId>, Tuple2<RevisionType, Node>> nodeRevisionService;
+  private VisibleNodeChanges visibleNodeChanges;
 
   private User indexer = new User("indexer", "", AppRole.ADMIN);
 
+  private ExecutorService initExecutor = Executors.newSingleThreadExecutor(
+      new ThreadFactoryBuilder().setNameFormat("node-index-init-%d").setDaemon(true).build());
+
   public IndexedNodeService(
       Service<NodeId, Node> delegate,
       Index<NodeId, Node> index,
+      IndexStatus indexStatus,
       SystemSequenceDao nodeIndexingQueueSequenceDao,
       SystemDao<Long, Empty> nodeIndexingQueueDao,
-      SystemDao<IndexingQueueItemId<NodeId>, Empty> nodeIndexingQueueItemDao) {
+      SystemDao<IndexingQueueItemId<NodeId>, Empty> nodeIndexingQueueItemDao,
+      Service<RevisionId<NodeId>, Tuple2<RevisionType, Node>> nodeRevisionService,
+      VisibleNodeChanges visibleNodeChanges) {
     super(delegate);
     this.index = index;
+    this.indexStatus = indexStatus;
     this.nodeIndexingQueueSequenceDao = nodeIndexingQueueSequenceDao;
     this.nodeIndexingQueueDao = nodeIndexingQueueDao;
     this.nodeIndexingQueueItemDao = nodeIndexingQueueItemDao;
+    this.nodeRevisionService = nodeRevisionService;
+    this.visibleNodeChanges = visibleNodeChanges;
   }
 
+  /**
+   * Builds missing index, catches up index restored from a snapshot and indexes queues left by an
+   * interrupted run in the background. While indexing, queries are answered using SQL where
+   * possible.
+   */
   @Subscribe
   public void initIndexOn(ApplicationReadyEvent e) {
-    if (index.isEmpty()) {
-      log.info("No index found, adding all keys to indexing queue");
-      enqueueAll();
+    Optional<Long> snapshotRevision = restoredSnapshotRevision();
+
+    boolean rebuild = !snapshotRevision.isPresent() && index.isEmpty()
+        && StreamUtils.findFirstAndClose(super.keys(Queries.matchAll(), indexer)).isPresent();
+
+    // there can be queues if app was shut down mid indexing
+    boolean queued = StreamUtils.findFirstAndClose(
+        nodeIndexingQueueDao.keys(Specifications.matchAll())).isPresent();
+
+    if (!rebuild && !queued && !snapshotRevision.isPresent()) {
+      return;
     }
 
-    // there can be queues if index was empty or app was shut down mid indexing
-    indexAllQueues();
+    indexStatus.building();
+
+    initExecutor.submit(() -> {
+      try {
+        if (rebuild) {
+          log.info("No index found, adding all keys to indexing queue");
+          enqueueAll();
+        }
+        if (snapshotRevision.isPresent()) {
+          log.info("Index restored from snapshot, indexing nodes changed since revision {}",
+              snapshotRevision.get());
+          enqueueChangedSince(snapshotRevision.get());
+        }
+        indexAllQueues();
+        indexStatus.ready();
+        log.info("Index is ready");
+      } catch (RuntimeException | Error ex) {
+        log.error("Background indexing failed, remaining queues are indexed on next start", ex);
+      }
+    });
   }
 
   private void enqueueAll() {
@@ -98,6 +161,27 @@ public class IndexedNodeService extends ForwardingService<NodeId, Node> {
     }
   }
 
+  private Optional<Long> restoredSnapshotRevision() {
+    if (index instanceof LuceneIndex && ((LuceneIndex) index).isRestoredFromSnapshot()) {
+      Map<String, String> commitData = ((LuceneIndex<NodeId, Node>) index).getCommitData();
+      return Optional.ofNullable(commitData.get(SNAPSHOT_REVISION)).map(Long::valueOf);
+    }
+    return Optional.empty();
+  }
+
+  // re-indexes nodes in revisions committed after (or concurrently with) the snapshot
+  private void enqueueChangedSince(Long revision) {
+    Long queueId = initQueue();
+    try (Stream<NodeId> ids = nodeRevisionService
+        .keys(Queries.query(NodeRevisionsGreaterOrEqualToRevisionNumber.of(revision)), indexer)
+        .map(RevisionId::getId)
+        .distinct()) {
+      enqueue(queueId, ids);
+    } finally {
+      index(queueId);
+    }
+  }
+
   private void indexAllQueues() {
     List<Long> queues = StreamUtils.toImmutableListAndClose(
         nodeIndexingQueueDao.keys(Specifications.matchAll()));
@@ -110,6 +194,7 @@ public class IndexedNodeService extends ForwardingService<NodeId, Node> {
 
   @Subscribe
   public void closeIndexOn(ApplicationShutdownEvent e) {
+    initExecutor.shutdownNow();
     index.close();
   }
 
@@ -196,17 +281,39 @@ public class IndexedNodeService extends ForwardingService<NodeId, Node> {
         .insert(nodeIds.map(id -> Tuple.of(IndexingQueueItemId.of(id, queueId), Empty.INSTANCE)));
   }
 
+  // indexed items are removed chunk by chunk, so interrupted indexing resumes from remaining items
   private void index(Long queueId) {
     log.trace("Indexing queue {}", queueId);
 
-    index(() -> nodeIndexingQueueItemDao
-        .keys(NodeIndexingQueueItemsByQueueId.of(queueId))
-        .map(IndexingQueueItemId::getId));
+    List<IndexingQueueItemId<NodeId>> chunk = nextChunk(queueId);
+
+    while (chunk.size() == QUEUE_CHUNK_SIZE) {
+      indexChunk(chunk);
+      nodeIndexingQueueItemDao.delete(chunk.stream());
+      chunk = nextChunk(queueId);
+    }
+
+    indexChunk(chunk);
 
     log.trace("Deleting queue {}", queueId);
     nodeIndexingQueueDao.delete(queueId);
   }
 
+  private List<IndexingQueueItemId<NodeId>> nextChunk(Long queueId) {
+    return StreamUtils.toListAndClose(nodeIndexingQueueItemDao
+        .keys(NodeIndexingQueueItemsByQueueId.of(queueId))
+        .limit(QUEUE_CHUNK_SIZE));
+  }
+
+  private void indexChunk(List<IndexingQueueItemId<NodeId>> chunk) {
+    if (!chunk.isEmpty()) {
+      index(() -> chunk.stream().map(IndexingQueueItemId::getId));
+      if (!indexStatus.isReady()) {
+        indexStatus.indexed(chunk.size());
+      }
+    }
+  }
+
   // index nodes and its references and referrers
   private void index(Supplier<Stream<NodeId>> idsSupplier) {
     long nodeCount = StreamUtils.countAndClose(idsSupplier.get());
@@ -274,7 +381,7 @@ public class IndexedNodeService extends ForwardingService<NodeId, Node> {
                 idBatch.stream().map(NodeAllReferrers::of))
                 .collect(toImmutableList()));
 
-        index(keys(Queries.query(refSpecs), indexer)
+        index(searchKeys(Queries.query(refSpecs))
             .peek(id -> checkCounter.incrementAndGet())
             .filter(refId -> indexed.getIfPresent(refId) == null)
             .peek(id -> indexCounter.incrementAndGet())
@@ -307,6 +414,8 @@ public class IndexedNodeService extends ForwardingService<NodeId, Node> {
           index.delete(id);
         }
 
+        visibleNodeChanges.indexed(id);
+
         if (i % 1000 == 0) {
           log.debug("Indexed {} nodes", i);
         }
@@ -329,6 +438,11 @@ public class IndexedNodeService extends ForwardingService<NodeId, Node> {
 
     resolve(query.getWhere(), user);
 
+    if (!indexStatus.isReady()) {
+      checkSqlFallbackAvailable(query);
+      return limit(super.values(query, user), query.getMax());
+    }
+
     return ((LuceneIndex<NodeId, Node>) index).get(
         query.getWhere(),
         query.getSort(),
@@ -364,6 +478,16 @@ public class IndexedNodeService extends ForwardingService<NodeId, Node> {
 
     resolve(query.getWhere(), user);
 
+    if (!indexStatus.isReady()) {
+      checkSqlFallbackAvailable(query);
+      return limit(super.keys(query, user), query.getMax());
+    }
+
+    return searchKeys(query);
+  }
+
+  // searches keys from index regardless of index status
+  private Stream<NodeId> searchKeys(Query<NodeId, Node> query) {
     return index.getKeys(
         query.getWhere(),
         query.getSort(),
@@ -378,9 +502,35 @@ public class IndexedNodeService extends ForwardingService<NodeId, Node> {
 
     resolve(spec, user);
 
+    if (!indexStatus.isReady()) {
+      checkSqlFallbackAvailable(spec);
+      return super.count(spec, user);
+    }
+
     return index.count(spec);
   }
 
+  // while index is being built, queries that can't be run in SQL are rejected
+  // sorting is done by the index only, so only unsorted (or relevance sorted) queries are
+  // served from SQL
+  private void checkSqlFallbackAvailable(Query<NodeId, Node> query) {
+    checkSqlFallbackAvailable(query.getWhere());
+    if (query.getSort() != null
+        && !query.getSort().stream().allMatch(sort -> sort instanceof SortRelevance)) {
+      throw new ServiceUnavailableException("Index is being built, try again later.");
+    }
+  }
+
+  private void checkSqlFallbackAvailable(Specification<NodeId, Node> spec) {
+    if (!SpecificationUtils.isSqlSpecification(spec)) {
+      throw new ServiceUnavailableException("Index is being built, try again later.");
+    }
+  }
+
+  private <E> Stream<E> limit(Stream<E> stream, int max) {
+    return max >= 0 ? stream.limit(max) : stream;
+  }
+
   private void resolve(Specification<NodeId, Node> spec, User user) {
     if (spec instanceof DependentSpecification) {
       ((DependentSpecification<NodeId, Node>) spec).resolve(s -> keys(new Query<>(s), user));
@@ -0,0 +1,120 @@
+package fi.thl.termed.service.node.internal;
+
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.RevisionId;
+import fi.thl.termed.domain.RevisionType;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.util.UUIDs;
+import fi.thl.termed.util.collect.Tuple;
+import fi.thl.termed.util.collect.Tuple2;
+import fi.thl.termed.util.spring.jdbc.StreamingJdbcTemplate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+import javax.sql.DataSource;
+import org.springframework.jdbc.core.RowMapper;
+
+/**
+ * Reads node revision keys in ascending (revision, graph_id, type_id, id) order starting after
+ * given position. Unlike node revision DAO, which returns newest revisions first, this is meant
+ * for consumers following changes from a known position. Also finds nodes changed between two
+ * revisions for revision diffs.
+ */
+public class JdbcNodeChangeDao {
+
+  private StreamingJdbcTemplate jdbcTemplate;
+
+  private RowMapper<Tuple2<RevisionId<NodeId>, RevisionType>> changeMapper =
+      (rs, rowNum) -> Tuple.of(
+          RevisionId.of(
+              new NodeId(UUIDs.fromString(rs.getString("id")),
+                  rs.getString("type_id"),
+                  UUIDs.fromString(rs.getString("graph_id"))),
+              rs.getLong("revision")),
+          RevisionType.valueOf(rs.getString("revision_type")));
+
+  public JdbcNodeChangeDao(DataSource dataSource) {
+    this.jdbcTemplate = new StreamingJdbcTemplate(dataSource);
+  }
+
+  /**
+   * Returns changes in revisions greater than given revision and less or equal to upTo.
+   */
+  public Stream<Tuple2<RevisionId<NodeId>, RevisionType>> changesAfter(Long revision,
+      Long upTo) {
+    return jdbcTemplate.queryForStream(
+        "select graph_id, type_id, id, revision, revision_type from node_aud " +
+            "where revision > ? and revision <= ? " +
+            "order by revision, graph_id, type_id, id",
+        changeMapper, revision, upTo);
+  }
+
+  /**
+   * Returns changes after given node in given revision followed by changes in greater revisions,
+   * up to and including revision upTo.
+   */
+  public Stream<Tuple2<RevisionId<NodeId>, RevisionType>> changesAfter(
+      RevisionId<NodeId> position, Long upTo) {
+    NodeId nodeId = position.getId();
+    return jdbcTemplate.queryForStream(
+        "select graph_id, type_id, id, revision, revision_type from node_aud " +
+            "where revision <= ? and (revision > ? or (revision = ? and (graph_id > ? or " +
+            "(graph_id = ? and (type_id > ? or (type_id = ? and id > ?)))))) " +
+            "order by revision, graph_id, type_id, id",
+        changeMapper,
+        upTo,
+        position.getRevision(),
+        position.getRevision(),
+        nodeId.getTypeGraphId(),
+        nodeId.getTypeGraphId(),
+        nodeId.getTypeId(),
+        nodeId.getTypeId(),
+        nodeId.getId());
+  }
+
+  /**
+   * Returns nodes of given graph and type (nullable) changed in revisions greater than from and
+   * less or equal to given revision. Nodes are ordered by type and id.
+   */
+  public Stream<NodeId> changedNodes(UUID graphId, String typeId, Long from, Long to) {
+    String sql = "select distinct graph_id, type_id, id from node_aud " +
+        "where graph_id = ? " + (typeId != null ? "and type_id = ? " : "") +
+        "and revision > ? and revision <= ? " +
+        "order by type_id, id";
+    Object[] args = typeId != null
+        ? new Object[]{graphId, typeId, from, to}
+        : new Object[]{graphId, from, to};
+
+    return jdbcTemplate.queryForStream(sql, args, (rs, rowNum) -> new NodeId(
+        UUIDs.fromString(rs.getString("id")),
+        rs.getString("type_id"),
+        UUIDs.fromString(rs.getString("graph_id"))));
+  }
+
+  /**
+   * Returns the last revision less or equal to given revision for each given node that has one.
+   */
+  public Stream<RevisionId<NodeId>> lastRevisions(TypeId type, Collection<UUID> ids, Long upTo) {
+    List<Object> args = new ArrayList<>();
+    args.add(type.getGraphId());
+    args.add(type.getId());
+    args.addAll(ids);
+    args.add(upTo);
+
+    return jdbcTemplate.queryForStream(
+        "select graph_id, type_id, id, max(revision) as revision from node_aud " +
+            "where graph_id = ? and type_id = ? and id in (" +
+            String.join(",", Collections.nCopies(ids.size(), "?")) + ") and revision <= ? " +
+            "group by graph_id, type_id, id",
+        args.toArray(),
+        (rs, rowNum) -> RevisionId.of(
+            new NodeId(UUIDs.fromString(rs.getString("id")),
+                rs.getString("type_id"),
+                UUIDs.fromString(rs.getString("graph_id"))),
+            rs.getLong("revision")));
+  }
+
+}
@@ -0,0 +1,95 @@
+package fi.thl.termed.service.node.internal;
+
+import fi.thl.termed.domain.Empty;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.RevisionId;
+import fi.thl.termed.util.UUIDs;
+import fi.thl.termed.util.dao.AbstractJdbcDao;
+import fi.thl.termed.util.query.SqlSpecification;
+import java.util.Optional;
+import java.util.stream.Stream;
+import javax.sql.DataSource;
+import org.springframework.jdbc.core.RowMapper;
+
+public class JdbcNodeCheckpointDao extends AbstractJdbcDao<RevisionId<NodeId>, Empty> {
+
+  public JdbcNodeCheckpointDao(DataSource dataSource) {
+    super(dataSource);
+  }
+
+  @Override
+  public void insert(RevisionId<NodeId> revisionId, Empty empty) {
+    NodeId nodeId = revisionId.getId();
+    jdbcTemplate.update(
+        "insert into node_checkpoint (graph_id, type_id, id, revision) values (?, ?, ?, ?)",
+        nodeId.getTypeGraphId(),
+        nodeId.getTypeId(),
+        nodeId.getId(),
+        revisionId.getRevision());
+  }
+
+  @Override
+  public void update(RevisionId<NodeId> revisionId, Empty empty) {
+    // NOP
+  }
+
+  @Override
+  public void delete(RevisionId<NodeId> revisionId) {
+    NodeId nodeId = revisionId.getId();
+    jdbcTemplate.update(
+        "delete from node_checkpoint where graph_id = ? and type_id = ? and id = ? and revision = ?",
+        nodeId.getTypeGraphId(),
+        nodeId.getTypeId(),
+        nodeId.getId(),
+        revisionId.getRevision());
+  }
+
+  @Override
+  protected <E> Stream<E> get(SqlSpecification<RevisionId<NodeId>, Empty> specification,
+      RowMapper<E> mapper) {
+    return jdbcTemplate.queryForStream(
+        String.format("select * from node_checkpoint where %s",
+            specification.sqlQueryTemplate()),
+        specification.sqlQueryParameters(), mapper);
+  }
+
+  @Override
+  public boolean exists(RevisionId<NodeId> revisionId) {
+    NodeId nodeId = revisionId.getId();
+    return jdbcTemplate.queryForOptional(
+        "select count(*) from node_checkpoint where graph_id = ? and type_id = ? and id = ? and revision = ?",
+        Long.class,
+        nodeId.getTypeGraphId(),
+        nodeId.getTypeId(),
+        nodeId.getId(),
+        revisionId.getRevision())
+        .orElseThrow(IllegalStateException::new) > 0;
+  }
+
+  @Override
+  protected <E> Optional<E> get(RevisionId<NodeId> revisionId, RowMapper<E> mapper) {
+    NodeId nodeId = revisionId.getId();
+    return jdbcTemplate.queryForFirst(
+        "select * from node_checkpoint where graph_id = ? and type_id = ? and id = ? and revision = ?",
+        mapper,
+        nodeId.getTypeGraphId(),
+        nodeId.getTypeId(),
+        nodeId.getId(),
+        revisionId.getRevision());
+  }
+
+  @Override
+  protected RowMapper<RevisionId<NodeId>> buildKeyMapper() {
+    return (rs, rowNum) -> RevisionId.of(
+        new NodeId(UUIDs.fromString(rs.getString("id")),
+            rs.getString("type_id"),
+            UUIDs.fromString(rs.getString("graph_id"))),
+        rs.getLong("revision"));
+  }
+
+  @Override
+  protected RowMapper<Empty> buildValueMapper() {
+    return (rs, rowNum) -> Empty.INSTANCE;
+  }
+
+}
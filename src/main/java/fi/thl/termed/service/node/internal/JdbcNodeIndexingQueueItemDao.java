@@ -44,8 +44,8 @@ public class JdbcNodeIndexingQueueItemDao extends
     jdbcTemplate.update(
         "delete from node_indexing_queue_item where "
             + "node_graph_id = ? and "
-            + "node_type_id = ? and"
-            + "node_id = ? and"
+            + "node_type_id = ? and "
+            + "node_id = ? and "
             + "node_indexing_queue_id = ?",
         nodeId.getTypeGraphId(),
         nodeId.getTypeId(),
@@ -20,8 +20,18 @@ import org.springframework.jdbc.core.RowMapper;
 public class JdbcNodeReferenceAttributeValueRevisionDao extends
     AbstractJdbcDao<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, NodeId>> {
 
+  private final String table;
+
   public JdbcNodeReferenceAttributeValueRevisionDao(DataSource dataSource) {
+    this(dataSource, "node_reference_attribute_value_aud");
+  }
+
+  /**
+   * Constructs DAO for another table with the same columns, e.g. a checkpoint table.
+   */
+  public JdbcNodeReferenceAttributeValueRevisionDao(DataSource dataSource, String table) {
     super(dataSource);
+    this.table = table;
   }
 
   @Override
@@ -34,7 +44,7 @@ public class JdbcNodeReferenceAttributeValueRevisionDao extends
     Optional<NodeId> value = ofNullable(revision._2);
 
     jdbcTemplate.update(
-        "insert into node_reference_attribute_value_aud (node_graph_id, node_type_id, node_id, revision, attribute_id, index, value_graph_id, value_type_id, value_id, revision_type) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+        "insert into " + table + " (node_graph_id, node_type_id, node_id, revision, attribute_id, index, value_graph_id, value_type_id, value_id, revision_type) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
         nodeId.getTypeGraphId(),
         nodeId.getTypeId(),
         nodeId.getId(),
@@ -63,7 +73,7 @@ public class JdbcNodeReferenceAttributeValueRevisionDao extends
       SqlSpecification<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, NodeId>> specification,
       RowMapper<E> mapper) {
     return jdbcTemplate.queryForStream(
-        String.format("select * from node_reference_attribute_value_aud where %s order by index",
+        String.format("select * from " + table + " where %s order by index",
             specification.sqlQueryTemplate()),
         specification.sqlQueryParameters(), mapper);
   }
@@ -74,7 +84,7 @@ public class JdbcNodeReferenceAttributeValueRevisionDao extends
     NodeId nodeId = nodeAttributeValueId.getNodeId();
 
     return jdbcTemplate.queryForOptional(
-        "select count(*) from node_reference_attribute_value_aud where node_graph_id = ? and node_type_id = ? and node_id = ? and attribute_id = ? and index = ? and revision = ?",
+        "select count(*) from " + table + " where node_graph_id = ? and node_type_id = ? and node_id = ? and attribute_id = ? and index = ? and revision = ?",
         Long.class,
         nodeId.getTypeGraphId(),
         nodeId.getTypeId(),
@@ -90,7 +100,7 @@ public class JdbcNodeReferenceAttributeValueRevisionDao extends
     NodeId nodeId = nodeAttributeValueId.getNodeId();
 
     return jdbcTemplate.queryForFirst(
-        "select * from node_reference_attribute_value_aud where node_graph_id = ? and node_type_id = ? and node_id = ? and attribute_id = ? and index = ? and revision = ?",
+        "select * from " + table + " where node_graph_id = ? and node_type_id = ? and node_id = ? and attribute_id = ? and index = ? and revision = ?",
         mapper,
         nodeId.getTypeGraphId(),
         nodeId.getTypeId(),
@@ -0,0 +1,163 @@
+package fi.thl.termed.service.node.internal;
+
+import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
+
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.ObjectRevision;
+import fi.thl.termed.domain.RevisionType;
+import fi.thl.termed.util.UUIDs;
+import fi.thl.termed.util.spring.jdbc.StreamingJdbcTemplate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import javax.sql.DataSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Low level operations for thinning node revision history. A node revision is compacted into a
+ * later revision of the same node by removing it and moving its value changes to the later
+ * revision, so that node state in the later revision stays unchanged.
+ */
+public class JdbcNodeRevisionCompactionDao {
+
+  private static final String[] VALUE_TABLES = {
+      "node_text_attribute_value_aud", "node_reference_attribute_value_aud"};
+
+  private StreamingJdbcTemplate streamingJdbcTemplate;
+  private JdbcTemplate jdbcTemplate;
+
+  public JdbcNodeRevisionCompactionDao(DataSource dataSource) {
+    this.streamingJdbcTemplate = new StreamingJdbcTemplate(dataSource);
+    this.jdbcTemplate = new JdbcTemplate(dataSource);
+  }
+
+  /**
+   * Returns up to max nodes after given node (nullable) that have revisions in range (from, upTo]
+   * or in range (monthlyFrom, monthlyUpTo].
+   */
+  public List<NodeId> nodesWithRevisionsToCompact(Long from, Long upTo,
+      Long monthlyFrom, Long monthlyUpTo, NodeId after, int max) {
+    String afterCondition = after == null ? "" :
+        "and (graph_id > ? or (graph_id = ? and (type_id > ? or (type_id = ? and id > ?)))) ";
+
+    List<Object> args = new ArrayList<>(Arrays.asList(from, upTo, monthlyFrom, monthlyUpTo));
+    if (after != null) {
+      args.addAll(Arrays.asList(
+          after.getTypeGraphId(),
+          after.getTypeGraphId(),
+          after.getTypeId(),
+          after.getTypeId(),
+          after.getId()));
+    }
+
+    return toListAndClose(streamingJdbcTemplate.queryForStream(
+        "select distinct graph_id, type_id, id from node_aud " +
+            "where ((revision > ? and revision <= ?) or (revision > ? and revision <= ?)) " +
+            afterCondition +
+            "order by graph_id, type_id, id limit " + max,
+        args.toArray(),
+        (rs, rowNum) -> new NodeId(
+            UUIDs.fromString(rs.getString("id")),
+            rs.getString("type_id"),
+            UUIDs.fromString(rs.getString("graph_id")))));
+  }
+
+  /**
+   * Returns revisions of given node less or equal to given revision in ascending order.
+   */
+  public List<ObjectRevision<NodeId>> nodeRevisions(NodeId id, Long upTo) {
+    return toListAndClose(streamingJdbcTemplate.queryForStream(
+        "select a.revision, a.revision_type, r.author, r.date " +
+            "from node_aud a join revision r on a.revision = r.number " +
+            "where a.graph_id = ? and a.type_id = ? and a.id = ? and a.revision <= ? " +
+            "order by a.revision",
+        (rs, rowNum) -> new ObjectRevision<>(
+            rs.getLong("revision"),
+            rs.getString("author"),
+            rs.getTimestamp("date").toLocalDateTime(),
+            RevisionType.valueOf(rs.getString("revision_type")),
+            id),
+        id.getTypeGraphId(), id.getTypeId(), id.getId(), upTo));
+  }
+
+  /**
+   * Removes revisions of given node after previous (nullable) and before target revision. For each
+   * attribute value, only the latest change in range (previous, target] is kept and it is moved to
+   * the target revision.
+   */
+  public void compact(NodeId id, Long previous, Long target, RevisionType targetType) {
+    Long from = Optional.ofNullable(previous).orElse(Long.MIN_VALUE);
+
+    for (String table : VALUE_TABLES) {
+      jdbcTemplate.update(
+          "delete from " + table + " v " +
+              "where v.node_graph_id = ? and v.node_type_id = ? and v.node_id = ? " +
+              "and v.revision > ? and v.revision < ? and exists (" +
+              "select 1 from " + table + " l " +
+              "where l.node_graph_id = v.node_graph_id and l.node_type_id = v.node_type_id " +
+              "and l.node_id = v.node_id and l.attribute_id = v.attribute_id " +
+              "and l.index = v.index and l.revision > v.revision and l.revision <= ?)",
+          id.getTypeGraphId(), id.getTypeId(), id.getId(), from, target, target);
+      jdbcTemplate.update(
+          "update " + table + " set revision = ? " +
+              "where node_graph_id = ? and node_type_id = ? and node_id = ? " +
+              "and revision > ? and revision < ?",
+          target, id.getTypeGraphId(), id.getTypeId(), id.getId(), from, target);
+    }
+
+    jdbcTemplate.update(
+        "delete from node_aud " +
+            "where graph_id = ? and type_id = ? and id = ? and revision > ? and revision < ?",
+        id.getTypeGraphId(), id.getTypeId(), id.getId(), from, target);
+    jdbcTemplate.update(
+        "update node_aud set revision_type = ? " +
+            "where graph_id = ? and type_id = ? and id = ? and revision = ?",
+        targetType.toString(), id.getTypeGraphId(), id.getTypeId(), id.getId(), target);
+  }
+
+  /**
+   * Returns revision up to which revisions have been compacted with given period.
+   */
+  public Optional<Long> watermark(String period) {
+    return streamingJdbcTemplate.queryForFirst(
+        "select revision from node_revision_compaction_watermark where id = ?",
+        (rs, rowNum) -> rs.getLong("revision"), period);
+  }
+
+  /**
+   * Stores revision up to which revisions have been compacted with given period.
+   */
+  public void setWatermark(String period, Long revision) {
+    if (jdbcTemplate.update(
+        "update node_revision_compaction_watermark set revision = ? where id = ?",
+        revision, period) == 0) {
+      jdbcTemplate.update(
+          "insert into node_revision_compaction_watermark (id, revision) values (?, ?)",
+          period, revision);
+    }
+  }
+
+  /**
+   * Returns the oldest revision that still has pending (not dead) webhook deliveries.
+   */
+  public Optional<Long> oldestPendingDeliveryRevision() {
+    return Optional.ofNullable(jdbcTemplate.queryForObject(
+        "select min(revision) from webhook_delivery where dead = ?", Long.class, false));
+  }
+
+  /**
+   * Deletes up to max revisions less or equal to given revision that no longer have any node
+   * revisions nor pending webhook deliveries. Returns number of deleted revisions.
+   */
+  public int deleteEmptyRevisions(Long upTo, int max) {
+    return jdbcTemplate.update(
+        "delete from revision where number in (" +
+            "select number from revision r where r.number <= ? and not exists (" +
+            "select 1 from node_aud a where a.revision = r.number) and not exists (" +
+            "select 1 from webhook_delivery d where d.revision = r.number and d.dead = ?) " +
+            "limit " + max + ")",
+        upTo, false);
+  }
+
+}
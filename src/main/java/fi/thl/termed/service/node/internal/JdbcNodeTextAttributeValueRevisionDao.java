@@ -21,8 +21,18 @@ import org.springframework.jdbc.core.RowMapper;
 public class JdbcNodeTextAttributeValueRevisionDao extends
     AbstractJdbcDao<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, StrictLangValue>> {
 
+  private final String table;
+
   public JdbcNodeTextAttributeValueRevisionDao(DataSource dataSource) {
+    this(dataSource, "node_text_attribute_value_aud");
+  }
+
+  /**
+   * Constructs DAO for another table with the same columns, e.g. a checkpoint table.
+   */
+  public JdbcNodeTextAttributeValueRevisionDao(DataSource dataSource, String table) {
     super(dataSource);
+    this.table = table;
   }
 
   @Override
@@ -35,7 +45,7 @@ public class JdbcNodeTextAttributeValueRevisionDao extends
     Optional<StrictLangValue> langValue = ofNullable(revision._2);
 
     jdbcTemplate.update(
-        "insert into node_text_attribute_value_aud (node_graph_id, node_type_id, node_id, revision, attribute_id, index, lang, value, regex, revision_type) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+        "insert into " + table + " (node_graph_id, node_type_id, node_id, revision, attribute_id, index, lang, value, regex, revision_type) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
         nodeId.getTypeGraphId(),
         nodeId.getTypeId(),
         nodeId.getId(),
@@ -64,7 +74,7 @@ public class JdbcNodeTextAttributeValueRevisionDao extends
       SqlSpecification<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, StrictLangValue>> specification,
       RowMapper<E> mapper) {
     return jdbcTemplate.queryForStream(
-        String.format("select * from node_text_attribute_value_aud where %s order by index",
+        String.format("select * from " + table + " where %s order by index",
             specification.sqlQueryTemplate()),
         specification.sqlQueryParameters(), mapper);
   }
@@ -75,7 +85,7 @@ public class JdbcNodeTextAttributeValueRevisionDao extends
     NodeId nodeId = nodeAttributeValueId.getNodeId();
 
     return jdbcTemplate.queryForOptional(
-        "select count(*) from node_text_attribute_value_aud where node_graph_id = ? and node_type_id = ? and node_id = ? and attribute_id = ? and index = ? and revision = ?",
+        "select count(*) from " + table + " where node_graph_id = ? and node_type_id = ? and node_id = ? and attribute_id = ? and index = ? and revision = ?",
         Long.class,
         nodeId.getTypeGraphId(),
         nodeId.getTypeId(),
@@ -92,7 +102,7 @@ public class JdbcNodeTextAttributeValueRevisionDao extends
     NodeId nodeId = nodeAttributeValueId.getNodeId();
 
     return jdbcTemplate.queryForFirst(
-        "select * from node_text_attribute_value_aud where node_graph_id = ? and node_type_id = ? and node_id = ? and attribute_id = ? and index = ? and revision = ?",
+        "select * from " + table + " where node_graph_id = ? and node_type_id = ? and node_id = ? and attribute_id = ? and index = ? and revision = ?",
         mapper,
         nodeId.getTypeGraphId(),
         nodeId.getTypeId(),
@@ -18,7 +18,14 @@ public class JdbcPostgresNodeReferenceAttributeValueRevisionDao extends
   public JdbcPostgresNodeReferenceAttributeValueRevisionDao(
       SystemDao<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, NodeId>> delegate,
       DataSource dataSource) {
-    super(delegate, dataSource, "node_reference_attribute_value_aud");
+    this(delegate, dataSource, "node_reference_attribute_value_aud");
+  }
+
+  public JdbcPostgresNodeReferenceAttributeValueRevisionDao(
+      SystemDao<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, NodeId>> delegate,
+      DataSource dataSource,
+      String table) {
+    super(delegate, dataSource, table);
   }
 
   @Override
@@ -19,7 +19,14 @@ public class JdbcPostgresNodeTextAttributeValueRevisionDao extends
   public JdbcPostgresNodeTextAttributeValueRevisionDao(
       SystemDao<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, StrictLangValue>> delegate,
       DataSource dataSource) {
-    super(delegate, dataSource, "node_text_attribute_value_aud");
+    this(delegate, dataSource, "node_text_attribute_value_aud");
+  }
+
+  public JdbcPostgresNodeTextAttributeValueRevisionDao(
+      SystemDao<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, StrictLangValue>> delegate,
+      DataSource dataSource,
+      String table) {
+    super(delegate, dataSource, table);
   }
 
   @Override
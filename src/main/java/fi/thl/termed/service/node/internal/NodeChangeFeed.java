@@ -0,0 +1,217 @@
+package fi.thl.termed.service.node.internal;
+
+import static fi.thl.termed.domain.Permission.READ;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Streams;
+import com.google.common.eventbus.Subscribe;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.ObjectRevision;
+import fi.thl.termed.domain.Revision;
+import fi.thl.termed.domain.RevisionId;
+import fi.thl.termed.domain.RevisionType;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.domain.event.NodeEvent;
+import fi.thl.termed.service.node.specification.NodeRevisionsByRevisionIds;
+import fi.thl.termed.service.revision.internal.PendingRevisions;
+import fi.thl.termed.util.collect.Tuple2;
+import fi.thl.termed.util.permission.PermissionEvaluator;
+import fi.thl.termed.util.query.Queries;
+import fi.thl.termed.util.service.Service;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Serves node changes in revision order. Each change is identified by its revision number and node
+ * id, consumers continue from the last change they have seen. If there are no changes after the
+ * given position, waits for new changes at most the given duration (long polling).
+ *
+ * <p>Revision numbers are allocated before writes commit, so a later revision may become visible
+ * before an earlier one. Changes are therefore served only up to the last revision before the
+ * oldest pending one, so that consumers never skip past a revision that is yet to commit.
+ */
+public class NodeChangeFeed {
+
+  // nodes of changes are read in batches of this size
+  private static final int NODE_BATCH_SIZE = 500;
+
+  private JdbcNodeChangeDao nodeChangeDao;
+  private PermissionEvaluator<RevisionId<NodeId>> nodeRevisionEvaluator;
+  private Service<RevisionId<NodeId>, Tuple2<RevisionType, Node>> nodeRevisionService;
+  private Service<Long, Revision> revisionService;
+  private PendingRevisions pendingRevisions;
+
+  private final Object changeMonitor = new Object();
+  private long changeCount = 0;
+
+  public NodeChangeFeed(
+      JdbcNodeChangeDao nodeChangeDao,
+      PermissionEvaluator<RevisionId<NodeId>> nodeRevisionEvaluator,
+      Service<RevisionId<NodeId>, Tuple2<RevisionType, Node>> nodeRevisionService,
+      Service<Long, Revision> revisionService,
+      PendingRevisions pendingRevisions) {
+    this.nodeChangeDao = nodeChangeDao;
+    this.nodeRevisionEvaluator = nodeRevisionEvaluator;
+    this.nodeRevisionService = nodeRevisionService;
+    this.revisionService = revisionService;
+    this.pendingRevisions = pendingRevisions;
+  }
+
+  @Subscribe
+  public void notifyWaitingReadersOn(NodeEvent e) {
+    notifyWaitingReaders();
+  }
+
+  /**
+   * Wakes up waiting readers to check for new changes, e.g. when a pending revision completes.
+   */
+  public void notifyWaitingReaders() {
+    synchronized (changeMonitor) {
+      changeCount++;
+      changeMonitor.notifyAll();
+    }
+  }
+
+  /**
+   * Returns at most max changes after given revision, or after given node in given revision.
+   */
+  public Stream<ObjectRevision<NodeId>> changes(Long sinceRevision, NodeId after, int max,
+      Duration wait, User user) {
+    long deadline = System.currentTimeMillis() + wait.toMillis();
+
+    while (true) {
+      long seenChangeCount = changeCount();
+
+      Stream<ObjectRevision<NodeId>> changes = readChanges(sinceRevision, after, max, user);
+      Iterator<ObjectRevision<NodeId>> iterator = changes.iterator();
+
+      if (iterator.hasNext() || !awaitChange(seenChangeCount, deadline)) {
+        return Streams.stream(iterator).onClose(changes::close);
+      }
+
+      changes.close();
+    }
+  }
+
+  /**
+   * Like {@link #changes}, but returns nodes as they were in each revision.
+   */
+  public Stream<ObjectRevision<Node>> changesWithNodes(Long sinceRevision, NodeId after, int max,
+      Duration wait, User user) {
+    Stream<ObjectRevision<NodeId>> changes = changes(sinceRevision, after, max, wait, user);
+
+    return Streams.stream(Iterators.partition(changes.iterator(), NODE_BATCH_SIZE))
+        .flatMap(batch -> withNodes(batch, user).stream())
+        .onClose(changes::close);
+  }
+
+  private List<ObjectRevision<Node>> withNodes(List<ObjectRevision<NodeId>> changes,
+      User user) {
+    Map<RevisionId<NodeId>, Node> nodes = new HashMap<>();
+
+    for (List<RevisionId<NodeId>> revisionIds : distinctNodeChunks(changes)) {
+      Map<NodeId, Long> revisions = revisionIds.stream()
+          .collect(toMap(RevisionId::getId, RevisionId::getRevision));
+
+      try (Stream<Tuple2<RevisionType, Node>> values = nodeRevisionService
+          .values(Queries.query(NodeRevisionsByRevisionIds.of(revisionIds)), user)) {
+        values.forEach(value -> {
+          NodeId nodeId = value._2.identifier();
+          nodes.put(RevisionId.of(nodeId, revisions.get(nodeId)), value._2);
+        });
+      }
+    }
+
+    return changes.stream().map(change -> {
+      Node node = nodes.get(RevisionId.of(change.getObject(), change.getNumber()));
+      if (node == null) {
+        throw new IllegalStateException();
+      }
+      return new ObjectRevision<>(change.getNumber(), change.getAuthor(), change.getDate(),
+          change.getType(), node);
+    }).collect(toList());
+  }
+
+  // node revision values are not keyed by revision, so a node may appear once in each chunk
+  private List<List<RevisionId<NodeId>>> distinctNodeChunks(List<ObjectRevision<NodeId>> changes) {
+    List<List<RevisionId<NodeId>>> chunks = new ArrayList<>();
+    List<RevisionId<NodeId>> chunk = new ArrayList<>();
+    Set<NodeId> chunkNodeIds = new HashSet<>();
+
+    for (ObjectRevision<NodeId> change : changes) {
+      if (!chunkNodeIds.add(change.getObject())) {
+        chunks.add(chunk);
+        chunk = new ArrayList<>();
+        chunkNodeIds.clear();
+        chunkNodeIds.add(change.getObject());
+      }
+      chunk.add(RevisionId.of(change.getObject(), change.getNumber()));
+    }
+
+    if (!chunk.isEmpty()) {
+      chunks.add(chunk);
+    }
+
+    return chunks;
+  }
+
+  private Stream<ObjectRevision<NodeId>> readChanges(Long sinceRevision, NodeId after, int max,
+      User user) {
+    // read before changes, revisions completing meanwhile are served on the next read
+    long upTo = pendingRevisions.completedUpTo();
+
+    Stream<Tuple2<RevisionId<NodeId>, RevisionType>> changes = after != null
+        ? nodeChangeDao.changesAfter(RevisionId.of(after, sinceRevision), upTo)
+        : nodeChangeDao.changesAfter(sinceRevision, upTo);
+
+    // changes are ordered by revision, so looking up only the previous revision is enough
+    Revision[] previous = new Revision[1];
+
+    return changes
+        .filter(change -> nodeRevisionEvaluator.hasPermission(user, change._1, READ))
+        .limit(max)
+        .map(change -> {
+          Long number = change._1.getRevision();
+          if (previous[0] == null || !previous[0].getNumber().equals(number)) {
+            previous[0] = revisionService.get(number, user)
+                .orElseThrow(IllegalStateException::new);
+          }
+          return new ObjectRevision<>(previous[0], change._2, change._1.getId());
+        });
+  }
+
+  private long changeCount() {
+    synchronized (changeMonitor) {
+      return changeCount;
+    }
+  }
+
+  private boolean awaitChange(long seenChangeCount, long deadline) {
+    synchronized (changeMonitor) {
+      while (changeCount == seenChangeCount) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+          return false;
+        }
+        try {
+          changeMonitor.wait(remaining);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+}
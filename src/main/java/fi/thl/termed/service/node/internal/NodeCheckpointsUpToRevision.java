@@ -0,0 +1,51 @@
+package fi.thl.termed.service.node.internal;
+
+import static java.util.Collections.nCopies;
+
+import com.google.common.collect.ImmutableSet;
+import fi.thl.termed.domain.Empty;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.RevisionId;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.util.query.AbstractSqlSpecification;
+import fi.thl.termed.util.query.ParametrizedSqlQuery;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+public class NodeCheckpointsUpToRevision extends
+    AbstractSqlSpecification<RevisionId<NodeId>, Empty> {
+
+  private TypeId type;
+  private ImmutableSet<UUID> nodeIds;
+  private Long upTo;
+
+  NodeCheckpointsUpToRevision(TypeId type, Collection<UUID> nodeIds, Long upTo) {
+    this.type = type;
+    this.nodeIds = ImmutableSet.copyOf(nodeIds);
+    this.upTo = upTo;
+  }
+
+  @Override
+  public boolean test(RevisionId<NodeId> key, Empty value) {
+    return Objects.equals(key.getId().getType(), type) && nodeIds.contains(key.getId().getId())
+        && key.getRevision() <= upTo;
+  }
+
+  @Override
+  public ParametrizedSqlQuery sql() {
+    List<Object> params = new ArrayList<>();
+    params.add(type.getGraphId());
+    params.add(type.getId());
+    params.addAll(nodeIds);
+    params.add(upTo);
+
+    return ParametrizedSqlQuery.of(
+        "graph_id = ? and type_id = ? and id in ("
+            + String.join(", ", nCopies(nodeIds.size(), "?")) + ") and revision <= ?",
+        params.toArray());
+  }
+
+}
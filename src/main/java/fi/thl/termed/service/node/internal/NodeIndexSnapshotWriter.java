@@ -0,0 +1,76 @@
+package fi.thl.termed.service.node.internal;
+
+import static fi.thl.termed.service.node.internal.IndexedNodeService.SNAPSHOT_REVISION;
+import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
+
+import com.google.common.collect.ImmutableMap;
+import fi.thl.termed.domain.Empty;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.service.revision.internal.PendingRevisions;
+import fi.thl.termed.util.dao.SystemDao;
+import fi.thl.termed.util.index.lucene.LuceneIndex;
+import fi.thl.termed.util.query.Specifications;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes node index snapshots for bootstrapping new instances. Each snapshot records a revision
+ * number such that all changes in earlier revisions are included in the snapshot. Instance
+ * restoring the snapshot re-indexes nodes changed in that revision and after it.
+ */
+public class NodeIndexSnapshotWriter {
+
+  private Logger log = LoggerFactory.getLogger(getClass());
+
+  private LuceneIndex<NodeId, Node> index;
+  private SystemDao<Long, Empty> nodeIndexingQueueDao;
+  private PendingRevisions pendingRevisions;
+
+  public NodeIndexSnapshotWriter(
+      LuceneIndex<NodeId, Node> index,
+      SystemDao<Long, Empty> nodeIndexingQueueDao,
+      PendingRevisions pendingRevisions) {
+    this.index = index;
+    this.nodeIndexingQueueDao = nodeIndexingQueueDao;
+    this.pendingRevisions = pendingRevisions;
+  }
+
+  public void writeSnapshot(OutputStream out) {
+    // newer revisions may still be uncommitted or not yet queued for indexing
+    Long revision = pendingRevisions.completedUpTo();
+
+    // writes up to the revision are completed, so they are either indexed or still in an
+    // indexing queue
+    awaitQueues(toListAndClose(nodeIndexingQueueDao.keys(Specifications.matchAll())));
+
+    log.info("Writing index snapshot at revision {}", revision);
+    index.writeSnapshot(ImmutableMap.of(SNAPSHOT_REVISION, revision.toString()), out);
+  }
+
+  private void awaitQueues(List<Long> queueIds) {
+    List<Long> pending = new ArrayList<>(queueIds);
+
+    while (!pending.isEmpty()) {
+      pending.removeIf(queueId -> !nodeIndexingQueueDao.exists(queueId));
+
+      if (!pending.isEmpty()) {
+        log.debug("Waiting for {} indexing queues", pending.size());
+        sleep();
+      }
+    }
+  }
+
+  private void sleep() {
+    try {
+      Thread.sleep(100);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+  }
+
+}
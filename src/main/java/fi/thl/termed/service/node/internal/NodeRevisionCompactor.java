@@ -0,0 +1,332 @@
+package fi.thl.termed.service.node.internal;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.Iterables;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
+import fi.thl.termed.domain.AppRole;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.ObjectRevision;
+import fi.thl.termed.domain.Revision;
+import fi.thl.termed.domain.RevisionId;
+import fi.thl.termed.domain.RevisionType;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.domain.event.ApplicationReadyEvent;
+import fi.thl.termed.domain.event.ApplicationShutdownEvent;
+import fi.thl.termed.service.revision.internal.PendingRevisions;
+import fi.thl.termed.util.collect.Tuple2;
+import fi.thl.termed.util.query.Queries;
+import fi.thl.termed.util.query.Specifications;
+import fi.thl.termed.util.service.Service;
+import fi.thl.termed.util.spring.transaction.TransactionUtils;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * Thins node revision history by policy. Revisions newer than {@code keepAll} are kept as is.
+ * Older node revisions are thinned to the last revision of each node per day, and revisions older
+ * than {@code keepDaily} to the last revision per month. Nodes are compacted in batches, each in
+ * its own transaction, so compaction can run in the background next to normal use.
+ *
+ * <p>Revisions up to which history has been compacted are stored as watermarks, so later runs
+ * only look at nodes with revisions after the watermark or revisions that have since become
+ * subject to monthly thinning. Revisions of writes that have not completed yet are not compacted.
+ *
+ * <p>If an archive directory is given, full states of removed node revisions are written there
+ * as gzipped JSON lines (one file per compaction run). States are read before they are removed
+ * and written after the batch removing them commits, so rolled back batches are not archived.
+ */
+public class NodeRevisionCompactor {
+
+  private static final String COMPACTED = "compacted";
+  private static final String COMPACTED_MONTHLY = "compacted-monthly";
+
+  private Logger log = LoggerFactory.getLogger(getClass());
+
+  private JdbcNodeRevisionCompactionDao compactionDao;
+  private Service<RevisionId<NodeId>, Tuple2<RevisionType, Node>> nodeRevisionService;
+  private Service<Long, Revision> revisionService;
+  private PendingRevisions pendingRevisions;
+  private VisibleNodeChanges visibleNodeChanges;
+  private PlatformTransactionManager manager;
+  private Gson gson;
+
+  private Duration keepAll;
+  private Duration keepDaily;
+  private Duration interval;
+  private int batchSize;
+  private Path archive;
+
+  private User compactor = new User("node-revision-compactor", "", AppRole.SUPERUSER);
+
+  private ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setNameFormat("node-revision-compactor").setDaemon(true).build());
+
+  public NodeRevisionCompactor(
+      JdbcNodeRevisionCompactionDao compactionDao,
+      Service<RevisionId<NodeId>, Tuple2<RevisionType, Node>> nodeRevisionService,
+      Service<Long, Revision> revisionService,
+      PendingRevisions pendingRevisions,
+      VisibleNodeChanges visibleNodeChanges,
+      PlatformTransactionManager manager,
+      Gson gson,
+      Duration keepAll, Duration keepDaily, Duration interval, int batchSize, Path archive) {
+    this.compactionDao = compactionDao;
+    this.nodeRevisionService = nodeRevisionService;
+    this.revisionService = revisionService;
+    this.pendingRevisions = pendingRevisions;
+    this.visibleNodeChanges = visibleNodeChanges;
+    this.manager = manager;
+    this.gson = gson;
+    this.keepAll = keepAll;
+    this.keepDaily = keepDaily;
+    this.interval = interval;
+    this.batchSize = batchSize;
+    this.archive = archive;
+  }
+
+  /**
+   * Starts periodic compaction if retention policy is configured.
+   */
+  @Subscribe
+  public void startOn(ApplicationReadyEvent e) {
+    if (keepAll != null) {
+      scheduler.scheduleWithFixedDelay(() -> {
+        try {
+          compact();
+        } catch (RuntimeException ex) {
+          log.error("Node revision compaction failed", ex);
+        }
+      }, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @Subscribe
+  public void closeOn(ApplicationShutdownEvent e) {
+    scheduler.shutdownNow();
+  }
+
+  /**
+   * Compacts using configured policy. Returns number of removed node revisions.
+   */
+  public long compact() {
+    if (keepAll == null) {
+      throw new IllegalStateException("Node revision retention policy is not configured");
+    }
+    return compact(keepAll, keepDaily);
+  }
+
+  /**
+   * Compacts using given policy, keepDaily is nullable. Returns number of removed node revisions.
+   */
+  public synchronized long compact(Duration keepAll, Duration keepDaily) {
+    LocalDateTime now = LocalDateTime.now();
+    LocalDateTime keepAllFrom = now.minus(keepAll);
+    LocalDateTime keepDailyFrom = keepDaily != null ? now.minus(keepDaily) : null;
+
+    Optional<Long> upTo = lastRevisionBefore(keepAllFrom)
+        .map(this::beforePendingDeliveries)
+        .map(this::beforePendingRevisions);
+
+    if (!upTo.isPresent()) {
+      return 0;
+    }
+
+    Long from = compactionDao.watermark(COMPACTED).orElse(Long.MIN_VALUE);
+    Long monthlyFrom = compactionDao.watermark(COMPACTED_MONTHLY).orElse(Long.MIN_VALUE);
+    Long monthlyUpTo = keepDailyFrom != null
+        ? lastRevisionBefore(keepDailyFrom).map(r -> Math.min(r, upTo.get())).orElse(monthlyFrom)
+        : monthlyFrom;
+
+    log.info("Compacting node revisions up to {}", upTo.get());
+
+    long removed = 0;
+
+    try (ArchiveWriter archiveWriter = new ArchiveWriter(now)) {
+      NodeId after = null;
+      List<NodeId> batch;
+
+      while (!(batch = compactionDao.nodesWithRevisionsToCompact(
+          from, upTo.get(), monthlyFrom, monthlyUpTo, after, batchSize)).isEmpty()) {
+        List<NodeId> nodeIds = batch;
+        List<String> archived = new ArrayList<>();
+        removed += TransactionUtils.runInTransaction(manager, () -> nodeIds.stream()
+            .mapToLong(id -> compact(id, upTo.get(), keepDailyFrom, archived))
+            .sum());
+        visibleNodeChanges.revisionsRewritten();
+        archiveWriter.write(archived);
+        after = Iterables.getLast(batch);
+      }
+    }
+
+    int deleted;
+    do {
+      deleted = TransactionUtils.runInTransaction(manager,
+          () -> compactionDao.deleteEmptyRevisions(upTo.get(), batchSize));
+      visibleNodeChanges.revisionsRewritten();
+    } while (deleted > 0);
+
+    TransactionUtils.runInTransaction(manager, () -> {
+      compactionDao.setWatermark(COMPACTED, Math.max(from, upTo.get()));
+      compactionDao.setWatermark(COMPACTED_MONTHLY, Math.max(monthlyFrom, monthlyUpTo));
+      return null;
+    });
+
+    log.info("Removed {} node revisions", removed);
+
+    return removed;
+  }
+
+  private Optional<Long> lastRevisionBefore(LocalDateTime date) {
+    try (Stream<Revision> revisions = revisionService
+        .values(Queries.query(Specifications.matchAll()), compactor)) {
+      // revisions are ordered from newest to oldest
+      return revisions
+          .filter(revision -> revision.getDate().isBefore(date))
+          .map(Revision::getNumber)
+          .findFirst();
+    }
+  }
+
+  // revisions of pending webhook deliveries are kept as is until delivered
+  private Long beforePendingDeliveries(Long upTo) {
+    return compactionDao.oldestPendingDeliveryRevision()
+        .map(oldestPending -> Math.min(upTo, oldestPending - 1))
+        .orElse(upTo);
+  }
+
+  // revisions of writes in progress may be committed later than revisions after them
+  private Long beforePendingRevisions(Long upTo) {
+    return Math.min(upTo, pendingRevisions.completedUpTo());
+  }
+
+  private long compact(NodeId nodeId, Long upTo, LocalDateTime keepDailyFrom,
+      List<String> archived) {
+
+    // ordered map from period to revisions of node in period, last one of each period is kept
+    Map<LocalDateTime, List<ObjectRevision<NodeId>>> periods = new LinkedHashMap<>();
+    compactionDao.nodeRevisions(nodeId, upTo).forEach(revision -> periods
+        .computeIfAbsent(period(revision.getDate(), keepDailyFrom), p -> new ArrayList<>())
+        .add(revision));
+
+    long removed = 0;
+    ObjectRevision<NodeId> previous = null;
+
+    for (List<ObjectRevision<NodeId>> revisions : periods.values()) {
+      ObjectRevision<NodeId> target = Iterables.getLast(revisions);
+
+      if (revisions.size() > 1) {
+        removed += revisions.size() - 1;
+
+        boolean existedBefore = previous != null && previous.getType() != RevisionType.DELETE;
+        RevisionType targetType = target.getType() == RevisionType.DELETE ? RevisionType.DELETE
+            : existedBefore ? RevisionType.UPDATE : RevisionType.INSERT;
+
+        archive(revisions.subList(0, revisions.size() - 1), archived);
+        compactionDao.compact(nodeId,
+            previous != null ? previous.getNumber() : null, target.getNumber(), targetType);
+      }
+
+      previous = target;
+    }
+
+    return removed;
+  }
+
+  private LocalDateTime period(LocalDateTime date, LocalDateTime keepDailyFrom) {
+    return keepDailyFrom == null || !date.isBefore(keepDailyFrom)
+        ? date.truncatedTo(ChronoUnit.DAYS)
+        : date.truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1);
+  }
+
+  // serializes full states of given revisions, read before they are removed
+  private void archive(List<ObjectRevision<NodeId>> revisions, List<String> archived) {
+    if (archive == null) {
+      return;
+    }
+
+    for (ObjectRevision<NodeId> revision : revisions) {
+      Node node = nodeRevisionService
+          .get(RevisionId.of(revision.getObject(), revision.getNumber()), compactor)
+          .map(t -> t._2)
+          .orElse(null);
+      archived.add(gson.toJson(new ObjectRevision<>(revision.getNumber(),
+          revision.getAuthor(), revision.getDate(), revision.getType(), node)));
+    }
+  }
+
+  private class ArchiveWriter implements AutoCloseable {
+
+    private LocalDateTime started;
+    private Writer writer;
+
+    ArchiveWriter(LocalDateTime started) {
+      this.started = started;
+    }
+
+    void write(List<String> lines) {
+      if (lines.isEmpty()) {
+        return;
+      }
+
+      try {
+        for (String line : lines) {
+          writer().write(line);
+          writer().write('\n');
+        }
+        writer().flush();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private Writer writer() throws IOException {
+      if (writer == null) {
+        Files.createDirectories(archive);
+        Path file = archive.resolve("node-revisions-"
+            + started.format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss")) + ".jsonl.gz");
+        writer = new BufferedWriter(new OutputStreamWriter(
+            new GZIPOutputStream(Files.newOutputStream(file)), UTF_8));
+      }
+      return writer;
+    }
+
+    @Override
+    public void close() {
+      if (writer != null) {
+        try {
+          writer.close();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,162 @@
+package fi.thl.termed.service.node.internal;
+
+import static fi.thl.termed.util.query.Queries.query;
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
+import com.google.common.collect.Streams;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeDiff;
+import fi.thl.termed.domain.NodeDiff.ValueChange;
+import fi.thl.termed.domain.NodeDiff.ValuesDiff;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.RevisionId;
+import fi.thl.termed.domain.RevisionType;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.service.node.specification.NodeRevisionsByRevisionIds;
+import fi.thl.termed.util.collect.Tuple2;
+import fi.thl.termed.util.service.Service;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Computes attribute level differences of nodes between two revisions. Nodes changed between the
+ * revisions are found with a single query, their states in both revisions are then read in
+ * batches. Read permissions are applied when reading node states.
+ */
+public class NodeRevisionDiffer {
+
+  private static final int BATCH_SIZE = 500;
+
+  private JdbcNodeChangeDao nodeChangeDao;
+  private Service<RevisionId<NodeId>, Tuple2<RevisionType, Node>> nodeRevisionService;
+
+  public NodeRevisionDiffer(JdbcNodeChangeDao nodeChangeDao,
+      Service<RevisionId<NodeId>, Tuple2<RevisionType, Node>> nodeRevisionService) {
+    this.nodeChangeDao = nodeChangeDao;
+    this.nodeRevisionService = nodeRevisionService;
+  }
+
+  /**
+   * Returns differences of changed nodes of given graph and type (nullable) between given
+   * revisions. Nodes that are equal in both revisions, as seen by the user, are omitted.
+   */
+  public Stream<NodeDiff> diff(UUID graphId, String typeId, Long from, Long to, User user) {
+    Stream<NodeId> changedNodes = nodeChangeDao.changedNodes(graphId, typeId, from, to);
+
+    return Streams.stream(Iterators.partition(changedNodes.iterator(), BATCH_SIZE))
+        .flatMap(batch -> diff(batch, from, to, user))
+        .onClose(changedNodes::close);
+  }
+
+  private Stream<NodeDiff> diff(List<NodeId> nodeIds, Long from, Long to, User user) {
+    Map<NodeId, Node> fromNodes = new HashMap<>();
+    Map<NodeId, Node> toNodes = new HashMap<>();
+
+    nodeIds.stream().collect(groupingBy(NodeId::getType)).forEach((type, ids) -> {
+      List<UUID> uuids = ids.stream().map(NodeId::getId).collect(toList());
+      fromNodes.putAll(readNodes(type, uuids, from, user));
+      toNodes.putAll(readNodes(type, uuids, to, user));
+    });
+
+    return nodeIds.stream()
+        .map(id -> diff(id, fromNodes.get(id), toNodes.get(id)))
+        .filter(Optional::isPresent)
+        .map(Optional::get);
+  }
+
+  // returns existing nodes in given revision, deleted nodes are not included
+  private Map<NodeId, Node> readNodes(TypeId type, List<UUID> ids, Long revision, User user) {
+    List<RevisionId<NodeId>> revisionIds;
+    try (Stream<RevisionId<NodeId>> lastRevisions =
+        nodeChangeDao.lastRevisions(type, ids, revision)) {
+      revisionIds = lastRevisions.collect(toList());
+    }
+
+    Map<NodeId, Node> nodes = new HashMap<>();
+
+    if (!revisionIds.isEmpty()) {
+      try (Stream<Tuple2<RevisionType, Node>> nodeRevisions = nodeRevisionService
+          .values(query(NodeRevisionsByRevisionIds.of(revisionIds)), user)) {
+        nodeRevisions
+            .filter(nodeRevision -> nodeRevision._1 != RevisionType.DELETE)
+            .forEach(nodeRevision -> nodes.put(nodeRevision._2.identifier(), nodeRevision._2));
+      }
+    }
+
+    return nodes;
+  }
+
+  private Optional<NodeDiff> diff(NodeId id, Node from, Node to) {
+    if (from == null && to == null) {
+      return Optional.empty();
+    }
+
+    RevisionType change = from == null ? RevisionType.INSERT
+        : to == null ? RevisionType.DELETE : RevisionType.UPDATE;
+
+    Optional<Node> fromNode = Optional.ofNullable(from);
+    Optional<Node> toNode = Optional.ofNullable(to);
+
+    NodeDiff diff = new NodeDiff(id, change,
+        valueChange(fromNode.flatMap(Node::getCode), toNode.flatMap(Node::getCode)),
+        valueChange(fromNode.flatMap(Node::getUri), toNode.flatMap(Node::getUri)),
+        valuesDiff(
+            fromNode.map(Node::getProperties).orElse(ImmutableMultimap.of()),
+            toNode.map(Node::getProperties).orElse(ImmutableMultimap.of())),
+        valuesDiff(
+            fromNode.map(Node::getReferences).orElse(ImmutableMultimap.of()),
+            toNode.map(Node::getReferences).orElse(ImmutableMultimap.of())));
+
+    return change == RevisionType.UPDATE && diff.isEmpty() ? Optional.empty() : Optional.of(diff);
+  }
+
+  private <T> ValueChange<T> valueChange(Optional<T> from, Optional<T> to) {
+    return Objects.equals(from, to) ? null : new ValueChange<>(from.orElse(null), to.orElse(null));
+  }
+
+  private <T> Map<String, ValuesDiff<T>> valuesDiff(Multimap<String, T> from,
+      Multimap<String, T> to) {
+    Map<String, ValuesDiff<T>> diffs = new TreeMap<>();
+
+    for (String attributeId : Sets.union(from.keySet(), to.keySet())) {
+      ValuesDiff<T> diff = new ValuesDiff<>(
+          difference(to.get(attributeId), from.get(attributeId)),
+          difference(from.get(attributeId), to.get(attributeId)));
+
+      if (!diff.isEmpty()) {
+        diffs.put(attributeId, diff);
+      }
+    }
+
+    return diffs;
+  }
+
+  // multiset difference that keeps the order of values
+  private <T> List<T> difference(Collection<T> values, Collection<T> subtracted) {
+    Multiset<T> remaining = HashMultiset.create(subtracted);
+    List<T> difference = new ArrayList<>();
+    for (T value : values) {
+      if (!remaining.remove(value)) {
+        difference.add(value);
+      }
+    }
+    return difference;
+  }
+
+}
@@ -4,24 +4,35 @@ import static fi.thl.termed.service.node.util.NodeTransformations.nodeProperties
 import static fi.thl.termed.service.node.util.NodeTransformations.nodeReferencesToRows;
 import static fi.thl.termed.util.service.SaveMode.INSERT;
 import static fi.thl.termed.util.service.WriteOptions.defaultOpts;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonList;
 import static java.util.Comparator.comparing;
+import static java.util.Comparator.naturalOrder;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.mapping;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.Streams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import fi.thl.termed.domain.AppRole;
+import fi.thl.termed.domain.Empty;
 import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeAttributeValueId;
 import fi.thl.termed.domain.NodeId;
-import fi.thl.termed.service.node.util.NodeTransformations;
 import fi.thl.termed.domain.Revision;
 import fi.thl.termed.domain.RevisionId;
 import fi.thl.termed.domain.RevisionType;
 import fi.thl.termed.domain.StrictLangValue;
+import fi.thl.termed.domain.TypeId;
 import fi.thl.termed.domain.User;
+import fi.thl.termed.service.revision.internal.PendingRevisions;
 import fi.thl.termed.util.collect.Tuple;
 import fi.thl.termed.util.collect.Tuple2;
 import fi.thl.termed.util.dao.Dao;
@@ -29,43 +40,96 @@ import fi.thl.termed.util.query.Query;
 import fi.thl.termed.util.query.Select;
 import fi.thl.termed.util.query.Specification;
 import fi.thl.termed.util.service.SaveMode;
-import fi.thl.termed.util.service.SequenceService;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.service.WriteOptions;
 import java.time.LocalDateTime;
-import java.util.LinkedHashMap;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor.DiscardPolicy;
+import java.util.function.Function;
 import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
 
 /**
  * Coordinates CRUD-operations on Nodes to simpler DAOs. Revision reads are typically done here.
  * Incremental revision updates are automatically made by NodeRepository. This repository can do
  * full node revision saves which are useful in e.g. admin operations.
+ *
+ * <p>Node values in a revision are resolved by replaying value revisions after the nearest
+ * checkpoint of the node. If a read replays at least {@code checkpointInterval} value revisions,
+ * a new checkpoint is stored for the read revision. Checkpoints are not written by the read itself
+ * but queued to a single background writer that stores them in a transaction of its own, so that
+ * concurrent reads of the same revision or a failing checkpoint write never fail the read. If
+ * {@code checkpointInterval} is not positive, existing checkpoints are used but no new ones are
+ * stored, which suits e.g. reading revisions that are about to be compacted away. Nodes
+ * are read in batches, so that reading e.g. all nodes of a graph in some revision takes a few
+ * queries per batch instead of per node.
  */
 public class NodeRevisionRepository implements
     Service<RevisionId<NodeId>, Tuple2<RevisionType, Node>> {
 
   private static final int BATCH_SIZE = 5000;
+  private static final int READ_BATCH_SIZE = 500;
+  private static final int CHECKPOINT_QUEUE_SIZE = 100;
+
+  private Logger log = LoggerFactory.getLogger(getClass());
+
+  private final User checkpointWriter =
+      new User("node-revision-checkpoint-writer", "", AppRole.SUPERUSER);
 
   private Dao<RevisionId<NodeId>, Tuple2<RevisionType, Node>> nodeRevisionDao;
   private Dao<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, StrictLangValue>> textAttributeValueRevDao;
   private Dao<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, NodeId>> referenceAttributeValueRevDao;
 
+  private Dao<RevisionId<NodeId>, Empty> nodeCheckpointDao;
+  private Dao<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, StrictLangValue>> textAttributeValueCheckpointDao;
+  private Dao<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, NodeId>> referenceAttributeValueCheckpointDao;
+  private int checkpointInterval;
+
+  private PlatformTransactionManager transactionManager;
+  private ExecutorService checkpointExecutor = new ThreadPoolExecutor(1, 1, 0L, MILLISECONDS,
+      new ArrayBlockingQueue<>(CHECKPOINT_QUEUE_SIZE),
+      new ThreadFactoryBuilder().setNameFormat("node-revision-checkpoint-writer-%d")
+          .setDaemon(true).build(),
+      new DiscardPolicy());
+
   private Service<Long, Revision> revisionService;
-  private SequenceService revisionSeqService;
+  private PendingRevisions pendingRevisions;
 
   public NodeRevisionRepository(
       Dao<RevisionId<NodeId>, Tuple2<RevisionType, Node>> nodeRevisionDao,
       Dao<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, StrictLangValue>> textAttributeValueRevDao,
       Dao<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, NodeId>> referenceAttributeValueRevDao,
-      Service<Long, Revision> revisionService, SequenceService revisionSeqService) {
+      Dao<RevisionId<NodeId>, Empty> nodeCheckpointDao,
+      Dao<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, StrictLangValue>> textAttributeValueCheckpointDao,
+      Dao<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, NodeId>> referenceAttributeValueCheckpointDao,
+      int checkpointInterval,
+      PlatformTransactionManager transactionManager,
+      Service<Long, Revision> revisionService, PendingRevisions pendingRevisions) {
     this.nodeRevisionDao = nodeRevisionDao;
     this.textAttributeValueRevDao = textAttributeValueRevDao;
     this.referenceAttributeValueRevDao = referenceAttributeValueRevDao;
+    this.nodeCheckpointDao = nodeCheckpointDao;
+    this.textAttributeValueCheckpointDao = textAttributeValueCheckpointDao;
+    this.referenceAttributeValueCheckpointDao = referenceAttributeValueCheckpointDao;
+    this.checkpointInterval = checkpointInterval;
+    this.transactionManager = transactionManager;
     this.revisionService = revisionService;
-    this.revisionSeqService = revisionSeqService;
+    this.pendingRevisions = pendingRevisions;
   }
 
   private <K, V> Tuple2<RevisionId<K>, Tuple2<RevisionType, V>> toRev(
@@ -79,8 +143,13 @@ public class NodeRevisionRepository implements
 
     Preconditions.checkArgument(mode == INSERT);
 
-    Long revision = opts.getRevision().orElseGet(() -> newRevision(user));
+    withRevision(opts, user, revision -> {
+      save(entries, revision, user);
+      return null;
+    });
+  }
 
+  private void save(Stream<Tuple2<RevisionType, Node>> entries, Long revision, User user) {
     try (Stream<Tuple2<RevisionType, Node>> closeable = entries) {
       Iterators.partition(closeable.iterator(), BATCH_SIZE).forEachRemaining(batch -> {
         nodeRevisionDao.insert(batch.stream()
@@ -103,7 +172,11 @@ public class NodeRevisionRepository implements
 
     Preconditions.checkArgument(mode == INSERT);
 
-    Long revision = opts.getRevision().orElseGet(() -> newRevision(user));
+    return withRevision(opts, user, revision -> save(revisionTypeAndNode, revision, user));
+  }
+
+  private RevisionId<NodeId> save(Tuple2<RevisionType, Node> revisionTypeAndNode, Long revision,
+      User user) {
     RevisionType type = revisionTypeAndNode._1;
     Node node = revisionTypeAndNode._2;
     NodeId id = node.identifier();
@@ -115,19 +188,20 @@ public class NodeRevisionRepository implements
             .map(t -> Tuple.of(RevisionId.of(t._1, revision), Tuple.of(type, t._2))), user);
 
     referenceAttributeValueRevDao.insert(
-        NodeTransformations.nodeReferencesToRows(id, node.getReferences())
+        nodeReferencesToRows(id, node.getReferences())
             .map(t -> Tuple.of(RevisionId.of(t._1, revision), Tuple.of(type, t._2))), user);
 
     return RevisionId.of(id, revision);
   }
 
-  private Long newRevision(User user) {
-    return revisionService.save(
-        Revision.of(
-            revisionSeqService.getAndAdvance(user),
-            user.getUsername(),
-            LocalDateTime.now()),
-        INSERT, defaultOpts(), user);
+  // writes to given revision or to a new one if none is given
+  private <E> E withRevision(WriteOptions opts, User user, Function<Long, E> write) {
+    if (opts.getRevision().isPresent()) {
+      return write.apply(opts.getRevision().get());
+    }
+    return pendingRevisions.write(user, revision -> write.apply(revisionService.save(
+        Revision.of(revision, user.getUsername(), LocalDateTime.now()),
+        INSERT, defaultOpts(), user)));
   }
 
   @Override
@@ -154,8 +228,12 @@ public class NodeRevisionRepository implements
   @Override
   public Stream<Tuple2<RevisionType, Node>> values(
       Query<RevisionId<NodeId>, Tuple2<RevisionType, Node>> query, User user) {
-    return nodeRevisionDao.entries(query.getWhere(), user)
-        .map(e -> populate(e._1, e._2, user));
+    Stream<Tuple2<RevisionId<NodeId>, Tuple2<RevisionType, Node>>> entries =
+        nodeRevisionDao.entries(query.getWhere(), user);
+
+    return Streams.stream(Iterators.partition(entries.iterator(), READ_BATCH_SIZE))
+        .flatMap(batch -> populate(batch, user).stream())
+        .onClose(entries::close);
   }
 
   @Override
@@ -174,68 +252,237 @@ public class NodeRevisionRepository implements
   @Override
   public Optional<Tuple2<RevisionType, Node>> get(RevisionId<NodeId> id, User user,
       Select... selects) {
-    return nodeRevisionDao.get(id, user).map(revision -> populate(id, revision, user));
+    return nodeRevisionDao.get(id, user)
+        .map(revision -> populate(singletonList(Tuple.of(id, revision)), user).get(0));
+  }
+
+  private List<Tuple2<RevisionType, Node>> populate(
+      List<Tuple2<RevisionId<NodeId>, Tuple2<RevisionType, Node>>> revisions, User user) {
+
+    List<RevisionId<NodeId>> ids = revisions.stream()
+        .filter(e -> e._2._2 != null)
+        .map(e -> e._1)
+        .collect(toList());
+
+    Map<RevisionId<NodeId>, NodeValues> values = readValues(ids, user);
+
+    return revisions.stream().map(e -> {
+      if (e._2._2 == null) {
+        return e._2;
+      }
+      NodeValues nodeValues = values.get(e._1);
+      return Tuple.of(e._2._1, Node.builderFromCopyOf(e._2._2)
+          .properties(nodeValues.properties())
+          .references(nodeValues.references())
+          .build());
+    }).collect(toList());
   }
 
-  private Tuple2<RevisionType, Node> populate(RevisionId<NodeId> id, Tuple2<RevisionType, Node> rev,
+  private Map<RevisionId<NodeId>, NodeValues> readValues(List<RevisionId<NodeId>> ids,
       User user) {
-    if (rev._2 == null) {
-      return rev;
+    Map<RevisionId<NodeId>, NodeValues> values = new HashMap<>();
+
+    ids.stream().collect(groupingBy(id -> id.getId().getType())).forEach((type, typeIds) -> {
+      Map<RevisionId<NodeId>, Long> checkpoints = findCheckpoints(type, typeIds, user);
+
+      Map<RevisionId<NodeId>, Tuple2<Integer, List<Tuple2<NodeAttributeValueId, StrictLangValue>>>>
+          properties = resolveValues(type, typeIds, checkpoints,
+              textAttributeValueRevDao, textAttributeValueCheckpointDao,
+              NodeRevisionTextAttributeValuesInRevisionRange::new, user);
+      Map<RevisionId<NodeId>, Tuple2<Integer, List<Tuple2<NodeAttributeValueId, NodeId>>>>
+          references = resolveValues(type, typeIds, checkpoints,
+              referenceAttributeValueRevDao, referenceAttributeValueCheckpointDao,
+              NodeRevisionReferenceAttributeValuesInRevisionRange::new, user);
+
+      typeIds.forEach(id -> values.put(id,
+          new NodeValues(properties.get(id)._2, references.get(id)._2)));
+
+      List<RevisionId<NodeId>> checkpointIds = typeIds.stream()
+          .filter(id -> !checkpoints.containsKey(id) || !checkpoints.get(id).equals(id.getRevision()))
+          .filter(id -> properties.get(id)._1 + references.get(id)._1 >= checkpointInterval)
+          .collect(toList());
+
+      if (checkpointInterval > 0 && !checkpointIds.isEmpty()) {
+        checkpointExecutor.execute(() -> writeCheckpointsInTransaction(type, checkpointIds));
+      }
+    });
+
+    return values;
+  }
+
+  // returns the latest checkpoint revision for each requested node revision that has one
+  private Map<RevisionId<NodeId>, Long> findCheckpoints(TypeId type,
+      List<RevisionId<NodeId>> ids, User user) {
+    Set<UUID> nodeIds = ids.stream().map(id -> id.getId().getId()).collect(toSet());
+    Long maxRevision = ids.stream().map(RevisionId::getRevision).max(naturalOrder())
+        .orElseThrow(IllegalStateException::new);
+
+    Map<NodeId, List<Long>> nodeCheckpoints;
+    try (Stream<RevisionId<NodeId>> checkpointIds = nodeCheckpointDao.keys(
+        new NodeCheckpointsUpToRevision(type, nodeIds, maxRevision), user)) {
+      nodeCheckpoints = checkpointIds.collect(
+          groupingBy(RevisionId::getId, mapping(RevisionId::getRevision, toList())));
     }
 
-    Node.Builder nodeBuilder = Node.builderFromCopyOf(rev._2)
-        .properties(findPropertiesFor(id, user))
-        .references(findReferencesFor(id, user));
+    Map<RevisionId<NodeId>, Long> checkpoints = new HashMap<>();
+    ids.forEach(id -> nodeCheckpoints.getOrDefault(id.getId(), emptyList()).stream()
+        .filter(checkpoint -> checkpoint <= id.getRevision())
+        .max(naturalOrder())
+        .ifPresent(checkpoint -> checkpoints.put(id, checkpoint)));
+    return checkpoints;
+  }
 
-    return Tuple.of(rev._1, nodeBuilder.build());
+  /**
+   * Resolves values of each node revision from the nearest checkpoint and value revisions after
+   * it. Returns number of replayed value revisions and resolved values in index order.
+   */
+  private <V> Map<RevisionId<NodeId>, Tuple2<Integer, List<Tuple2<NodeAttributeValueId, V>>>> resolveValues(
+      TypeId type, List<RevisionId<NodeId>> ids, Map<RevisionId<NodeId>, Long> checkpoints,
+      Dao<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, V>> revisionDao,
+      Dao<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, V>> checkpointDao,
+      ValueRevisionRange<V> range, User user) {
+
+    Set<UUID> nodeIds = ids.stream().map(id -> id.getId().getId()).collect(toSet());
+    Long maxRevision = ids.stream().map(RevisionId::getRevision).max(naturalOrder())
+        .orElseThrow(IllegalStateException::new);
+    // value revisions before the earliest checkpoint are not needed if all nodes have one
+    Long minCheckpoint = checkpoints.keySet().containsAll(ids)
+        ? checkpoints.values().stream().min(naturalOrder()).orElse(null)
+        : null;
+
+    Map<NodeId, List<Tuple2<RevisionId<NodeAttributeValueId>, V>>> revisionsByNode =
+        readValueRevisions(revisionDao, range.of(type, nodeIds, minCheckpoint, maxRevision), user);
+    Map<NodeId, List<Tuple2<RevisionId<NodeAttributeValueId>, V>>> checkpointsByNode =
+        checkpoints.isEmpty() ? emptyMap() : readValueRevisions(checkpointDao, range.of(type,
+            nodeIds, minCheckpoint != null ? minCheckpoint - 1 : null, maxRevision), user);
+
+    Map<RevisionId<NodeId>, Tuple2<Integer, List<Tuple2<NodeAttributeValueId, V>>>> results =
+        new HashMap<>();
+
+    ids.forEach(id -> {
+      Long checkpoint = checkpoints.get(id);
+      Map<NodeAttributeValueId, Tuple2<Long, V>> latest = new HashMap<>();
+
+      if (checkpoint != null) {
+        checkpointsByNode.getOrDefault(id.getId(), emptyList()).stream()
+            .filter(e -> e._1.getRevision().equals(checkpoint))
+            .forEach(e -> latest.put(e._1.getId(), Tuple.of(checkpoint, e._2)));
+      }
+
+      int replayed = 0;
+      for (Tuple2<RevisionId<NodeAttributeValueId>, V> e :
+          revisionsByNode.getOrDefault(id.getId(), emptyList())) {
+        Long revision = e._1.getRevision();
+        if ((checkpoint == null || revision > checkpoint) && revision <= id.getRevision()) {
+          latest.merge(e._1.getId(), Tuple.of(revision, e._2),
+              (a, b) -> a._1 >= b._1 ? a : b);
+          replayed++;
+        }
+      }
+
+      results.put(id, Tuple.of(replayed, latest.entrySet().stream()
+          .filter(e -> e.getValue()._2 != null)
+          .sorted(comparing((Entry<NodeAttributeValueId, Tuple2<Long, V>> e) ->
+              e.getKey().getIndex()).thenComparing(e -> e.getKey().getAttributeId()))
+          .map(e -> Tuple.of(e.getKey(), e.getValue()._2))
+          .collect(toList())));
+    });
+
+    return results;
   }
 
-  private Multimap<String, StrictLangValue> findPropertiesFor(RevisionId<NodeId> revId, User user) {
-    try (Stream<Tuple2<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, StrictLangValue>>>
-        textAttributeValueRevisions = textAttributeValueRevDao.entries(
-        new NodeRevisionTextAttributeValuesLessOrEqualToRevision(revId), user)) {
+  private <V> Map<NodeId, List<Tuple2<RevisionId<NodeAttributeValueId>, V>>> readValueRevisions(
+      Dao<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, V>> dao,
+      Specification<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, V>> spec, User user) {
+    try (Stream<Tuple2<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, V>>> entries =
+        dao.entries(spec, user)) {
+      return entries.collect(groupingBy(e -> e._1.getId().getNodeId(),
+          mapping(e -> Tuple.of(e._1, e._2._2), toList())));
+    }
+  }
 
-      Map<NodeAttributeValueId, List<Tuple2<Long, StrictLangValue>>> idMappedValueRevisions =
-          textAttributeValueRevisions
-              .collect(groupingBy(e -> e._1.getId(), LinkedHashMap::new,
-                  mapping(e -> Tuple.of(e._1.getRevision(), e._2._2), toList())));
+  // runs in the checkpoint writer, failures (e.g. checkpoints written concurrently by another
+  // instance or revisions not yet committed) only mean that a later read tries again
+  private void writeCheckpointsInTransaction(TypeId type, List<RevisionId<NodeId>> ids) {
+    TransactionStatus tx = transactionManager.getTransaction(
+        new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+
+    try {
+      Map<RevisionId<NodeId>, Long> checkpoints = findCheckpoints(type, ids, checkpointWriter);
+
+      List<RevisionId<NodeId>> missingIds = ids.stream()
+          .filter(id -> !id.getRevision().equals(checkpoints.get(id)))
+          .collect(toList());
+
+      if (!missingIds.isEmpty()) {
+        writeCheckpoints(type, missingIds, checkpoints);
+      }
+    } catch (RuntimeException e) {
+      transactionManager.rollback(tx);
+      log.warn("Failed to write node revision checkpoints: {}", e.getMessage());
+      return;
+    }
 
-      ImmutableMultimap.Builder<String, StrictLangValue> properties = ImmutableMultimap.builder();
+    try {
+      transactionManager.commit(tx);
+    } catch (RuntimeException e) {
+      log.warn("Failed to commit node revision checkpoints: {}", e.getMessage());
+    }
+  }
 
-      idMappedValueRevisions.forEach((attrId, valueRevs) -> {
-        Optional<StrictLangValue> lastRevValue = valueRevs.stream()
-            .max(comparing(t -> t._1))
-            .map(t -> t._2);
+  // values are re-read as a superuser, a checkpoint must not depend on reader's permissions
+  private void writeCheckpoints(TypeId type, List<RevisionId<NodeId>> ids,
+      Map<RevisionId<NodeId>, Long> checkpoints) {
+
+    Map<RevisionId<NodeId>, Tuple2<Integer, List<Tuple2<NodeAttributeValueId, StrictLangValue>>>>
+        properties = resolveValues(type, ids, checkpoints,
+        textAttributeValueRevDao, textAttributeValueCheckpointDao,
+        NodeRevisionTextAttributeValuesInRevisionRange::new, checkpointWriter);
+    Map<RevisionId<NodeId>, Tuple2<Integer, List<Tuple2<NodeAttributeValueId, NodeId>>>>
+        references = resolveValues(type, ids, checkpoints,
+        referenceAttributeValueRevDao, referenceAttributeValueCheckpointDao,
+        NodeRevisionReferenceAttributeValuesInRevisionRange::new, checkpointWriter);
+
+    nodeCheckpointDao.insert(ids.stream().map(id -> Tuple.of(id, Empty.INSTANCE)),
+        checkpointWriter);
+    textAttributeValueCheckpointDao.insert(ids.stream()
+        .flatMap(id -> properties.get(id)._2.stream()
+            .map(e -> toRev(e._1, e._2, RevisionType.INSERT, id.getRevision()))), checkpointWriter);
+    referenceAttributeValueCheckpointDao.insert(ids.stream()
+        .flatMap(id -> references.get(id)._2.stream()
+            .map(e -> toRev(e._1, e._2, RevisionType.INSERT, id.getRevision()))), checkpointWriter);
+  }
 
-        lastRevValue.ifPresent(value -> properties.put(attrId.getAttributeId(), value));
-      });
+  private interface ValueRevisionRange<V> {
 
-      return properties.build();
-    }
-  }
+    Specification<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, V>> of(
+        TypeId type, Collection<UUID> nodeIds, Long after, Long upTo);
 
-  private Multimap<String, NodeId> findReferencesFor(RevisionId<NodeId> revId, User user) {
-    try (Stream<Tuple2<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, NodeId>>>
-        referenceAttributeValueRevisions = referenceAttributeValueRevDao.entries(
-        new NodeRevisionReferenceAttributeValuesLessOrEqualToRevision(revId), user)) {
+  }
 
-      Map<NodeAttributeValueId, List<Tuple2<Long, NodeId>>> idMappedValueRevisions =
-          referenceAttributeValueRevisions
-              .collect(groupingBy(e -> e._1.getId(), LinkedHashMap::new,
-                  mapping(e -> Tuple.of(e._1.getRevision(), e._2._2), toList())));
+  private static final class NodeValues {
 
-      ImmutableMultimap.Builder<String, NodeId> references = ImmutableMultimap.builder();
+    private final List<Tuple2<NodeAttributeValueId, StrictLangValue>> properties;
+    private final List<Tuple2<NodeAttributeValueId, NodeId>> references;
 
-      idMappedValueRevisions.forEach((attrId, valueRevs) -> {
-        Optional<NodeId> lastRevValue = valueRevs.stream()
-            .max(comparing(t -> t._1))
-            .map(t -> t._2);
+    private NodeValues(List<Tuple2<NodeAttributeValueId, StrictLangValue>> properties,
+        List<Tuple2<NodeAttributeValueId, NodeId>> references) {
+      this.properties = properties;
+      this.references = references;
+    }
 
-        lastRevValue.ifPresent(value -> references.put(attrId.getAttributeId(), value));
-      });
+    private Multimap<String, StrictLangValue> properties() {
+      ImmutableMultimap.Builder<String, StrictLangValue> builder = ImmutableMultimap.builder();
+      properties.forEach(e -> builder.put(e._1.getAttributeId(), e._2));
+      return builder.build();
+    }
 
-      return references.build();
+    private Multimap<String, NodeId> references() {
+      ImmutableMultimap.Builder<String, NodeId> builder = ImmutableMultimap.builder();
+      references.forEach(e -> builder.put(e._1.getAttributeId(), e._2));
+      return builder.build();
     }
+
   }
 
 }
@@ -0,0 +1,67 @@
+package fi.thl.termed.service.node.internal;
+
+import static java.util.Collections.nCopies;
+
+import com.google.common.collect.ImmutableSet;
+import fi.thl.termed.domain.NodeAttributeValueId;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.RevisionId;
+import fi.thl.termed.domain.RevisionType;
+import fi.thl.termed.domain.StrictLangValue;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.util.collect.Tuple2;
+import fi.thl.termed.util.query.AbstractSqlSpecification;
+import fi.thl.termed.util.query.ParametrizedSqlQuery;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Matches value revisions of given nodes (of one type) with revision number in given range. Lower
+ * bound is exclusive and optional, upper bound is inclusive.
+ */
+public class NodeRevisionTextAttributeValuesInRevisionRange extends
+    AbstractSqlSpecification<RevisionId<NodeAttributeValueId>, Tuple2<RevisionType, StrictLangValue>> {
+
+  private TypeId type;
+  private ImmutableSet<UUID> nodeIds;
+  private Long after;
+  private Long upTo;
+
+  NodeRevisionTextAttributeValuesInRevisionRange(TypeId type, Collection<UUID> nodeIds,
+      Long after, Long upTo) {
+    this.type = type;
+    this.nodeIds = ImmutableSet.copyOf(nodeIds);
+    this.after = after;
+    this.upTo = upTo;
+  }
+
+  @Override
+  public boolean test(RevisionId<NodeAttributeValueId> key,
+      Tuple2<RevisionType, StrictLangValue> value) {
+    NodeId nodeId = key.getId().getNodeId();
+    return Objects.equals(nodeId.getType(), type) && nodeIds.contains(nodeId.getId())
+        && (after == null || key.getRevision() > after) && key.getRevision() <= upTo;
+  }
+
+  @Override
+  public ParametrizedSqlQuery sql() {
+    List<Object> params = new ArrayList<>();
+    params.add(type.getGraphId());
+    params.add(type.getId());
+    params.addAll(nodeIds);
+    params.add(upTo);
+    if (after != null) {
+      params.add(after);
+    }
+
+    return ParametrizedSqlQuery.of(
+        "node_graph_id = ? and node_type_id = ? and node_id in ("
+            + String.join(", ", nCopies(nodeIds.size(), "?")) + ") and revision <= ?"
+            + (after != null ? " and revision > ?" : ""),
+        params.toArray());
+  }
+
+}
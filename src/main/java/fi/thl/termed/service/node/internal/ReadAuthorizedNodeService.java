@@ -1,43 +1,69 @@
 package fi.thl.termed.service.node.internal;
 
-import com.google.common.base.Predicate;
-import com.google.common.collect.Multimaps;
+import static fi.thl.termed.util.query.AndSpecification.and;
+import static fi.thl.termed.util.query.OrSpecification.or;
+import static java.util.stream.Collectors.groupingBy;
+
+import com.google.common.collect.ImmutableMultimap;
+import fi.thl.termed.domain.AppRole;
 import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeId;
 import fi.thl.termed.domain.Permission;
 import fi.thl.termed.domain.ReferenceAttributeId;
+import fi.thl.termed.domain.StrictLangValue;
 import fi.thl.termed.domain.TextAttributeId;
+import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.TypeId;
 import fi.thl.termed.domain.User;
+import fi.thl.termed.service.node.specification.NodesByGraphId;
+import fi.thl.termed.service.node.specification.NodesByTypeId;
+import fi.thl.termed.util.collect.StreamUtils;
 import fi.thl.termed.util.permission.PermissionEvaluator;
+import fi.thl.termed.util.query.LuceneSpecification;
+import fi.thl.termed.util.query.Queries;
 import fi.thl.termed.util.query.Query;
 import fi.thl.termed.util.query.Select;
 import fi.thl.termed.util.query.Specification;
 import fi.thl.termed.util.service.SaveMode;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.service.WriteOptions;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiPredicate;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
 /**
  * For filtering node service read operations. Useful to put in front of an index.
+ *
+ * <p>Index queries are restricted to types readable by the user, so that max and count are
+ * applied to permitted nodes only. Other queries are filtered node by node.
  */
 public class ReadAuthorizedNodeService implements Service<NodeId, Node> {
 
   private Service<NodeId, Node> delegate;
+  private Service<TypeId, Type> typeService;
 
+  private PermissionEvaluator<TypeId> typeEvaluator;
   private PermissionEvaluator<NodeId> nodeEvaluator;
   private PermissionEvaluator<TextAttributeId> textAttrEvaluator;
   private PermissionEvaluator<ReferenceAttributeId> refAttrEvaluator;
 
+  private User typeReader = new User("node-read-authorizer", "", AppRole.SUPERUSER);
+
   public ReadAuthorizedNodeService(
       Service<NodeId, Node> delegate,
+      Service<TypeId, Type> typeService,
       PermissionEvaluator<TypeId> typeEvaluator,
       PermissionEvaluator<TextAttributeId> textAttrEvaluator,
       PermissionEvaluator<ReferenceAttributeId> refAttrEvaluator) {
     this.delegate = delegate;
+    this.typeService = typeService;
+    this.typeEvaluator = typeEvaluator;
     this.nodeEvaluator = (u, r, p) -> typeEvaluator.hasPermission(u, r.getType(), p);
     this.textAttrEvaluator = textAttrEvaluator;
     this.refAttrEvaluator = refAttrEvaluator;
@@ -71,17 +97,27 @@ public class ReadAuthorizedNodeService implements Service<NodeId, Node> {
 
   @Override
   public Stream<Node> values(Query<NodeId, Node> query, User user) {
+    if (query.getWhere() instanceof LuceneSpecification) {
+      return delegate.values(restrict(query, user), user)
+          .map(new AttributePermissionFilter(user, Permission.READ));
+    }
     return filterValues(delegate.values(query, user), user);
   }
 
   @Override
   public Stream<NodeId> keys(Query<NodeId, Node> query, User user) {
+    if (query.getWhere() instanceof LuceneSpecification) {
+      return delegate.keys(restrict(query, user), user);
+    }
     return filterKeys(delegate.keys(query, user), user);
   }
 
   @Override
   public long count(Specification<NodeId, Node> spec, User user) {
-    return delegate.count(spec, user);
+    if (spec instanceof LuceneSpecification) {
+      return delegate.count(restrict(spec, user), user);
+    }
+    return StreamUtils.countAndClose(filterKeys(delegate.keys(new Query<>(spec), user), user));
   }
 
   @Override
@@ -100,6 +136,49 @@ public class ReadAuthorizedNodeService implements Service<NodeId, Node> {
         .map(new AttributePermissionFilter(user, Permission.READ));
   }
 
+  private Query<NodeId, Node> restrict(Query<NodeId, Node> query, User user) {
+    Specification<NodeId, Node> where = restrict(query.getWhere(), user);
+    return where == query.getWhere() ? query
+        : new Query<>(query.getSelect(), where, query.getSort(), query.getMax());
+  }
+
+  private Specification<NodeId, Node> restrict(Specification<NodeId, Node> spec, User user) {
+    return readableTypesSpecification(user).<Specification<NodeId, Node>>map(r -> and(spec, r))
+        .orElse(spec);
+  }
+
+  // returns empty if all types are readable, graphs with all types readable are not split by type
+  private Optional<Specification<NodeId, Node>> readableTypesSpecification(User user) {
+    Map<UUID, List<TypeId>> typesByGraph;
+    try (Stream<TypeId> types = typeService.keys(Queries.matchAll(), typeReader)) {
+      typesByGraph = types.collect(groupingBy(TypeId::getGraphId));
+    }
+
+    boolean allReadable = true;
+    List<Specification<NodeId, Node>> readable = new ArrayList<>();
+
+    for (Map.Entry<UUID, List<TypeId>> graphTypes : typesByGraph.entrySet()) {
+      List<Specification<NodeId, Node>> readableTypes = new ArrayList<>();
+
+      for (TypeId type : graphTypes.getValue()) {
+        if (typeEvaluator.hasPermission(user, type, Permission.READ)) {
+          readableTypes.add(NodesByTypeId.of(type.getId()));
+        }
+      }
+
+      if (readableTypes.size() == graphTypes.getValue().size()) {
+        readable.add(NodesByGraphId.of(graphTypes.getKey()));
+      } else {
+        allReadable = false;
+        if (!readableTypes.isEmpty()) {
+          readable.add(and(NodesByGraphId.of(graphTypes.getKey()), or(readableTypes)));
+        }
+      }
+    }
+
+    return allReadable ? Optional.empty() : Optional.of(or(readable));
+  }
+
   private Stream<NodeId> filterKeys(Stream<NodeId> keys, User user) {
     return keys.filter(id -> nodeEvaluator.hasPermission(user, id, Permission.READ));
   }
@@ -109,11 +188,19 @@ public class ReadAuthorizedNodeService implements Service<NodeId, Node> {
         .map(new AttributePermissionFilter(user, Permission.READ));
   }
 
+  /**
+   * Removes values of attributes that are not permitted. Permissions are evaluated once per type
+   * and attribute, nodes with all values permitted are returned as is.
+   */
   private class AttributePermissionFilter implements Function<Node, Node> {
 
     private User user;
     private Permission permission;
 
+    private Map<TypeId, Boolean> types = new ConcurrentHashMap<>();
+    private Map<TextAttributeId, Boolean> textAttributes = new ConcurrentHashMap<>();
+    private Map<ReferenceAttributeId, Boolean> referenceAttributes = new ConcurrentHashMap<>();
+
     AttributePermissionFilter(User user, Permission permission) {
       this.user = user;
       this.permission = permission;
@@ -122,74 +209,60 @@ public class ReadAuthorizedNodeService implements Service<NodeId, Node> {
     @Override
     public Node apply(Node node) {
       TypeId typeId = node.getType();
-      return Node.builderFromCopyOf(node)
-          .properties(Multimaps.filterKeys(
-              node.getProperties(), new AcceptPropertyPredicate(typeId)))
-          .references(Multimaps.filterEntries(
-              node.getReferences(), new AcceptReferenceEntryPredicate(typeId)))
-          .referrers(Multimaps.filterEntries(
-              node.getReferrers(), new AcceptReferrerEntryPredicate()))
-          .build();
-    }
 
-    /**
-     * Accept a node text attribute value if attribute is permitted
-     */
-    private class AcceptPropertyPredicate implements Predicate<String> {
-
-      private TypeId typeId;
-
-      AcceptPropertyPredicate(TypeId typeId) {
-        this.typeId = typeId;
+      ImmutableMultimap<String, StrictLangValue> properties = filter(node.getProperties(),
+          (attributeId, value) -> permitted(new TextAttributeId(typeId, attributeId)));
+
+      // reference is accepted if both reference attribute and the value are permitted
+      ImmutableMultimap<String, NodeId> references = filter(node.getReferences(),
+          (attributeId, value) -> permitted(new ReferenceAttributeId(typeId, attributeId))
+              && permitted(value.getType()));
+      ImmutableMultimap<String, NodeId> referrers = filter(node.getReferrers(),
+          (attributeId, value) -> permitted(new ReferenceAttributeId(value.getType(), attributeId))
+              && permitted(value.getType()));
+
+      if (properties == node.getProperties()
+          && references == node.getReferences()
+          && referrers == node.getReferrers()) {
+        return node;
       }
 
-      @Override
-      public boolean apply(String attributeId) {
-        TextAttributeId textAttrId = new TextAttributeId(typeId, attributeId);
-        return textAttrEvaluator.hasPermission(user, textAttrId, permission);
-      }
+      return Node.builderFromCopyOf(node)
+          .properties(properties)
+          .references(references)
+          .referrers(referrers)
+          .build();
     }
 
-    /**
-     * Accepts a node reference entry in the reference multimap if 1) reference attribute is
-     * permitted and 2) value is permitted
-     */
-    private class AcceptReferenceEntryPredicate implements Predicate<Map.Entry<String, NodeId>> {
-
-      private TypeId typeId;
-
-      AcceptReferenceEntryPredicate(TypeId typeId) {
-        this.typeId = typeId;
+    // returns given multimap if all entries are accepted
+    private <V> ImmutableMultimap<String, V> filter(ImmutableMultimap<String, V> values,
+        BiPredicate<String, V> accept) {
+      if (values.entries().stream().allMatch(e -> accept.test(e.getKey(), e.getValue()))) {
+        return values;
       }
 
-      @Override
-      public boolean apply(Map.Entry<String, NodeId> entry) {
-        String attributeId = entry.getKey();
-        NodeId reference = entry.getValue();
-
-        ReferenceAttributeId refAttrId = new ReferenceAttributeId(typeId, attributeId);
-
-        return refAttrEvaluator.hasPermission(user, refAttrId, permission) &&
-            nodeEvaluator.hasPermission(user, reference, permission);
-      }
+      ImmutableMultimap.Builder<String, V> accepted = ImmutableMultimap.builder();
+      values.forEach((k, v) -> {
+        if (accept.test(k, v)) {
+          accepted.put(k, v);
+        }
+      });
+      return accepted.build();
     }
 
-    /**
-     * Accepts a node referrer entry in the referrers multimap if 1) reference attribute is
-     * permitted and 2) value is permitted
-     */
-    private class AcceptReferrerEntryPredicate implements Predicate<Map.Entry<String, NodeId>> {
-
-      @Override
-      public boolean apply(Map.Entry<String, NodeId> entry) {
-        String attributeId = entry.getKey();
-        NodeId referrer = entry.getValue();
+    private boolean permitted(TypeId typeId) {
+      return types.computeIfAbsent(typeId,
+          t -> typeEvaluator.hasPermission(user, t, permission));
+    }
 
-        ReferenceAttributeId refAttrId = new ReferenceAttributeId(referrer.getType(), attributeId);
+    private boolean permitted(TextAttributeId attributeId) {
+      return textAttributes.computeIfAbsent(attributeId,
+          a -> textAttrEvaluator.hasPermission(user, a, permission));
+    }
 
-        return refAttrEvaluator.hasPermission(user, refAttrId, permission) &&
-            nodeEvaluator.hasPermission(user, referrer, permission);
-      }
+    private boolean permitted(ReferenceAttributeId attributeId) {
+      return referenceAttributes.computeIfAbsent(attributeId,
+          a -> refAttrEvaluator.hasPermission(user, a, permission));
     }
 
   }
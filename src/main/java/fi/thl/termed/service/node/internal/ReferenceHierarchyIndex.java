@@ -0,0 +1,221 @@
+package fi.thl.termed.service.node.internal;
+
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
+
+import com.google.common.base.Joiner;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.SetMultimap;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.domain.event.InvalidateCachesEvent;
+import fi.thl.termed.domain.event.NodeDeletedEvent;
+import fi.thl.termed.domain.event.NodeEvent;
+import fi.thl.termed.domain.event.NodeSavedEvent;
+import fi.thl.termed.util.UUIDs;
+import fi.thl.termed.util.collect.Tuple;
+import fi.thl.termed.util.collect.Tuple2;
+import fi.thl.termed.util.spring.jdbc.StreamingJdbcTemplate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import javax.sql.DataSource;
+import org.springframework.jdbc.core.RowMapper;
+
+/**
+ * In-memory index of node reference values by type and reference attribute, e.g. a broader
+ * hierarchy of concepts. Each hierarchy is loaded with one query on first use and kept up to date
+ * from node save and delete events. Answers reference and referrer closures without index lookups
+ * so that callers can load all nodes of a path or a tree at once.
+ *
+ * <p>Referrers are looked up within the type of the referenced node, i.e. from the same
+ * hierarchy. Index does not check read permissions and may briefly lag behind the database, it is
+ * meant for finding nodes to load, not as the source of node data.
+ */
+public class ReferenceHierarchyIndex {
+
+  private static final int MAX_HIERARCHIES = 100;
+
+  // chunk size for node ids in re-read queries
+  private static final int CHUNK_SIZE = 500;
+
+  private final StreamingJdbcTemplate jdbcTemplate;
+
+  private final Cache<Tuple2<TypeId, String>, Hierarchy> hierarchies = CacheBuilder.newBuilder()
+      .maximumSize(MAX_HIERARCHIES)
+      .expireAfterWrite(1, TimeUnit.HOURS)
+      .build();
+
+  private final RowMapper<Tuple2<NodeId, NodeId>> referenceMapper = (rs, rowNum) -> Tuple.of(
+      new NodeId(
+          UUIDs.fromString(rs.getString("node_id")),
+          rs.getString("node_type_id"),
+          UUIDs.fromString(rs.getString("node_graph_id"))),
+      new NodeId(
+          UUIDs.fromString(rs.getString("value_id")),
+          rs.getString("value_type_id"),
+          UUIDs.fromString(rs.getString("value_graph_id"))));
+
+  public ReferenceHierarchyIndex(DataSource dataSource) {
+    this.jdbcTemplate = new StreamingJdbcTemplate(dataSource);
+  }
+
+  /**
+   * Returns nodes referenced by given node via given attribute.
+   */
+  public Set<NodeId> references(NodeId nodeId, String attributeId) {
+    return hierarchy(nodeId.getType(), attributeId).references(nodeId);
+  }
+
+  /**
+   * Returns nodes of the same type referring to given node via given attribute.
+   */
+  public Set<NodeId> referrers(NodeId nodeId, String attributeId) {
+    return hierarchy(nodeId.getType(), attributeId).referrers(nodeId);
+  }
+
+  /**
+   * Returns given node and all nodes transitively referenced by it via given attribute, e.g. all
+   * broader concepts up to the roots.
+   */
+  public Set<NodeId> referenceClosure(NodeId nodeId, String attributeId) {
+    return closure(nodeId, attributeId, true);
+  }
+
+  /**
+   * Returns given node and all nodes transitively referring to it via given attribute, e.g. all
+   * narrower concepts.
+   */
+  public Set<NodeId> referrerClosure(NodeId nodeId, String attributeId) {
+    return closure(nodeId, attributeId, false);
+  }
+
+  private Set<NodeId> closure(NodeId nodeId, String attributeId, boolean references) {
+    Set<NodeId> results = new LinkedHashSet<>();
+    Deque<NodeId> queue = new ArrayDeque<>();
+    queue.add(nodeId);
+
+    while (!queue.isEmpty()) {
+      NodeId id = queue.remove();
+      if (results.add(id)) {
+        queue.addAll(references ? references(id, attributeId) : referrers(id, attributeId));
+      }
+    }
+
+    return results;
+  }
+
+  @Subscribe
+  public void updateOn(NodeSavedEvent e) {
+    update(e, true);
+  }
+
+  @Subscribe
+  public void updateOn(NodeDeletedEvent e) {
+    update(e, false);
+  }
+
+  @Subscribe
+  public void clearOn(InvalidateCachesEvent e) {
+    hierarchies.invalidateAll();
+  }
+
+  // replaces references of event nodes in loaded hierarchies of their types
+  private void update(NodeEvent e, boolean reload) {
+    Map<TypeId, List<NodeId>> nodesByType = e.getNodes().stream()
+        .collect(groupingBy(NodeId::getType));
+
+    hierarchies.asMap().forEach((key, hierarchy) -> {
+      List<NodeId> nodeIds = nodesByType.get(key._1);
+      if (nodeIds != null) {
+        SetMultimap<NodeId, NodeId> references = HashMultimap.create();
+        if (reload) {
+          for (List<NodeId> chunk : Iterables.partition(nodeIds, CHUNK_SIZE)) {
+            try (Stream<Tuple2<NodeId, NodeId>> rows = loadReferences(key, chunk)) {
+              rows.forEach(row -> references.put(row._1, row._2));
+            }
+          }
+        }
+        hierarchy.replace(nodeIds, references);
+      }
+    });
+  }
+
+  private Hierarchy hierarchy(TypeId typeId, String attributeId) {
+    Tuple2<TypeId, String> key = Tuple.of(typeId, attributeId);
+    try {
+      return hierarchies.get(key, () -> {
+        Hierarchy hierarchy = new Hierarchy();
+        try (Stream<Tuple2<NodeId, NodeId>> rows = loadReferences(key, Collections.emptyList())) {
+          rows.forEach(row -> hierarchy.add(row._1, row._2));
+        }
+        return hierarchy;
+      });
+    } catch (ExecutionException e) {
+      throw new UncheckedExecutionException(e.getCause());
+    }
+  }
+
+  // loads references of given nodes, or all nodes if none are given
+  private Stream<Tuple2<NodeId, NodeId>> loadReferences(Tuple2<TypeId, String> key,
+      Collection<NodeId> nodeIds) {
+    List<Object> args = new ArrayList<>();
+    args.add(key._1.getGraphId());
+    args.add(key._1.getId());
+    args.add(key._2);
+    args.addAll(nodeIds.stream().map(NodeId::getId).collect(toList()));
+
+    String nodeIdCondition = nodeIds.isEmpty() ? "" :
+        " and node_id in (" + Joiner.on(", ").join(Collections.nCopies(nodeIds.size(), "?")) + ")";
+
+    return jdbcTemplate.queryForStream(
+        "select node_graph_id, node_type_id, node_id, value_graph_id, value_type_id, value_id " +
+            "from node_reference_attribute_value " +
+            "where node_graph_id = ? and node_type_id = ? and attribute_id = ?" +
+            nodeIdCondition,
+        args.toArray(), referenceMapper);
+  }
+
+  private static class Hierarchy {
+
+    private final SetMultimap<NodeId, NodeId> references = HashMultimap.create();
+    private final SetMultimap<NodeId, NodeId> referrers = HashMultimap.create();
+
+    synchronized Set<NodeId> references(NodeId nodeId) {
+      return ImmutableSet.copyOf(references.get(nodeId));
+    }
+
+    synchronized Set<NodeId> referrers(NodeId nodeId) {
+      return ImmutableSet.copyOf(referrers.get(nodeId));
+    }
+
+    synchronized void add(NodeId nodeId, NodeId valueId) {
+      references.put(nodeId, valueId);
+      referrers.put(valueId, nodeId);
+    }
+
+    synchronized void replace(Collection<NodeId> nodeIds, SetMultimap<NodeId, NodeId> values) {
+      for (NodeId nodeId : nodeIds) {
+        references.removeAll(nodeId).forEach(valueId -> referrers.remove(valueId, nodeId));
+      }
+      values.forEach(this::add);
+    }
+
+  }
+
+}
@@ -8,71 +8,75 @@ import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeId;
 import fi.thl.termed.domain.Revision;
 import fi.thl.termed.domain.User;
+import fi.thl.termed.service.revision.internal.PendingRevisions;
 import fi.thl.termed.util.service.ForwardingService;
 import fi.thl.termed.util.service.SaveMode;
-import fi.thl.termed.util.service.SequenceService;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.service.WriteOptions;
 import java.time.LocalDateTime;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
 public class RevisionInitializingNodeService extends ForwardingService<NodeId, Node> {
 
-  private SequenceService revisionSequenceService;
+  private PendingRevisions pendingRevisions;
   private Service<Long, Revision> revisionService;
 
   public RevisionInitializingNodeService(
       Service<NodeId, Node> delegate,
-      SequenceService revisionSequenceService,
+      PendingRevisions pendingRevisions,
       Service<Long, Revision> revisionService) {
     super(delegate);
-    this.revisionSequenceService = revisionSequenceService;
+    this.pendingRevisions = pendingRevisions;
     this.revisionService = revisionService;
   }
 
   @Override
   public void save(Stream<Node> nodes, SaveMode mode, WriteOptions opts, User user) {
-    super.save(nodes, mode,
-        opts(opts.isSync(), newRevision(user), opts.isGenerateCodes(), opts.isGenerateUris()),
-        user);
+    withNewRevision(opts, user, revisionOpts -> {
+      super.save(nodes, mode, revisionOpts, user);
+      return null;
+    });
   }
 
   @Override
   public NodeId save(Node node, SaveMode mode, WriteOptions opts, User user) {
-    return super.save(node, mode,
-        opts(opts.isSync(), newRevision(user), opts.isGenerateCodes(), opts.isGenerateUris()),
-        user);
+    return withNewRevision(opts, user, revisionOpts -> super.save(node, mode, revisionOpts, user));
   }
 
   @Override
   public void delete(NodeId id, WriteOptions opts, User user) {
-    super.delete(id,
-        opts(opts.isSync(), newRevision(user), opts.isGenerateCodes(), opts.isGenerateUris()),
-        user);
+    withNewRevision(opts, user, revisionOpts -> {
+      super.delete(id, revisionOpts, user);
+      return null;
+    });
   }
 
   @Override
   public void delete(Stream<NodeId> ids, WriteOptions opts, User user) {
-    super.delete(ids,
-        opts(opts.isSync(), newRevision(user), opts.isGenerateCodes(), opts.isGenerateUris()),
-        user);
+    withNewRevision(opts, user, revisionOpts -> {
+      super.delete(ids, revisionOpts, user);
+      return null;
+    });
   }
 
   @Override
   public void saveAndDelete(Stream<Node> saves, Stream<NodeId> deletes, SaveMode mode,
       WriteOptions opts, User user) {
-    super.saveAndDelete(saves, deletes, mode,
-        opts(opts.isSync(), newRevision(user), opts.isGenerateCodes(), opts.isGenerateUris()),
-        user);
+    withNewRevision(opts, user, revisionOpts -> {
+      super.saveAndDelete(saves, deletes, mode, revisionOpts, user);
+      return null;
+    });
   }
 
-  private Long newRevision(User user) {
-    return revisionService.save(
-        Revision.of(
-            revisionSequenceService.getAndAdvance(user),
-            user.getUsername(),
-            LocalDateTime.now()),
-        INSERT, defaultOpts(), user);
+  // revision stays pending until the write is committed
+  private <E> E withNewRevision(WriteOptions opts, User user, Function<WriteOptions, E> write) {
+    return pendingRevisions.write(user, revision -> {
+      revisionService.save(Revision.of(revision, user.getUsername(), LocalDateTime.now()),
+          INSERT, defaultOpts(), user);
+      return write.apply(
+          opts(opts.isSync(), revision, opts.isGenerateCodes(), opts.isGenerateUris()));
+    });
   }
 
 }
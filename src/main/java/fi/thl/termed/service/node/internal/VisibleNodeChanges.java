@@ -0,0 +1,92 @@
+package fi.thl.termed.service.node.internal;
+
+import static fi.thl.termed.util.collect.StreamUtils.findFirstAndClose;
+
+import fi.thl.termed.domain.Empty;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.util.dao.SystemDao;
+import fi.thl.termed.util.index.lucene.LuceneIndex;
+import fi.thl.termed.util.query.Specifications;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts changes that node reads are known to reflect, e.g. for computing ETags. Nodes are counted
+ * per type as they are written to the index, and revision history rewrites (e.g. compaction) are
+ * counted for all types. Revision numbers can't be used instead, as they are allocated before
+ * commit and thus may become visible out of order.
+ *
+ * <p>Writes are committed before they are indexed, so a version is returned only when there are
+ * no indexing queues left and index searcher has been refreshed after queued nodes were indexed.
+ * Counters are kept in memory, so versions include an id that is unique to each application run.
+ */
+public class VisibleNodeChanges {
+
+  private final String runId = UUID.randomUUID().toString();
+
+  private final Map<TypeId, AtomicLong> indexedByType = new ConcurrentHashMap<>();
+  private final AtomicLong indexed = new AtomicLong();
+  private final AtomicLong rewritten = new AtomicLong();
+
+  private SystemDao<Long, Empty> nodeIndexingQueueDao;
+  private LuceneIndex<NodeId, Node> index;
+
+  public VisibleNodeChanges(
+      SystemDao<Long, Empty> nodeIndexingQueueDao,
+      LuceneIndex<NodeId, Node> index) {
+    this.nodeIndexingQueueDao = nodeIndexingQueueDao;
+    this.index = index;
+  }
+
+  /**
+   * Records that given node has been written to (or deleted from) the index. Called before index
+   * searcher is refreshed.
+   */
+  public void indexed(NodeId nodeId) {
+    indexedByType.computeIfAbsent(nodeId.getType(), t -> new AtomicLong()).incrementAndGet();
+    indexed.incrementAndGet();
+  }
+
+  /**
+   * Records that revision history has been rewritten.
+   */
+  public void revisionsRewritten() {
+    rewritten.incrementAndGet();
+  }
+
+  /**
+   * Returns version of all nodes, or empty if reads may not yet reflect all changes.
+   */
+  public Optional<String> version() {
+    return version(indexed.get());
+  }
+
+  /**
+   * Returns version of nodes of given types, or empty if reads may not yet reflect all changes.
+   */
+  public Optional<String> version(Collection<TypeId> types) {
+    // per type counters only grow, so their sum changes whenever any of them changes
+    return version(types.stream()
+        .map(indexedByType::get)
+        .mapToLong(count -> count != null ? count.get() : 0)
+        .sum());
+  }
+
+  private Optional<String> version(long indexedCount) {
+    String version = runId + "-" + rewritten.get() + "-" + indexedCount;
+    return isIndexSettled() ? Optional.of(version) : Optional.empty();
+  }
+
+  // checked after reading counters, queues are removed only after their nodes are indexed
+  private boolean isIndexSettled() {
+    return !findFirstAndClose(nodeIndexingQueueDao.keys(Specifications.matchAll())).isPresent()
+        && index.isSearcherCurrent();
+  }
+
+}
@@ -0,0 +1,63 @@
+package fi.thl.termed.service.node.internal;
+
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.service.webhook.internal.WebhookOutbox;
+import fi.thl.termed.util.service.ForwardingService;
+import fi.thl.termed.util.service.SaveMode;
+import fi.thl.termed.util.service.Service;
+import fi.thl.termed.util.service.WriteOptions;
+import java.util.stream.Stream;
+
+/**
+ * Queues webhook deliveries for each node write. Must be wrapped in the transaction of the write.
+ */
+public class WebhookOutboxWritingNodeService extends ForwardingService<NodeId, Node> {
+
+  private WebhookOutbox webhookOutbox;
+
+  public WebhookOutboxWritingNodeService(Service<NodeId, Node> delegate,
+      WebhookOutbox webhookOutbox) {
+    super(delegate);
+    this.webhookOutbox = webhookOutbox;
+  }
+
+  private void enqueue(WriteOptions opts) {
+    webhookOutbox.enqueue(opts.getRevision()
+        .orElseThrow(() -> new IllegalStateException("Revision not initialized")));
+  }
+
+  @Override
+  public void save(Stream<Node> values, SaveMode mode, WriteOptions opts, User user) {
+    super.save(values, mode, opts, user);
+    enqueue(opts);
+  }
+
+  @Override
+  public NodeId save(Node value, SaveMode mode, WriteOptions opts, User user) {
+    NodeId id = super.save(value, mode, opts, user);
+    enqueue(opts);
+    return id;
+  }
+
+  @Override
+  public void delete(Stream<NodeId> ids, WriteOptions opts, User user) {
+    super.delete(ids, opts, user);
+    enqueue(opts);
+  }
+
+  @Override
+  public void delete(NodeId id, WriteOptions opts, User user) {
+    super.delete(id, opts, user);
+    enqueue(opts);
+  }
+
+  @Override
+  public void saveAndDelete(Stream<Node> saves, Stream<NodeId> deletes, SaveMode mode,
+      WriteOptions opts, User user) {
+    super.saveAndDelete(saves, deletes, mode, opts, user);
+    enqueue(opts);
+  }
+
+}
@@ -0,0 +1,56 @@
+package fi.thl.termed.service.node.specification;
+
+import static java.util.Collections.nCopies;
+
+import com.google.common.collect.ImmutableSet;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.RevisionId;
+import fi.thl.termed.domain.RevisionType;
+import fi.thl.termed.util.collect.Tuple2;
+import fi.thl.termed.util.query.AbstractSqlSpecification;
+import fi.thl.termed.util.query.ParametrizedSqlQuery;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Matches exactly given node revisions. Meant for reading nodes in batches of a few hundred.
+ */
+public class NodeRevisionsByRevisionIds extends
+    AbstractSqlSpecification<RevisionId<NodeId>, Tuple2<RevisionType, Node>> {
+
+  private ImmutableSet<RevisionId<NodeId>> revisionIds;
+
+  public NodeRevisionsByRevisionIds(Collection<RevisionId<NodeId>> revisionIds) {
+    this.revisionIds = ImmutableSet.copyOf(revisionIds);
+  }
+
+  public static NodeRevisionsByRevisionIds of(Collection<RevisionId<NodeId>> revisionIds) {
+    return new NodeRevisionsByRevisionIds(revisionIds);
+  }
+
+  @Override
+  public boolean test(RevisionId<NodeId> revisionId, Tuple2<RevisionType, Node> revision) {
+    return revisionIds.contains(revisionId);
+  }
+
+  @Override
+  public ParametrizedSqlQuery sql() {
+    if (revisionIds.isEmpty()) {
+      return ParametrizedSqlQuery.of("1 = 0");
+    }
+
+    List<Object> params = new ArrayList<>();
+    revisionIds.forEach(revisionId -> {
+      params.add(revisionId.getId().getTypeGraphId());
+      params.add(revisionId.getId().getTypeId());
+      params.add(revisionId.getId().getId());
+      params.add(revisionId.getRevision());
+    });
+
+    return ParametrizedSqlQuery.of(String.join(" or ", nCopies(revisionIds.size(),
+        "(graph_id = ? and type_id = ? and id = ? and revision = ?)")), params.toArray());
+  }
+
+}
@@ -0,0 +1,280 @@
+package fi.thl.termed.service.node.util;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Streams;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.StrictLangValue;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.util.UUIDs;
+import fi.thl.termed.util.collect.Tuple;
+import fi.thl.termed.util.collect.Tuple2;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Reads nodes from CBOR array written e.g. by {@link NodeToCborStream}. Nodes are read one by one
+ * as the returned stream is consumed.
+ */
+public final class CborStreamToNodes {
+
+  private static final CBORFactory CBOR_FACTORY = new CBORFactory();
+
+  private CborStreamToNodes() {
+  }
+
+  /**
+   * Reads nodes from given input. Node types are read from the input unless given graph id or type
+   * id (both nullable) overrides them. Input is closed when the returned stream is closed.
+   */
+  public static Stream<Node> readArray(InputStream in, UUID graphId, String typeId) {
+    try {
+      JsonParser parser = CBOR_FACTORY.createParser(in);
+      expect(parser.nextToken(), JsonToken.START_ARRAY, parser);
+
+      return Streams.stream(new Iterator<Node>() {
+        private JsonToken next = parser.nextToken();
+
+        @Override
+        public boolean hasNext() {
+          return next != null && next != JsonToken.END_ARRAY;
+        }
+
+        @Override
+        public Node next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          try {
+            Node node = readNode(parser, graphId, typeId);
+            next = parser.nextToken();
+            return node;
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        }
+      }).onClose(() -> {
+        try {
+          parser.close();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static Node readNode(JsonParser parser, UUID graphId, String typeId)
+      throws IOException {
+    expect(parser.currentToken(), JsonToken.START_OBJECT, parser);
+
+    UUID id = null;
+    Tuple2<String, UUID> type = Tuple.of(null, null);
+    String code = null;
+    String uri = null;
+    Long number = null;
+    String createdBy = null;
+    LocalDateTime createdDate = null;
+    String lastModifiedBy = null;
+    LocalDateTime lastModifiedDate = null;
+    ImmutableMultimap<String, StrictLangValue> properties = null;
+    ImmutableMultimap<String, NodeId> references = null;
+    ImmutableMultimap<String, NodeId> referrers = null;
+
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      JsonToken value = parser.nextToken();
+
+      if (value == JsonToken.VALUE_NULL) {
+        continue;
+      }
+
+      switch (field) {
+        case "id":
+          id = UUIDs.fromString(parser.getValueAsString());
+          break;
+        case "type":
+          type = readType(parser);
+          break;
+        case "code":
+          code = parser.getValueAsString();
+          break;
+        case "uri":
+          uri = parser.getValueAsString();
+          break;
+        case "number":
+          number = parser.getLongValue();
+          break;
+        case "createdBy":
+          createdBy = parser.getValueAsString();
+          break;
+        case "createdDate":
+          createdDate = parseDate(parser.getValueAsString());
+          break;
+        case "lastModifiedBy":
+          lastModifiedBy = parser.getValueAsString();
+          break;
+        case "lastModifiedDate":
+          lastModifiedDate = parseDate(parser.getValueAsString());
+          break;
+        case "properties":
+          properties = readProperties(parser);
+          break;
+        case "references":
+          references = readNodeIds(parser);
+          break;
+        case "referrers":
+          referrers = readNodeIds(parser);
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+
+    String resolvedTypeId = typeId != null ? typeId : type._1;
+    UUID resolvedGraphId = graphId != null ? graphId : type._2;
+
+    if (resolvedTypeId == null || resolvedGraphId == null) {
+      throw new JsonParseException(parser, "Missing node type");
+    }
+
+    return new Node(id, TypeId.of(resolvedTypeId, resolvedGraphId), code, uri, number,
+        createdBy, createdDate, lastModifiedBy, lastModifiedDate,
+        properties, references, referrers);
+  }
+
+  // reads type id and graph id, either may be missing
+  private static Tuple2<String, UUID> readType(JsonParser parser) throws IOException {
+    expect(parser.currentToken(), JsonToken.START_OBJECT, parser);
+
+    String id = null;
+    UUID graphId = null;
+
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      parser.nextToken();
+
+      if (field.equals("id")) {
+        id = parser.getValueAsString();
+      } else if (field.equals("graph") && parser.currentToken() == JsonToken.START_OBJECT) {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          String graphField = parser.getCurrentName();
+          parser.nextToken();
+          if (graphField.equals("id")) {
+            graphId = UUIDs.fromString(parser.getValueAsString());
+          } else {
+            parser.skipChildren();
+          }
+        }
+      } else {
+        parser.skipChildren();
+      }
+    }
+
+    return Tuple.of(id, graphId);
+  }
+
+  private static ImmutableMultimap<String, StrictLangValue> readProperties(JsonParser parser)
+      throws IOException {
+    expect(parser.currentToken(), JsonToken.START_OBJECT, parser);
+
+    ImmutableMultimap.Builder<String, StrictLangValue> properties = ImmutableMultimap.builder();
+
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String attributeId = parser.getCurrentName();
+      expect(parser.nextToken(), JsonToken.START_ARRAY, parser);
+
+      while (parser.nextToken() == JsonToken.START_OBJECT) {
+        String lang = null;
+        String value = null;
+        String regex = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          String field = parser.getCurrentName();
+          parser.nextToken();
+          switch (field) {
+            case "lang":
+              lang = parser.getValueAsString();
+              break;
+            case "value":
+              value = parser.getValueAsString();
+              break;
+            case "regex":
+              regex = parser.getValueAsString();
+              break;
+            default:
+              parser.skipChildren();
+          }
+        }
+
+        properties.put(attributeId, new StrictLangValue(lang, value, regex));
+      }
+    }
+
+    return properties.build();
+  }
+
+  private static ImmutableMultimap<String, NodeId> readNodeIds(JsonParser parser)
+      throws IOException {
+    expect(parser.currentToken(), JsonToken.START_OBJECT, parser);
+
+    ImmutableMultimap.Builder<String, NodeId> nodeIds = ImmutableMultimap.builder();
+
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String attributeId = parser.getCurrentName();
+      expect(parser.nextToken(), JsonToken.START_ARRAY, parser);
+
+      while (parser.nextToken() == JsonToken.START_OBJECT) {
+        UUID id = null;
+        Tuple2<String, UUID> type = Tuple.of(null, null);
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          String field = parser.getCurrentName();
+          parser.nextToken();
+          if (field.equals("id")) {
+            id = UUIDs.fromString(parser.getValueAsString());
+          } else if (field.equals("type")) {
+            type = readType(parser);
+          } else {
+            parser.skipChildren();
+          }
+        }
+
+        if (id == null || type._1 == null || type._2 == null) {
+          throw new JsonParseException(parser, "Missing reference id or type");
+        }
+
+        nodeIds.put(attributeId, new NodeId(id, type._1, type._2));
+      }
+    }
+
+    return nodeIds.build();
+  }
+
+  private static LocalDateTime parseDate(String date) {
+    return date != null
+        ? ZonedDateTime.parse(date, DateTimeFormatter.ISO_OFFSET_DATE_TIME).toLocalDateTime()
+        : null;
+  }
+
+  private static void expect(JsonToken actual, JsonToken expected, JsonParser parser)
+      throws JsonParseException {
+    if (actual != expected) {
+      throw new JsonParseException(parser, "Expected " + expected + " but was " + actual);
+    }
+  }
+
+}
@@ -6,14 +6,23 @@ import static fi.thl.termed.util.RegularExpressions.CODE;
 import static fi.thl.termed.util.RegularExpressions.IETF_LANGUAGE_TAG;
 import static fi.thl.termed.util.UUIDs.fromString;
 import static fi.thl.termed.util.UUIDs.nilUuid;
+import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
 import static fi.thl.termed.util.query.AndSpecification.and;
+import static fi.thl.termed.util.query.OrSpecification.or;
+import static fi.thl.termed.util.query.Queries.query;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.emptyMap;
 import static java.util.Objects.requireNonNull;
 import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.mapping;
+import static java.util.stream.Collectors.toCollection;
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toMap;
 
 import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Streams;
 import com.opencsv.CSVParserBuilder;
 import com.opencsv.CSVReader;
 import com.opencsv.CSVReaderBuilder;
@@ -22,35 +31,55 @@ import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeId;
 import fi.thl.termed.domain.ReferenceAttribute;
 import fi.thl.termed.domain.StrictLangValue;
+import fi.thl.termed.domain.TextAttributeId;
 import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.service.node.select.SelectId;
+import fi.thl.termed.service.node.select.SelectType;
+import fi.thl.termed.service.node.select.SelectTypeQualifiedProperty;
 import fi.thl.termed.service.node.specification.NodesByGraphId;
 import fi.thl.termed.service.node.specification.NodesByPropertyString;
 import fi.thl.termed.service.node.specification.NodesByTypeId;
 import fi.thl.termed.util.TableUtils;
 import fi.thl.termed.util.UUIDs;
+import fi.thl.termed.util.collect.Tuple;
+import fi.thl.termed.util.collect.Tuple2;
+import fi.thl.termed.util.collect.Tuple3;
 import fi.thl.termed.util.csv.CsvOptions;
 import fi.thl.termed.util.csv.CsvUtils;
+import fi.thl.termed.util.query.Query;
+import fi.thl.termed.util.query.Select;
 import fi.thl.termed.util.query.Specification;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
 import org.apache.jena.atlas.RuntimeIOException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * Import nodes from CSV
+ * Import nodes from CSV. Labeled references (e.g. {@code r.broader.p.prefLabel}) are resolved in
+ * batches of rows, with one query per range type. Resolved labels are remembered for the whole
+ * import.
  */
 public final class CsvToNodes {
 
+  private static final Logger log = LoggerFactory.getLogger(CsvToNodes.class);
+
   private static final Pattern PROPERTY_KEY = Pattern.compile(
       "^(properties|p)\\.(" + CODE + ")(\\.(" + IETF_LANGUAGE_TAG + "))?$");
   private static final Pattern REFERENCE_KEY = Pattern.compile(
@@ -61,57 +90,127 @@ public final class CsvToNodes {
 
   private static final TypeId unknownTypeId = TypeId.of("", nilUuid());
 
+  private static final int BATCH_SIZE = 1000;
+  private static final int MAX_LOGGED_UNRESOLVED = 20;
+
   private Map<TypeId, Map<String, TypeId>> typeReferenceAttributeRangeIndex;
-  private Function<Specification<NodeId, Node>, Optional<NodeId>> referenceIdResolver;
+  private Function<Query<NodeId, Node>, Stream<Node>> referenceLoader;
+
+  // labeled references (range type and label) resolved so far in this import
+  private Map<Tuple2<TypeId, NodesByPropertyString>, Optional<NodeId>> resolvedReferences =
+      new HashMap<>();
 
   public CsvToNodes() {
-    this(emptyList(), (s) -> Optional.empty());
+    this(emptyList(), (q) -> Stream.empty());
   }
 
+  /**
+   * Given reference loader is used to find referenced nodes by label. Returned nodes should
+   * contain at least selected properties of the query.
+   */
   public CsvToNodes(
       List<Type> types,
-      Function<Specification<NodeId, Node>, Optional<NodeId>> referenceIdResolver) {
+      Function<Query<NodeId, Node>, Stream<Node>> referenceLoader) {
     this.typeReferenceAttributeRangeIndex = types.stream()
         .flatMap(t -> t.getReferenceAttributes().stream())
         .collect(
             groupingBy(ReferenceAttribute::getDomain,
                 toMap(ReferenceAttribute::getId, ReferenceAttribute::getRange)));
-    this.referenceIdResolver = referenceIdResolver;
+    this.referenceLoader = referenceLoader;
   }
 
   public Stream<Node> parseNodesFromCsv(GraphId graphId, CsvOptions csvOpts, InputStream in) {
-    return TableUtils.toMapped(CsvUtils.readCsv(csvOpts, in)).map(row -> mapToNode(graphId, row));
+    return toNodes(TableUtils.toMapped(CsvUtils.readCsv(csvOpts, in)), row -> NodeId.of(
+        MoreObjects.firstNonNull(UUIDs.fromString(row.get("id")), UUID.randomUUID()),
+        requireNonNull(row.get("type.id")),
+        graphId.getId()));
   }
 
   public Stream<Node> parseNodesFromCsv(TypeId typeId, CsvOptions csvOpts, InputStream in) {
-    return TableUtils.toMapped(CsvUtils.readCsv(csvOpts, in)).map(row -> mapToNode(typeId, row));
+    return toNodes(TableUtils.toMapped(CsvUtils.readCsv(csvOpts, in)), row -> NodeId.of(
+        MoreObjects.firstNonNull(UUIDs.fromString(row.get("id")), UUID.randomUUID()),
+        typeId));
   }
 
   public Stream<Node> parseNodesFromCsv(CsvOptions csvOpts, InputStream in) {
-    return TableUtils.toMapped(CsvUtils.readCsv(csvOpts, in)).map(this::mapToNode);
-  }
-
-  private Node mapToNode(GraphId graphId, Map<String, String> row) {
-    NodeId nodeId = NodeId.of(
+    return toNodes(TableUtils.toMapped(CsvUtils.readCsv(csvOpts, in)), row -> NodeId.of(
         MoreObjects.firstNonNull(UUIDs.fromString(row.get("id")), UUID.randomUUID()),
         requireNonNull(row.get("type.id")),
-        graphId.getId());
-    return mapToNode(nodeId, row);
+        requireNonNull(UUIDs.fromString(row.get("type.graph.id")))));
   }
 
-  private Node mapToNode(TypeId typeId, Map<String, String> row) {
-    NodeId nodeId = NodeId.of(
-        MoreObjects.firstNonNull(UUIDs.fromString(row.get("id")), UUID.randomUUID()),
-        typeId);
-    return mapToNode(nodeId, row);
+  private Stream<Node> toNodes(Stream<Map<String, String>> rows,
+      Function<Map<String, String>, NodeId> rowToNodeId) {
+
+    Stream<Tuple2<NodeId, Map<String, String>>> identifiedRows =
+        rows.map(row -> Tuple.of(rowToNodeId.apply(row), row));
+
+    return Streams.stream(Iterators.partition(identifiedRows.iterator(), BATCH_SIZE))
+        .flatMap(batch -> {
+          resolveLabeledReferences(batch);
+          return batch.stream().map(row -> mapToNode(row._1, row._2));
+        })
+        .onClose(identifiedRows::close)
+        .onClose(this::logUnresolvedReferences);
   }
 
-  private Node mapToNode(Map<String, String> row) {
-    NodeId nodeId = NodeId.of(
-        MoreObjects.firstNonNull(UUIDs.fromString(row.get("id")), UUID.randomUUID()),
-        requireNonNull(row.get("type.id")),
-        requireNonNull(UUIDs.fromString(row.get("type.graph.id"))));
-    return mapToNode(nodeId, row);
+  private void resolveLabeledReferences(List<Tuple2<NodeId, Map<String, String>>> rows) {
+    Map<TypeId, Set<NodesByPropertyString>> unresolved = rows.stream()
+        .flatMap(row -> labeledReferences(row._1, row._2))
+        .map(ref -> Tuple.of(ref._2, ref._3))
+        .filter(ref -> !resolvedReferences.containsKey(ref))
+        .collect(groupingBy(ref -> ref._1, LinkedHashMap::new,
+            mapping(ref -> ref._2, toCollection(LinkedHashSet::new))));
+
+    unresolved.forEach((rangeId, labels) -> {
+      List<Select> selects = new ArrayList<>();
+      selects.add(new SelectId());
+      selects.add(new SelectType());
+      labels.stream()
+          .map(NodesByPropertyString::getAttributeId)
+          .distinct()
+          .forEach(attrId -> selects
+              .add(new SelectTypeQualifiedProperty(new TextAttributeId(rangeId, attrId))));
+
+      List<Node> candidates = toListAndClose(referenceLoader.apply(query(selects,
+          and(new NodesByGraphId(rangeId.getGraphId()),
+              new NodesByTypeId(rangeId.getId()),
+              or(ImmutableList.<Specification<NodeId, Node>>copyOf(labels))),
+          emptyList(), -1)));
+
+      labels.forEach(label -> resolvedReferences.put(Tuple.of(rangeId, label), candidates.stream()
+          .filter(candidate -> label.test(candidate.identifier(), candidate))
+          .map(Node::identifier)
+          .findFirst()));
+    });
+  }
+
+  // returns labeled references of a row as (reference attribute id, range id, label) tuples
+  private Stream<Tuple3<String, TypeId, NodesByPropertyString>> labeledReferences(
+      NodeId nodeId, Map<String, String> row) {
+
+    return row.entrySet().stream().flatMap(e -> {
+      Matcher m = REFERENCE_PROPERTY_KEY.matcher(e.getKey());
+      if (!m.matches()) {
+        return Stream.empty();
+      }
+
+      String refAttrId = m.group(2);
+      String textAttrId = m.group(4);
+      String lang = nullToEmpty(m.group(6));
+
+      TypeId attributeRangeId =
+          typeReferenceAttributeRangeIndex
+              .getOrDefault(nodeId.getType(), emptyMap())
+              .get(refAttrId);
+
+      if (attributeRangeId == null) {
+        return Stream.empty();
+      }
+
+      return fromInlineCsv(e.getValue()).stream().map(v -> Tuple.of(
+          refAttrId, attributeRangeId, new NodesByPropertyString(textAttrId, lang, v)));
+    });
   }
 
   private Node mapToNode(NodeId nodeId, Map<String, String> row) {
@@ -140,37 +239,26 @@ public final class CsvToNodes {
       }
     });
 
-    // if there are cols matching REFERENCE_PROPERTY_KEY, try to resolve them to ref IDs.
-    row.forEach((k, vs) -> {
-      Matcher m = REFERENCE_PROPERTY_KEY.matcher(k);
-      if (m.matches()) {
-        String refAttrId = m.group(2);
-        String textAttrId = m.group(4);
-        String lang = nullToEmpty(m.group(6));
-
-        TypeId attributeRangeId =
-            typeReferenceAttributeRangeIndex
-                .getOrDefault(nodeId.getType(), emptyMap())
-                .get(refAttrId);
-
-        if (attributeRangeId != null) {
-          fromInlineCsv(vs).forEach(v -> {
-            Specification<NodeId, Node> refValueSpec = and(
-                new NodesByGraphId(attributeRangeId.getGraphId()),
-                new NodesByTypeId(attributeRangeId.getId()),
-                new NodesByPropertyString(textAttrId, lang, v));
-
-            Optional<NodeId> resolvedReferenceId = referenceIdResolver.apply(refValueSpec);
-
-            resolvedReferenceId.ifPresent(refId -> builder.addReference(refAttrId, refId));
-          });
-        }
-      }
-    });
+    // labeled references are resolved before rows are mapped
+    labeledReferences(nodeId, row).forEach(ref -> resolvedReferences
+        .getOrDefault(Tuple.of(ref._2, ref._3), Optional.empty())
+        .ifPresent(refId -> builder.addReference(ref._1, refId)));
 
     return builder.build();
   }
 
+  private void logUnresolvedReferences() {
+    List<String> unresolved = resolvedReferences.entrySet().stream()
+        .filter(e -> !e.getValue().isPresent())
+        .map(e -> e.getKey()._1 + " " + e.getKey()._2)
+        .collect(toList());
+
+    if (!unresolved.isEmpty()) {
+      log.warn("Could not resolve {} labeled references, e.g. {}", unresolved.size(),
+          unresolved.subList(0, Math.min(unresolved.size(), MAX_LOGGED_UNRESOLVED)));
+    }
+  }
+
   private List<String> fromInlineCsv(String csvRow) {
     StringReader reader = new StringReader(csvRow);
     CSVReader csvReader = new CSVReaderBuilder(reader)
@@ -0,0 +1,184 @@
+package fi.thl.termed.service.node.util;
+
+import static fi.thl.termed.util.query.Queries.query;
+import static java.util.Collections.emptyList;
+import static java.util.stream.Collectors.toList;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Streams;
+import fi.thl.termed.domain.DepthLimitedNodeTree;
+import fi.thl.termed.domain.FilteredNodeTree;
+import fi.thl.termed.domain.LazyLoadingNodeTree;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.NodeTree;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.service.node.select.NodeSelects;
+import fi.thl.termed.service.node.select.SelectTypeQualifiedReference;
+import fi.thl.termed.service.node.select.SelectTypeQualifiedReferrer;
+import fi.thl.termed.service.node.specification.NodesByGraphId;
+import fi.thl.termed.service.node.specification.NodesById;
+import fi.thl.termed.service.node.specification.NodesByTypeId;
+import fi.thl.termed.util.collect.Tuple;
+import fi.thl.termed.util.collect.Tuple2;
+import fi.thl.termed.util.query.AndSpecification;
+import fi.thl.termed.util.query.OrSpecification;
+import fi.thl.termed.util.query.Select;
+import fi.thl.termed.util.service.Service;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Builds node trees for selects breadth first. Roots are processed in batches. For each depth,
+ * nodes referenced (or referring) from all trees of the batch are loaded with one index query per
+ * attribute into a cache shared with the tree reference and referrer loaders. Tree expansion then
+ * finds the nodes from the cache instead of querying the index for each node and attribute.
+ */
+public class IndexedNodeTreeLoader {
+
+  private static final int DEFAULT_BATCH_SIZE = 50;
+
+  private final Service<NodeId, Node> nodeService;
+  private final User user;
+  private final List<Select> selects;
+  private final int batchSize;
+
+  private final boolean selectReferences;
+  private final boolean selectReferrers;
+  private final ImmutableMap<Tuple2<TypeId, String>, Integer> referenceDepths;
+  private final ImmutableMap<Tuple2<TypeId, String>, Integer> referrerDepths;
+
+  private final Cache<NodeId, Node> cache = CacheBuilder.newBuilder().softValues().build();
+
+  public IndexedNodeTreeLoader(Service<NodeId, Node> nodeService, User user,
+      List<Select> selects) {
+    this(nodeService, user, selects, DEFAULT_BATCH_SIZE);
+  }
+
+  public IndexedNodeTreeLoader(Service<NodeId, Node> nodeService, User user,
+      List<Select> selects, int batchSize) {
+    this.nodeService = nodeService;
+    this.user = user;
+    this.selects = selects;
+    this.batchSize = batchSize;
+    this.selectReferences = selects.stream()
+        .anyMatch(s -> s instanceof SelectTypeQualifiedReference);
+    this.selectReferrers = selects.stream()
+        .anyMatch(s -> s instanceof SelectTypeQualifiedReferrer);
+    this.referenceDepths = NodeSelects.toReferenceSelectsWithDepths(selects);
+    this.referrerDepths = NodeSelects.toReferrerSelectsWithDepths(selects);
+  }
+
+  /**
+   * Lazily maps given roots to trees. Roots are read and their trees loaded one batch at a time.
+   */
+  public Stream<NodeTree> toTrees(Stream<Node> roots) {
+    return Streams.stream(Iterators.partition(roots.iterator(), batchSize))
+        .flatMap(batch -> {
+          preload(batch);
+          return batch.stream().map(this::tree);
+        });
+  }
+
+  public NodeTree toTree(Node root) {
+    preload(ImmutableSet.of(root));
+    return tree(root);
+  }
+
+  private NodeTree tree(Node root) {
+    NodeTree tree = new LazyLoadingNodeTree(root,
+        new IndexedReferenceLoader(nodeService, user, selects, cache),
+        new IndexedReferrerLoader(nodeService, user, selects, cache));
+
+    tree = new DepthLimitedNodeTree(tree, referenceDepths, referrerDepths);
+
+    return new FilteredNodeTree(tree, ImmutableSet.copyOf(selects));
+  }
+
+  // Loads nodes of each tree level into the cache. Depth limits are checked the same way as in
+  // DepthLimitedNodeTree. As levels are visited in order, a node is expanded on its first (i.e.
+  // shallowest) occurrence which also covers all of its deeper occurrences.
+  private void preload(Collection<Node> roots) {
+    Set<NodeId> expanded = new HashSet<>();
+    Collection<Node> level = roots;
+
+    for (int depth = 0; !level.isEmpty(); depth++) {
+      SetMultimap<String, NodeId> referenceIds = LinkedHashMultimap.create();
+      SetMultimap<String, NodeId> referrerIds = LinkedHashMultimap.create();
+
+      for (Node node : level) {
+        if (expanded.add(node.identifier())) {
+          if (selectReferences) {
+            collect(node, node.getReferences(), referenceDepths, depth, referenceIds);
+          }
+          if (selectReferrers) {
+            collect(node, node.getReferrers(), referrerDepths, depth, referrerIds);
+          }
+        }
+      }
+
+      List<Node> nextLevel = new ArrayList<>();
+      referenceIds.asMap().values().forEach(ids -> nextLevel.addAll(load(ids)));
+      referrerIds.asMap().values().forEach(ids -> nextLevel.addAll(load(ids)));
+      level = nextLevel;
+    }
+  }
+
+  private void collect(Node node, Multimap<String, NodeId> values,
+      ImmutableMap<Tuple2<TypeId, String>, Integer> depths, int depth,
+      SetMultimap<String, NodeId> results) {
+    values.asMap().forEach((attributeId, ids) -> {
+      if (depth < depths.getOrDefault(Tuple.of(node.getType(), attributeId), 1)) {
+        results.putAll(attributeId, ids);
+      }
+    });
+  }
+
+  // returns given nodes, queries the ones not found from the cache in one query
+  private List<Node> load(Collection<NodeId> ids) {
+    List<Node> nodes = new ArrayList<>();
+    List<NodeId> missingIds = new ArrayList<>();
+
+    ids.forEach(id -> {
+      Node cached = cache.getIfPresent(id);
+      if (cached != null) {
+        nodes.add(cached);
+      } else {
+        missingIds.add(id);
+      }
+    });
+
+    if (missingIds.isEmpty()) {
+      return nodes;
+    }
+
+    try (Stream<Node> results = nodeService.values(query(selects,
+        OrSpecification.or(missingIds.stream()
+            .map(id -> AndSpecification.and(
+                NodesByGraphId.of(id.getTypeGraphId()),
+                NodesByTypeId.of(id.getTypeId()),
+                NodesById.of(id.getId())))
+            .collect(toList())),
+        emptyList(), -1), user)) {
+      results.forEach(node -> {
+        cache.put(node.identifier(), node);
+        nodes.add(node);
+      });
+    }
+
+    return nodes;
+  }
+
+}
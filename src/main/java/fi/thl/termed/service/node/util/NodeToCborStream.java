@@ -0,0 +1,201 @@
+package fi.thl.termed.service.node.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.collect.Multimap;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.NodeTree;
+import fi.thl.termed.domain.StrictLangValue;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.util.DateUtils;
+import fi.thl.termed.util.UUIDs;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Writes nodes and node trees as CBOR. Values are structured as in JSON, i.e. CBOR output decodes
+ * to the same data as the corresponding JSON output.
+ */
+public final class NodeToCborStream {
+
+  private NodeToCborStream() {
+  }
+
+  /**
+   * Writes given nodes to given CBOR generator. Leaves the generator open.
+   */
+  public static void toCbor(Iterator<Node> iterator, JsonGenerator generator) throws IOException {
+    generator.writeStartArray();
+    while (iterator.hasNext()) {
+      toCbor(iterator.next(), generator);
+    }
+    generator.writeEndArray();
+  }
+
+  /**
+   * Writes given node trees to given CBOR generator. Leaves the generator open.
+   */
+  public static void treesToCbor(Iterator<NodeTree> iterator, JsonGenerator generator)
+      throws IOException {
+    generator.writeStartArray();
+    while (iterator.hasNext()) {
+      toCbor(iterator.next(), generator);
+    }
+    generator.writeEndArray();
+  }
+
+  public static void toCbor(Node node, JsonGenerator generator) throws IOException {
+    generator.writeStartObject();
+
+    writeFields(node.getId(), node.getType(), node.getCode().orElse(null),
+        node.getUri().orElse(null), node.getNumber(), generator);
+    writeAuditFields(node.getCreatedBy(), node.getCreatedDate(),
+        node.getLastModifiedBy(), node.getLastModifiedDate(), generator);
+
+    if (!node.getProperties().isEmpty()) {
+      generator.writeFieldName("properties");
+      writeProperties(node.getProperties(), generator);
+    }
+    if (!node.getReferences().isEmpty()) {
+      generator.writeFieldName("references");
+      writeNodeIds(node.getReferences(), generator);
+    }
+    if (!node.getReferrers().isEmpty()) {
+      generator.writeFieldName("referrers");
+      writeNodeIds(node.getReferrers(), generator);
+    }
+
+    generator.writeEndObject();
+  }
+
+  public static void toCbor(NodeTree tree, JsonGenerator generator) throws IOException {
+    generator.writeStartObject();
+
+    writeFields(tree.getId(), tree.getType(), tree.getCode().orElse(null),
+        tree.getUri().orElse(null), tree.getNumber(), generator);
+    writeAuditFields(tree.getCreatedBy(), tree.getCreatedDate(),
+        tree.getLastModifiedBy(), tree.getLastModifiedDate(), generator);
+
+    if (tree.getProperties() != null) {
+      generator.writeFieldName("properties");
+      writeProperties(tree.getProperties(), generator);
+    }
+    if (tree.getReferences() != null) {
+      generator.writeFieldName("references");
+      writeTrees(tree.getReferences(), generator);
+    }
+    if (tree.getReferrers() != null) {
+      generator.writeFieldName("referrers");
+      writeTrees(tree.getReferrers(), generator);
+    }
+
+    generator.writeEndObject();
+  }
+
+  private static void writeFields(UUID id, TypeId type, String code, String uri,
+      Long number, JsonGenerator generator) throws IOException {
+    if (id != null) {
+      generator.writeStringField("id", UUIDs.toString(id));
+    }
+    if (type != null) {
+      generator.writeFieldName("type");
+      writeType(type, generator);
+    }
+    if (code != null) {
+      generator.writeStringField("code", code);
+    }
+    if (uri != null) {
+      generator.writeStringField("uri", uri);
+    }
+    if (number != null) {
+      generator.writeNumberField("number", number);
+    }
+  }
+
+  private static void writeAuditFields(String createdBy, LocalDateTime createdDate,
+      String lastModifiedBy, LocalDateTime lastModifiedDate, JsonGenerator generator)
+      throws IOException {
+    if (createdBy != null) {
+      generator.writeStringField("createdBy", createdBy);
+    }
+    if (createdDate != null) {
+      generator.writeStringField("createdDate", DateUtils.formatZonedDateString(createdDate));
+    }
+    if (lastModifiedBy != null) {
+      generator.writeStringField("lastModifiedBy", lastModifiedBy);
+    }
+    if (lastModifiedDate != null) {
+      generator.writeStringField("lastModifiedDate",
+          DateUtils.formatZonedDateString(lastModifiedDate));
+    }
+  }
+
+  private static void writeType(TypeId type, JsonGenerator generator) throws IOException {
+    generator.writeStartObject();
+    generator.writeStringField("id", type.getId());
+    generator.writeFieldName("graph");
+    generator.writeStartObject();
+    generator.writeStringField("id", UUIDs.toString(type.getGraphId()));
+    generator.writeEndObject();
+    generator.writeEndObject();
+  }
+
+  private static void writeProperties(Multimap<String, StrictLangValue> properties,
+      JsonGenerator generator) throws IOException {
+    generator.writeStartObject();
+    for (Map.Entry<String, Collection<StrictLangValue>> entry : properties.asMap().entrySet()) {
+      generator.writeFieldName(entry.getKey());
+      generator.writeStartArray();
+      for (StrictLangValue value : entry.getValue()) {
+        generator.writeStartObject();
+        generator.writeStringField("lang", value.getLang());
+        if (value.getValue() != null) {
+          generator.writeStringField("value", value.getValue());
+        }
+        if (value.getRegex() != null) {
+          generator.writeStringField("regex", value.getRegex());
+        }
+        generator.writeEndObject();
+      }
+      generator.writeEndArray();
+    }
+    generator.writeEndObject();
+  }
+
+  private static void writeNodeIds(Multimap<String, NodeId> nodeIds, JsonGenerator generator)
+      throws IOException {
+    generator.writeStartObject();
+    for (Map.Entry<String, Collection<NodeId>> entry : nodeIds.asMap().entrySet()) {
+      generator.writeFieldName(entry.getKey());
+      generator.writeStartArray();
+      for (NodeId nodeId : entry.getValue()) {
+        generator.writeStartObject();
+        generator.writeStringField("id", UUIDs.toString(nodeId.getId()));
+        generator.writeFieldName("type");
+        writeType(nodeId.getType(), generator);
+        generator.writeEndObject();
+      }
+      generator.writeEndArray();
+    }
+    generator.writeEndObject();
+  }
+
+  private static void writeTrees(Multimap<String, ? extends NodeTree> trees,
+      JsonGenerator generator) throws IOException {
+    generator.writeStartObject();
+    for (String key : trees.keySet()) {
+      generator.writeFieldName(key);
+      generator.writeStartArray();
+      for (NodeTree value : trees.get(key)) {
+        toCbor(value, generator);
+      }
+      generator.writeEndArray();
+    }
+    generator.writeEndObject();
+  }
+
+}
@@ -0,0 +1,155 @@
+package fi.thl.termed.service.node.util;
+
+import com.google.common.collect.Multimap;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.StrictLangValue;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.util.DateUtils;
+import fi.thl.termed.util.UUIDs;
+import fi.thl.termed.util.xml.JsonXmlStreamWriter;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Streams nodes as XML. Mirrors {@link NodeToJsonStream}, the XML has the same structure as node
+ * JSON, using the elements of {@link fi.thl.termed.util.xml.JsonToXmlConverter}.
+ */
+public final class NodeToXmlStream {
+
+  private NodeToXmlStream() {
+  }
+
+  /**
+   * Writes given nodes to given XML writer. Leaves the XML writer open.
+   */
+  public static void toXml(Iterator<Node> iterator, JsonXmlStreamWriter writer)
+      throws XMLStreamException {
+    writer.beginArray();
+    while (iterator.hasNext()) {
+      toXml(iterator.next(), writer);
+    }
+    writer.endArray();
+  }
+
+  /**
+   * Writes given node to given XML writer. Leaves the XML writer open.
+   */
+  public static void toXml(Node node, JsonXmlStreamWriter writer) throws XMLStreamException {
+    writer.beginObject();
+
+    if (node.getId() != null) {
+      writer.name("id");
+      writer.value(UUIDs.toString(node.getId()));
+    }
+
+    writer.name("type");
+    writeType(node.getType(), writer);
+
+    if (node.getCode().isPresent()) {
+      writer.name("code");
+      writer.value(node.getCode().get());
+    }
+    if (node.getUri().isPresent()) {
+      writer.name("uri");
+      writer.value(node.getUri().get());
+    }
+    if (node.getNumber() != null) {
+      writer.name("number");
+      writer.value(node.getNumber());
+    }
+
+    if (node.getCreatedBy() != null) {
+      writer.name("createdBy");
+      writer.value(node.getCreatedBy());
+    }
+    if (node.getCreatedDate() != null) {
+      writer.name("createdDate");
+      writer.value(DateUtils.formatZonedDateString(node.getCreatedDate()));
+    }
+    if (node.getLastModifiedBy() != null) {
+      writer.name("lastModifiedBy");
+      writer.value(node.getLastModifiedBy());
+    }
+    if (node.getLastModifiedDate() != null) {
+      writer.name("lastModifiedDate");
+      writer.value(DateUtils.formatZonedDateString(node.getLastModifiedDate()));
+    }
+
+    // empty values are omitted as missing values are read as empty
+    if (!node.getProperties().isEmpty()) {
+      writer.name("properties");
+      writeProperties(node.getProperties(), writer);
+    }
+    if (!node.getReferences().isEmpty()) {
+      writer.name("references");
+      writeNodeIds(node.getReferences(), writer);
+    }
+    if (!node.getReferrers().isEmpty()) {
+      writer.name("referrers");
+      writeNodeIds(node.getReferrers(), writer);
+    }
+
+    writer.endObject();
+  }
+
+  private static void writeType(TypeId type, JsonXmlStreamWriter writer)
+      throws XMLStreamException {
+    writer.beginObject();
+    writer.name("id");
+    writer.value(type.getId());
+    writer.name("graph");
+    writer.beginObject();
+    writer.name("id");
+    writer.value(UUIDs.toString(type.getGraphId()));
+    writer.endObject();
+    writer.endObject();
+  }
+
+  private static void writeProperties(Multimap<String, StrictLangValue> properties,
+      JsonXmlStreamWriter writer) throws XMLStreamException {
+    writer.beginObject();
+    for (Map.Entry<String, Collection<StrictLangValue>> entry : properties.asMap().entrySet()) {
+      writer.name(entry.getKey());
+      writer.beginArray();
+      for (StrictLangValue value : entry.getValue()) {
+        writer.beginObject();
+        writer.name("lang");
+        writer.value(value.getLang());
+        if (value.getValue() != null) {
+          writer.name("value");
+          writer.value(value.getValue());
+        }
+        if (value.getRegex() != null) {
+          writer.name("regex");
+          writer.value(value.getRegex());
+        }
+        writer.endObject();
+      }
+      writer.endArray();
+    }
+    writer.endObject();
+  }
+
+  private static void writeNodeIds(Multimap<String, NodeId> nodeIds,
+      JsonXmlStreamWriter writer) throws XMLStreamException {
+    writer.beginObject();
+    for (Map.Entry<String, Collection<NodeId>> entry : nodeIds.asMap().entrySet()) {
+      writer.name(entry.getKey());
+      writer.beginArray();
+      for (NodeId nodeId : entry.getValue()) {
+        writer.beginObject();
+        writer.name("id");
+        writer.value(UUIDs.toString(nodeId.getId()));
+        writer.name("type");
+        writeType(nodeId.getType(), writer);
+        writer.endObject();
+      }
+      writer.endArray();
+    }
+    writer.endObject();
+  }
+
+}
@@ -4,10 +4,9 @@ import com.google.common.collect.Multimap;
 import com.google.gson.stream.JsonWriter;
 import fi.thl.termed.domain.NodeTree;
 import fi.thl.termed.domain.StrictLangValue;
+import fi.thl.termed.util.DateUtils;
 import fi.thl.termed.util.UUIDs;
 import java.io.IOException;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
 import java.util.Iterator;
 
 public final class NodeTreeToJsonStream {
@@ -55,9 +54,7 @@ public final class NodeTreeToJsonStream {
     }
     if (tree.getCreatedDate() != null) {
       writer.name("createdDate");
-      writer.value(tree.getCreatedDate()
-          .atZone(ZoneId.systemDefault())
-          .format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
+      writer.value(DateUtils.formatZonedDateString(tree.getCreatedDate()));
     }
     if (tree.getLastModifiedBy() != null) {
       writer.name("lastModifiedBy");
@@ -65,9 +62,7 @@ public final class NodeTreeToJsonStream {
     }
     if (tree.getLastModifiedDate() != null) {
       writer.name("lastModifiedDate");
-      writer.value(tree.getLastModifiedDate()
-          .atZone(ZoneId.systemDefault())
-          .format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
+      writer.value(DateUtils.formatZonedDateString(tree.getLastModifiedDate()));
     }
 
     if (tree.getType() != null) {
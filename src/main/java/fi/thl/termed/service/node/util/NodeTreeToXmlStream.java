@@ -0,0 +1,157 @@
+package fi.thl.termed.service.node.util;
+
+import com.google.common.collect.Multimap;
+import fi.thl.termed.domain.NodeTree;
+import fi.thl.termed.domain.StrictLangValue;
+import fi.thl.termed.util.DateUtils;
+import fi.thl.termed.util.UUIDs;
+import fi.thl.termed.util.xml.JsonXmlStreamWriter;
+import java.util.Iterator;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Streams node trees as XML. Mirrors {@link NodeTreeToJsonStream}, null values are omitted as in
+ * node tree JSON.
+ */
+public final class NodeTreeToXmlStream {
+
+  private NodeTreeToXmlStream() {
+  }
+
+  /**
+   * Writes given node trees to given XML writer. Leaves the XML writer open.
+   */
+  public static void toXml(Iterator<NodeTree> iterator, JsonXmlStreamWriter writer)
+      throws XMLStreamException {
+    writer.beginArray();
+    while (iterator.hasNext()) {
+      NodeTreeToXmlStream.toXml(iterator.next(), writer);
+    }
+    writer.endArray();
+  }
+
+  /**
+   * Writes given node tree to given XML writer. Leaves the XML writer open.
+   */
+  public static void toXml(NodeTree tree, JsonXmlStreamWriter writer) throws XMLStreamException {
+    writer.beginObject();
+
+    if (tree.getId() != null) {
+      writer.name("id");
+      writer.value(UUIDs.toString(tree.getId()));
+    }
+    if (tree.getCode().isPresent()) {
+      writer.name("code");
+      writer.value(tree.getCode().get());
+    }
+    if (tree.getUri().isPresent()) {
+      writer.name("uri");
+      writer.value(tree.getUri().get());
+    }
+    if (tree.getNumber() != null) {
+      writer.name("number");
+      writer.value(tree.getNumber());
+    }
+
+    if (tree.getCreatedBy() != null) {
+      writer.name("createdBy");
+      writer.value(tree.getCreatedBy());
+    }
+    if (tree.getCreatedDate() != null) {
+      writer.name("createdDate");
+      writer.value(DateUtils.formatZonedDateString(tree.getCreatedDate()));
+    }
+    if (tree.getLastModifiedBy() != null) {
+      writer.name("lastModifiedBy");
+      writer.value(tree.getLastModifiedBy());
+    }
+    if (tree.getLastModifiedDate() != null) {
+      writer.name("lastModifiedDate");
+      writer.value(DateUtils.formatZonedDateString(tree.getLastModifiedDate()));
+    }
+
+    if (tree.getType() != null) {
+      writer.name("type");
+      writer.beginObject();
+      writer.name("id");
+      writer.value(tree.getType().getId());
+      writer.name("graph");
+      writer.beginObject();
+      writer.name("id");
+      writer.value(UUIDs.toString(tree.getType().getGraphId()));
+      writer.endObject();
+      writer.endObject();
+    }
+
+    writeProperties(tree.getProperties(), writer);
+    writeReferences(tree.getReferences(), writer);
+    writeReferrers(tree.getReferrers(), writer);
+
+    writer.endObject();
+  }
+
+  private static void writeProperties(Multimap<String, StrictLangValue> properties,
+      JsonXmlStreamWriter writer) throws XMLStreamException {
+    if (properties != null) {
+      writer.name("properties");
+      writer.beginObject();
+      for (String key : properties.keySet()) {
+        writer.name(key);
+        writer.beginArray();
+        for (StrictLangValue value : properties.get(key)) {
+          writer.beginObject();
+          if (value.getLang() != null) {
+            writer.name("lang");
+            writer.value(value.getLang());
+          }
+          if (value.getValue() != null) {
+            writer.name("value");
+            writer.value(value.getValue());
+          }
+          if (value.getRegex() != null) {
+            writer.name("regex");
+            writer.value(value.getRegex());
+          }
+          writer.endObject();
+        }
+        writer.endArray();
+      }
+      writer.endObject();
+    }
+  }
+
+  private static void writeReferences(Multimap<String, ? extends NodeTree> references,
+      JsonXmlStreamWriter writer) throws XMLStreamException {
+    if (references != null) {
+      writer.name("references");
+      writer.beginObject();
+      for (String key : references.keySet()) {
+        writer.name(key);
+        writer.beginArray();
+        for (NodeTree value : references.get(key)) {
+          toXml(value, writer);
+        }
+        writer.endArray();
+      }
+      writer.endObject();
+    }
+  }
+
+  private static void writeReferrers(Multimap<String, ? extends NodeTree> referrers,
+      JsonXmlStreamWriter writer) throws XMLStreamException {
+    if (referrers != null) {
+      writer.name("referrers");
+      writer.beginObject();
+      for (String key : referrers.keySet()) {
+        writer.name(key);
+        writer.beginArray();
+        for (NodeTree value : referrers.get(key)) {
+          toXml(value, writer);
+        }
+        writer.endArray();
+      }
+      writer.endObject();
+    }
+  }
+
+}
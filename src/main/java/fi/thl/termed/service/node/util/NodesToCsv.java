@@ -3,71 +3,252 @@ package fi.thl.termed.service.node.util;
 import static com.google.common.collect.Multimaps.filterKeys;
 import static fi.thl.termed.util.TableUtils.toTable;
 import static fi.thl.termed.util.csv.CsvUtils.writeCsv;
+import static fi.thl.termed.util.query.AndSpecification.and;
+import static fi.thl.termed.util.query.OrSpecification.or;
+import static fi.thl.termed.util.query.Queries.query;
+import static java.util.Collections.emptyList;
 import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.mapping;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.Streams;
 import com.opencsv.CSVWriter;
 import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.ReferenceAttribute;
 import fi.thl.termed.domain.StrictLangValue;
+import fi.thl.termed.domain.TextAttribute;
+import fi.thl.termed.domain.TextAttributeId;
+import fi.thl.termed.domain.Type;
+import fi.thl.termed.domain.User;
 import fi.thl.termed.service.node.select.SelectAllProperties;
 import fi.thl.termed.service.node.select.SelectAllReferences;
 import fi.thl.termed.service.node.select.SelectId;
 import fi.thl.termed.service.node.select.SelectProperty;
 import fi.thl.termed.service.node.select.SelectReference;
 import fi.thl.termed.service.node.select.SelectType;
+import fi.thl.termed.service.node.select.SelectTypeQualifiedProperty;
+import fi.thl.termed.service.node.specification.NodesByGraphId;
+import fi.thl.termed.service.node.specification.NodesById;
+import fi.thl.termed.service.node.specification.NodesByTypeId;
 import fi.thl.termed.util.UUIDs;
 import fi.thl.termed.util.collect.MapUtils;
 import fi.thl.termed.util.csv.CsvOptions;
+import fi.thl.termed.util.query.Query;
 import fi.thl.termed.util.query.Select;
 import fi.thl.termed.util.query.SelectAll;
 import fi.thl.termed.util.query.Selects;
+import fi.thl.termed.util.service.Service;
 import java.io.OutputStream;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
-import java.util.function.Function;
 import java.util.stream.Stream;
 
 /**
- * Write stream of nodes to OutputStream or Writer as CSV. This operation is not actually streaming
- * as all nodes are first transformed to maps and then to table and finally written in one
- * operation.
+ * Write stream of nodes to OutputStream as CSV. Columns are decided up front, e.g. from the type
+ * schema and index field names, and each node is then written as a row as it arrives. Memory use
+ * thus does not depend on the number of nodes.
  */
 public final class NodesToCsv {
 
+  // number of rows for which reference labels are loaded together
+  private static final int LABEL_BATCH_ROWS = 1000;
+  private static final int LABEL_CACHE_SIZE = 100_000;
+
+  private static final String LABEL_MISSING = "<WARNING: LABEL MISSING>";
+
+  // selectable node fields in column order after id and type
+  private static final List<String> FIELDS = ImmutableList.of(
+      "code", "uri", "number", "createdBy", "createdDate", "lastModifiedBy", "lastModifiedDate");
+
+  // suffixes of property index fields that are not languages
+  private static final Set<String> INDEX_FIELD_SUFFIXES = ImmutableSet.of("string", "sortable");
+
   private boolean useLabeledReferences;
   private String labelProperty;
   private String labelPropertyLang;
-  private Function<NodeId, Optional<Node>> nodeLoader;
+  private Service<NodeId, Node> nodeService;
+  private User user;
+
+  private Cache<NodeId, String> labelCache =
+      CacheBuilder.newBuilder().maximumSize(LABEL_CACHE_SIZE).build();
 
   public NodesToCsv() {
-    this(false, "prefLabel", "", (nodeId) -> Optional.empty());
+    this(false, "prefLabel", "", null, null);
   }
 
+  /**
+   * If labeled references are used, labels of referenced nodes are loaded in batches from given
+   * node service, reading only the label property.
+   */
   public NodesToCsv(
       boolean useLabeledReferences,
       String labelProperty,
       String labelPropertyLang,
-      Function<NodeId, Optional<Node>> nodeLoader) {
+      Service<NodeId, Node> nodeService,
+      User user) {
     this.useLabeledReferences = useLabeledReferences;
     this.labelProperty = labelProperty;
     this.labelPropertyLang = labelPropertyLang;
-    this.nodeLoader = nodeLoader;
+    this.nodeService = nodeService;
+    this.user = user;
+  }
+
+  /**
+   * Returns columns for nodes of given types. Property and reference columns are included if given
+   * index field names show that some node has values for them. Property languages are read from
+   * the field names too.
+   */
+  public List<String> columns(List<Type> types, Set<String> indexFieldNames,
+      List<Select> selects) {
+    Set<Select> s = ImmutableSet.copyOf(selects);
+    Set<String> columns = new LinkedHashSet<>();
+
+    if (s.contains(new SelectAll()) || s.contains(new SelectId())) {
+      columns.add("id");
+    }
+    if (s.contains(new SelectAll()) || s.contains(new SelectType())) {
+      columns.add("type.id");
+      columns.add("type.graph.id");
+    }
+    FIELDS.stream()
+        .filter(field -> s.contains(new SelectAll()) || s.contains(Selects.field(field)))
+        .forEach(columns::add);
+
+    for (Type type : types) {
+      for (TextAttribute textAttribute : type.getTextAttributes()) {
+        String attrId = textAttribute.getId();
+        if (isSelectedProperty(attrId, s)) {
+          columns.addAll(propertyColumns(attrId, indexFieldNames));
+        }
+      }
+    }
+
+    for (Type type : types) {
+      for (ReferenceAttribute referenceAttribute : type.getReferenceAttributes()) {
+        String attrId = referenceAttribute.getId();
+        if (isSelectedReference(attrId, s)
+            && indexFieldNames.contains("references." + attrId + ".id")) {
+          columns.add(useLabeledReferences
+              ? labeledReferenceColumn(attrId)
+              : "references." + attrId + ".id");
+        }
+      }
+    }
+
+    return ImmutableList.copyOf(columns);
+  }
+
+  // e.g. properties.prefLabel and properties.prefLabel.fi, see NodeToDocument
+  private List<String> propertyColumns(String attrId, Set<String> indexFieldNames) {
+    String column = "properties." + attrId;
+
+    if (!indexFieldNames.contains(column)) {
+      return emptyList();
+    }
+
+    List<String> columns = new ArrayList<>();
+    columns.add(column);
+    indexFieldNames.stream()
+        .filter(name -> name.startsWith(column + "."))
+        .map(name -> name.substring(column.length() + 1))
+        .filter(lang -> !lang.contains(".") && !INDEX_FIELD_SUFFIXES.contains(lang))
+        .sorted()
+        .forEach(lang -> columns.add(column + "." + lang));
+    return columns;
   }
 
-  public void writeAsCsv(Stream<Node> nodes, List<Select> selects, CsvOptions csvOpts,
+  /**
+   * Writes nodes as CSV with given columns, values in any other columns are not written. Nodes
+   * are written as they arrive and the stream is closed.
+   */
+  public void writeAsCsv(List<String> columns, Stream<Node> nodes, List<Select> selects,
+      CsvOptions csvOpts, OutputStream out) {
+    Set<Select> selectsSet = ImmutableSet.copyOf(selects);
+    writeCsv(out, csvOpts, toTable(columns,
+        withLoadedLabels(nodes, selectsSet).map(n -> nodeToRowMap(n, selectsSet))));
+  }
+
+  /**
+   * Writes given nodes as CSV with all columns that the nodes have values for.
+   */
+  public void writeAsCsv(List<Node> nodes, List<Select> selects, CsvOptions csvOpts,
       OutputStream out) {
     Set<Select> selectsSet = ImmutableSet.copyOf(selects);
-    writeCsv(out, csvOpts,
-        toTable(nodes.map(n -> nodeToRowMap(n, selectsSet)).collect(toList())).stream());
+
+    Set<String> columns = new LinkedHashSet<>();
+    nodes.forEach(n -> columns.addAll(nodeToColumns(n, selectsSet)));
+
+    writeAsCsv(ImmutableList.copyOf(columns), nodes.stream(), selects, csvOpts, out);
+  }
+
+  // loads reference labels for each batch of nodes before the nodes are passed on
+  private Stream<Node> withLoadedLabels(Stream<Node> nodes, Set<Select> s) {
+    if (!useLabeledReferences) {
+      return nodes;
+    }
+
+    return Streams.stream(Iterators.partition(nodes.iterator(), LABEL_BATCH_ROWS))
+        .flatMap(batch -> {
+          loadLabels(batch.stream()
+              .flatMap(node -> selectedReferences(node.getReferences(), s).values().stream())
+              .filter(refId -> labelCache.getIfPresent(refId) == null)
+              .collect(toSet()));
+          return batch.stream();
+        })
+        .onClose(nodes::close);
+  }
+
+  private void loadLabels(Set<NodeId> referenceIds) {
+    referenceIds.stream().collect(groupingBy(NodeId::getType)).forEach((typeId, ids) -> {
+      Query<NodeId, Node> query = query(
+          ImmutableList.of(new SelectId(), new SelectType(),
+              new SelectTypeQualifiedProperty(new TextAttributeId(typeId, labelProperty))),
+          and(NodesByGraphId.of(typeId.getGraphId()),
+              NodesByTypeId.of(typeId.getId()),
+              or(ids.stream().map(id -> NodesById.of(id.getId())).collect(toList()))),
+          emptyList(), -1);
+
+      try (Stream<Node> references = nodeService.values(query, user)) {
+        references.forEach(ref -> labelCache.put(ref.identifier(), label(ref)));
+      }
+
+      // remember missing (e.g. unreadable) references too so that they are not queried again
+      ids.stream()
+          .filter(id -> labelCache.getIfPresent(id) == null)
+          .forEach(id -> labelCache.put(id, LABEL_MISSING));
+    });
+  }
+
+  // same keys as in nodeToRowMap but without loading labels of referenced nodes
+  private Set<String> nodeToColumns(Node node, Set<Select> s) {
+    Set<String> columns = new LinkedHashSet<>();
+
+    columns.addAll(identifiersToMap(node, s).keySet());
+    columns.addAll(auditInfoToMap(node, s).keySet());
+    columns.addAll(propertiesToMap(node.getProperties(), s).keySet());
+
+    if (useLabeledReferences) {
+      selectedReferences(node.getReferences(), s).keySet()
+          .forEach(attrId -> columns.add(labeledReferenceColumn(attrId)));
+    } else {
+      columns.addAll(referencesToMap(node.getReferences(), s).keySet());
+    }
+
+    return columns;
   }
 
   private Map<String, String> nodeToRowMap(Node node, Set<Select> s) {
@@ -135,9 +316,7 @@ public final class NodesToCsv {
       Set<Select> s) {
 
     Multimap<String, StrictLangValue> selectedProperties =
-        filterKeys(properties, key -> s.contains(new SelectAll())
-            || s.contains(new SelectAllProperties())
-            || s.contains(new SelectProperty(key)));
+        filterKeys(properties, key -> isSelectedProperty(key, s));
 
     return selectedProperties.asMap().entrySet().stream()
         .flatMap(entry -> {
@@ -164,12 +343,7 @@ public final class NodesToCsv {
       Multimap<String, NodeId> references,
       Set<Select> s) {
 
-    Multimap<String, NodeId> selectedReferences =
-        filterKeys(references, key -> s.contains(new SelectAll())
-            || s.contains(new SelectAllReferences())
-            || s.contains(new SelectReference(key)));
-
-    return selectedReferences.asMap().entrySet().stream()
+    return selectedReferences(references, s).asMap().entrySet().stream()
         .map(entry -> {
           String attrId = entry.getKey();
           Collection<NodeId> referenceIds = entry.getValue();
@@ -189,18 +363,12 @@ public final class NodesToCsv {
       Multimap<String, NodeId> references,
       Set<Select> s) {
 
-    Multimap<String, NodeId> selectedReferences =
-        filterKeys(references, key -> s.contains(new SelectAll())
-            || s.contains(new SelectAllReferences())
-            || s.contains(new SelectReference(key)));
-
-    return selectedReferences.asMap().entrySet().stream()
+    return selectedReferences(references, s).asMap().entrySet().stream()
         .map(entry -> {
           String attrId = entry.getKey();
           Collection<NodeId> referenceIds = entry.getValue();
 
-          String key = "r." + attrId + ".p." + labelProperty +
-              (labelPropertyLang.isEmpty() ? "" : "." + labelPropertyLang);
+          String key = labeledReferenceColumn(attrId);
           String value = toInlineCsv(referenceIds.stream()
               .map(this::mapNodeIdToLabel)
               .collect(toList()));
@@ -210,14 +378,45 @@ public final class NodesToCsv {
         .collect(MapUtils.toImmutableMap());
   }
 
+  private Multimap<String, NodeId> selectedReferences(Multimap<String, NodeId> references,
+      Set<Select> s) {
+    return filterKeys(references, key -> isSelectedReference(key, s));
+  }
+
+  private boolean isSelectedProperty(String attrId, Set<Select> s) {
+    return s.contains(new SelectAll())
+        || s.contains(new SelectAllProperties())
+        || s.contains(new SelectProperty(attrId));
+  }
+
+  private boolean isSelectedReference(String attrId, Set<Select> s) {
+    return s.contains(new SelectAll())
+        || s.contains(new SelectAllReferences())
+        || s.contains(new SelectReference(attrId));
+  }
+
+  private String labeledReferenceColumn(String attrId) {
+    return "r." + attrId + ".p." + labelProperty +
+        (labelPropertyLang.isEmpty() ? "" : "." + labelPropertyLang);
+  }
+
   private String mapNodeIdToLabel(NodeId nodeId) {
-    return nodeLoader.apply(nodeId)
-        .flatMap(node -> node.getProperties()
-            .get(labelProperty).stream()
-            .filter(v -> labelPropertyLang.isEmpty() || v.getLang().equals(labelPropertyLang))
-            .map(StrictLangValue::getValue)
-            .findFirst())
-        .orElse("<WARNING: LABEL MISSING>");
+    String label = labelCache.getIfPresent(nodeId);
+    if (label == null) {
+      // evicted from cache during current batch
+      loadLabels(ImmutableSet.of(nodeId));
+      label = labelCache.getIfPresent(nodeId);
+    }
+    return label != null ? label : LABEL_MISSING;
+  }
+
+  private String label(Node node) {
+    return node.getProperties()
+        .get(labelProperty).stream()
+        .filter(v -> labelPropertyLang.isEmpty() || v.getLang().equals(labelPropertyLang))
+        .map(StrictLangValue::getValue)
+        .findFirst()
+        .orElse(LABEL_MISSING);
   }
 
   private String toInlineCsv(List<String> row) {
@@ -0,0 +1,449 @@
+package fi.thl.termed.service.node.util;
+
+import static fi.thl.termed.util.RegularExpressions.URN_UUID;
+import static fi.thl.termed.util.UUIDs.nameUUIDFromString;
+import static fi.thl.termed.util.io.GzipUtils.decompressIfGzipped;
+import static fi.thl.termed.util.json.JsonUtils.toCompactJson;
+import static java.util.Collections.emptyList;
+import static java.util.stream.Collectors.toList;
+
+import com.google.common.base.Ascii;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Streams;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import com.google.gson.Gson;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.ReferenceAttribute;
+import fi.thl.termed.domain.StrictLangValue;
+import fi.thl.termed.domain.TextAttribute;
+import fi.thl.termed.domain.Type;
+import fi.thl.termed.service.node.specification.NodesByGraphId;
+import fi.thl.termed.service.node.specification.NodesById;
+import fi.thl.termed.service.node.specification.NodesByTypeId;
+import fi.thl.termed.service.node.specification.NodesByUri;
+import fi.thl.termed.util.StringUtils;
+import fi.thl.termed.util.URIs;
+import fi.thl.termed.util.UUIDs;
+import fi.thl.termed.util.collect.OptionalUtils;
+import fi.thl.termed.util.query.AndSpecification;
+import fi.thl.termed.util.query.OrSpecification;
+import fi.thl.termed.util.query.Query;
+import fi.thl.termed.util.query.Selects;
+import fi.thl.termed.util.query.Specification;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.lang.LabelToNode;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.vocabulary.RDF;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+
+/**
+ * Streaming alternative to {@link RdfModelToNodes} for large inputs. Input is spilled to a
+ * temporary file and parsed twice: first pass finds typed resources, second pass collects their
+ * values. Resources and partially built nodes are kept in a disk backed map, and ids of existing
+ * nodes are resolved with batched queries instead of one query per URI.
+ */
+public class RdfStreamToNodes {
+
+  // each URI adds up to three clauses to a lookup query, keep below Lucene's clause limit
+  private static final int LOOKUP_BATCH_SIZE = 250;
+  private static final int BUILDER_CACHE_SIZE = 10_000;
+  private static final int STORE_CACHE_SIZE_MB = 16;
+
+  private static final String SEP = "\u0000";
+
+  private final List<Type> types;
+  private final Function<Query<NodeId, Node>, Stream<Node>> nodeProvider;
+  private final boolean importCodes;
+  private final Gson gson;
+  private final int builderCacheSize;
+
+  private final Map<String, List<Integer>> typeIndexesByUri = new HashMap<>();
+
+  public RdfStreamToNodes(List<Type> types,
+      Function<Query<NodeId, Node>, Stream<Node>> nodeProvider,
+      boolean importCodes, Gson gson) {
+    this(types, nodeProvider, importCodes, gson, BUILDER_CACHE_SIZE);
+  }
+
+  RdfStreamToNodes(List<Type> types,
+      Function<Query<NodeId, Node>, Stream<Node>> nodeProvider,
+      boolean importCodes, Gson gson, int builderCacheSize) {
+    this.types = types.stream().filter(t -> t.getUri().isPresent()).collect(toList());
+    this.nodeProvider = nodeProvider;
+    this.importCodes = importCodes;
+    this.gson = gson;
+    this.builderCacheSize = builderCacheSize;
+
+    for (int i = 0; i < this.types.size(); i++) {
+      typeIndexesByUri.computeIfAbsent(this.types.get(i).getUri().orElse(null),
+          uri -> new ArrayList<>()).add(i);
+    }
+  }
+
+  /**
+   * Reads given (possibly gzip compressed) input and returns nodes parsed from it. Returned
+   * stream must be closed to remove temporary files.
+   */
+  public Stream<Node> apply(InputStream input, Lang lang) throws IOException {
+    Path workDir = Files.createTempDirectory("termed-rdf-import-");
+
+    try {
+      Path spill = workDir.resolve("input");
+      Files.copy(input, spill);
+
+      MVStore store = new MVStore.Builder()
+          .fileName(workDir.resolve("store").toString())
+          .cacheSize(STORE_CACHE_SIZE_MB)
+          .open();
+
+      try {
+        Import rdfImport = new Import(store, spill, lang);
+        rdfImport.run();
+
+        return Streams.stream(rdfImport.nodes.values())
+            .map(json -> gson.fromJson(json, Node.class))
+            .onClose(() -> {
+              store.closeImmediately();
+              deleteRecursively(workDir);
+            });
+      } catch (IOException | RuntimeException | Error e) {
+        store.closeImmediately();
+        throw e;
+      }
+    } catch (IOException | RuntimeException | Error e) {
+      deleteRecursively(workDir);
+      throw e;
+    }
+  }
+
+  private static void deleteRecursively(Path dir) {
+    try {
+      MoreFiles.deleteRecursively(dir, RecursiveDeleteOption.ALLOW_INSECURE);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private class Import {
+
+    private final Path spill;
+    private final Lang lang;
+    // same seed for both passes to get same blank node labels
+    private final UUID blankNodeSeed = UUID.randomUUID();
+
+    // resource key -> comma separated indexes of matching types
+    private final MVMap<String, String> resourceTypes;
+    // resource key -> node id
+    private final MVMap<String, String> resourceIds;
+    // resource key -> node json
+    private final MVMap<String, String> nodes;
+    // type index, object uri, subject key, attribute id -> ""
+    private final MVMap<String, String> externalReferences;
+    // type index, object uri -> node id of existing node
+    private final MVMap<String, String> externalIds;
+
+    // recently used node builders in access order, least recently used are spilled to nodes
+    private final LinkedHashMap<String, Node.Builder> builders =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    Import(MVStore store, Path spill, Lang lang) {
+      this.spill = spill;
+      this.lang = lang;
+      this.resourceTypes = store.openMap("resourceTypes");
+      this.resourceIds = store.openMap("resourceIds");
+      this.nodes = store.openMap("nodes");
+      this.externalReferences = store.openMap("externalReferences");
+      this.externalIds = store.openMap("externalIds");
+    }
+
+    void run() throws IOException {
+      parse(new StreamRDFBase() {
+        @Override
+        public void triple(Triple triple) {
+          collectTypedResource(triple);
+        }
+      });
+
+      initNodes();
+
+      parse(new StreamRDFBase() {
+        @Override
+        public void triple(Triple triple) {
+          collectValues(triple);
+        }
+      });
+
+      resolveExternalReferences();
+
+      builders.forEach(this::spill);
+      builders.clear();
+    }
+
+    private void parse(StreamRDFBase sink) throws IOException {
+      try (InputStream in = decompressIfGzipped(
+          new BufferedInputStream(Files.newInputStream(spill)))) {
+        RDFParser.create()
+            .source(in)
+            .lang(lang)
+            .labelToNode(LabelToNode.createScopeByDocumentHash(blankNodeSeed))
+            .parse(sink);
+      }
+    }
+
+    private void collectTypedResource(Triple triple) {
+      if (!triple.getPredicate().getURI().equals(RDF.type.getURI())
+          || !triple.getObject().isURI()) {
+        return;
+      }
+
+      List<Integer> typeIndexes = typeIndexesByUri.get(triple.getObject().getURI());
+
+      if (typeIndexes != null) {
+        String key = key(triple.getSubject());
+        String existing = resourceTypes.get(key);
+
+        int[] merged = Stream.concat(
+            existing != null ? Arrays.stream(existing.split(",")) : Stream.empty(),
+            typeIndexes.stream().map(String::valueOf))
+            .mapToInt(Integer::parseInt).distinct().sorted().toArray();
+
+        resourceTypes.put(key, String.join(",",
+            Arrays.stream(merged).mapToObj(String::valueOf).collect(toList())));
+      }
+    }
+
+    // resource gets its id from the last matching type, existing nodes are looked up by uri
+    private void initNodes() {
+      Iterator<String> keys = resourceTypes.keyIterator(null);
+      ListMultimap<Integer, String> batch = ArrayListMultimap.create();
+
+      while (keys.hasNext()) {
+        String key = keys.next();
+        batch.put(nodeTypeIndex(key), key);
+
+        if (batch.size() >= LOOKUP_BATCH_SIZE || !keys.hasNext()) {
+          batch.asMap().forEach((typeIndex, uris) -> initNodes(typeIndex, uris));
+          batch.clear();
+        }
+      }
+    }
+
+    private void initNodes(Integer typeIndex, Iterable<String> uris) {
+      Type type = types.get(typeIndex);
+
+      Map<String, NodeId> existingIdsByUri = new HashMap<>();
+      try (Stream<Node> existing = find(type, Streams.stream(uris)
+          .map(NodesByUri::of).collect(toList()))) {
+        existing.forEach(n -> n.getUri()
+            .ifPresent(u -> existingIdsByUri.putIfAbsent(u, n.identifier())));
+      }
+
+      for (String uri : uris) {
+        NodeId id = Optional.ofNullable(existingIdsByUri.get(uri))
+            .orElseGet(() -> NodeId.of(extractUrnUuid(uri).orElse(nameUUIDFromString(uri)),
+                type.identifier()));
+
+        resourceIds.put(uri, id.getId().toString());
+        cache(uri, Node.builder()
+            .id(id)
+            .uri(uri)
+            .code(importCodes ? StringUtils.normalize(URIs.localName(uri)) : null));
+      }
+    }
+
+    private void collectValues(Triple triple) {
+      String subject = key(triple.getSubject());
+      String typeIndexes = resourceTypes.get(subject);
+
+      if (typeIndexes == null || !triple.getPredicate().isURI()) {
+        return;
+      }
+
+      String predicate = triple.getPredicate().getURI();
+
+      for (String typeIndex : typeIndexes.split(",")) {
+        Type type = types.get(Integer.parseInt(typeIndex));
+
+        if (triple.getObject().isLiteral()) {
+          for (TextAttribute textAttribute : type.getTextAttributes()) {
+            if (Objects.equals(predicate, textAttribute.getUri().orElse(null))) {
+              builder(subject).addUniqueProperty(textAttribute.getId(),
+                  new StrictLangValue(
+                      Ascii.truncate(triple.getObject().getLiteralLanguage(), 2, ""),
+                      triple.getObject().getLiteralLexicalForm(),
+                      textAttribute.getRegex()));
+            }
+          }
+        }
+
+        if (triple.getObject().isURI()) {
+          String object = triple.getObject().getURI();
+
+          for (ReferenceAttribute refAttribute : type.getReferenceAttributes()) {
+            if (Objects.equals(predicate, refAttribute.getUri().orElse(null))) {
+              addReference(subject, typeIndex, refAttribute, object);
+            }
+          }
+        }
+      }
+    }
+
+    private void addReference(String subject, String subjectTypeIndex,
+        ReferenceAttribute refAttribute, String object) {
+      if (resourceTypes.containsKey(object)) {
+        Type objectType = types.get(nodeTypeIndex(object));
+        if (objectType.identifier().equals(refAttribute.getRange())) {
+          builder(subject).addUniqueReference(refAttribute.getId(), NodeId.of(
+              UUIDs.fromString(resourceIds.get(object)), objectType.identifier()));
+        }
+      } else {
+        // as in RdfModelToNodes, external objects are looked up using subject type
+        externalReferences.put(String.join(SEP,
+            subjectTypeIndex, object, subject, refAttribute.getId()), "");
+      }
+    }
+
+    private void resolveExternalReferences() {
+      Iterator<String> keys = externalReferences.keyIterator(null);
+      ListMultimap<Integer, String> batch = ArrayListMultimap.create();
+      String previous = null;
+
+      while (keys.hasNext()) {
+        String[] key = keys.next().split(SEP);
+        String typeAndObject = key[0] + SEP + key[1];
+
+        if (!typeAndObject.equals(previous)) {
+          batch.put(Integer.parseInt(key[0]), key[1]);
+          previous = typeAndObject;
+        }
+
+        if (batch.size() >= LOOKUP_BATCH_SIZE || !keys.hasNext()) {
+          batch.asMap().forEach(this::resolveExternalIds);
+          batch.clear();
+        }
+      }
+
+      for (Iterator<String> i = externalReferences.keyIterator(null); i.hasNext(); ) {
+        String[] key = i.next().split(SEP);
+        String id = externalIds.get(key[0] + SEP + key[1]);
+
+        if (id != null) {
+          Type type = types.get(Integer.parseInt(key[0]));
+          builder(key[2]).addUniqueReference(key[3],
+              NodeId.of(UUIDs.fromString(id), type.identifier()));
+        }
+      }
+    }
+
+    // resolves ids by uri, then by urn uuid and then by name based uuid
+    private void resolveExternalIds(Integer typeIndex, Iterable<String> uris) {
+      Type type = types.get(typeIndex);
+
+      List<Specification<NodeId, Node>> specifications = new ArrayList<>();
+      for (String uri : uris) {
+        specifications.add(NodesByUri.of(uri));
+        extractUrnUuid(uri).ifPresent(uuid -> specifications.add(NodesById.of(uuid)));
+        specifications.add(NodesById.of(nameUUIDFromString(uri)));
+      }
+
+      Map<String, UUID> idsByUri = new HashMap<>();
+      Set<UUID> ids = new HashSet<>();
+      try (Stream<Node> existing = find(type, specifications)) {
+        existing.forEach(n -> {
+          n.getUri().ifPresent(u -> idsByUri.putIfAbsent(u, n.getId()));
+          ids.add(n.getId());
+        });
+      }
+
+      for (String uri : uris) {
+        Optional<UUID> id = OptionalUtils.lazyFindFirst(
+            () -> Optional.ofNullable(idsByUri.get(uri)),
+            () -> extractUrnUuid(uri).filter(ids::contains),
+            () -> Optional.of(nameUUIDFromString(uri)).filter(ids::contains));
+
+        id.ifPresent(i -> externalIds.put(typeIndex + SEP + uri, i.toString()));
+      }
+    }
+
+    private Stream<Node> find(Type type, List<Specification<NodeId, Node>> specifications) {
+      return nodeProvider.apply(new Query<>(
+          ImmutableList.of(Selects.field("id"), Selects.field("uri")),
+          AndSpecification.and(
+              NodesByGraphId.of(type.getGraphId()),
+              NodesByTypeId.of(type.getId()),
+              OrSpecification.or(specifications)),
+          emptyList(), -1));
+    }
+
+    private Node.Builder builder(String key) {
+      Node.Builder builder = builders.get(key);
+
+      if (builder == null) {
+        builder = Node.builderFromCopyOf(gson.fromJson(nodes.get(key), Node.class));
+        cache(key, builder);
+      }
+
+      return builder;
+    }
+
+    // spills least recently used builders if cache is full, failures abort the import
+    private void cache(String key, Node.Builder builder) {
+      builders.put(key, builder);
+
+      Iterator<Map.Entry<String, Node.Builder>> eldest = builders.entrySet().iterator();
+      while (builders.size() > builderCacheSize) {
+        Map.Entry<String, Node.Builder> entry = eldest.next();
+        spill(entry.getKey(), entry.getValue());
+        eldest.remove();
+      }
+    }
+
+    private void spill(String key, Node.Builder builder) {
+      nodes.put(key, toCompactJson(gson, builder.build(), Node.class));
+    }
+
+    private int nodeTypeIndex(String key) {
+      String typeIndexes = resourceTypes.get(key);
+      return Integer.parseInt(typeIndexes.substring(typeIndexes.lastIndexOf(',') + 1));
+    }
+
+    private String key(org.apache.jena.graph.Node subject) {
+      return subject.isURI() ? subject.getURI() : subject.getBlankNodeLabel();
+    }
+
+  }
+
+  private static Optional<UUID> extractUrnUuid(String uri) {
+    return uri.matches(URN_UUID)
+        ? Optional.of(UUIDs.fromString(uri.substring("urn:uuid:".length())))
+        : Optional.empty();
+  }
+
+}
@@ -0,0 +1,285 @@
+package fi.thl.termed.service.node.util;
+
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Streams;
+import com.google.gson.stream.JsonToken;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.StrictLangValue;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.util.UUIDs;
+import fi.thl.termed.util.collect.Tuple;
+import fi.thl.termed.util.collect.Tuple2;
+import fi.thl.termed.util.xml.JsonXmlStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.stream.Stream;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Reads nodes from XML array written e.g. by {@link NodeToXmlStream}. Nodes are read one by one as
+ * the returned stream is consumed. Mirrors {@link CborStreamToNodes}.
+ */
+public final class XmlStreamToNodes {
+
+  private XmlStreamToNodes() {
+  }
+
+  /**
+   * Reads nodes from given input. Node types are read from the input unless given graph id or type
+   * id (both nullable) overrides them. Input is closed when the returned stream is closed.
+   */
+  public static Stream<Node> readArray(InputStream in, UUID graphId, String typeId) {
+    try {
+      JsonXmlStreamReader reader = JsonXmlStreamReader.from(in);
+      reader.beginArray();
+
+      return Streams.stream(new Iterator<Node>() {
+        @Override
+        public boolean hasNext() {
+          try {
+            return reader.hasNext();
+          } catch (XMLStreamException e) {
+            throw new UncheckedIOException(new IOException(e));
+          }
+        }
+
+        @Override
+        public Node next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          try {
+            return readNode(reader, graphId, typeId);
+          } catch (XMLStreamException e) {
+            throw new UncheckedIOException(new IOException(e));
+          }
+        }
+      }).onClose(() -> {
+        try {
+          reader.close();
+          in.close();
+        } catch (XMLStreamException e) {
+          throw new UncheckedIOException(new IOException(e));
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    } catch (XMLStreamException e) {
+      throw new UncheckedIOException(new IOException(e));
+    }
+  }
+
+  private static Node readNode(JsonXmlStreamReader reader, UUID graphId, String typeId)
+      throws XMLStreamException {
+    reader.beginObject();
+
+    UUID id = null;
+    Tuple2<String, UUID> type = Tuple.of(null, null);
+    String code = null;
+    String uri = null;
+    Long number = null;
+    String createdBy = null;
+    LocalDateTime createdDate = null;
+    String lastModifiedBy = null;
+    LocalDateTime lastModifiedDate = null;
+    ImmutableMultimap<String, StrictLangValue> properties = null;
+    ImmutableMultimap<String, NodeId> references = null;
+    ImmutableMultimap<String, NodeId> referrers = null;
+
+    while (reader.hasNext()) {
+      String field = reader.nextName();
+
+      if (reader.peek() == JsonToken.NULL) {
+        reader.nextNull();
+        continue;
+      }
+
+      switch (field) {
+        case "id":
+          id = UUIDs.fromString(reader.nextString());
+          break;
+        case "type":
+          type = readType(reader);
+          break;
+        case "code":
+          code = reader.nextString();
+          break;
+        case "uri":
+          uri = reader.nextString();
+          break;
+        case "number":
+          number = reader.nextLong();
+          break;
+        case "createdBy":
+          createdBy = reader.nextString();
+          break;
+        case "createdDate":
+          createdDate = parseDate(reader.nextString());
+          break;
+        case "lastModifiedBy":
+          lastModifiedBy = reader.nextString();
+          break;
+        case "lastModifiedDate":
+          lastModifiedDate = parseDate(reader.nextString());
+          break;
+        case "properties":
+          properties = readProperties(reader);
+          break;
+        case "references":
+          references = readNodeIds(reader);
+          break;
+        case "referrers":
+          referrers = readNodeIds(reader);
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+
+    reader.endObject();
+
+    String resolvedTypeId = typeId != null ? typeId : type._1;
+    UUID resolvedGraphId = graphId != null ? graphId : type._2;
+
+    if (resolvedTypeId == null || resolvedGraphId == null) {
+      throw new XMLStreamException("Missing node type");
+    }
+
+    return new Node(id, TypeId.of(resolvedTypeId, resolvedGraphId), code, uri, number,
+        createdBy, createdDate, lastModifiedBy, lastModifiedDate,
+        properties, references, referrers);
+  }
+
+  // reads type id and graph id, either may be missing
+  private static Tuple2<String, UUID> readType(JsonXmlStreamReader reader)
+      throws XMLStreamException {
+    reader.beginObject();
+
+    String id = null;
+    UUID graphId = null;
+
+    while (reader.hasNext()) {
+      String field = reader.nextName();
+
+      if (field.equals("id")) {
+        id = reader.nextString();
+      } else if (field.equals("graph") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+        reader.beginObject();
+        while (reader.hasNext()) {
+          if (reader.nextName().equals("id")) {
+            graphId = UUIDs.fromString(reader.nextString());
+          } else {
+            reader.skipValue();
+          }
+        }
+        reader.endObject();
+      } else {
+        reader.skipValue();
+      }
+    }
+
+    reader.endObject();
+
+    return Tuple.of(id, graphId);
+  }
+
+  private static ImmutableMultimap<String, StrictLangValue> readProperties(
+      JsonXmlStreamReader reader) throws XMLStreamException {
+    ImmutableMultimap.Builder<String, StrictLangValue> properties = ImmutableMultimap.builder();
+
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String attributeId = reader.nextName();
+
+      reader.beginArray();
+      while (reader.hasNext()) {
+        String lang = null;
+        String value = null;
+        String regex = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+          String field = reader.nextName();
+          if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            continue;
+          }
+          switch (field) {
+            case "lang":
+              lang = reader.nextString();
+              break;
+            case "value":
+              value = reader.nextString();
+              break;
+            case "regex":
+              regex = reader.nextString();
+              break;
+            default:
+              reader.skipValue();
+          }
+        }
+        reader.endObject();
+
+        properties.put(attributeId, new StrictLangValue(lang, value, regex));
+      }
+      reader.endArray();
+    }
+    reader.endObject();
+
+    return properties.build();
+  }
+
+  private static ImmutableMultimap<String, NodeId> readNodeIds(JsonXmlStreamReader reader)
+      throws XMLStreamException {
+    ImmutableMultimap.Builder<String, NodeId> nodeIds = ImmutableMultimap.builder();
+
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String attributeId = reader.nextName();
+
+      reader.beginArray();
+      while (reader.hasNext()) {
+        UUID id = null;
+        Tuple2<String, UUID> type = Tuple.of(null, null);
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+          String field = reader.nextName();
+          if (field.equals("id")) {
+            id = UUIDs.fromString(reader.nextString());
+          } else if (field.equals("type")) {
+            type = readType(reader);
+          } else {
+            reader.skipValue();
+          }
+        }
+        reader.endObject();
+
+        if (id == null || type._1 == null || type._2 == null) {
+          throw new XMLStreamException("Missing reference id or type");
+        }
+
+        nodeIds.put(attributeId, new NodeId(id, type._1, type._2));
+      }
+      reader.endArray();
+    }
+    reader.endObject();
+
+    return nodeIds.build();
+  }
+
+  private static LocalDateTime parseDate(String date) {
+    return date != null
+        ? ZonedDateTime.parse(date, DateTimeFormatter.ISO_OFFSET_DATE_TIME).toLocalDateTime()
+        : null;
+  }
+
+}
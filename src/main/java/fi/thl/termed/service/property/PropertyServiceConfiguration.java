@@ -18,6 +18,7 @@ import fi.thl.termed.util.permission.PermissionEvaluator;
 import fi.thl.termed.util.service.ReadWriteSynchronizedService;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.service.TransactionalService;
+import fi.thl.termed.util.service.VersionedService;
 import fi.thl.termed.util.service.WriteLoggingService;
 import javax.sql.DataSource;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -32,7 +33,7 @@ public class PropertyServiceConfiguration {
   private EventBus eventBus;
 
   @Bean
-  public Service<String, Property> propertyService(
+  public VersionedService<String, Property> propertyService(
       DataSource dataSource, PlatformTransactionManager transactionManager) {
 
     SystemDao<String, Property> propertyDao =
@@ -55,7 +56,7 @@ public class PropertyServiceConfiguration {
         getClass().getPackage().getName() + ".WriteLoggingService");
     service = new ReadWriteSynchronizedService<>(service);
 
-    return service;
+    return new VersionedService<>(service);
   }
 
 }
@@ -7,6 +7,7 @@ import static fi.thl.termed.domain.Permission.UPDATE;
 import fi.thl.termed.domain.AppRole;
 import fi.thl.termed.domain.Revision;
 import fi.thl.termed.service.revision.internal.JdbcRevisionDao;
+import fi.thl.termed.service.revision.internal.PendingRevisions;
 import fi.thl.termed.util.dao.AuthorizedDao;
 import fi.thl.termed.util.dao.SystemDao;
 import fi.thl.termed.util.permission.DisjunctionPermissionEvaluator;
@@ -36,6 +37,11 @@ public class RevisionServiceConfiguration {
     return new JdbcSequenceService(dataSource, "revision_seq", revisionSeqEvaluator());
   }
 
+  @Bean
+  public PendingRevisions pendingRevisions() {
+    return new PendingRevisions(revisionSeqService(), revisionService());
+  }
+
   @Bean
   public Service<Long, Revision> revisionService() {
     SystemDao<Long, Revision> dao = new JdbcRevisionDao(dataSource);
@@ -0,0 +1,107 @@
+package fi.thl.termed.service.revision.internal;
+
+import static fi.thl.termed.util.collect.StreamUtils.findFirstAndClose;
+
+import fi.thl.termed.domain.AppRole;
+import fi.thl.termed.domain.Revision;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.util.query.Queries;
+import fi.thl.termed.util.service.SequenceService;
+import fi.thl.termed.util.service.Service;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Allocates revision numbers for writes and tracks revisions whose writes have not completed yet.
+ * Revision numbers are allocated before writes are committed, so writes may become visible out of
+ * revision order. Readers following revisions in order (e.g. change feeds and index snapshots)
+ * should only trust revisions up to {@link #completedUpTo()}.
+ *
+ * <p>Pending revisions are tracked in memory, so only writes of this application instance are
+ * seen.
+ */
+public class PendingRevisions {
+
+  private SequenceService revisionSequenceService;
+  private Service<Long, Revision> revisionService;
+
+  private User reader = new User("pending-revisions-reader", "", AppRole.ADMIN);
+
+  private final NavigableSet<Long> pending = new TreeSet<>();
+  private Long lastAllocated;
+
+  private final List<Runnable> completionListeners = new CopyOnWriteArrayList<>();
+
+  public PendingRevisions(SequenceService revisionSequenceService,
+      Service<Long, Revision> revisionService) {
+    this.revisionSequenceService = revisionSequenceService;
+    this.revisionService = revisionService;
+  }
+
+  /**
+   * Allocates a new revision number and runs given write with it. Revision is pending until the
+   * transaction in progress completes, or if there is none, until the write returns.
+   */
+  public <E> E write(User user, Function<Long, E> write) {
+    Long revision = allocate(user);
+
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+              complete(revision);
+            }
+          });
+      return write.apply(revision);
+    }
+
+    try {
+      return write.apply(revision);
+    } finally {
+      complete(revision);
+    }
+  }
+
+  private synchronized Long allocate(User user) {
+    Long revision = revisionSequenceService.getAndAdvance(user);
+    pending.add(revision);
+    lastAllocated = revision;
+    return revision;
+  }
+
+  private void complete(Long revision) {
+    synchronized (this) {
+      pending.remove(revision);
+    }
+    completionListeners.forEach(Runnable::run);
+  }
+
+  /**
+   * Returns a revision number such that writes of all revisions up to it are completed.
+   */
+  public synchronized long completedUpTo() {
+    if (!pending.isEmpty()) {
+      return pending.first() - 1;
+    }
+    if (lastAllocated == null) {
+      // nothing allocated by this instance yet, revisions are listed in descending order
+      lastAllocated = findFirstAndClose(revisionService.keys(Queries.matchAll(), reader))
+          .orElse(0L);
+    }
+    return lastAllocated;
+  }
+
+  /**
+   * Adds a listener that is called each time a pending revision completes.
+   */
+  public void addCompletionListener(Runnable listener) {
+    completionListeners.add(listener);
+  }
+
+}
@@ -2,6 +2,7 @@ package fi.thl.termed.service.type;
 
 import static fi.thl.termed.util.EventBusUtils.register;
 import static fi.thl.termed.util.dao.CachedSystemDao.cache;
+import static fi.thl.termed.util.dao.VersionedSystemDao.versioned;
 import static fi.thl.termed.util.spring.jdbc.SpringJdbcUtils.getDatabaseProductName;
 
 import com.google.common.eventbus.EventBus;
@@ -32,6 +33,7 @@ import fi.thl.termed.service.type.internal.TypeRepository;
 import fi.thl.termed.util.dao.AuthorizedDao;
 import fi.thl.termed.util.dao.Dao;
 import fi.thl.termed.util.dao.SystemDao;
+import fi.thl.termed.util.dao.VersionedSystemDao;
 import fi.thl.termed.util.permission.DaoPermissionEvaluator;
 import fi.thl.termed.util.permission.DisjunctionPermissionEvaluator;
 import fi.thl.termed.util.permission.PermissionEvaluator;
@@ -39,6 +41,7 @@ import fi.thl.termed.util.service.ProfilingService;
 import fi.thl.termed.util.service.ReadWriteSynchronizedService;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.service.TransactionalService;
+import fi.thl.termed.util.service.VersionedService;
 import fi.thl.termed.util.service.WriteLoggingService;
 import javax.sql.DataSource;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -58,16 +61,17 @@ public class TypeServiceConfiguration {
   @Autowired
   private EventBus eventBus;
 
-  // permission system DAO instances are shared internally
-  private SystemDao<ObjectRolePermission<TypeId>, GrantedPermission>
+  // permission system DAO instances are shared internally, evaluators compile permissions from
+  // these uncached instances so that they never read entries not yet cleared from a cache
+  private VersionedSystemDao<ObjectRolePermission<TypeId>, GrantedPermission>
       typePermissionSystemDao;
-  private SystemDao<ObjectRolePermission<TextAttributeId>, GrantedPermission>
+  private VersionedSystemDao<ObjectRolePermission<TextAttributeId>, GrantedPermission>
       textAttributePermissionSystemDao;
-  private SystemDao<ObjectRolePermission<ReferenceAttributeId>, GrantedPermission>
+  private VersionedSystemDao<ObjectRolePermission<ReferenceAttributeId>, GrantedPermission>
       referenceAttributePermissionSystemDao;
 
   @Bean
-  public Service<TypeId, Type> typeService() {
+  public VersionedService<TypeId, Type> typeService() {
     Service<TypeId, Type> service = typeRepository();
 
     service = new TransactionalService<>(service, transactionManager);
@@ -78,26 +82,28 @@ public class TypeServiceConfiguration {
     service = new InitializingTypeService(service);
     service = new ReadWriteSynchronizedService<>(service);
 
-    return service;
+    return new VersionedService<>(service);
   }
 
   @Bean
   public PermissionEvaluator<TypeId> typeEvaluator() {
     return new DisjunctionPermissionEvaluator<>(
-        appAdminEvaluator(), new DaoPermissionEvaluator<>(typePermissionSystemDao()));
+        appAdminEvaluator(),
+        register(eventBus, new DaoPermissionEvaluator<>(typePermissionSystemDao())));
   }
 
   @Bean
   public PermissionEvaluator<TextAttributeId> textAttributeEvaluator() {
     return new DisjunctionPermissionEvaluator<>(
-        appAdminEvaluator(), new DaoPermissionEvaluator<>(textAttributePermissionSystemDao()));
+        appAdminEvaluator(),
+        register(eventBus, new DaoPermissionEvaluator<>(textAttributePermissionSystemDao())));
   }
 
   @Bean
   public PermissionEvaluator<ReferenceAttributeId> referenceAttributeEvaluator() {
     return new DisjunctionPermissionEvaluator<>(
         appAdminEvaluator(),
-        new DaoPermissionEvaluator<>(referenceAttributePermissionSystemDao()));
+        register(eventBus, new DaoPermissionEvaluator<>(referenceAttributePermissionSystemDao())));
   }
 
   private Service<TypeId, Type> typeRepository() {
@@ -115,7 +121,8 @@ public class TypeServiceConfiguration {
   }
 
   private Dao<ObjectRolePermission<TypeId>, GrantedPermission> typePermissionDao() {
-    return new AuthorizedDao<>(typePermissionSystemDao(), appAdminEvaluator());
+    return new AuthorizedDao<>(
+        register(eventBus, cache(typePermissionSystemDao())), appAdminEvaluator());
   }
 
   private Dao<PropertyValueId<TypeId>, LangValue> typePropertyDao() {
@@ -130,9 +137,9 @@ public class TypeServiceConfiguration {
     return register(eventBus, cache(new JdbcTypeDao(dataSource)));
   }
 
-  private SystemDao<ObjectRolePermission<TypeId>, GrantedPermission> typePermissionSystemDao() {
+  private VersionedSystemDao<ObjectRolePermission<TypeId>, GrantedPermission> typePermissionSystemDao() {
     if (typePermissionSystemDao == null) {
-      typePermissionSystemDao = register(eventBus, cache(new JdbcTypePermissionsDao(dataSource)));
+      typePermissionSystemDao = versioned(new JdbcTypePermissionsDao(dataSource));
     }
     return typePermissionSystemDao;
   }
@@ -155,7 +162,8 @@ public class TypeServiceConfiguration {
   }
 
   private Dao<ObjectRolePermission<TextAttributeId>, GrantedPermission> textAttributePermissionDao() {
-    return new AuthorizedDao<>(textAttributePermissionSystemDao(), appAdminEvaluator());
+    return new AuthorizedDao<>(
+        register(eventBus, cache(textAttributePermissionSystemDao())), appAdminEvaluator());
   }
 
   private Dao<PropertyValueId<TextAttributeId>, LangValue> textAttributePropertyDao() {
@@ -171,10 +179,10 @@ public class TypeServiceConfiguration {
     return register(eventBus, register(eventBus, cache(new JdbcTextAttributeDao(dataSource))));
   }
 
-  private SystemDao<ObjectRolePermission<TextAttributeId>, GrantedPermission> textAttributePermissionSystemDao() {
+  private VersionedSystemDao<ObjectRolePermission<TextAttributeId>, GrantedPermission> textAttributePermissionSystemDao() {
     if (textAttributePermissionSystemDao == null) {
-      textAttributePermissionSystemDao = register(eventBus, cache(
-          new JdbcTextAttributePermissionsDao(dataSource)));
+      textAttributePermissionSystemDao =
+          versioned(new JdbcTextAttributePermissionsDao(dataSource));
     }
     return textAttributePermissionSystemDao;
   }
@@ -197,7 +205,8 @@ public class TypeServiceConfiguration {
   }
 
   private Dao<ObjectRolePermission<ReferenceAttributeId>, GrantedPermission> referenceAttributePermissionDao() {
-    return new AuthorizedDao<>(referenceAttributePermissionSystemDao(), appAdminEvaluator());
+    return new AuthorizedDao<>(
+        register(eventBus, cache(referenceAttributePermissionSystemDao())), appAdminEvaluator());
   }
 
   private Dao<PropertyValueId<ReferenceAttributeId>, LangValue> referenceAttributePropertyDao() {
@@ -213,10 +222,10 @@ public class TypeServiceConfiguration {
     return register(eventBus, cache(new JdbcReferenceAttributeDao(dataSource)));
   }
 
-  private SystemDao<ObjectRolePermission<ReferenceAttributeId>, GrantedPermission> referenceAttributePermissionSystemDao() {
+  private VersionedSystemDao<ObjectRolePermission<ReferenceAttributeId>, GrantedPermission> referenceAttributePermissionSystemDao() {
     if (referenceAttributePermissionSystemDao == null) {
-      referenceAttributePermissionSystemDao = register(eventBus, cache(
-          new JdbcReferenceAttributePermissionsDao(dataSource)));
+      referenceAttributePermissionSystemDao =
+          versioned(new JdbcReferenceAttributePermissionsDao(dataSource));
     }
     return referenceAttributePermissionSystemDao;
   }
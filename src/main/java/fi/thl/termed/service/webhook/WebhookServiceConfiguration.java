@@ -6,10 +6,20 @@ import static fi.thl.termed.util.dao.CachedSystemDao.cache;
 import com.google.common.eventbus.EventBus;
 import com.google.gson.Gson;
 import fi.thl.termed.domain.AppRole;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.Revision;
+import fi.thl.termed.domain.RevisionId;
+import fi.thl.termed.domain.RevisionType;
 import fi.thl.termed.domain.Webhook;
+import fi.thl.termed.domain.WebhookDelivery;
 import fi.thl.termed.service.webhook.internal.JdbcWebhookDao;
+import fi.thl.termed.service.webhook.internal.JdbcWebhookDeliveryDao;
 import fi.thl.termed.service.webhook.internal.NodeEventPostingService;
+import fi.thl.termed.service.webhook.internal.WebhookOutbox;
+import fi.thl.termed.util.collect.Tuple2;
 import fi.thl.termed.util.dao.AuthorizedDao;
+import fi.thl.termed.util.dao.JdbcSystemSequenceDao;
 import fi.thl.termed.util.dao.SystemDao;
 import fi.thl.termed.util.permission.PermissionEvaluator;
 import fi.thl.termed.util.service.DaoForwardingRepository;
@@ -17,9 +27,11 @@ import fi.thl.termed.util.service.ReadWriteSynchronizedService;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.service.TransactionalService;
 import fi.thl.termed.util.service.WriteLoggingService;
+import java.io.Serializable;
 import java.util.UUID;
 import javax.sql.DataSource;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.transaction.PlatformTransactionManager;
@@ -39,16 +51,18 @@ public class WebhookServiceConfiguration {
   @Autowired
   private EventBus eventBus;
 
+  @Value("${fi.thl.termed.webhooks.threads:4}")
+  private int deliveryThreads;
+  @Value("${fi.thl.termed.webhooks.maxConnectionsPerHook:2}")
+  private int maxConnectionsPerHook;
+  @Value("${fi.thl.termed.webhooks.maxAttempts:12}")
+  private int maxAttempts;
+
   @Bean
   public Service<UUID, Webhook> webhookService() {
-    SystemDao<UUID, Webhook> dao = register(eventBus, cache(new JdbcWebhookDao(dataSource)));
-
-    PermissionEvaluator<UUID> permissionEvaluator =
-        (u, o, p) -> u.getAppRole() == AppRole.ADMIN || u.getAppRole() == AppRole.SUPERUSER;
-
     Service<UUID, Webhook> service =
         new DaoForwardingRepository<>(
-            new AuthorizedDao<>(dao, permissionEvaluator));
+            new AuthorizedDao<>(webhookSystemDao(), webhookEvaluator()));
     service = new TransactionalService<>(service, transactionManager);
     service = new WriteLoggingService<>(service,
         getClass().getPackage().getName() + ".WebhookService");
@@ -58,10 +72,40 @@ public class WebhookServiceConfiguration {
   }
 
   @Bean
-  public NodeEventPostingService eventPostingService(Service<UUID, Webhook> webhookService) {
-    NodeEventPostingService service = new NodeEventPostingService(webhookService(), gson);
+  public Service<Long, WebhookDelivery> webhookDeliveryService() {
+    return new DaoForwardingRepository<>(
+        new AuthorizedDao<>(webhookDeliverySystemDao(), webhookEvaluator()));
+  }
+
+  @Bean
+  public WebhookOutbox webhookOutbox() {
+    return new WebhookOutbox(webhookSystemDao(), webhookDeliverySystemDao(),
+        new JdbcSystemSequenceDao(dataSource, "webhook_delivery_seq"));
+  }
+
+  @Bean
+  public NodeEventPostingService eventPostingService(
+      Service<RevisionId<NodeId>, Tuple2<RevisionType, Node>> nodeRevisionService,
+      Service<Long, Revision> revisionService) {
+    NodeEventPostingService service = new NodeEventPostingService(
+        webhookSystemDao(), webhookDeliverySystemDao(), nodeRevisionService, revisionService,
+        gson, deliveryThreads, maxConnectionsPerHook, maxAttempts);
     eventBus.register(service);
     return service;
   }
 
+  // shared by all users so that webhook writes invalidate the cache read for each node write
+  @Bean
+  public SystemDao<UUID, Webhook> webhookSystemDao() {
+    return register(eventBus, cache(new JdbcWebhookDao(dataSource)));
+  }
+
+  private SystemDao<Long, WebhookDelivery> webhookDeliverySystemDao() {
+    return new JdbcWebhookDeliveryDao(dataSource);
+  }
+
+  private <K extends Serializable> PermissionEvaluator<K> webhookEvaluator() {
+    return (u, o, p) -> u.getAppRole() == AppRole.ADMIN || u.getAppRole() == AppRole.SUPERUSER;
+  }
+
 }
@@ -0,0 +1,85 @@
+package fi.thl.termed.service.webhook.internal;
+
+import fi.thl.termed.domain.WebhookDelivery;
+import fi.thl.termed.util.UUIDs;
+import fi.thl.termed.util.dao.AbstractJdbcDao;
+import fi.thl.termed.util.query.SqlSpecification;
+import java.util.Optional;
+import java.util.stream.Stream;
+import javax.sql.DataSource;
+import org.springframework.jdbc.core.RowMapper;
+
+public class JdbcWebhookDeliveryDao extends AbstractJdbcDao<Long, WebhookDelivery> {
+
+  public JdbcWebhookDeliveryDao(DataSource dataSource) {
+    super(dataSource);
+  }
+
+  @Override
+  public void insert(Long id, WebhookDelivery delivery) {
+    jdbcTemplate.update(
+        "insert into webhook_delivery (id, webhook_id, revision, attempts, last_error, dead) "
+            + "values (?, ?, ?, ?, ?, ?)",
+        id,
+        delivery.getWebhookId(),
+        delivery.getRevision(),
+        delivery.getAttempts(),
+        delivery.getLastError().orElse(null),
+        delivery.isDead());
+  }
+
+  @Override
+  public void update(Long id, WebhookDelivery delivery) {
+    jdbcTemplate.update(
+        "update webhook_delivery set attempts = ?, last_error = ?, dead = ? where id = ?",
+        delivery.getAttempts(),
+        delivery.getLastError().orElse(null),
+        delivery.isDead(),
+        id);
+  }
+
+  @Override
+  public void delete(Long id) {
+    jdbcTemplate.update("delete from webhook_delivery where id = ?", id);
+  }
+
+  // deliveries are always returned in queued order
+  @Override
+  protected <E> Stream<E> get(SqlSpecification<Long, WebhookDelivery> specification,
+      RowMapper<E> mapper) {
+    return jdbcTemplate.queryForStream(
+        String.format("select * from webhook_delivery where %s order by id",
+            specification.sqlQueryTemplate()),
+        specification.sqlQueryParameters(), mapper);
+  }
+
+  @Override
+  public boolean exists(Long id) {
+    return jdbcTemplate.queryForOptional(
+        "select count(*) from webhook_delivery where id = ?", Long.class, id)
+        .orElseThrow(IllegalStateException::new) > 0;
+  }
+
+  @Override
+  protected <E> Optional<E> get(Long id, RowMapper<E> mapper) {
+    return jdbcTemplate.queryForFirst(
+        "select * from webhook_delivery where id = ?", mapper, id);
+  }
+
+  @Override
+  protected RowMapper<Long> buildKeyMapper() {
+    return (rs, rowNum) -> rs.getLong("id");
+  }
+
+  @Override
+  protected RowMapper<WebhookDelivery> buildValueMapper() {
+    return (rs, rowNum) -> WebhookDelivery.of(
+        rs.getLong("id"),
+        UUIDs.fromString(rs.getString("webhook_id")),
+        rs.getLong("revision"),
+        rs.getInt("attempts"),
+        rs.getString("last_error"),
+        rs.getBoolean("dead"));
+  }
+
+}
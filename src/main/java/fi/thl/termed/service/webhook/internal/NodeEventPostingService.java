@@ -1,84 +1,329 @@
 package fi.thl.termed.service.webhook.internal;
 
 import static com.google.common.base.Charsets.UTF_8;
+import static fi.thl.termed.domain.RevisionType.DELETE;
+import static fi.thl.termed.domain.RevisionType.INSERT;
+import static fi.thl.termed.domain.RevisionType.UPDATE;
+import static fi.thl.termed.util.collect.StreamUtils.toImmutableListAndClose;
+import static fi.thl.termed.util.query.AndSpecification.and;
+import static fi.thl.termed.util.query.OrSpecification.or;
+import static fi.thl.termed.util.query.Queries.query;
 
+import com.google.common.base.Ascii;
+import com.google.common.collect.Iterators;
 import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.Gson;
 import fi.thl.termed.domain.AppRole;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.Revision;
+import fi.thl.termed.domain.RevisionId;
+import fi.thl.termed.domain.RevisionType;
 import fi.thl.termed.domain.User;
 import fi.thl.termed.domain.Webhook;
+import fi.thl.termed.domain.WebhookDelivery;
+import fi.thl.termed.domain.event.ApplicationReadyEvent;
+import fi.thl.termed.domain.event.ApplicationShutdownEvent;
+import fi.thl.termed.domain.event.NodeDeletedEvent;
 import fi.thl.termed.domain.event.NodeEvent;
+import fi.thl.termed.domain.event.NodeSavedEvent;
 import fi.thl.termed.domain.event.WebEvent;
-import fi.thl.termed.util.concurrent.FutureUtils;
-import fi.thl.termed.util.query.MatchAll;
-import fi.thl.termed.util.query.Query;
+import fi.thl.termed.service.node.specification.NodeRevisionsByRevisionNumber;
+import fi.thl.termed.service.node.specification.NodeRevisionsByRevisionType;
+import fi.thl.termed.service.webhook.specification.WebhookDeliveriesByDead;
+import fi.thl.termed.service.webhook.specification.WebhookDeliveriesByWebhookId;
+import fi.thl.termed.util.collect.Tuple;
+import fi.thl.termed.util.collect.Tuple2;
+import fi.thl.termed.util.dao.SystemDao;
+import fi.thl.termed.util.query.Specification;
+import fi.thl.termed.util.query.Specifications;
 import fi.thl.termed.util.service.Service;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
 import java.util.stream.Stream;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.apache.http.impl.nio.client.HttpAsyncClients;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Delivers node changes queued in webhook outbox. Each webhook is delivered in queued order by at
+ * most one worker at a time. Deliveries are read in batches, node ids of consecutive revisions are
+ * combined into events of up to 1000 nodes, and events are posted one by one. A batch is removed
+ * from the outbox once all its events are accepted by the receiver. Failed batches are retried
+ * with exponential backoff and marked dead after max attempts.
+ */
 public class NodeEventPostingService {
 
+  private static final int BATCH_SIZE = 100;
+  private static final int MAX_NODES_PER_EVENT = 1000;
+  // length of webhook_delivery.last_error
+  private static final int MAX_ERROR_LENGTH = 2000;
+
+  private static final long MIN_BACKOFF_MILLIS = 1000;
+  private static final long MAX_BACKOFF_MILLIS = TimeUnit.HOURS.toMillis(1);
+
   private Logger log = LoggerFactory.getLogger(getClass());
   private User eventBroadcaster = new User("httpEventBroadcaster", "", AppRole.SUPERUSER);
 
-  private Service<UUID, Webhook> webhookService;
+  private SystemDao<UUID, Webhook> webhookDao;
+  private SystemDao<Long, WebhookDelivery> webhookDeliveryDao;
+  private Service<RevisionId<NodeId>, Tuple2<RevisionType, Node>> nodeRevisionService;
+  private Service<Long, Revision> revisionService;
   private Gson gson;
+  private int maxAttempts;
 
   private CloseableHttpAsyncClient httpClient;
-  private FutureCallback<HttpResponse> errorCallback = new ErrorLoggingCallback();
+  private ExecutorService deliveryExecutor;
+  private ScheduledExecutorService scheduler;
 
-  public NodeEventPostingService(Service<UUID, Webhook> webhookService, Gson gson) {
+  private Map<UUID, ReentrantLock> webhookLocks = new ConcurrentHashMap<>();
+  private Map<UUID, Backoff> webhookBackoffs = new ConcurrentHashMap<>();
+  private Set<UUID> scheduledWebhooks = ConcurrentHashMap.newKeySet();
+
+  public NodeEventPostingService(
+      SystemDao<UUID, Webhook> webhookDao,
+      SystemDao<Long, WebhookDelivery> webhookDeliveryDao,
+      Service<RevisionId<NodeId>, Tuple2<RevisionType, Node>> nodeRevisionService,
+      Service<Long, Revision> revisionService,
+      Gson gson, int threads, int maxConnectionsPerHook, int maxAttempts) {
+    this.webhookDao = webhookDao;
+    this.webhookDeliveryDao = webhookDeliveryDao;
+    this.nodeRevisionService = nodeRevisionService;
+    this.revisionService = revisionService;
     this.gson = gson;
-    this.webhookService = webhookService;
-    this.httpClient = HttpAsyncClients.createMinimal();
-    httpClient.start();
+    this.maxAttempts = maxAttempts;
+
+    this.httpClient = HttpAsyncClients.custom()
+        .setMaxConnPerRoute(maxConnectionsPerHook)
+        .setMaxConnTotal(maxConnectionsPerHook * threads)
+        .build();
+    this.httpClient.start();
+
+    this.deliveryExecutor = Executors.newFixedThreadPool(threads,
+        new ThreadFactoryBuilder().setNameFormat("webhook-delivery-%d").setDaemon(true).build());
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("webhook-delivery-scheduler").setDaemon(true)
+            .build());
+  }
+
+  // outbox is polled only after application (and database schema) is ready
+  @Subscribe
+  public void startOn(ApplicationReadyEvent e) {
+    scheduler.scheduleWithFixedDelay(this::scheduleDeliveries, 0, 1, TimeUnit.SECONDS);
   }
 
   @Subscribe
   public void subscribe(NodeEvent nodeEvent) {
-    try (Stream<Webhook> hooks = webhookService
-        .values(new Query<>(new MatchAll<>()), eventBroadcaster)) {
-      hooks.forEach(hook -> {
-        HttpPost request = new HttpPost(hook.getUrl());
-        request.addHeader("Content-Type", "application/json");
-        request.setEntity(new StringEntity(gson.toJson(new WebEvent(nodeEvent)), UTF_8));
-
-        Future<HttpResponse> future = httpClient.execute(request, errorCallback);
-
-        if (nodeEvent.isSync()) {
-          FutureUtils.waitFor(future, 1, TimeUnit.MINUTES,
-              e -> log.warn("{} {} {}", hook, e.getClass(), e.getMessage()));
+    if (!nodeEvent.isSync()) {
+      scheduler.execute(this::scheduleDeliveries);
+      return;
+    }
+
+    // sync writes wait until their changes are delivered to all webhooks (or failed)
+    List<Future<?>> deliveries = new ArrayList<>();
+    try (Stream<Webhook> hooks = webhookDao.values(Specifications.matchAll())) {
+      hooks.forEach(hook -> deliveries.add(deliveryExecutor.submit(() -> deliver(hook, true))));
+    }
+    for (Future<?> delivery : deliveries) {
+      waitFor(delivery);
+    }
+  }
+
+  @Subscribe
+  public void closeOn(ApplicationShutdownEvent e) {
+    scheduler.shutdownNow();
+    deliveryExecutor.shutdownNow();
+    try {
+      httpClient.close();
+    } catch (IOException ex) {
+      log.warn("Failed to close http client", ex);
+    }
+  }
+
+  private void scheduleDeliveries() {
+    try (Stream<Webhook> hooks = webhookDao.values(Specifications.matchAll())) {
+      hooks.filter(hook -> !isBackingOff(hook.getId()))
+          .filter(hook -> scheduledWebhooks.add(hook.getId()))
+          .forEach(hook -> deliveryExecutor.execute(() -> {
+            scheduledWebhooks.remove(hook.getId());
+            deliver(hook, false);
+          }));
+    } catch (RuntimeException e) {
+      log.error("Failed to schedule webhook deliveries", e);
+    }
+  }
+
+  private boolean isBackingOff(UUID webhookId) {
+    Backoff backoff = webhookBackoffs.get(webhookId);
+    return backoff != null && backoff.retryAt > System.currentTimeMillis();
+  }
+
+  private void deliver(Webhook hook, boolean wait) {
+    ReentrantLock lock = webhookLocks.computeIfAbsent(hook.getId(), id -> new ReentrantLock());
+
+    if (wait) {
+      lock.lock();
+    } else if (!lock.tryLock()) {
+      return;
+    }
+
+    try {
+      List<WebhookDelivery> batch;
+      do {
+        batch = nextBatch(hook.getId());
+        if (!batch.isEmpty() && !deliver(hook, batch)) {
+          return;
+        }
+      } while (batch.size() == BATCH_SIZE);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private List<WebhookDelivery> nextBatch(UUID webhookId) {
+    Specification<Long, WebhookDelivery> pending = and(
+        WebhookDeliveriesByWebhookId.of(webhookId),
+        WebhookDeliveriesByDead.of(false));
+    return toImmutableListAndClose(webhookDeliveryDao.values(pending).limit(BATCH_SIZE));
+  }
+
+  private boolean deliver(Webhook hook, List<WebhookDelivery> batch) {
+    try {
+      for (NodeEvent event : events(batch)) {
+        post(hook, event);
+      }
+    } catch (IOException | RuntimeException e) {
+      String error = Ascii.truncate(e.getClass().getSimpleName() + ": " + e.getMessage(),
+          MAX_ERROR_LENGTH, "...");
+      log.warn("Failed to deliver to {}: {}", hook.getUrl(), error);
+
+      webhookDeliveryDao.update(batch.stream()
+          .map(d -> d.failed(error, maxAttempts))
+          .map(d -> Tuple.of(d.getId(), d)));
+      webhookBackoffs.compute(hook.getId(), (id, backoff) -> backoff == null
+          ? new Backoff(MIN_BACKOFF_MILLIS)
+          : new Backoff(Math.min(backoff.delayMillis * 2, MAX_BACKOFF_MILLIS)));
+      return false;
+    }
+
+    webhookDeliveryDao.delete(batch.stream().map(WebhookDelivery::getId));
+    webhookBackoffs.remove(hook.getId());
+    return true;
+  }
+
+  private List<NodeEvent> events(List<WebhookDelivery> batch) {
+    List<NodeEvent> events = new ArrayList<>();
+
+    for (WebhookDelivery delivery : batch) {
+      Optional<Revision> found = revisionService.get(delivery.getRevision(), eventBroadcaster);
+
+      // e.g. purged revision history, nothing can be delivered so delivery is dropped with batch
+      if (!found.isPresent()) {
+        log.warn("Skipping delivery {} of missing revision {}", delivery.getId(),
+            delivery.getRevision());
+        continue;
+      }
+
+      Revision revision = found.get();
+
+      addEvents(events, revision, or(
+          NodeRevisionsByRevisionType.of(INSERT),
+          NodeRevisionsByRevisionType.of(UPDATE)),
+          (date, ids) -> new NodeSavedEvent(revision.getAuthor(), date, false, ids));
+      addEvents(events, revision,
+          NodeRevisionsByRevisionType.of(DELETE),
+          (date, ids) -> new NodeDeletedEvent(revision.getAuthor(), date, false, ids));
+    }
+
+    return events;
+  }
+
+  private void addEvents(List<NodeEvent> events, Revision revision,
+      Specification<RevisionId<NodeId>, Tuple2<RevisionType, Node>> typeSpec,
+      BiFunction<LocalDateTime, List<NodeId>, NodeEvent> eventFactory) {
+
+    try (Stream<NodeId> ids = nodeRevisionService.keys(query(and(
+        NodeRevisionsByRevisionNumber.of(revision.getNumber()), typeSpec)), eventBroadcaster)
+        .map(RevisionId::getId)) {
+
+      Iterators.partition(ids.iterator(), MAX_NODES_PER_EVENT).forEachRemaining(batch -> {
+        NodeEvent event = eventFactory.apply(revision.getDate(), batch);
+        int last = events.size() - 1;
+        Optional<NodeEvent> coalesced = last >= 0
+            ? events.get(last).coalesce(event, MAX_NODES_PER_EVENT)
+            : Optional.empty();
+
+        if (coalesced.isPresent()) {
+          events.set(last, coalesced.get());
+        } else {
+          events.add(event);
         }
       });
     }
   }
 
-  /**
-   * Logs failed http requests.
-   */
-  private class ErrorLoggingCallback implements FutureCallback<HttpResponse> {
+  private void post(Webhook hook, NodeEvent event) throws IOException {
+    HttpPost request = new HttpPost(hook.getUrl());
+    request.addHeader("Content-Type", "application/json");
+    request.setEntity(new StringEntity(gson.toJson(new WebEvent(event)), UTF_8));
 
-    @Override
-    public void completed(HttpResponse response) {
+    HttpResponse response;
+    try {
+      response = httpClient.execute(request, null).get(1, TimeUnit.MINUTES);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      throw new IOException(e.getCause().getMessage(), e.getCause());
+    } catch (TimeoutException e) {
+      throw new IOException("Timed out", e);
     }
 
-    @Override
-    public void failed(Exception e) {
-      log.warn(e.getMessage());
+    int status = response.getStatusLine().getStatusCode();
+    if (status < 200 || status >= 300) {
+      throw new IOException("HTTP " + status);
     }
+  }
+
+  private void waitFor(Future<?> future) {
+    try {
+      future.get(1, TimeUnit.MINUTES);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException | TimeoutException e) {
+      log.warn("{} {}", e.getClass(), e.getMessage());
+    }
+  }
+
+  private static final class Backoff {
+
+    private final long delayMillis;
+    private final long retryAt;
 
-    @Override
-    public void cancelled() {
+    private Backoff(long delayMillis) {
+      this.delayMillis = delayMillis;
+      this.retryAt = System.currentTimeMillis() + delayMillis;
     }
 
   }
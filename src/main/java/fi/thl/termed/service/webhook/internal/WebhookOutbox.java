@@ -0,0 +1,41 @@
+package fi.thl.termed.service.webhook.internal;
+
+import fi.thl.termed.domain.Webhook;
+import fi.thl.termed.domain.WebhookDelivery;
+import fi.thl.termed.util.collect.Tuple;
+import fi.thl.termed.util.dao.SystemDao;
+import fi.thl.termed.util.dao.SystemSequenceDao;
+import fi.thl.termed.util.query.Specifications;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Queues deliveries of node revisions to all webhooks. Meant to be called in the transaction
+ * writing the revision, so that deliveries are committed or rolled back with the node changes.
+ */
+public class WebhookOutbox {
+
+  private SystemDao<UUID, Webhook> webhookDao;
+  private SystemDao<Long, WebhookDelivery> webhookDeliveryDao;
+  private SystemSequenceDao webhookDeliverySequenceDao;
+
+  public WebhookOutbox(
+      SystemDao<UUID, Webhook> webhookDao,
+      SystemDao<Long, WebhookDelivery> webhookDeliveryDao,
+      SystemSequenceDao webhookDeliverySequenceDao) {
+    this.webhookDao = webhookDao;
+    this.webhookDeliveryDao = webhookDeliveryDao;
+    this.webhookDeliverySequenceDao = webhookDeliverySequenceDao;
+  }
+
+  public void enqueue(Long revision) {
+    // webhook keys are served from cache until webhooks change
+    try (Stream<UUID> webhookIds = webhookDao.keys(Specifications.matchAll())) {
+      webhookDeliveryDao.insert(webhookIds.map(webhookId -> {
+        Long id = webhookDeliverySequenceDao.getAndAdvance();
+        return Tuple.of(id, WebhookDelivery.of(id, webhookId, revision));
+      }));
+    }
+  }
+
+}
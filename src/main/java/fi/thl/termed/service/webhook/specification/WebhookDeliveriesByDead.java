@@ -0,0 +1,29 @@
+package fi.thl.termed.service.webhook.specification;
+
+import fi.thl.termed.domain.WebhookDelivery;
+import fi.thl.termed.util.query.AbstractSqlSpecification;
+import fi.thl.termed.util.query.ParametrizedSqlQuery;
+
+public class WebhookDeliveriesByDead extends AbstractSqlSpecification<Long, WebhookDelivery> {
+
+  private boolean dead;
+
+  private WebhookDeliveriesByDead(boolean dead) {
+    this.dead = dead;
+  }
+
+  public static WebhookDeliveriesByDead of(boolean dead) {
+    return new WebhookDeliveriesByDead(dead);
+  }
+
+  @Override
+  public boolean test(Long key, WebhookDelivery value) {
+    return value.isDead() == dead;
+  }
+
+  @Override
+  public ParametrizedSqlQuery sql() {
+    return ParametrizedSqlQuery.of("dead = ?", dead);
+  }
+
+}
@@ -0,0 +1,31 @@
+package fi.thl.termed.service.webhook.specification;
+
+import fi.thl.termed.domain.WebhookDelivery;
+import fi.thl.termed.util.query.AbstractSqlSpecification;
+import fi.thl.termed.util.query.ParametrizedSqlQuery;
+import java.util.Objects;
+import java.util.UUID;
+
+public class WebhookDeliveriesByWebhookId extends AbstractSqlSpecification<Long, WebhookDelivery> {
+
+  private UUID webhookId;
+
+  private WebhookDeliveriesByWebhookId(UUID webhookId) {
+    this.webhookId = webhookId;
+  }
+
+  public static WebhookDeliveriesByWebhookId of(UUID webhookId) {
+    return new WebhookDeliveriesByWebhookId(webhookId);
+  }
+
+  @Override
+  public boolean test(Long key, WebhookDelivery value) {
+    return Objects.equals(value.getWebhookId(), webhookId);
+  }
+
+  @Override
+  public ParametrizedSqlQuery sql() {
+    return ParametrizedSqlQuery.of("webhook_id = ?", webhookId);
+  }
+
+}
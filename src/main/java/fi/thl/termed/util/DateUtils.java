@@ -1,6 +1,10 @@
 package fi.thl.termed.util;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 
 public final class DateUtils {
@@ -8,6 +12,11 @@ public final class DateUtils {
   private static final DateTimeFormatter LUCENE_FORMATTER =
       DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
 
+  // nodes saved in the same batch share timestamps, so formatted values are often repeated
+  private static final LoadingCache<LocalDateTime, String> ZONED_STRINGS =
+      CacheBuilder.newBuilder().maximumSize(10_000).build(CacheLoader.from(date ->
+          date.atZone(ZoneId.systemDefault()).format(DateTimeFormatter.ISO_OFFSET_DATE_TIME)));
+
   private DateUtils() {
   }
 
@@ -19,4 +28,12 @@ public final class DateUtils {
     return LUCENE_FORMATTER.format(date);
   }
 
+  /**
+   * Formats date in format like '2011-12-03T10:15:30+01:00'. Offset is determined by system
+   * default timezone. Recently formatted values are cached.
+   */
+  public static String formatZonedDateString(LocalDateTime date) {
+    return ZONED_STRINGS.getUnchecked(date);
+  }
+
 }
@@ -0,0 +1,240 @@
+package fi.thl.termed.util.concurrent;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Streams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Runs CPU-bound stream mapping stages concurrently in a worker pool.
+ *
+ * Each mapped stream reads at most {@code bufferSize} values ahead of its consumer, so chained
+ * stages form a pipeline with bounded queues between them. Results are always returned in the
+ * encounter order of the source stream. Mapped source streams are pulled on the consuming thread
+ * only, which keeps e.g. request body parsing and thread bound database transactions on that
+ * thread. Concatenated partitions are instead read in a separate pool of partition readers, so
+ * they must not depend on state bound to the consuming thread. Readers blocked on a full partition
+ * buffer thus never hold back mapping workers consumed downstream of the same executor.
+ */
+public final class PipelineExecutor implements AutoCloseable {
+
+  private static final PipelineExecutor DIRECT = new PipelineExecutor(null, null, 1);
+
+  private static final Object END_OF_PARTITION = new Object();
+
+  private final ExecutorService executor;
+  private final ExecutorService partitionExecutor;
+  private final int bufferSize;
+
+  private PipelineExecutor(ExecutorService executor, ExecutorService partitionExecutor,
+      int bufferSize) {
+    checkArgument(bufferSize > 0, "Illegal buffer size: " + bufferSize);
+    this.executor = executor;
+    this.partitionExecutor = partitionExecutor;
+    this.bufferSize = bufferSize;
+  }
+
+  /**
+   * Returns executor that maps values one at a time on the calling thread.
+   */
+  public static PipelineExecutor direct() {
+    return DIRECT;
+  }
+
+  /**
+   * Returns executor with given number of worker threads, zero threads means direct execution.
+   * Partitions are read by an equally sized pool of their own.
+   */
+  public static PipelineExecutor newPipelineExecutor(String name, int threads, int bufferSize) {
+    checkArgument(threads >= 0, "Illegal thread count: " + threads);
+
+    if (threads == 0) {
+      return direct();
+    }
+
+    return new PipelineExecutor(
+        Executors.newFixedThreadPool(threads, threadFactory(name + "-%d")),
+        Executors.newFixedThreadPool(threads, threadFactory(name + "-partition-%d")),
+        bufferSize);
+  }
+
+  private static ThreadFactory threadFactory(String nameFormat) {
+    return new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build();
+  }
+
+  public boolean isDirect() {
+    return executor == null;
+  }
+
+  public <T, R> Stream<R> map(Stream<T> values, Function<? super T, ? extends R> mapper) {
+    if (isDirect()) {
+      return values.map(mapper);
+    }
+
+    Iterator<T> source = values.iterator();
+    Deque<Future<R>> pending = new ArrayDeque<>(bufferSize);
+
+    Iterator<R> results = new AbstractIterator<R>() {
+      @Override
+      protected R computeNext() {
+        while (pending.size() < bufferSize && source.hasNext()) {
+          T value = source.next();
+          pending.add(executor.submit(() -> mapper.apply(value)));
+        }
+        return pending.isEmpty() ? endOfData() : await(pending.poll());
+      }
+    };
+
+    return Streams.stream(results).onClose(() -> {
+      pending.forEach(future -> future.cancel(true));
+      pending.clear();
+      values.close();
+    });
+  }
+
+  /**
+   * Concatenates streams of given partitions. Partitions are read concurrently, each at most
+   * {@code bufferSize} values ahead of the consumer, but values are returned partition by
+   * partition in list order. Each partition stream is opened, read and closed in one partition
+   * reader. Partitions are started in list order, so the one being consumed is always either read
+   * or finished even if there are more partitions than readers.
+   */
+  public <T> Stream<T> concat(List<Supplier<Stream<T>>> partitions) {
+    if (isDirect()) {
+      return partitions.stream().flatMap(Supplier::get);
+    }
+
+    List<BlockingQueue<Object>> queues = new ArrayList<>(partitions.size());
+    List<Future<?>> tasks = new ArrayList<>(partitions.size());
+
+    Iterator<T> results = new AbstractIterator<T>() {
+      private int partition = 0;
+
+      @Override
+      @SuppressWarnings("unchecked")
+      protected T computeNext() {
+        if (tasks.isEmpty()) {
+          partitions.forEach(p -> {
+            BlockingQueue<Object> queue = new ArrayBlockingQueue<>(bufferSize);
+            queues.add(queue);
+            tasks.add(partitionExecutor.submit(() -> readPartition(p, queue)));
+          });
+        }
+
+        while (partition < queues.size()) {
+          Object value = take(queues.get(partition));
+
+          if (value == END_OF_PARTITION) {
+            partition++;
+          } else if (value instanceof PartitionFailure) {
+            throw propagate(((PartitionFailure) value).cause);
+          } else {
+            return (T) value;
+          }
+        }
+
+        return endOfData();
+      }
+    };
+
+    return Streams.stream(results).onClose(() -> {
+      tasks.forEach(task -> task.cancel(true));
+      queues.forEach(Collection::clear);
+    });
+  }
+
+  private static <T> void readPartition(Supplier<Stream<T>> partition,
+      BlockingQueue<Object> queue) {
+    Object last = END_OF_PARTITION;
+    try (Stream<T> values = partition.get()) {
+      values.forEachOrdered(value -> put(queue, value));
+    } catch (PartitionInterruptedException e) {
+      return;
+    } catch (Throwable t) {
+      last = new PartitionFailure(t);
+    }
+    put(queue, last);
+  }
+
+  private static void put(BlockingQueue<Object> queue, Object value) {
+    try {
+      queue.put(value);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PartitionInterruptedException();
+    }
+  }
+
+  private static Object take(BlockingQueue<Object> queue) {
+    try {
+      return queue.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static <R> R await(Future<R> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      throw propagate(e.getCause());
+    }
+  }
+
+  private static RuntimeException propagate(Throwable cause) {
+    if (cause instanceof RuntimeException) {
+      throw (RuntimeException) cause;
+    }
+    if (cause instanceof Error) {
+      throw (Error) cause;
+    }
+    throw new IllegalStateException(cause);
+  }
+
+  @Override
+  public void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+    if (partitionExecutor != null) {
+      partitionExecutor.shutdownNow();
+    }
+  }
+
+  private static final class PartitionFailure {
+
+    private final Throwable cause;
+
+    private PartitionFailure(Throwable cause) {
+      this.cause = cause;
+    }
+
+  }
+
+  // thrown in a worker when the consumer has closed the stream
+  private static final class PartitionInterruptedException extends RuntimeException {
+
+  }
+
+}
@@ -0,0 +1,85 @@
+package fi.thl.termed.util.dao;
+
+import fi.thl.termed.util.collect.Tuple2;
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Counts writes made through this DAO. Version can be used to find out whether values derived
+ * from the DAO contents are outdated. Writes made in a transaction increment the version again
+ * when the transaction completes, as values derived before the commit may miss the write.
+ */
+public class VersionedSystemDao<K extends Serializable, V> extends ForwardingSystemDao<K, V> {
+
+  private final AtomicLong version = new AtomicLong();
+
+  public VersionedSystemDao(SystemDao<K, V> delegate) {
+    super(delegate);
+  }
+
+  public static <K extends Serializable, V> VersionedSystemDao<K, V> versioned(
+      SystemDao<K, V> delegate) {
+    return new VersionedSystemDao<>(delegate);
+  }
+
+  public long getVersion() {
+    return version.get();
+  }
+
+  public void incrementVersion() {
+    version.incrementAndGet();
+  }
+
+  private void written() {
+    incrementVersion();
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+              incrementVersion();
+            }
+          });
+    }
+  }
+
+  @Override
+  public void insert(Stream<Tuple2<K, V>> entries) {
+    super.insert(entries);
+    written();
+  }
+
+  @Override
+  public void insert(K key, V value) {
+    super.insert(key, value);
+    written();
+  }
+
+  @Override
+  public void update(Stream<Tuple2<K, V>> entries) {
+    super.update(entries);
+    written();
+  }
+
+  @Override
+  public void update(K key, V value) {
+    super.update(key, value);
+    written();
+  }
+
+  @Override
+  public void delete(Stream<K> keys) {
+    super.delete(keys);
+    written();
+  }
+
+  @Override
+  public void delete(K key) {
+    super.delete(key);
+    written();
+  }
+
+}
@@ -0,0 +1,281 @@
+package fi.thl.termed.util.event;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Event bus that delivers events of given type asynchronously. Each subscriber of those events has
+ * its own bounded queue and worker thread, so a slow subscriber blocks neither the posting thread
+ * nor other subscribers. Posting blocks only if a queue is full.
+ *
+ * Queued events are coalesced with events arriving within the coalesce window when the coalescer
+ * returns a combined event. Events requiring synchronous delivery are never coalesced. They are
+ * queued as well to keep per subscriber ordering, but the posting thread waits until each
+ * subscriber of the event has handled it.
+ *
+ * Events of other types are delivered synchronously as in plain {@link EventBus}.
+ */
+public class AsyncDispatchingEventBus<E> extends EventBus implements AutoCloseable {
+
+  private final Logger log = LoggerFactory.getLogger(getClass());
+
+  private final Class<E> asyncType;
+  private final Predicate<? super E> awaitDelivery;
+  private final BiFunction<E, E, Optional<E>> coalescer;
+  private final int queueCapacity;
+  private final long coalesceWindowNanos;
+  private final MeterRegistry meterRegistry;
+
+  private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+  public AsyncDispatchingEventBus(
+      Class<E> asyncType,
+      Predicate<? super E> awaitDelivery,
+      BiFunction<E, E, Optional<E>> coalescer,
+      int queueCapacity,
+      Duration coalesceWindow,
+      MeterRegistry meterRegistry) {
+    checkArgument(queueCapacity > 0, "Illegal queue capacity: " + queueCapacity);
+    this.asyncType = asyncType;
+    this.awaitDelivery = awaitDelivery;
+    this.coalescer = coalescer;
+    this.queueCapacity = queueCapacity;
+    this.coalesceWindowNanos = coalesceWindow.toNanos();
+    this.meterRegistry = meterRegistry;
+  }
+
+  @Override
+  public void register(Object listener) {
+    super.register(listener);
+
+    Set<Class<?>> asyncEventTypes = subscribedTypes(listener.getClass()).stream()
+        .filter(t -> t.isAssignableFrom(asyncType) || asyncType.isAssignableFrom(t))
+        .collect(Collectors.toSet());
+
+    if (!asyncEventTypes.isEmpty()) {
+      Subscriber subscriber = new Subscriber(listener, asyncEventTypes);
+      subscribers.add(subscriber);
+      subscriber.worker.start();
+    }
+  }
+
+  @Override
+  public void unregister(Object listener) {
+    super.unregister(listener);
+
+    subscribers.stream()
+        .filter(s -> s.listener == listener)
+        .forEach(s -> {
+          subscribers.remove(s);
+          s.worker.interrupt();
+        });
+  }
+
+  @Override
+  public void post(Object event) {
+    if (!asyncType.isInstance(event)) {
+      super.post(event);
+      return;
+    }
+
+    E asyncEvent = asyncType.cast(event);
+
+    List<Subscriber> targets = subscribers.stream()
+        .filter(s -> s.accepts(asyncEvent))
+        .collect(Collectors.toList());
+
+    if (targets.isEmpty()) {
+      return;
+    }
+
+    CountDownLatch delivered =
+        awaitDelivery.test(asyncEvent) ? new CountDownLatch(targets.size()) : null;
+
+    targets.forEach(s -> s.enqueue(new Delivery<>(asyncEvent, System.nanoTime(), delivered)));
+
+    if (delivered != null) {
+      try {
+        delivered.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    subscribers.forEach(s -> s.worker.interrupt());
+    subscribers.clear();
+  }
+
+  private static Set<Class<?>> subscribedTypes(Class<?> listenerClass) {
+    ImmutableSet.Builder<Class<?>> types = ImmutableSet.builder();
+    for (Class<?> c = listenerClass; c != null; c = c.getSuperclass()) {
+      for (Method method : c.getDeclaredMethods()) {
+        if (method.isAnnotationPresent(Subscribe.class) && method.getParameterCount() == 1) {
+          types.add(method.getParameterTypes()[0]);
+        }
+      }
+    }
+    return types.build();
+  }
+
+  private static final class Delivery<E> {
+
+    private final E event;
+    private final long postedNanos;
+    private final CountDownLatch delivered;
+
+    private Delivery(E event, long postedNanos, CountDownLatch delivered) {
+      this.event = event;
+      this.postedNanos = postedNanos;
+      this.delivered = delivered;
+    }
+
+    private boolean isAwaited() {
+      return delivered != null;
+    }
+
+  }
+
+  private final class Subscriber implements Runnable {
+
+    private final Object listener;
+    private final String name;
+    private final Set<Class<?>> eventTypes;
+
+    // delivers events to listener methods the same way as the synchronous bus
+    private final EventBus delegate;
+
+    private final BlockingQueue<Delivery<E>> queue;
+    private final Thread worker;
+    private final Timer lag;
+
+    // event polled during coalescing that could not be coalesced
+    private Delivery<E> carried;
+
+    private Subscriber(Object listener, Set<Class<?>> eventTypes) {
+      this.listener = listener;
+      this.name = listener.getClass().getName();
+      this.eventTypes = eventTypes;
+      this.delegate = new EventBus(name);
+      this.delegate.register(listener);
+      this.queue = new ArrayBlockingQueue<>(queueCapacity);
+      this.worker = new Thread(this, "event-dispatch-" + listener.getClass().getSimpleName());
+      this.worker.setDaemon(true);
+
+      Gauge.builder("termed.events.queue.depth", queue, BlockingQueue::size)
+          .tag("subscriber", name)
+          .register(meterRegistry);
+      this.lag = Timer.builder("termed.events.lag")
+          .tag("subscriber", name)
+          .register(meterRegistry);
+    }
+
+    private boolean accepts(E event) {
+      return eventTypes.stream().anyMatch(t -> t.isInstance(event));
+    }
+
+    private void enqueue(Delivery<E> delivery) {
+      // listener posting to itself would otherwise wait for its own queue
+      if (Thread.currentThread() == worker) {
+        deliver(delivery);
+        return;
+      }
+
+      try {
+        queue.put(delivery);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (!Thread.currentThread().isInterrupted()) {
+          Delivery<E> delivery = carried != null ? carried : queue.take();
+          carried = null;
+          deliver(delivery.isAwaited() ? delivery : coalesce(delivery));
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+
+      List<Delivery<E>> discarded = new ArrayList<>();
+      if (carried != null) {
+        discarded.add(carried);
+      }
+      queue.drainTo(discarded);
+
+      if (!discarded.isEmpty()) {
+        log.warn("Discarded {} queued events of {}", discarded.size(), name);
+        // release threads waiting for synchronous delivery
+        discarded.stream().filter(Delivery::isAwaited).forEach(d -> d.delivered.countDown());
+      }
+    }
+
+    private Delivery<E> coalesce(Delivery<E> first) throws InterruptedException {
+      Delivery<E> current = first;
+      long deadline = first.postedNanos + coalesceWindowNanos;
+
+      while (true) {
+        long remaining = deadline - System.nanoTime();
+        Delivery<E> next = remaining > 0 ? queue.poll(remaining, NANOSECONDS) : queue.poll();
+
+        if (next == null) {
+          return current;
+        }
+
+        Optional<E> coalesced = next.isAwaited()
+            ? Optional.empty()
+            : coalescer.apply(current.event, next.event);
+
+        if (coalesced.isPresent()) {
+          current = new Delivery<>(coalesced.get(), current.postedNanos, null);
+        } else {
+          carried = next;
+          return current;
+        }
+      }
+    }
+
+    private void deliver(Delivery<E> delivery) {
+      lag.record(System.nanoTime() - delivery.postedNanos, NANOSECONDS);
+      try {
+        // exceptions thrown by listeners are logged by delegate
+        delegate.post(delivery.event);
+      } finally {
+        if (delivery.isAwaited()) {
+          delivery.delivered.countDown();
+        }
+      }
+    }
+
+  }
+
+}
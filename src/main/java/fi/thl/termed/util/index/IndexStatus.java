@@ -0,0 +1,35 @@
+package fi.thl.termed.util.index;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks whether an index is complete, i.e. safe to answer queries, and how many queued values
+ * have been indexed while it is being (re)built.
+ */
+public class IndexStatus {
+
+  private volatile boolean ready = true;
+  private final AtomicLong indexedCount = new AtomicLong();
+
+  public boolean isReady() {
+    return ready;
+  }
+
+  public void building() {
+    indexedCount.set(0);
+    ready = false;
+  }
+
+  public void indexed(long count) {
+    indexedCount.addAndGet(count);
+  }
+
+  public void ready() {
+    ready = true;
+  }
+
+  public long getIndexedCount() {
+    return indexedCount.get();
+  }
+
+}
@@ -16,14 +16,23 @@ import fi.thl.termed.util.collect.StreamUtils;
 import fi.thl.termed.util.collect.Tuple;
 import fi.thl.termed.util.concurrent.ExecutorUtils;
 import fi.thl.termed.util.index.Index;
+import fi.thl.termed.util.io.TarUtils;
 import fi.thl.termed.util.query.LuceneSortField;
 import fi.thl.termed.util.query.LuceneSpecification;
 import fi.thl.termed.util.query.Specification;
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.Callable;
@@ -37,8 +46,14 @@ import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexCommit;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.KeepOnlyLastCommitDeletionPolicy;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SnapshotDeletionPolicy;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.IndexSearcher;
@@ -51,8 +66,14 @@ import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopFieldDocs;
 import org.apache.lucene.search.TotalHitCountCollector;
+import org.apache.lucene.store.DataOutput;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.InputStreamDataInput;
+import org.apache.lucene.store.OutputStreamDataOutput;
 import org.apache.lucene.store.RAMDirectory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -64,25 +85,49 @@ public class LuceneIndex<K extends Serializable, V> implements Index<K, V> {
   private Converter<V, Document> documentConverter;
   private Converter<K, String> keyConverter;
 
+  private Directory directory;
+  private SnapshotDeletionPolicy snapshotPolicy;
   private IndexWriter writer;
   private SearcherManager searcherManager;
 
+  private boolean restoredFromSnapshot = false;
+
   private ExecutorService indexingExecutor;
   private ScheduledExecutorService scheduledExecutorService;
 
   public LuceneIndex(String directoryPath,
       Converter<K, String> keyConverter,
       Converter<V, Document> documentConverter) {
+    this(directoryPath, null, keyConverter, documentConverter);
+  }
+
+  /**
+   * Opens index in given directory. If directory contains no index and snapshot path points to an
+   * existing snapshot archive (written by {@link #writeSnapshot(Map, OutputStream)}), the index is
+   * first restored from the snapshot.
+   */
+  public LuceneIndex(String directoryPath, String snapshotPath,
+      Converter<K, String> keyConverter,
+      Converter<V, Document> documentConverter) {
 
     this.keyConverter = keyConverter;
     this.documentConverter = documentConverter;
 
     try {
+      this.directory = openDirectory(directoryPath);
+
+      if (!isNullOrEmpty(snapshotPath) && !DirectoryReader.indexExists(directory)) {
+        restoreSnapshot(Paths.get(snapshotPath));
+      }
+
+      this.snapshotPolicy = new SnapshotDeletionPolicy(new KeepOnlyLastCommitDeletionPolicy());
+
       Analyzer a = new LowerCaseWhitespaceAnalyzer();
       IndexWriterConfig c = new IndexWriterConfig(a)
           .setOpenMode(CREATE_OR_APPEND)
+          .setIndexDeletionPolicy(snapshotPolicy)
           .setCodec(new TermedCodec());
-      this.writer = new IndexWriter(openDirectory(directoryPath), c);
+      this.writer = new IndexWriter(directory, c);
       this.searcherManager = new SearcherManager(writer, new SearcherFactory());
     } catch (IOException e) {
       throw new LuceneException(e);
@@ -103,6 +148,86 @@ public class LuceneIndex<K extends Serializable, V> implements Index<K, V> {
         : FSDirectory.open(Paths.get(directoryPath));
   }
 
+  private void restoreSnapshot(Path snapshot) throws IOException {
+    if (!Files.exists(snapshot)) {
+      log.warn("Index snapshot {} not found", snapshot);
+      return;
+    }
+
+    log.info("Restoring index from snapshot {}", snapshot);
+
+    try (InputStream in = new BufferedInputStream(Files.newInputStream(snapshot))) {
+      TarUtils.readEntries(in, (name, size, content) -> {
+        try (IndexOutput out = directory.createOutput(name, IOContext.DEFAULT)) {
+          out.copyBytes(new InputStreamDataInput(content), size);
+        }
+      });
+    }
+
+    directory.sync(Arrays.asList(directory.listAll()));
+    restoredFromSnapshot = true;
+  }
+
+  /**
+   * Commits index with given commit data and writes the commit point as a tar archive. Indexing
+   * may continue while the snapshot is written.
+   */
+  public void writeSnapshot(Map<String, String> commitData, OutputStream out) {
+    IndexCommit commit = null;
+
+    try {
+      writer.setLiveCommitData(commitData.entrySet());
+      writer.commit();
+
+      commit = snapshotPolicy.snapshot();
+
+      DataOutput dataOutput = new OutputStreamDataOutput(out);
+
+      for (String fileName : commit.getFileNames()) {
+        try (IndexInput in = directory.openInput(fileName, IOContext.READONCE)) {
+          long size = in.length();
+          TarUtils.putEntry(out, fileName, size);
+          dataOutput.copyBytes(in, size);
+          TarUtils.closeEntry(out, size);
+        }
+      }
+
+      TarUtils.finish(out);
+    } catch (IOException e) {
+      throw new LuceneException(e);
+    } finally {
+      releaseSnapshot(commit);
+    }
+  }
+
+  private void releaseSnapshot(IndexCommit commit) {
+    if (commit != null) {
+      try {
+        snapshotPolicy.release(commit);
+        writer.deleteUnusedFiles();
+      } catch (IOException e) {
+        throw new LuceneException(e);
+      }
+    }
+  }
+
+  /**
+   * Returns user data of the latest commit, e.g. the data of a snapshot that the index was
+   * restored from.
+   */
+  public Map<String, String> getCommitData() {
+    Map<String, String> commitData = new HashMap<>();
+    Iterable<Map.Entry<String, String>> liveCommitData = writer.getLiveCommitData();
+    if (liveCommitData != null) {
+      liveCommitData.forEach(e -> commitData.put(e.getKey(), e.getValue()));
+    }
+    return commitData;
+  }
+
+  public boolean isRestoredFromSnapshot() {
+    return restoredFromSnapshot;
+  }
+
   @Override
   public void index(K key, V value) {
     Term documentIdTerm = new Term(DOCUMENT_ID, keyConverter.apply(key));
@@ -185,6 +310,25 @@ public class LuceneIndex<K extends Serializable, V> implements Index<K, V> {
     }
   }
 
+  /**
+   * Returns names of all fields in documents visible to the current searcher. Reads only field
+   * infos of index segments, not documents.
+   */
+  public Set<String> getFieldNames() {
+    IndexSearcher searcher = tryAcquire();
+    try {
+      Set<String> fieldNames = new HashSet<>();
+      for (LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+        for (FieldInfo fieldInfo : leaf.reader().getFieldInfos()) {
+          fieldNames.add(fieldInfo.name);
+        }
+      }
+      return fieldNames;
+    } finally {
+      tryRelease(searcher);
+    }
+  }
+
   @Override
   public Optional<V> get(K id) {
     IndexSearcher searcher = null;
@@ -283,6 +427,17 @@ public class LuceneIndex<K extends Serializable, V> implements Index<K, V> {
     }
   }
 
+  /**
+   * Returns true if searches see all documents written so far.
+   */
+  public boolean isSearcherCurrent() {
+    try {
+      return searcherManager.isSearcherCurrent();
+    } catch (IOException e) {
+      throw new LuceneException(e);
+    }
+  }
+
   public void commit() {
     try {
       writer.commit();
@@ -0,0 +1,33 @@
+package fi.thl.termed.util.io;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+public final class GzipUtils {
+
+  private static final int GZIP_MAGIC_FIRST_BYTE = 0x1f;
+  private static final int GZIP_MAGIC_SECOND_BYTE = 0x8b;
+
+  private GzipUtils() {
+  }
+
+  /**
+   * Wraps given stream in {@link GZIPInputStream} if it starts with gzip magic bytes, otherwise
+   * returns an equivalent uncompressed stream.
+   */
+  public static InputStream decompressIfGzipped(InputStream in) throws IOException {
+    InputStream markable = in.markSupported() ? in : new BufferedInputStream(in);
+
+    markable.mark(2);
+    int first = markable.read();
+    int second = markable.read();
+    markable.reset();
+
+    return first == GZIP_MAGIC_FIRST_BYTE && second == GZIP_MAGIC_SECOND_BYTE
+        ? new GZIPInputStream(markable)
+        : markable;
+  }
+
+}
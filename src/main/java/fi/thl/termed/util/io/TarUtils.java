@@ -0,0 +1,149 @@
+package fi.thl.termed.util.io;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.io.ByteStreams;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Minimal reader and writer for flat ustar archives of regular files, e.g. index snapshots.
+ */
+public final class TarUtils {
+
+  private static final int BLOCK_SIZE = 512;
+  private static final int NAME_LENGTH = 100;
+
+  private TarUtils() {
+  }
+
+  /**
+   * Writes header of a regular file entry. Caller writes exactly {@code size} bytes of content
+   * followed by {@link #closeEntry(OutputStream, long)}.
+   */
+  public static void putEntry(OutputStream out, String name, long size) throws IOException {
+    byte[] nameBytes = name.getBytes(UTF_8);
+
+    if (nameBytes.length > NAME_LENGTH) {
+      throw new IllegalArgumentException("Entry name too long: " + name);
+    }
+
+    byte[] header = new byte[BLOCK_SIZE];
+    System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+    putOctal(header, 100, 8, 0644);
+    putOctal(header, 108, 8, 0);
+    putOctal(header, 116, 8, 0);
+    putOctal(header, 124, 12, size);
+    putOctal(header, 136, 12, System.currentTimeMillis() / 1000);
+    header[156] = '0';
+    System.arraycopy("ustar\u000000".getBytes(US_ASCII), 0, header, 257, 8);
+
+    // checksum is computed with checksum field filled with spaces
+    Arrays.fill(header, 148, 156, (byte) ' ');
+    long checksum = 0;
+    for (byte b : header) {
+      checksum += b & 0xff;
+    }
+    putOctal(header, 148, 7, checksum);
+
+    out.write(header);
+  }
+
+  /**
+   * Pads entry of given size to full blocks.
+   */
+  public static void closeEntry(OutputStream out, long size) throws IOException {
+    int remainder = (int) (size % BLOCK_SIZE);
+    if (remainder > 0) {
+      out.write(new byte[BLOCK_SIZE - remainder]);
+    }
+  }
+
+  /**
+   * Writes end of archive marker.
+   */
+  public static void finish(OutputStream out) throws IOException {
+    out.write(new byte[BLOCK_SIZE * 2]);
+    out.flush();
+  }
+
+  /**
+   * Reads regular file entries from archive, other entry types are skipped.
+   */
+  public static void readEntries(InputStream in, EntryReader reader) throws IOException {
+    byte[] header = new byte[BLOCK_SIZE];
+
+    while (true) {
+      if (ByteStreams.read(in, header, 0, BLOCK_SIZE) < BLOCK_SIZE) {
+        throw new EOFException("Unexpected end of tar archive");
+      }
+      if (isZeroBlock(header)) {
+        return;
+      }
+
+      String name = getString(header, 0, NAME_LENGTH);
+      long size = getOctal(header, 124, 12);
+      byte type = header[156];
+
+      InputStream content = ByteStreams.limit(in, size);
+      if (type == '0' || type == 0) {
+        reader.read(name, size, content);
+      }
+      ByteStreams.exhaust(content);
+
+      long remainder = size % BLOCK_SIZE;
+      if (remainder > 0) {
+        ByteStreams.skipFully(in, BLOCK_SIZE - remainder);
+      }
+    }
+  }
+
+  private static void putOctal(byte[] header, int offset, int length, long value) {
+    // zero padded octal digits followed by a NUL
+    String octal = Long.toOctalString(value);
+    int digits = length - 1;
+    if (octal.length() > digits) {
+      throw new IllegalArgumentException("Value too large for tar header: " + value);
+    }
+    for (int i = 0; i < digits - octal.length(); i++) {
+      header[offset + i] = '0';
+    }
+    System.arraycopy(octal.getBytes(US_ASCII), 0, header, offset + digits - octal.length(),
+        octal.length());
+    header[offset + digits] = 0;
+  }
+
+  private static long getOctal(byte[] header, int offset, int length) {
+    String value = getString(header, offset, length).trim();
+    return value.isEmpty() ? 0 : Long.parseLong(value, 8);
+  }
+
+  private static String getString(byte[] header, int offset, int length) {
+    int end = offset;
+    while (end < offset + length && header[end] != 0) {
+      end++;
+    }
+    return new String(header, offset, end - offset, UTF_8);
+  }
+
+  private static boolean isZeroBlock(byte[] block) {
+    for (byte b : block) {
+      if (b != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @FunctionalInterface
+  public interface EntryReader {
+
+    void read(String name, long size, InputStream content) throws IOException;
+
+  }
+
+}
@@ -0,0 +1,27 @@
+package fi.thl.termed.util.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Creates generators for CBOR, binary format with the same data model as JSON.
+ */
+public final class CborGenerators {
+
+  private static final CBORFactory CBOR_FACTORY = new CBORFactory();
+
+  private CborGenerators() {
+  }
+
+  public static JsonGenerator from(OutputStream out) {
+    try {
+      return CBOR_FACTORY.createGenerator(out);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+}
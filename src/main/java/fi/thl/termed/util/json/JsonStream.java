@@ -4,9 +4,11 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.google.common.collect.Streams;
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonIOException;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
+import fi.thl.termed.util.concurrent.PipelineExecutor;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -21,8 +23,14 @@ public final class JsonStream {
   }
 
   public static <T> Stream<T> readArray(Gson gson, Class<T> valueType, InputStream in) {
-    JsonReader reader = new JsonReader(new InputStreamReader(in, UTF_8));
+    return readArray(gson, valueType, new JsonReader(new InputStreamReader(in, UTF_8)));
+  }
 
+  /**
+   * Reads array starting at the current position of given reader. Reader is closed when the
+   * returned stream is closed.
+   */
+  public static <T> Stream<T> readArray(Gson gson, Class<T> valueType, JsonReader reader) {
     try {
       reader.beginArray();
     } catch (IOException e) {
@@ -53,6 +61,25 @@ public final class JsonStream {
     });
   }
 
+  public static <T> Stream<T> readArray(Gson gson, Class<T> valueType, InputStream in,
+      PipelineExecutor pipeline) {
+    return readArray(gson, valueType, new JsonReader(new InputStreamReader(in, UTF_8)), pipeline);
+  }
+
+  /**
+   * Reads array elements as JSON trees on the calling thread and binds them to given type in
+   * pipeline executor. Values are returned in the order they appear in the input.
+   */
+  public static <T> Stream<T> readArray(Gson gson, Class<T> valueType, JsonReader reader,
+      PipelineExecutor pipeline) {
+    if (pipeline.isDirect()) {
+      return readArray(gson, valueType, reader);
+    }
+
+    return pipeline.map(readArray(gson, JsonElement.class, reader),
+        element -> gson.fromJson(element, valueType));
+  }
+
   public static <T> void writeArray(OutputStream out, Gson gson, Stream<T> values,
       Class<T> valueType) {
 
@@ -14,8 +14,10 @@ import com.google.gson.JsonNull;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonWriter;
 
 import java.io.IOException;
+import java.io.StringWriter;
 import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.Iterator;
@@ -380,4 +382,13 @@ public final class JsonUtils {
     return element == null ? JsonNull.INSTANCE : element;
   }
 
+  /**
+   * Serializes value on a single line regardless of given gson's pretty printing setting.
+   */
+  public static <T> String toCompactJson(Gson gson, T value, Class<T> type) {
+    StringWriter writer = new StringWriter();
+    gson.toJson(value, type, new JsonWriter(writer));
+    return writer.toString();
+  }
+
 }
@@ -3,9 +3,9 @@ package fi.thl.termed.util.json;
 import com.google.gson.TypeAdapter;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
+import fi.thl.termed.util.DateUtils;
 import java.io.IOException;
 import java.time.LocalDateTime;
-import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 
@@ -17,9 +17,7 @@ public class LocalDateTimeAsZonedTypeAdapter extends TypeAdapter<LocalDateTime>
 
   @Override
   public void write(JsonWriter out, LocalDateTime date) throws IOException {
-    out.value(
-        date.atZone(ZoneId.systemDefault())
-            .format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
+    out.value(DateUtils.formatZonedDateString(date));
   }
 
   @Override
@@ -1,30 +1,137 @@
 package fi.thl.termed.util.permission;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.eventbus.Subscribe;
 import fi.thl.termed.domain.GrantedPermission;
 import fi.thl.termed.domain.GraphRole;
 import fi.thl.termed.domain.ObjectRolePermission;
 import fi.thl.termed.domain.Permission;
 import fi.thl.termed.domain.User;
-import fi.thl.termed.util.dao.SystemDao;
+import fi.thl.termed.domain.event.InvalidateCachesEvent;
+import fi.thl.termed.util.dao.VersionedSystemDao;
+import fi.thl.termed.util.query.Specifications;
 import java.io.Serializable;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
 
+/**
+ * Evaluates permissions granted to graph roles of a user. All granted permissions are compiled
+ * into bit sets (one per role and permission) indexed by object. Bit sets of a user are combined
+ * once per distinct set of graph roles, so that evaluation is a map lookup and a bit test.
+ *
+ * <p>Compiled permissions are rebuilt after writes to the permission DAO or on {@link
+ * InvalidateCachesEvent}.
+ */
 public class DaoPermissionEvaluator<E extends Serializable> implements PermissionEvaluator<E> {
 
-  private SystemDao<ObjectRolePermission<E>, GrantedPermission> permissionDao;
+  private VersionedSystemDao<ObjectRolePermission<E>, GrantedPermission> permissionDao;
+
+  private volatile CompiledPermissions<E> compiled;
 
   public DaoPermissionEvaluator(
-      SystemDao<ObjectRolePermission<E>, GrantedPermission> permissionDao) {
+      VersionedSystemDao<ObjectRolePermission<E>, GrantedPermission> permissionDao) {
     this.permissionDao = permissionDao;
   }
 
+  @Subscribe
+  public void clearCachesOn(InvalidateCachesEvent e) {
+    permissionDao.incrementVersion();
+  }
+
   @Override
   public boolean hasPermission(User user, E object, Permission permission) {
-    for (GraphRole graphRole : user.getGraphRoles()) {
-      if (permissionDao.exists(new ObjectRolePermission<>(object, graphRole, permission))) {
-        return true;
+    if (user.getGraphRoles().isEmpty()) {
+      return false;
+    }
+    return compiled().hasPermission(user.getGraphRoles(), object, permission);
+  }
+
+  private CompiledPermissions<E> compiled() {
+    CompiledPermissions<E> current = compiled;
+    long version = permissionDao.getVersion();
+
+    if (current == null || current.version != version) {
+      try (Stream<ObjectRolePermission<E>> permissions =
+          permissionDao.keys(Specifications.matchAll())) {
+        current = new CompiledPermissions<>(version, permissions);
       }
+      compiled = current;
     }
-    return false;
+
+    return current;
+  }
+
+  private static final class CompiledPermissions<E extends Serializable> {
+
+    private static final int PERMISSIONS = Permission.values().length;
+
+    private final long version;
+
+    // object to bit index
+    private final ImmutableMap<E, Integer> objectIndex;
+    // role to bit sets of objects, one bit set per permission
+    private final ImmutableMap<GraphRole, BitSet[]> roleObjects;
+
+    // combined bit sets of roles of a user
+    private final Cache<List<GraphRole>, BitSet[]> userObjects =
+        CacheBuilder.newBuilder().maximumSize(10_000).build();
+
+    CompiledPermissions(long version, Stream<ObjectRolePermission<E>> permissions) {
+      Map<E, Integer> objectIndexBuilder = new HashMap<>();
+      Map<GraphRole, BitSet[]> roleObjectsBuilder = new HashMap<>();
+
+      permissions.forEach(p -> {
+        Integer index = objectIndexBuilder
+            .computeIfAbsent(p.getObjectId(), o -> objectIndexBuilder.size());
+        roleObjectsBuilder
+            .computeIfAbsent(p.getGraphRole(), r -> newBitSets())[p.getPermission().ordinal()]
+            .set(index);
+      });
+
+      this.version = version;
+      this.objectIndex = ImmutableMap.copyOf(objectIndexBuilder);
+      this.roleObjects = ImmutableMap.copyOf(roleObjectsBuilder);
+    }
+
+    boolean hasPermission(List<GraphRole> roles, E object, Permission permission) {
+      Integer index = objectIndex.get(object);
+      return index != null && userObjects(roles)[permission.ordinal()].get(index);
+    }
+
+    private BitSet[] userObjects(List<GraphRole> roles) {
+      try {
+        return userObjects.get(ImmutableList.copyOf(roles), () -> {
+          BitSet[] objects = newBitSets();
+          for (GraphRole role : roles) {
+            BitSet[] granted = roleObjects.get(role);
+            if (granted != null) {
+              for (int i = 0; i < PERMISSIONS; i++) {
+                objects[i].or(granted[i]);
+              }
+            }
+          }
+          return objects;
+        });
+      } catch (ExecutionException e) {
+        throw new IllegalStateException(e.getCause());
+      }
+    }
+
+    private static BitSet[] newBitSets() {
+      BitSet[] bitSets = new BitSet[PERMISSIONS];
+      for (int i = 0; i < PERMISSIONS; i++) {
+        bitSets[i] = new BitSet();
+      }
+      return bitSets;
+    }
+
   }
 
 }
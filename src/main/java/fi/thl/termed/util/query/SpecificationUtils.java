@@ -14,6 +14,20 @@ public final class SpecificationUtils {
   private SpecificationUtils() {
   }
 
+  /**
+   * Returns true if given specification and all its sub specifications can be expressed in SQL.
+   */
+  public static <K extends Serializable, V> boolean isSqlSpecification(Specification<K, V> spec) {
+    if (spec instanceof NotSpecification) {
+      return isSqlSpecification(((NotSpecification<K, V>) spec).getSpecification());
+    }
+    if (spec instanceof CompositeSpecification) {
+      return ((CompositeSpecification<K, V>) spec).getSpecifications().stream()
+          .allMatch(SpecificationUtils::isSqlSpecification);
+    }
+    return spec instanceof SqlSpecification;
+  }
+
   /**
    * Simplify given specification by eliminating impossible branches, removing duplicate
    * specifications and flattening single clause AND/OR specifications.
@@ -0,0 +1,86 @@
+package fi.thl.termed.util.service;
+
+import fi.thl.termed.domain.User;
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Counts writes made through this service. Version can be used to find out whether values derived
+ * from the service contents are outdated. Writes made in a transaction increment the version again
+ * when the transaction completes, as values derived before the commit may miss the write.
+ */
+public class VersionedService<K extends Serializable, V> extends ForwardingService<K, V> {
+
+  private final AtomicLong version = new AtomicLong();
+
+  public VersionedService(Service<K, V> delegate) {
+    super(delegate);
+  }
+
+  public long getVersion() {
+    return version.get();
+  }
+
+  private void written() {
+    version.incrementAndGet();
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+              version.incrementAndGet();
+            }
+          });
+    }
+  }
+
+  @Override
+  public void save(Stream<V> values, SaveMode mode, WriteOptions opts, User user) {
+    try {
+      super.save(values, mode, opts, user);
+    } finally {
+      written();
+    }
+  }
+
+  @Override
+  public K save(V value, SaveMode mode, WriteOptions opts, User user) {
+    try {
+      return super.save(value, mode, opts, user);
+    } finally {
+      written();
+    }
+  }
+
+  @Override
+  public void delete(Stream<K> ids, WriteOptions opts, User user) {
+    try {
+      super.delete(ids, opts, user);
+    } finally {
+      written();
+    }
+  }
+
+  @Override
+  public void delete(K key, WriteOptions opts, User user) {
+    try {
+      super.delete(key, opts, user);
+    } finally {
+      written();
+    }
+  }
+
+  @Override
+  public void saveAndDelete(Stream<V> saves, Stream<K> deletes, SaveMode mode, WriteOptions opts,
+      User user) {
+    try {
+      super.saveAndDelete(saves, deletes, mode, opts, user);
+    } finally {
+      written();
+    }
+  }
+
+}
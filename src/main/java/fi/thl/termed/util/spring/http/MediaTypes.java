@@ -6,8 +6,12 @@ public final class MediaTypes {
 
   public static final String TEXT_XML_VALUE = "text/xml;charset=UTF-8";
   public static final String TEXT_CSV_VALUE = "text/csv;charset=UTF-8";
+  public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson;charset=UTF-8";
+  public static final String APPLICATION_CBOR_VALUE = "application/cbor";
 
   public static final MediaType TEXT_XML = MediaType.valueOf(TEXT_XML_VALUE);
   public static final MediaType TEXT_CSV = MediaType.valueOf(TEXT_CSV_VALUE);
+  public static final MediaType APPLICATION_NDJSON = MediaType.valueOf(APPLICATION_NDJSON_VALUE);
+  public static final MediaType APPLICATION_CBOR = MediaType.valueOf(APPLICATION_CBOR_VALUE);
 
 }
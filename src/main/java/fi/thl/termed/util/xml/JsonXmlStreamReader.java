@@ -0,0 +1,208 @@
+package fi.thl.termed.util.xml;
+
+import com.google.gson.stream.JsonToken;
+import java.io.InputStream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Pull parser for XML written by {@link JsonXmlStreamWriter} or {@link JsonToXmlConverter}. API is
+ * modeled after Gson JsonReader so that JSON stream readers are easy to mirror for XML. Parses
+ * with StAX, so only the current element is held in memory.
+ */
+public class JsonXmlStreamReader implements AutoCloseable {
+
+  private static final XMLInputFactory XML_INPUT_FACTORY = newXmlInputFactory();
+
+  private final XMLStreamReader reader;
+
+  public JsonXmlStreamReader(XMLStreamReader reader) throws XMLStreamException {
+    this.reader = reader;
+    advance();
+  }
+
+  public static JsonXmlStreamReader from(InputStream in) throws XMLStreamException {
+    return new JsonXmlStreamReader(XML_INPUT_FACTORY.createXMLStreamReader(in));
+  }
+
+  private static XMLInputFactory newXmlInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    return factory;
+  }
+
+  public JsonToken peek() throws XMLStreamException {
+    // end of an entry is implied by the end of its value
+    while (reader.getEventType() == XMLStreamConstants.END_ELEMENT
+        && reader.getLocalName().equals("entry")) {
+      advance();
+    }
+
+    switch (reader.getEventType()) {
+      case XMLStreamConstants.START_ELEMENT:
+        return startToken(reader.getLocalName());
+      case XMLStreamConstants.END_ELEMENT:
+        return endToken(reader.getLocalName());
+      case XMLStreamConstants.END_DOCUMENT:
+        return JsonToken.END_DOCUMENT;
+      default:
+        throw new XMLStreamException("Unexpected event " + reader.getEventType(),
+            reader.getLocation());
+    }
+  }
+
+  public boolean hasNext() throws XMLStreamException {
+    JsonToken token = peek();
+    return token != JsonToken.END_OBJECT
+        && token != JsonToken.END_ARRAY
+        && token != JsonToken.END_DOCUMENT;
+  }
+
+  public void beginObject() throws XMLStreamException {
+    expect(JsonToken.BEGIN_OBJECT);
+    advance();
+  }
+
+  public void endObject() throws XMLStreamException {
+    expect(JsonToken.END_OBJECT);
+    advance();
+  }
+
+  public void beginArray() throws XMLStreamException {
+    expect(JsonToken.BEGIN_ARRAY);
+    advance();
+  }
+
+  public void endArray() throws XMLStreamException {
+    expect(JsonToken.END_ARRAY);
+    advance();
+  }
+
+  public String nextName() throws XMLStreamException {
+    expect(JsonToken.NAME);
+    String name = reader.getAttributeValue(null, "key");
+    advance();
+    return name;
+  }
+
+  public String nextString() throws XMLStreamException {
+    expect(JsonToken.STRING);
+    return nextText();
+  }
+
+  public long nextLong() throws XMLStreamException {
+    expect(JsonToken.NUMBER);
+    String text = nextText();
+    try {
+      return Long.parseLong(text);
+    } catch (NumberFormatException e) {
+      throw new XMLStreamException("Expected a long but was " + text, reader.getLocation());
+    }
+  }
+
+  public boolean nextBoolean() throws XMLStreamException {
+    expect(JsonToken.BOOLEAN);
+    return Boolean.parseBoolean(nextText());
+  }
+
+  public void nextNull() throws XMLStreamException {
+    expect(JsonToken.NULL);
+    skipElement();
+  }
+
+  /**
+   * Skips next value, or next name and its value.
+   */
+  public void skipValue() throws XMLStreamException {
+    JsonToken token = peek();
+    if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY
+        || token == JsonToken.END_DOCUMENT) {
+      throw new XMLStreamException("Expected a value but was " + token, reader.getLocation());
+    }
+    skipElement();
+  }
+
+  /**
+   * Closes the XML reader. Leaves underlying input stream open.
+   */
+  @Override
+  public void close() throws XMLStreamException {
+    reader.close();
+  }
+
+  private JsonToken startToken(String element) throws XMLStreamException {
+    switch (element) {
+      case "object":
+        return JsonToken.BEGIN_OBJECT;
+      case "array":
+        return JsonToken.BEGIN_ARRAY;
+      case "entry":
+        return JsonToken.NAME;
+      case "string":
+        return JsonToken.STRING;
+      case "number":
+        return JsonToken.NUMBER;
+      case "boolean":
+        return JsonToken.BOOLEAN;
+      case "null":
+        return JsonToken.NULL;
+      default:
+        throw new XMLStreamException("Unexpected element " + element, reader.getLocation());
+    }
+  }
+
+  private JsonToken endToken(String element) throws XMLStreamException {
+    switch (element) {
+      case "object":
+        return JsonToken.END_OBJECT;
+      case "array":
+        return JsonToken.END_ARRAY;
+      default:
+        throw new XMLStreamException("Unexpected end of " + element, reader.getLocation());
+    }
+  }
+
+  private void expect(JsonToken expected) throws XMLStreamException {
+    JsonToken actual = peek();
+    if (actual != expected) {
+      throw new XMLStreamException("Expected " + expected + " but was " + actual,
+          reader.getLocation());
+    }
+  }
+
+  // reads text of current element, leaves reader at the element following it
+  private String nextText() throws XMLStreamException {
+    String text = reader.getElementText();
+    advance();
+    return text;
+  }
+
+  // skips current element with its children, leaves reader at the element following it
+  private void skipElement() throws XMLStreamException {
+    int depth = 0;
+    do {
+      if (reader.getEventType() == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+      } else if (reader.getEventType() == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+      if (depth > 0) {
+        reader.next();
+      }
+    } while (depth > 0);
+    advance();
+  }
+
+  // moves to next start or end element or end of document
+  private void advance() throws XMLStreamException {
+    do {
+      reader.next();
+    } while (reader.getEventType() != XMLStreamConstants.START_ELEMENT
+        && reader.getEventType() != XMLStreamConstants.END_ELEMENT
+        && reader.getEventType() != XMLStreamConstants.END_DOCUMENT);
+  }
+
+}
@@ -0,0 +1,115 @@
+package fi.thl.termed.util.xml;
+
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Streams JSON structured values to XML with the same elements as {@link JsonToXmlConverter}, i.e.
+ * objects as object elements with key attributed entries and arrays as array elements. API is
+ * modeled after Gson JsonWriter so that JSON stream writers are easy to mirror for XML.
+ */
+public class JsonXmlStreamWriter implements AutoCloseable {
+
+  private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+  private final XMLStreamWriter writer;
+
+  // for each open object or array, whether it is the value of an entry
+  private final Deque<Boolean> containers = new ArrayDeque<>();
+  private boolean entryOpen = false;
+
+  public JsonXmlStreamWriter(XMLStreamWriter writer) throws XMLStreamException {
+    this.writer = writer;
+    this.writer.writeStartDocument("UTF-8", "1.0");
+  }
+
+  public static JsonXmlStreamWriter from(OutputStream out) throws XMLStreamException {
+    return new JsonXmlStreamWriter(XML_OUTPUT_FACTORY.createXMLStreamWriter(out, "UTF-8"));
+  }
+
+  public JsonXmlStreamWriter beginObject() throws XMLStreamException {
+    return begin("object");
+  }
+
+  public JsonXmlStreamWriter endObject() throws XMLStreamException {
+    return end();
+  }
+
+  public JsonXmlStreamWriter beginArray() throws XMLStreamException {
+    return begin("array");
+  }
+
+  public JsonXmlStreamWriter endArray() throws XMLStreamException {
+    return end();
+  }
+
+  public JsonXmlStreamWriter name(String name) throws XMLStreamException {
+    writer.writeStartElement("entry");
+    writer.writeAttribute("key", name);
+    entryOpen = true;
+    return this;
+  }
+
+  public JsonXmlStreamWriter value(String value) throws XMLStreamException {
+    return value != null ? primitive("string", value) : nullValue();
+  }
+
+  public JsonXmlStreamWriter value(long value) throws XMLStreamException {
+    return primitive("number", Long.toString(value));
+  }
+
+  public JsonXmlStreamWriter value(boolean value) throws XMLStreamException {
+    return primitive("boolean", Boolean.toString(value));
+  }
+
+  public JsonXmlStreamWriter nullValue() throws XMLStreamException {
+    writer.writeEmptyElement("null");
+    return endEntry();
+  }
+
+  public void flush() throws XMLStreamException {
+    writer.flush();
+  }
+
+  /**
+   * Ends the XML document. Leaves underlying output stream open.
+   */
+  @Override
+  public void close() throws XMLStreamException {
+    writer.writeEndDocument();
+    writer.close();
+  }
+
+  private JsonXmlStreamWriter begin(String element) throws XMLStreamException {
+    writer.writeStartElement(element);
+    containers.push(entryOpen);
+    entryOpen = false;
+    return this;
+  }
+
+  private JsonXmlStreamWriter end() throws XMLStreamException {
+    writer.writeEndElement();
+    entryOpen = containers.pop();
+    return endEntry();
+  }
+
+  private JsonXmlStreamWriter primitive(String element, String text) throws XMLStreamException {
+    writer.writeStartElement(element);
+    writer.writeCharacters(text);
+    writer.writeEndElement();
+    return endEntry();
+  }
+
+  private JsonXmlStreamWriter endEntry() throws XMLStreamException {
+    if (entryOpen) {
+      writer.writeEndElement();
+      entryOpen = false;
+    }
+    return this;
+  }
+
+}
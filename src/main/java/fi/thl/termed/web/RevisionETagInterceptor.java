@@ -0,0 +1,246 @@
+package fi.thl.termed.web;
+
+import static fi.thl.termed.util.collect.StreamUtils.toImmutableSetAndClose;
+import static fi.thl.termed.util.query.Queries.matchAll;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toList;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import fi.thl.termed.domain.Graph;
+import fi.thl.termed.domain.GraphId;
+import fi.thl.termed.domain.Property;
+import fi.thl.termed.domain.ReferenceAttribute;
+import fi.thl.termed.domain.Type;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.domain.event.InvalidateCachesEvent;
+import fi.thl.termed.service.node.internal.VisibleNodeChanges;
+import fi.thl.termed.util.UUIDs;
+import fi.thl.termed.util.service.VersionedService;
+import java.security.Principal;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+/**
+ * Adds weak ETags to graph, type and node reads and answers 304 Not Modified if request has a
+ * matching If-None-Match header. ETag hashes user, handler, contents of schema visible to the user
+ * and, for node reads, the version of visible node changes in request scope. Scope of a node read
+ * under a graph or a type includes all types linked to it by reference attributes, as node reads
+ * show e.g. referrers and referenced nodes. Schema hashes are cached until schema is written or
+ * caches are invalidated.
+ */
+@Component
+public class RevisionETagInterceptor extends HandlerInterceptorAdapter {
+
+  private static final Pattern CACHED_PATH =
+      Pattern.compile("^/api/(graphs|types|nodes|node-trees|node-count|dump)(\\W.*)?$");
+
+  private static final Pattern NODE_PATH =
+      Pattern.compile("^.*/(nodes|node-trees|node-count|dump|revisions)(\\W.*)?$");
+
+  private static final int SCHEMA_CACHE_SIZE = 1000;
+
+  @Autowired
+  private VersionedService<GraphId, Graph> graphService;
+  @Autowired
+  private VersionedService<TypeId, Type> typeService;
+  @Autowired
+  private VersionedService<String, Property> propertyService;
+  @Autowired
+  private VisibleNodeChanges visibleNodeChanges;
+  @Autowired
+  private Gson gson;
+
+  // schema hashes by schema versions and user roles, as schema visibility depends only on roles
+  private final Cache<List<Object>, Schema> schemaCache =
+      CacheBuilder.newBuilder().maximumSize(SCHEMA_CACHE_SIZE).build();
+  private final AtomicLong cacheInvalidations = new AtomicLong();
+
+  @Subscribe
+  public void clearCachesOn(InvalidateCachesEvent e) {
+    cacheInvalidations.incrementAndGet();
+    schemaCache.invalidateAll();
+  }
+
+  @Override
+  public boolean preHandle(HttpServletRequest req, HttpServletResponse resp, Object handler) {
+    if (!(handler instanceof HandlerMethod) || !isGetOrHead(req)) {
+      return true;
+    }
+
+    String pattern = (String) req.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+    User user = user(req.getUserPrincipal());
+
+    if (pattern == null || user == null || !CACHED_PATH.matcher(pattern).matches()) {
+      return true;
+    }
+
+    Optional<String> etag = etag((HandlerMethod) handler, pattern, pathVariables(req), user);
+
+    return !etag.isPresent() || !new ServletWebRequest(req, resp).checkNotModified(etag.get());
+  }
+
+  private Optional<String> etag(HandlerMethod handler, String pattern,
+      Map<String, String> pathVariables, User user) {
+
+    Schema schema = schema(user);
+
+    Hasher hasher = Hashing.murmur3_128().newHasher()
+        .putString(handler.getMethod().toGenericString(), UTF_8)
+        .putString(gson.toJson(user.getUsername()), UTF_8)
+        .putString(gson.toJson(user.getAppRole()), UTF_8)
+        .putString(gson.toJson(user.getGraphRoles()), UTF_8)
+        .putBytes(schema.hash.asBytes());
+
+    if (NODE_PATH.matcher(pattern).matches()) {
+      Optional<String> version = nodeVersion(schema.types, pathVariables);
+      if (!version.isPresent()) {
+        return Optional.empty();
+      }
+      hasher.putString(version.get(), UTF_8);
+    }
+
+    return Optional.of("W/\"" + hasher.hash() + "\"");
+  }
+
+  // versions are read before loading the schema and are incremented again after writes commit, so
+  // a cached schema may be outdated only until the next increment
+  private Schema schema(User user) {
+    List<Object> key = Arrays.asList(
+        cacheInvalidations.get(),
+        graphService.getVersion(),
+        typeService.getVersion(),
+        propertyService.getVersion(),
+        user.getAppRole(),
+        user.getGraphRoles());
+
+    Schema schema = schemaCache.getIfPresent(key);
+
+    if (schema == null) {
+      schema = loadSchema(user);
+      schemaCache.put(key, schema);
+    }
+
+    return schema;
+  }
+
+  private Schema loadSchema(User user) {
+    Set<Graph> graphs = toImmutableSetAndClose(graphService.values(matchAll(), user));
+    Set<Type> types = toImmutableSetAndClose(typeService.values(matchAll(), user));
+    Set<Property> properties = toImmutableSetAndClose(propertyService.values(matchAll(), user));
+
+    return new Schema(types, Hashing.combineOrdered(Arrays.asList(
+        contentHash(graphs),
+        contentHash(types),
+        contentHash(properties))));
+  }
+
+  // hashes serialized values, combined regardless of iteration order
+  private HashCode contentHash(Set<?> values) {
+    if (values.isEmpty()) {
+      return Hashing.murmur3_128().hashInt(0);
+    }
+    return Hashing.combineUnordered(values.stream()
+        .map(value -> Hashing.murmur3_128().hashString(gson.toJson(value), UTF_8))
+        .collect(toList()));
+  }
+
+  private Optional<String> nodeVersion(Set<Type> types, Map<String, String> pathVariables) {
+    UUID graphId = UUIDs.lenientFromString(pathVariables.get("graphId"));
+    String typeId = pathVariables.get("typeId");
+
+    if (graphId == null) {
+      return visibleNodeChanges.version();
+    }
+
+    return visibleNodeChanges.version(linkedTypes(types, typeId != null
+        ? t -> t.equals(TypeId.of(typeId, graphId))
+        : t -> t.getGraphId().equals(graphId)));
+  }
+
+  // types matching the predicate and types reachable from them via reference attributes in
+  // either direction
+  private Set<TypeId> linkedTypes(Set<Type> types, Predicate<TypeId> predicate) {
+    SetMultimap<TypeId, TypeId> links = HashMultimap.create();
+
+    for (Type type : types) {
+      for (ReferenceAttribute attribute : type.getReferenceAttributes()) {
+        links.put(attribute.getDomain(), attribute.getRange());
+        links.put(attribute.getRange(), attribute.getDomain());
+      }
+    }
+
+    Set<TypeId> linked = new HashSet<>();
+    Deque<TypeId> queue = new ArrayDeque<>();
+
+    types.stream().map(Type::identifier).filter(predicate).forEach(queue::add);
+
+    while (!queue.isEmpty()) {
+      TypeId typeId = queue.remove();
+      if (linked.add(typeId)) {
+        queue.addAll(links.get(typeId));
+      }
+    }
+
+    return linked;
+  }
+
+  private boolean isGetOrHead(HttpServletRequest req) {
+    return req.getMethod().equals("GET") || req.getMethod().equals("HEAD");
+  }
+
+  private User user(Principal principal) {
+    if (principal instanceof Authentication) {
+      Object user = ((Authentication) principal).getPrincipal();
+      return user instanceof User ? (User) user : null;
+    }
+    return null;
+  }
+
+  @SuppressWarnings("unchecked")
+  private Map<String, String> pathVariables(HttpServletRequest req) {
+    Object variables = req.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+    return variables != null ? (Map<String, String>) variables : Collections.emptyMap();
+  }
+
+  private static class Schema {
+
+    final Set<Type> types;
+    final HashCode hash;
+
+    Schema(Set<Type> types, HashCode hash) {
+      this.types = types;
+      this.hash = hash;
+    }
+
+  }
+
+}
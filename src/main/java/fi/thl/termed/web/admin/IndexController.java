@@ -15,17 +15,21 @@ import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeId;
 import fi.thl.termed.domain.User;
 import fi.thl.termed.domain.event.ReindexEvent;
+import fi.thl.termed.service.node.internal.NodeIndexSnapshotWriter;
 import fi.thl.termed.service.node.specification.NodesByGraphId;
 import fi.thl.termed.service.node.specification.NodesByTypeId;
 import fi.thl.termed.util.query.AndSpecification;
 import fi.thl.termed.util.query.OrSpecification;
 import fi.thl.termed.util.service.Service;
+import java.io.IOException;
 import java.util.UUID;
 import java.util.stream.Stream;
+import javax.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseStatus;
@@ -44,6 +48,25 @@ public class IndexController {
   @Autowired
   private Service<NodeId, Node> nodeService;
 
+  @Autowired
+  private NodeIndexSnapshotWriter nodeIndexSnapshotWriter;
+
+  /**
+   * Returns node index snapshot as a tar archive. Snapshot can be used to bootstrap a new instance
+   * by setting fi.thl.termed.indexSnapshot to point to the archive.
+   */
+  @GetMapping(value = "/index/snapshot", produces = "application/x-tar")
+  public void getSnapshot(@AuthenticationPrincipal User user, HttpServletResponse response)
+      throws IOException {
+    if (user.getAppRole() == AppRole.SUPERUSER) {
+      response.setContentType("application/x-tar");
+      response.setHeader("Content-Disposition", "attachment; filename=\"node-index.tar\"");
+      nodeIndexSnapshotWriter.writeSnapshot(response.getOutputStream());
+    } else {
+      throw new AccessDeniedException("");
+    }
+  }
+
   @DeleteMapping("/index")
   @ResponseStatus(NO_CONTENT)
   public void reindex(@AuthenticationPrincipal User user) {
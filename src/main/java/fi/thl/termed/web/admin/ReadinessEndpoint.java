@@ -0,0 +1,36 @@
+package fi.thl.termed.web.admin;
+
+import com.google.common.collect.ImmutableMap;
+import fi.thl.termed.util.index.IndexStatus;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.boot.actuate.endpoint.web.annotation.WebEndpoint;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports whether the node index is ready. Returns 503 while the index is built in the background
+ * so that traffic depending on full text search can be held back until then.
+ */
+@Component
+@WebEndpoint(id = "readiness")
+public class ReadinessEndpoint {
+
+  @Autowired
+  private IndexStatus nodeIndexStatus;
+
+  @ReadOperation
+  public WebEndpointResponse<Map<String, Object>> readiness() {
+    boolean ready = nodeIndexStatus.isReady();
+
+    Map<String, Object> body = ImmutableMap.of(
+        "status", ready ? "READY" : "BUILDING_INDEX",
+        "indexed", nodeIndexStatus.getIndexedCount());
+
+    return new WebEndpointResponse<>(body, ready
+        ? WebEndpointResponse.STATUS_OK
+        : WebEndpointResponse.STATUS_SERVICE_UNAVAILABLE);
+  }
+
+}
@@ -4,9 +4,11 @@ import static fi.thl.termed.util.query.AndSpecification.and;
 import static fi.thl.termed.util.query.OrSpecification.or;
 import static fi.thl.termed.util.service.WriteOptions.defaultOpts;
 import static fi.thl.termed.util.service.WriteOptions.opts;
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toMap;
 import static org.springframework.http.HttpStatus.NO_CONTENT;
 
+import com.google.common.collect.Lists;
 import fi.thl.termed.domain.AppRole;
 import fi.thl.termed.domain.Graph;
 import fi.thl.termed.domain.GraphId;
@@ -16,22 +18,28 @@ import fi.thl.termed.domain.Revision;
 import fi.thl.termed.domain.RevisionId;
 import fi.thl.termed.domain.RevisionType;
 import fi.thl.termed.domain.User;
+import fi.thl.termed.service.node.internal.NodeRevisionCompactor;
 import fi.thl.termed.service.node.specification.NodeRevisionsByGraphId;
+import fi.thl.termed.service.node.specification.NodeRevisionsByRevisionIds;
 import fi.thl.termed.service.node.specification.NodeRevisionsByRevisionType;
 import fi.thl.termed.service.node.specification.NodeRevisionsLessOrEqualToRevisionNumber;
+import fi.thl.termed.service.revision.internal.PendingRevisions;
 import fi.thl.termed.util.collect.Tuple;
 import fi.thl.termed.util.collect.Tuple2;
 import fi.thl.termed.util.query.Queries;
 import fi.thl.termed.util.query.Specifications;
 import fi.thl.termed.util.service.SaveMode;
-import fi.thl.termed.util.service.SequenceService;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.service.WriteOptions;
 import fi.thl.termed.util.spring.annotation.GetJsonMapping;
 import fi.thl.termed.util.spring.annotation.PostJsonMapping;
+import fi.thl.termed.util.spring.exception.BadRequestException;
 import fi.thl.termed.util.spring.exception.NotFoundException;
 import fi.thl.termed.util.spring.transaction.TransactionUtils;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.stream.Stream;
@@ -43,6 +51,7 @@ import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
@@ -57,7 +66,7 @@ public class RevisionController {
   @Autowired
   private Service<Long, Revision> revisionService;
   @Autowired
-  private SequenceService revisionSeq;
+  private PendingRevisions pendingRevisions;
   @Autowired
   private Service<RevisionId<NodeId>, Tuple2<RevisionType, Node>> nodeRevisionService;
   @Autowired
@@ -66,6 +75,8 @@ public class RevisionController {
   private Service<GraphId, Graph> graphService;
   @Autowired
   private PlatformTransactionManager manager;
+  @Autowired
+  private NodeRevisionCompactor nodeRevisionCompactor;
 
   @GetJsonMapping("/revisions")
   public Stream<Revision> getRevisions(
@@ -118,12 +129,16 @@ public class RevisionController {
           .collect(toMap(RevisionId::getId, RevisionId::getRevision, Long::max));
     }
 
-    nodeService.save(
+    List<RevisionId<NodeId>> nodeRevisionIds =
         nodeRevisionsLessOrEqualToTargetRevision.entrySet().stream()
-            .map(idAndRevision -> nodeRevisionService
-                .get(RevisionId.of(idAndRevision.getKey(), idAndRevision.getValue()), user)
-                .map(t -> t._2)
-                .<IllegalStateException>orElseThrow(IllegalStateException::new)),
+            .map(idAndRevision -> RevisionId.of(idAndRevision.getKey(), idAndRevision.getValue()))
+            .collect(toList());
+
+    nodeService.save(
+        Lists.partition(nodeRevisionIds, 500).stream()
+            .flatMap(batch -> nodeRevisionService
+                .values(Queries.query(NodeRevisionsByRevisionIds.of(batch)), user))
+            .map(t -> t._2),
         SaveMode.UPSERT, WriteOptions.opts(sync), user);
 
     log.info("Done");
@@ -146,22 +161,52 @@ public class RevisionController {
       // node revisions are cascaded when revisions are deleted
       revisionService.delete(revisionService.keys(Queries.matchAll(), user), defaultOpts(), user);
 
-      Long revision = revisionSeq.getAndAdvance(user);
+      return pendingRevisions.write(user, revision -> {
+        revisionService.save(
+            Revision.of(revision, user.getUsername(), LocalDateTime.now()),
+            SaveMode.INSERT, defaultOpts(), user);
+
+        try (Stream<Node> nodes = nodeService.values(Queries.matchAll(), user)) {
+          WriteOptions revisionOpts = opts(revision);
+          nodeRevisionService.save(
+              nodes.map(node -> Tuple.of(RevisionType.INSERT, node)),
+              SaveMode.INSERT,
+              revisionOpts,
+              user);
+        }
+        return null;
+      });
+    });
+
+    log.info("Done");
+  }
+
+  /**
+   * Thins node revision history. Uses configured retention policy unless one is given, durations
+   * are ISO-8601 (e.g. P30D).
+   */
+  @PostMapping("/revisions/compaction")
+  @ResponseStatus(NO_CONTENT)
+  public void compactRevisions(
+      @RequestParam(name = "keepAll", required = false) String keepAll,
+      @RequestParam(name = "keepDaily", required = false) String keepDaily,
+      @AuthenticationPrincipal User user) {
+    if (user.getAppRole() != AppRole.SUPERUSER) {
+      throw new AccessDeniedException("");
+    }
 
-      revisionService.save(
-          Revision.of(revision, user.getUsername(), LocalDateTime.now()),
-          SaveMode.INSERT, defaultOpts(), user);
+    log.warn("Compacting revision history (user: {})", user.getUsername());
 
-      try (Stream<Node> nodes = nodeService.values(Queries.matchAll(), user)) {
-        WriteOptions revisionOpts = opts(revision);
-        nodeRevisionService.save(
-            nodes.map(node -> Tuple.of(RevisionType.INSERT, node)),
-            SaveMode.INSERT,
-            revisionOpts,
-            user);
+    try {
+      if (keepAll != null) {
+        nodeRevisionCompactor.compact(Duration.parse(keepAll),
+            keepDaily != null ? Duration.parse(keepDaily) : null);
+      } else {
+        nodeRevisionCompactor.compact();
       }
-      return null;
-    });
+    } catch (DateTimeParseException e) {
+      throw new BadRequestException(e.getMessage());
+    }
 
     log.info("Done");
   }
@@ -0,0 +1,87 @@
+package fi.thl.termed.web.dump;
+
+import static fi.thl.termed.util.collect.ListUtils.nullToEmpty;
+import static fi.thl.termed.util.io.GzipUtils.decompressIfGzipped;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import fi.thl.termed.domain.Dump;
+import fi.thl.termed.domain.Graph;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.Type;
+import fi.thl.termed.util.concurrent.PipelineExecutor;
+import fi.thl.termed.util.json.JsonStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.List;
+
+/**
+ * Reads JSON dumps incrementally. Graphs and types are read into memory, nodes are returned as a
+ * lazy stream backed by the input if they appear after graphs and types (as in dumps written by
+ * {@link DumpReadController}). Gzip compressed input is detected automatically.
+ */
+final class DumpJsonStream {
+
+  private DumpJsonStream() {
+  }
+
+  /**
+   * Reads dump from given input. Returned dump should be closed to release the input.
+   */
+  static Dump readDump(Gson gson, InputStream in, PipelineExecutor pipeline) throws IOException {
+    JsonReader reader = new JsonReader(new InputStreamReader(decompressIfGzipped(in), UTF_8));
+
+    List<Graph> graphs = null;
+    List<Type> types = null;
+    List<Node> nodes = null;
+
+    reader.beginObject();
+
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "graphs":
+          graphs = readList(gson, Graph.class, reader);
+          break;
+        case "types":
+          types = readList(gson, Type.class, reader);
+          break;
+        case "nodes":
+          if (graphs != null && types != null) {
+            return new Dump(graphs.stream(), types.stream(),
+                JsonStream.readArray(gson, Node.class, reader, pipeline));
+          }
+          // nodes before graphs or types, can't stream nodes as they can't be saved first
+          nodes = readList(gson, Node.class, reader);
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+
+    reader.endObject();
+    reader.close();
+
+    return new Dump(
+        nullToEmpty(graphs).stream(),
+        nullToEmpty(types).stream(),
+        nullToEmpty(nodes).stream());
+  }
+
+  private static <T> List<T> readList(Gson gson, Class<T> valueType, JsonReader reader)
+      throws IOException {
+    ImmutableList.Builder<T> values = ImmutableList.builder();
+
+    reader.beginArray();
+    while (reader.hasNext()) {
+      T value = gson.fromJson(reader, valueType);
+      values.add(value);
+    }
+    reader.endArray();
+
+    return values.build();
+  }
+
+}
@@ -0,0 +1,177 @@
+package fi.thl.termed.web.dump;
+
+import static fi.thl.termed.util.io.GzipUtils.decompressIfGzipped;
+import static fi.thl.termed.util.json.JsonUtils.toCompactJson;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Streams;
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import fi.thl.termed.domain.Dump;
+import fi.thl.termed.domain.Graph;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.Type;
+import fi.thl.termed.util.collect.Tuple;
+import fi.thl.termed.util.collect.Tuple2;
+import fi.thl.termed.util.concurrent.PipelineExecutor;
+import fi.thl.termed.util.spring.exception.BadRequestException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Reads and writes dumps as newline delimited JSON records. Each line is an object with exactly
+ * one of the keys "graph", "type", "node" or "checkpoint", e.g.
+ * <pre>
+ * {"graph":{...}}
+ * {"type":{...}}
+ * {"node":{...}}
+ * {"node":{...}}
+ * {"checkpoint":1}
+ * </pre>
+ * Checkpoint records divide the dump into numbered chunks. Each chunk is restored in its own
+ * transaction which makes it possible to resume an interrupted restore from the chunk following
+ * the last committed one.
+ */
+final class DumpNdjsonStream {
+
+  private DumpNdjsonStream() {
+  }
+
+  /**
+   * Writes graphs and types followed by nodes and a checkpoint after every {@code chunkSize}
+   * nodes. The last record is always a checkpoint. Nodes are serialized using given pipeline.
+   */
+  static void writeDump(Gson gson, Dump dump, int chunkSize, PipelineExecutor pipeline, Writer w)
+      throws IOException {
+    JsonWriter jsonWriter = new JsonWriter(w);
+
+    long checkpoint = 0;
+    long recordsInChunk = 0;
+
+    try (Stream<Graph> graphs = dump.getGraphs();
+        Stream<Type> types = dump.getTypes();
+        Stream<String> nodes = pipeline.map(dump.getNodes(),
+            node -> toCompactJson(gson, node, Node.class))) {
+
+      for (Iterator<Graph> i = graphs.iterator(); i.hasNext(); recordsInChunk++) {
+        writeRecord("graph", gson, i.next(), Graph.class, jsonWriter, w);
+      }
+      for (Iterator<Type> i = types.iterator(); i.hasNext(); recordsInChunk++) {
+        writeRecord("type", gson, i.next(), Type.class, jsonWriter, w);
+      }
+
+      long nodesInChunk = 0;
+
+      for (Iterator<String> i = nodes.iterator(); i.hasNext(); ) {
+        writeRecord("node", i.next(), w);
+        recordsInChunk++;
+
+        if (++nodesInChunk == chunkSize) {
+          writeCheckpoint(++checkpoint, w);
+          nodesInChunk = 0;
+          recordsInChunk = 0;
+        }
+      }
+    }
+
+    if (recordsInChunk > 0 || checkpoint == 0) {
+      writeCheckpoint(++checkpoint, w);
+    }
+  }
+
+  private static <T> void writeRecord(String key, Gson gson, T value, Class<T> valueType,
+      JsonWriter jsonWriter, Writer w) throws IOException {
+    w.write("{\"" + key + "\":");
+    gson.toJson(value, valueType, jsonWriter);
+    w.write("}\n");
+  }
+
+  private static void writeRecord(String key, String json, Writer w) throws IOException {
+    w.write("{\"" + key + "\":" + json + "}\n");
+  }
+
+  private static void writeCheckpoint(long checkpoint, Writer w) throws IOException {
+    w.write("{\"checkpoint\":" + checkpoint + "}\n");
+  }
+
+  /**
+   * Reads dump chunks lazily from given (possibly gzip compressed) input. Each chunk is returned
+   * with its checkpoint number. Records after the last checkpoint form a final chunk.
+   */
+  static Stream<Tuple2<Long, Dump>> readChunks(Gson gson, InputStream in) throws IOException {
+    JsonReader reader = new JsonReader(new InputStreamReader(decompressIfGzipped(in), UTF_8));
+    // allow multiple top level values
+    reader.setLenient(true);
+
+    Iterator<Tuple2<Long, Dump>> chunks = new AbstractIterator<Tuple2<Long, Dump>>() {
+      private long checkpoint = 0;
+
+      @Override
+      protected Tuple2<Long, Dump> computeNext() {
+        try {
+          return readChunk();
+        } catch (IOException e) {
+          throw new JsonIOException(e);
+        }
+      }
+
+      private Tuple2<Long, Dump> readChunk() throws IOException {
+        ImmutableList.Builder<Graph> graphs = ImmutableList.builder();
+        ImmutableList.Builder<Type> types = ImmutableList.builder();
+        ImmutableList.Builder<Node> nodes = ImmutableList.builder();
+        boolean empty = true;
+
+        while (reader.peek() != JsonToken.END_DOCUMENT) {
+          reader.beginObject();
+          String key = reader.nextName();
+
+          switch (key) {
+            case "graph":
+              Graph graph = gson.fromJson(reader, Graph.class);
+              graphs.add(graph);
+              break;
+            case "type":
+              Type type = gson.fromJson(reader, Type.class);
+              types.add(type);
+              break;
+            case "node":
+              Node node = gson.fromJson(reader, Node.class);
+              nodes.add(node);
+              break;
+            case "checkpoint":
+              reader.skipValue();
+              reader.endObject();
+              return Tuple.of(++checkpoint, new Dump(
+                  graphs.build().stream(), types.build().stream(), nodes.build().stream()));
+            default:
+              throw new BadRequestException("Unknown dump record: " + key);
+          }
+
+          reader.endObject();
+          empty = false;
+        }
+
+        return empty ? endOfData() : Tuple.of(++checkpoint, new Dump(
+            graphs.build().stream(), types.build().stream(), nodes.build().stream()));
+      }
+    };
+
+    return Streams.stream(chunks).onClose(() -> {
+      try {
+        reader.close();
+      } catch (IOException e) {
+        throw new JsonIOException(e);
+      }
+    });
+  }
+
+}
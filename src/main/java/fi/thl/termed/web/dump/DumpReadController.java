@@ -1,7 +1,11 @@
 package fi.thl.termed.web.dump;
 
 import static fi.thl.termed.util.collect.SetUtils.toImmutableSet;
+import static fi.thl.termed.util.json.JsonUtils.toCompactJson;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Optional.ofNullable;
+import static org.springframework.http.HttpHeaders.ACCEPT_ENCODING;
+import static org.springframework.http.HttpHeaders.CONTENT_ENCODING;
 import static org.springframework.http.MediaType.APPLICATION_JSON_UTF8_VALUE;
 
 import com.google.gson.Gson;
@@ -13,18 +17,24 @@ import fi.thl.termed.domain.GraphId;
 import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.User;
+import fi.thl.termed.util.concurrent.PipelineExecutor;
 import fi.thl.termed.util.query.MatchAll;
 import fi.thl.termed.util.query.Query;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.spring.annotation.GetJsonMapping;
+import fi.thl.termed.util.spring.annotation.GetNdjsonMapping;
 import fi.thl.termed.util.spring.exception.NotFoundException;
+import fi.thl.termed.util.spring.http.MediaTypes;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
 import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
@@ -46,6 +56,9 @@ public class DumpReadController {
   @Autowired
   private Gson gson;
 
+  @Autowired
+  private PipelineExecutor dumpExportPipeline;
+
   @GetJsonMapping("/dump")
   public void dump(@AuthenticationPrincipal User user, HttpServletResponse response)
       throws IOException {
@@ -61,7 +74,7 @@ public class DumpReadController {
 
       try (Stream<Graph> graphs = dump.getGraphs();
           Stream<Type> types = dump.getTypes();
-          Stream<Node> nodes = dump.getNodes()) {
+          Stream<String> nodes = serialize(dump.getNodes())) {
         writeJson(graphs.iterator(), types.iterator(), nodes.iterator(), writer);
       }
     }
@@ -82,7 +95,7 @@ public class DumpReadController {
 
       try (Stream<Graph> graphs = dump.getGraphs();
           Stream<Type> types = dump.getTypes();
-          Stream<Node> nodes = dump.getNodes()) {
+          Stream<String> nodes = serialize(dump.getNodes())) {
         writeJson(graphs.iterator(), types.iterator(), nodes.iterator(), writer);
       }
     }
@@ -104,14 +117,75 @@ public class DumpReadController {
 
       try (Stream<Graph> graphs = dump.getGraphs();
           Stream<Type> types = dump.getTypes();
-          Stream<Node> nodes = dump.getNodes()) {
+          Stream<String> nodes = serialize(dump.getNodes())) {
         writeJson(graphs.iterator(), types.iterator(), nodes.iterator(), writer);
       }
     }
   }
 
+  @GetNdjsonMapping("/dump")
+  public void dumpNdjson(
+      @RequestParam(name = "chunkSize", defaultValue = "5000") int chunkSize,
+      @AuthenticationPrincipal User user,
+      HttpServletRequest request,
+      HttpServletResponse response) throws IOException {
+
+    try (Stream<GraphId> graphIds = graphService.keys(new Query<>(new MatchAll<>()), user)) {
+      writeNdjson(new DumpId(graphIds.collect(toImmutableSet())), chunkSize, user,
+          request, response);
+    }
+  }
+
+  @GetNdjsonMapping(path = "/dump", params = "graphId")
+  public void dumpNdjsonByGraphIds(@RequestParam("graphId") List<UUID> ids,
+      @RequestParam(name = "chunkSize", defaultValue = "5000") int chunkSize,
+      @AuthenticationPrincipal User user,
+      HttpServletRequest request,
+      HttpServletResponse response) throws IOException {
+    writeNdjson(new DumpId(ids.stream().map(GraphId::new).collect(toImmutableSet())), chunkSize,
+        user, request, response);
+  }
+
+  @GetNdjsonMapping(path = "/graphs/{graphId}/dump")
+  public void dumpNdjsonByGraphId(@PathVariable("graphId") UUID graphId,
+      @RequestParam(name = "chunkSize", defaultValue = "5000") int chunkSize,
+      @AuthenticationPrincipal User user,
+      HttpServletRequest request,
+      HttpServletResponse response) throws IOException {
+    Graph graph = graphService.get(new GraphId(graphId), user).orElseThrow(NotFoundException::new);
+    writeNdjson(new DumpId(graph.identifier()), chunkSize, user, request, response);
+  }
+
+  // gzip output if client accepts it, dumps compress well
+  private void writeNdjson(DumpId dumpId, int chunkSize, User user, HttpServletRequest request,
+      HttpServletResponse response) throws IOException {
+
+    boolean gzip = ofNullable(request.getHeader(ACCEPT_ENCODING))
+        .map(encodings -> encodings.contains("gzip"))
+        .orElse(false);
+
+    response.setContentType(MediaTypes.APPLICATION_NDJSON_VALUE);
+    response.setCharacterEncoding(UTF_8.toString());
+    if (gzip) {
+      response.setHeader(CONTENT_ENCODING, "gzip");
+    }
+
+    try (OutputStream out = gzip
+        ? new GZIPOutputStream(response.getOutputStream())
+        : response.getOutputStream();
+        Writer writer = new OutputStreamWriter(out, UTF_8);
+        Dump dump = dumpService.get(dumpId, user).orElseThrow(IllegalStateException::new)) {
+      DumpNdjsonStream.writeDump(gson, dump, chunkSize, dumpExportPipeline, writer);
+    }
+  }
+
+  // nodes are serialized concurrently if export pipeline has workers
+  private Stream<String> serialize(Stream<Node> nodes) {
+    return dumpExportPipeline.map(nodes, node -> toCompactJson(gson, node, Node.class));
+  }
+
   // write outer object manually to to get nicely formatted dump, actual data is written with gson
-  private void writeJson(Iterator<Graph> graphs, Iterator<Type> types, Iterator<Node> nodes,
+  private void writeJson(Iterator<Graph> graphs, Iterator<Type> types, Iterator<String> nodes,
       Writer w) throws IOException {
     JsonWriter jsonWriter = new JsonWriter(w);
 
@@ -133,7 +207,7 @@ public class DumpReadController {
     w.write("  \"nodes\":[\n");
     while (nodes.hasNext()) {
       w.write("    ");
-      gson.toJson(nodes.next(), Node.class, jsonWriter);
+      w.write(nodes.next());
       w.write(nodes.hasNext() ? ",\n" : "\n");
     }
     w.write("  ]\n");
@@ -2,16 +2,26 @@ package fi.thl.termed.web.dump;
 
 import static fi.thl.termed.util.service.SaveMode.saveMode;
 import static fi.thl.termed.util.service.WriteOptions.opts;
+import static fi.thl.termed.util.spring.transaction.TransactionUtils.runInTransaction;
 import static org.springframework.http.HttpStatus.NO_CONTENT;
 
+import com.google.gson.Gson;
 import fi.thl.termed.domain.Dump;
 import fi.thl.termed.domain.DumpId;
 import fi.thl.termed.domain.User;
+import fi.thl.termed.util.collect.Tuple2;
+import fi.thl.termed.util.concurrent.PipelineExecutor;
+import fi.thl.termed.util.dao.Dao;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.spring.annotation.PostJsonMapping;
+import fi.thl.termed.util.spring.annotation.PostNdjsonMapping;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.stream.Stream;
+import javax.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
-import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
@@ -24,15 +34,75 @@ public class DumpWriteController {
   @Autowired
   private Service<DumpId, Dump> dumpService;
 
+  @Autowired
+  private Gson gson;
+
+  @Autowired
+  private PipelineExecutor nodeSavePipeline;
+
+  @Autowired
+  private Dao<String, Long> dumpRestoreCheckpointDao;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
   @PostJsonMapping(produces = {})
   @ResponseStatus(NO_CONTENT)
-  public void restore(@RequestBody Dump dump,
+  public void restore(
+      @RequestParam(name = "mode", defaultValue = "upsert") String mode,
+      @RequestParam(name = "sync", defaultValue = "false") boolean sync,
+      @RequestParam(name = "generateCodes", defaultValue = "false") boolean generateCodes,
+      @RequestParam(name = "generateUris", defaultValue = "false") boolean generateUris,
+      @AuthenticationPrincipal User user,
+      HttpServletRequest request) throws IOException {
+    try (InputStream input = request.getInputStream();
+        Dump dump = DumpJsonStream.readDump(gson, input, nodeSavePipeline)) {
+      dumpService.save(dump, saveMode(mode), opts(sync, generateCodes, generateUris), user);
+    }
+  }
+
+  /**
+   * Restores NDJSON dump one chunk per transaction. If restoreId is given, the last committed
+   * chunk is recorded and a repeated request with the same restoreId skips all committed chunks.
+   */
+  @PostNdjsonMapping(produces = {})
+  @ResponseStatus(NO_CONTENT)
+  public void restoreNdjson(
       @RequestParam(name = "mode", defaultValue = "upsert") String mode,
       @RequestParam(name = "sync", defaultValue = "false") boolean sync,
       @RequestParam(name = "generateCodes", defaultValue = "false") boolean generateCodes,
       @RequestParam(name = "generateUris", defaultValue = "false") boolean generateUris,
-      @AuthenticationPrincipal User user) {
-    dumpService.save(dump, saveMode(mode), opts(sync, generateCodes, generateUris), user);
+      @RequestParam(name = "restoreId", required = false) String restoreId,
+      @AuthenticationPrincipal User user,
+      HttpServletRequest request) throws IOException {
+
+    long resumeFrom = restoreId != null
+        ? dumpRestoreCheckpointDao.get(restoreId, user).orElse(0L) : 0L;
+
+    try (InputStream input = request.getInputStream();
+        Stream<Tuple2<Long, Dump>> chunks = DumpNdjsonStream.readChunks(gson, input)) {
+      chunks.filter(chunk -> chunk._1 > resumeFrom).forEach(chunk ->
+          runInTransaction(transactionManager, () -> {
+            dumpService.save(chunk._2, saveMode(mode),
+                opts(sync, generateCodes, generateUris), user);
+            if (restoreId != null) {
+              saveCheckpoint(restoreId, chunk._1, user);
+            }
+            return null;
+          }));
+    }
+
+    if (restoreId != null) {
+      dumpRestoreCheckpointDao.delete(restoreId, user);
+    }
+  }
+
+  private void saveCheckpoint(String restoreId, Long checkpoint, User user) {
+    if (dumpRestoreCheckpointDao.exists(restoreId, user)) {
+      dumpRestoreCheckpointDao.update(restoreId, checkpoint, user);
+    } else {
+      dumpRestoreCheckpointDao.insert(restoreId, checkpoint, user);
+    }
   }
 
 }
@@ -14,10 +14,10 @@ import fi.thl.termed.domain.Dump;
 import fi.thl.termed.domain.DumpId;
 import fi.thl.termed.domain.UrlWithCredentials;
 import fi.thl.termed.domain.User;
+import fi.thl.termed.util.concurrent.PipelineExecutor;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.spring.annotation.PostJsonMapping;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.Base64;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
@@ -46,6 +46,9 @@ public class DumpWriteFromRemoteController {
   @Autowired
   private Service<DumpId, Dump> dumpService;
 
+  @Autowired
+  private PipelineExecutor nodeSavePipeline;
+
   private CloseableHttpClient httpClient = HttpClientBuilder.create().build();
 
   @PostJsonMapping(produces = {}, params = "remote=true")
@@ -64,9 +67,9 @@ public class DumpWriteFromRemoteController {
 
       log.info("Downloading {} as {}", remote.getUrl(), remote.getUsername());
 
-      try (CloseableHttpResponse response = httpClient.execute(request)) {
-        Dump dump = gson.fromJson(
-            new InputStreamReader(response.getEntity().getContent(), UTF_8), Dump.class);
+      try (CloseableHttpResponse response = httpClient.execute(request);
+          Dump dump = DumpJsonStream.readDump(
+              gson, response.getEntity().getContent(), nodeSavePipeline)) {
 
         log.info("Restoring");
 
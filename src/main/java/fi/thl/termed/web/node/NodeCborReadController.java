@@ -0,0 +1,210 @@
+package fi.thl.termed.web.node;
+
+import static com.google.common.collect.ImmutableList.of;
+import static fi.thl.termed.service.node.select.NodeSelects.parse;
+import static fi.thl.termed.service.node.select.NodeSelects.qualify;
+import static fi.thl.termed.service.node.specification.NodeSpecifications.specifyByAnyPropertyPrefix;
+import static fi.thl.termed.service.node.specification.NodeSpecifications.specifyByQuery;
+import static fi.thl.termed.util.collect.StreamUtils.toImmutableListAndClose;
+import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
+import static fi.thl.termed.util.query.OrSpecification.or;
+import static fi.thl.termed.util.query.Queries.matchAll;
+import static fi.thl.termed.util.spring.SpEL.EMPTY_LIST;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import fi.thl.termed.domain.Graph;
+import fi.thl.termed.domain.GraphId;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.Type;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.service.node.sort.NodeSorts;
+import fi.thl.termed.service.node.util.IndexedNodeTreeLoader;
+import fi.thl.termed.service.node.util.NodeToCborStream;
+import fi.thl.termed.service.type.specification.TypesByGraphId;
+import fi.thl.termed.util.json.CborGenerators;
+import fi.thl.termed.util.query.MatchAll;
+import fi.thl.termed.util.query.Queries;
+import fi.thl.termed.util.query.Query;
+import fi.thl.termed.util.query.Select;
+import fi.thl.termed.util.query.Sort;
+import fi.thl.termed.util.query.Specification;
+import fi.thl.termed.util.service.Service;
+import fi.thl.termed.util.spring.annotation.GetCborMapping;
+import fi.thl.termed.util.spring.exception.NotFoundException;
+import fi.thl.termed.util.spring.http.MediaTypes;
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Serves nodes and node trees as CBOR. Request parameters are same as in corresponding JSON APIs.
+ */
+@RestController
+@RequestMapping("/api")
+public class NodeCborReadController {
+
+  @Autowired
+  private Service<GraphId, Graph> graphService;
+  @Autowired
+  private Service<TypeId, Type> typeService;
+  @Autowired
+  private Service<NodeId, Node> nodeService;
+
+  @GetCborMapping("/nodes")
+  public void getNodes(
+      @RequestParam(value = "query", defaultValue = "") String query,
+      @RequestParam(value = "sort", defaultValue = EMPTY_LIST) List<String> sort,
+      @RequestParam(value = "max", defaultValue = "50") int max,
+      @AuthenticationPrincipal User user,
+      HttpServletResponse resp) throws IOException {
+
+    Specification<NodeId, Node> spec = or(toListAndClose(
+        typeService.values(new Query<>(new MatchAll<>()), user)
+            .map(type -> specifyByAnyPropertyPrefix(type, query))));
+    List<Sort> sorts = NodeSorts.parse(sort);
+
+    writeNodes(nodeService.values(new Query<>(spec, sorts, max), user), resp);
+  }
+
+  @GetCborMapping("/graphs/{graphId}/nodes")
+  public void getNodes(
+      @PathVariable("graphId") UUID graphId,
+      @RequestParam(value = "query", defaultValue = "") String query,
+      @RequestParam(value = "sort", defaultValue = EMPTY_LIST) List<String> sort,
+      @RequestParam(value = "max", defaultValue = "50") int max,
+      @AuthenticationPrincipal User user,
+      HttpServletResponse resp) throws IOException {
+
+    if (!graphService.exists(new GraphId(graphId), user)) {
+      throw new NotFoundException();
+    }
+
+    Specification<NodeId, Node> spec = or(toListAndClose(
+        typeService.values(new Query<>(new TypesByGraphId(graphId)), user)
+            .map(type -> specifyByAnyPropertyPrefix(type, query))));
+    List<Sort> sorts = NodeSorts.parse(sort);
+
+    writeNodes(nodeService.values(new Query<>(spec, sorts, max), user), resp);
+  }
+
+  @GetCborMapping("/graphs/{graphId}/types/{typeId}/nodes")
+  public void getNodes(
+      @PathVariable("graphId") UUID graphId,
+      @PathVariable("typeId") String typeId,
+      @RequestParam(value = "query", defaultValue = "") String query,
+      @RequestParam(value = "sort", defaultValue = EMPTY_LIST) List<String> sort,
+      @RequestParam(value = "max", defaultValue = "50") int max,
+      @AuthenticationPrincipal User user,
+      HttpServletResponse resp) throws IOException {
+
+    Type type = typeService.get(TypeId.of(typeId, graphId), user)
+        .orElseThrow(NotFoundException::new);
+
+    Specification<NodeId, Node> spec = specifyByAnyPropertyPrefix(type, query);
+    List<Sort> sorts = NodeSorts.parse(sort);
+
+    writeNodes(nodeService.values(new Query<>(spec, sorts, max), user), resp);
+  }
+
+  @GetCborMapping("/node-trees")
+  public void getTrees(
+      @RequestParam(value = "select", defaultValue = EMPTY_LIST) List<String> select,
+      @RequestParam(value = "where", defaultValue = EMPTY_LIST) List<String> where,
+      @RequestParam(value = "sort", defaultValue = EMPTY_LIST) List<String> sort,
+      @RequestParam(value = "max", defaultValue = "50") Integer max,
+      @AuthenticationPrincipal User user,
+      HttpServletResponse resp) throws IOException {
+
+    List<Graph> graphs = toImmutableListAndClose(graphService.values(matchAll(), user));
+    List<Type> types = toImmutableListAndClose(typeService.values(matchAll(), user));
+
+    Specification<NodeId, Node> spec = specifyByQuery(graphs, types, types, where);
+    List<Select> selects = qualify(types, types, parse(select));
+    List<Sort> sorts = NodeSorts.parse(sort);
+
+    writeTrees(nodeService.values(new Query<>(selects, spec, sorts, max), user), selects, user,
+        resp);
+  }
+
+  @GetCborMapping("/graphs/{graphId}/node-trees")
+  public void getTrees(
+      @PathVariable("graphId") UUID graphId,
+      @RequestParam(value = "select", defaultValue = EMPTY_LIST) List<String> select,
+      @RequestParam(value = "where", defaultValue = EMPTY_LIST) List<String> where,
+      @RequestParam(value = "sort", defaultValue = EMPTY_LIST) List<String> sort,
+      @RequestParam(value = "max", defaultValue = "50") Integer max,
+      @AuthenticationPrincipal User user,
+      HttpServletResponse resp) throws IOException {
+
+    if (!graphService.exists(new GraphId(graphId), user)) {
+      throw new NotFoundException();
+    }
+
+    List<Graph> graphs = toImmutableListAndClose(graphService.values(matchAll(), user));
+    List<Type> types = toImmutableListAndClose(typeService.values(matchAll(), user));
+    List<Type> domains = toImmutableListAndClose(
+        typeService.values(Queries.query(TypesByGraphId.of(graphId)), user));
+
+    Specification<NodeId, Node> spec = specifyByQuery(graphs, types, domains, where);
+    List<Select> selects = qualify(types, domains, parse(select));
+    List<Sort> sorts = NodeSorts.parse(sort);
+
+    writeTrees(nodeService.values(new Query<>(selects, spec, sorts, max), user), selects, user,
+        resp);
+  }
+
+  @GetCborMapping("/graphs/{graphId}/types/{typeId}/node-trees")
+  public void getTrees(
+      @PathVariable("graphId") UUID graphId,
+      @PathVariable("typeId") String typeId,
+      @RequestParam(value = "select", defaultValue = EMPTY_LIST) List<String> select,
+      @RequestParam(value = "where", defaultValue = EMPTY_LIST) List<String> where,
+      @RequestParam(value = "sort", defaultValue = EMPTY_LIST) List<String> sort,
+      @RequestParam(value = "max", defaultValue = "50") Integer max,
+      @AuthenticationPrincipal User user,
+      HttpServletResponse resp) throws IOException {
+
+    List<Graph> graphs = toImmutableListAndClose(graphService.values(matchAll(), user));
+    List<Type> types = toImmutableListAndClose(typeService.values(matchAll(), user));
+    Type domain = typeService.get(TypeId.of(typeId, graphId), user)
+        .orElseThrow(NotFoundException::new);
+
+    Specification<NodeId, Node> spec = specifyByQuery(graphs, types, domain, where);
+    List<Select> selects = qualify(types, of(domain), parse(select));
+    List<Sort> sorts = NodeSorts.parse(sort);
+
+    writeTrees(nodeService.values(new Query<>(selects, spec, sorts, max), user), selects, user,
+        resp);
+  }
+
+  private void writeNodes(Stream<Node> nodes, HttpServletResponse resp) throws IOException {
+    resp.setContentType(MediaTypes.APPLICATION_CBOR_VALUE);
+
+    try (Stream<Node> closeable = nodes;
+        JsonGenerator generator = CborGenerators.from(resp.getOutputStream())) {
+      NodeToCborStream.toCbor(closeable.iterator(), generator);
+    }
+  }
+
+  private void writeTrees(Stream<Node> nodes, List<Select> selects, User user,
+      HttpServletResponse resp) throws IOException {
+    resp.setContentType(MediaTypes.APPLICATION_CBOR_VALUE);
+
+    try (Stream<Node> closeable = nodes;
+        JsonGenerator generator = CborGenerators.from(resp.getOutputStream())) {
+      NodeToCborStream.treesToCbor(new IndexedNodeTreeLoader(nodeService, user, selects)
+          .toTrees(closeable).iterator(), generator);
+    }
+  }
+
+}
@@ -0,0 +1,71 @@
+package fi.thl.termed.web.node;
+
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.ObjectRevision;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.service.node.internal.NodeChangeFeed;
+import fi.thl.termed.util.spring.annotation.GetJsonMapping;
+import fi.thl.termed.util.spring.exception.BadRequestException;
+import java.time.Duration;
+import java.util.stream.Stream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Node change feed in revision order. To continue reading, pass the revision number of the last
+ * returned change as sinceRevision and its node id (graphId.typeId.id) as after. If there are no
+ * new changes, request waits at most waitSeconds for new changes before returning an empty list.
+ */
+@RestController
+@RequestMapping("/api/changes")
+public class NodeChangeFeedController {
+
+  private static final int MAX_CHANGES = 10_000;
+  private static final int MAX_WAIT_SECONDS = 60;
+
+  @Autowired
+  private NodeChangeFeed nodeChangeFeed;
+
+  @GetJsonMapping
+  public Stream<ObjectRevision<NodeId>> getChanges(
+      @RequestParam(name = "sinceRevision", defaultValue = "0") Long sinceRevision,
+      @RequestParam(name = "after", required = false) String after,
+      @RequestParam(name = "max", defaultValue = "1000") int max,
+      @RequestParam(name = "waitSeconds", defaultValue = "0") int waitSeconds,
+      @AuthenticationPrincipal User user) {
+    return nodeChangeFeed.changes(sinceRevision, nodeId(after), limit(max), wait(waitSeconds),
+        user);
+  }
+
+  @GetJsonMapping(params = "bodies=true")
+  public Stream<ObjectRevision<Node>> getChangesWithNodes(
+      @RequestParam(name = "sinceRevision", defaultValue = "0") Long sinceRevision,
+      @RequestParam(name = "after", required = false) String after,
+      @RequestParam(name = "max", defaultValue = "1000") int max,
+      @RequestParam(name = "waitSeconds", defaultValue = "0") int waitSeconds,
+      @AuthenticationPrincipal User user) {
+    return nodeChangeFeed.changesWithNodes(sinceRevision, nodeId(after), limit(max),
+        wait(waitSeconds), user);
+  }
+
+  private NodeId nodeId(String after) {
+    try {
+      return after != null ? NodeId.fromString(after) : null;
+    } catch (RuntimeException e) {
+      throw new BadRequestException("Illegal node id: " + after);
+    }
+  }
+
+  private int limit(int max) {
+    return Math.max(0, Math.min(max, MAX_CHANGES));
+  }
+
+  private Duration wait(int waitSeconds) {
+    return Duration.ofSeconds(Math.max(0, Math.min(waitSeconds, MAX_WAIT_SECONDS)));
+  }
+
+}
@@ -25,6 +25,7 @@ import fi.thl.termed.util.csv.CsvDelimiter;
 import fi.thl.termed.util.csv.CsvLineBreak;
 import fi.thl.termed.util.csv.CsvOptions;
 import fi.thl.termed.util.csv.CsvQuoteChar;
+import fi.thl.termed.util.index.lucene.LuceneIndex;
 import fi.thl.termed.util.query.Queries;
 import fi.thl.termed.util.query.Query;
 import fi.thl.termed.util.query.Select;
@@ -39,7 +40,6 @@ import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.util.List;
 import java.util.UUID;
-import java.util.stream.Stream;
 import javax.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
@@ -59,6 +59,8 @@ public class NodeCsvReadController {
   private Service<TypeId, Type> typeService;
   @Autowired
   private Service<NodeId, Node> nodeService;
+  @Autowired
+  private LuceneIndex<NodeId, Node> nodeIndex;
 
   @GetCsvMapping("/nodes")
   public void get(
@@ -97,9 +99,9 @@ public class NodeCsvReadController {
     List<Select> qSelects = NodeSelects.qualify(types, types, selects);
     List<Sort> sorts = NodeSorts.parse(sort);
 
-    try (Stream<Node> nodes = nodeService
-        .values(new Query<>(qSelects, spec, sorts, max), user);
-        OutputStream out = response.getOutputStream()) {
+    Query<NodeId, Node> query = new Query<>(qSelects, spec, sorts, max);
+
+    try (OutputStream out = response.getOutputStream()) {
       CsvOptions csvOptions = CsvOptions.builder()
           .delimiter(delimiter)
           .quoteChar(quoteChar)
@@ -108,9 +110,10 @@ public class NodeCsvReadController {
           .quoteAll(quoteAll)
           .charset(charset).build();
 
-      new NodesToCsv(useLabeledReferences, labelAttribute, labelLang,
-          (id) -> nodeService.get(id, user))
-          .writeAsCsv(nodes, selects, csvOptions, out);
+      NodesToCsv nodesToCsv =
+          new NodesToCsv(useLabeledReferences, labelAttribute, labelLang, nodeService, user);
+      nodesToCsv.writeAsCsv(nodesToCsv.columns(types, nodeIndex.getFieldNames(), selects),
+          nodeService.values(query, user), selects, csvOptions, out);
     }
   }
 
@@ -158,9 +161,9 @@ public class NodeCsvReadController {
     List<Select> qSelects = NodeSelects.qualify(types, domains, selects);
     List<Sort> sorts = NodeSorts.parse(sort);
 
-    try (Stream<Node> nodes = nodeService
-        .values(new Query<>(qSelects, spec, sorts, max), user);
-        OutputStream out = response.getOutputStream()) {
+    Query<NodeId, Node> query = new Query<>(qSelects, spec, sorts, max);
+
+    try (OutputStream out = response.getOutputStream()) {
       CsvOptions csvOptions = CsvOptions.builder()
           .delimiter(delimiter)
           .quoteChar(quoteChar)
@@ -169,9 +172,10 @@ public class NodeCsvReadController {
           .quoteAll(quoteAll)
           .charset(charset).build();
 
-      new NodesToCsv(useLabeledReferences, labelAttribute, labelLang,
-          (id) -> nodeService.get(id, user))
-          .writeAsCsv(nodes, selects, csvOptions, out);
+      NodesToCsv nodesToCsv =
+          new NodesToCsv(useLabeledReferences, labelAttribute, labelLang, nodeService, user);
+      nodesToCsv.writeAsCsv(nodesToCsv.columns(domains, nodeIndex.getFieldNames(), selects),
+          nodeService.values(query, user), selects, csvOptions, out);
     }
   }
 
@@ -220,9 +224,9 @@ public class NodeCsvReadController {
     List<Select> qSelects = NodeSelects.qualify(types, of(domain), selects);
     List<Sort> sorts = NodeSorts.parse(sort);
 
-    try (Stream<Node> nodes = nodeService
-        .values(new Query<>(qSelects, spec, sorts, max), user);
-        OutputStream out = response.getOutputStream()) {
+    Query<NodeId, Node> query = new Query<>(qSelects, spec, sorts, max);
+
+    try (OutputStream out = response.getOutputStream()) {
       CsvOptions csvOptions = CsvOptions.builder()
           .delimiter(delimiter)
           .quoteChar(quoteChar)
@@ -231,9 +235,10 @@ public class NodeCsvReadController {
           .quoteAll(quoteAll)
           .charset(charset).build();
 
-      new NodesToCsv(useLabeledReferences, labelAttribute, labelLang,
-          (id) -> nodeService.get(id, user))
-          .writeAsCsv(nodes, selects, csvOptions, out);
+      NodesToCsv nodesToCsv =
+          new NodesToCsv(useLabeledReferences, labelAttribute, labelLang, nodeService, user);
+      nodesToCsv.writeAsCsv(nodesToCsv.columns(of(domain), nodeIndex.getFieldNames(), selects),
+          nodeService.values(query, user), selects, csvOptions, out);
     }
   }
 
@@ -5,9 +5,12 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static fi.thl.termed.util.collect.FunctionUtils.partialApplySecond;
+import static java.util.Collections.emptyList;
 import static org.springframework.web.util.HtmlUtils.htmlEscape;
 
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -17,6 +20,10 @@ import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeId;
 import fi.thl.termed.domain.StrictLangValue;
 import fi.thl.termed.domain.User;
+import fi.thl.termed.service.node.internal.ReferenceHierarchyIndex;
+import fi.thl.termed.service.node.specification.NodesByGraphId;
+import fi.thl.termed.service.node.specification.NodesById;
+import fi.thl.termed.service.node.specification.NodesByTypeId;
 import fi.thl.termed.service.node.util.IndexedReferenceLoader;
 import fi.thl.termed.service.node.util.IndexedReferrerLoader;
 import fi.thl.termed.util.GraphUtils;
@@ -24,6 +31,11 @@ import fi.thl.termed.util.RegularExpressions;
 import fi.thl.termed.util.Tree;
 import fi.thl.termed.util.URIs;
 import fi.thl.termed.util.UUIDs;
+import fi.thl.termed.util.query.AndSpecification;
+import fi.thl.termed.util.query.OrSpecification;
+import fi.thl.termed.util.query.Query;
+import fi.thl.termed.util.query.SelectAll;
+import fi.thl.termed.util.query.Specification;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.spring.annotation.GetJsonMapping;
 import fi.thl.termed.util.spring.exception.NotFoundException;
@@ -36,6 +48,7 @@ import java.util.UUID;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
@@ -49,8 +62,12 @@ import org.springframework.web.bind.annotation.RestController;
     params = {"jstree=true", "context=true"})
 public class NodeJsTreeReadController {
 
+  private static final int PRELOAD_CHUNK_SIZE = 1000;
+
   @Autowired
   private Service<NodeId, Node> nodeService;
+  @Autowired
+  private ReferenceHierarchyIndex referenceHierarchyIndex;
 
   @GetJsonMapping
   public List<JsTree> getContextJsTrees(
@@ -65,10 +82,16 @@ public class NodeJsTreeReadController {
     Node node = nodeService.get(new NodeId(nodeId, typeId, graphId), user)
         .orElseThrow(NotFoundException::new);
 
-    Function<Node, ImmutableList<Node>> referenceLoadingFunction =
-        partialApplySecond(new IndexedReferenceLoader(nodeService, user), attributeId);
-    Function<Node, ImmutableList<Node>> referrerLoadingFunction =
-        partialApplySecond(new IndexedReferrerLoader(nodeService, user), attributeId);
+    // load all nodes of paths and trees at once, loaders query only nodes missing from the cache
+    Cache<NodeId, Node> cache = CacheBuilder.newBuilder().build();
+    preload(contextNodeIds(node.identifier(), attributeId, referrers), user, cache);
+
+    Function<Node, ImmutableList<Node>> referenceLoadingFunction = partialApplySecond(
+        new IndexedReferenceLoader(nodeService, user, ImmutableList.of(new SelectAll()), cache),
+        attributeId);
+    Function<Node, ImmutableList<Node>> referrerLoadingFunction = partialApplySecond(
+        new IndexedReferrerLoader(nodeService, user, ImmutableList.of(new SelectAll()), cache),
+        attributeId);
 
     Set<NodeId> selectedIds = ImmutableSet.of(node.identifier());
 
@@ -101,6 +124,44 @@ public class NodeJsTreeReadController {
         .collect(toImmutableList());
   }
 
+  // Nodes on paths from given node to roots and nodes of trees opened along these paths. Trees
+  // also show whether each child has children, so grandchildren of path nodes are included.
+  private Set<NodeId> contextNodeIds(NodeId nodeId, String attributeId, boolean referrers) {
+    Set<NodeId> pathIds = referrers
+        ? referenceHierarchyIndex.referenceClosure(nodeId, attributeId)
+        : referenceHierarchyIndex.referrerClosure(nodeId, attributeId);
+
+    Function<NodeId, Set<NodeId>> children = referrers
+        ? id -> referenceHierarchyIndex.referrers(id, attributeId)
+        : id -> referenceHierarchyIndex.references(id, attributeId);
+
+    Set<NodeId> childIds = pathIds.stream()
+        .flatMap(id -> children.apply(id).stream())
+        .collect(toImmutableSet());
+
+    return Stream.of(
+        pathIds.stream(),
+        childIds.stream(),
+        childIds.stream().flatMap(id -> children.apply(id).stream()))
+        .flatMap(ids -> ids)
+        .collect(toImmutableSet());
+  }
+
+  private void preload(Set<NodeId> nodeIds, User user, Cache<NodeId, Node> cache) {
+    for (List<NodeId> chunk : Iterables.partition(nodeIds, PRELOAD_CHUNK_SIZE)) {
+      Specification<NodeId, Node> spec = OrSpecification.or(chunk.stream()
+          .map(id -> AndSpecification.and(
+              NodesByGraphId.of(id.getTypeGraphId()),
+              NodesByTypeId.of(id.getTypeId()),
+              NodesById.of(id.getId())))
+          .collect(Collectors.toList()));
+
+      try (Stream<Node> nodes = nodeService.values(new Query<>(spec, emptyList(), -1), user)) {
+        nodes.forEach(n -> cache.put(n.identifier(), n));
+      }
+    }
+  }
+
   private class NodeTreeToJsTree implements Function<Tree<Node>, JsTree> {
 
     private Predicate<NodeId> addChildrenPredicate;
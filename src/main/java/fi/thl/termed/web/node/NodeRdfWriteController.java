@@ -5,6 +5,7 @@ import static fi.thl.termed.util.service.SaveMode.saveMode;
 import static fi.thl.termed.util.service.WriteOptions.opts;
 import static org.springframework.http.HttpStatus.NO_CONTENT;
 
+import com.google.gson.Gson;
 import fi.thl.termed.domain.Graph;
 import fi.thl.termed.domain.GraphId;
 import fi.thl.termed.domain.Node;
@@ -13,6 +14,7 @@ import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.TypeId;
 import fi.thl.termed.domain.User;
 import fi.thl.termed.service.node.util.RdfModelToNodes;
+import fi.thl.termed.service.node.util.RdfStreamToNodes;
 import fi.thl.termed.service.type.specification.TypesByGraphId;
 import fi.thl.termed.util.collect.Tuple;
 import fi.thl.termed.util.jena.JenaRdfModel;
@@ -20,13 +22,20 @@ import fi.thl.termed.util.query.Queries;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.spring.annotation.PatchRdfMapping;
 import fi.thl.termed.util.spring.annotation.PostRdfMapping;
+import fi.thl.termed.util.spring.exception.BadRequestException;
 import fi.thl.termed.util.spring.exception.NotFoundException;
 import fi.thl.termed.util.spring.http.HttpPreconditions;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Stream;
+import javax.servlet.http.HttpServletRequest;
 import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.RiotException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -53,6 +62,9 @@ public class NodeRdfWriteController {
   @Autowired
   private Service<NodeId, Node> nodeService;
 
+  @Autowired
+  private Gson gson;
+
   @PostRdfMapping(produces = {})
   @ResponseStatus(NO_CONTENT)
   private void post(
@@ -79,6 +91,44 @@ public class NodeRdfWriteController {
     nodeService.save(nodes.stream(), saveMode(mode), opts(sync, generateCodes, generateUris), user);
   }
 
+  /**
+   * Imports large RDF documents without reading them into an in-memory model.
+   */
+  @PostRdfMapping(params = "streaming=true", produces = {})
+  @ResponseStatus(NO_CONTENT)
+  private void postStreaming(
+      @PathVariable("graphId") UUID graphId,
+      @RequestParam(value = "importCodes", defaultValue = "true") boolean importCodes,
+      @RequestParam(name = "mode", defaultValue = "upsert") String mode,
+      @RequestParam(name = "sync", defaultValue = "false") boolean sync,
+      @RequestParam(name = "generateCodes", defaultValue = "false") boolean generateCodes,
+      @RequestParam(name = "generateUris", defaultValue = "false") boolean generateUris,
+      @AuthenticationPrincipal User user,
+      HttpServletRequest request) throws IOException {
+
+    HttpPreconditions.checkFound(
+        graphService.exists(GraphId.of(graphId), user),
+        "Graph not found.");
+
+    log.info("Importing RDF-stream {} (user: {})", graphId, user.getUsername());
+
+    Lang lang = Optional.ofNullable(request.getContentType())
+        .map(RDFLanguages::contentTypeToLang)
+        .orElse(Lang.RDFXML);
+
+    List<Type> types = toImmutableListAndClose(
+        typeService.values(Queries.query(TypesByGraphId.of(graphId)), user));
+    RdfStreamToNodes rdfStreamToNodes =
+        new RdfStreamToNodes(types, q -> nodeService.values(q, user), importCodes, gson);
+
+    try (InputStream input = request.getInputStream();
+        Stream<Node> nodes = rdfStreamToNodes.apply(input, lang)) {
+      nodeService.save(nodes, saveMode(mode), opts(sync, generateCodes, generateUris), user);
+    } catch (RiotException e) {
+      throw new BadRequestException(e);
+    }
+  }
+
   @PatchRdfMapping(produces = {})
   @ResponseStatus(NO_CONTENT)
   private void patch(
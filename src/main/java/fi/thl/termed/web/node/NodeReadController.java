@@ -4,7 +4,10 @@ import static fi.thl.termed.service.node.specification.NodeSpecifications.specif
 import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
 import static fi.thl.termed.util.query.OrSpecification.or;
 import static fi.thl.termed.util.spring.SpEL.EMPTY_LIST;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.springframework.http.MediaType.APPLICATION_JSON_UTF8_VALUE;
 
+import com.google.gson.stream.JsonWriter;
 import fi.thl.termed.domain.Graph;
 import fi.thl.termed.domain.GraphId;
 import fi.thl.termed.domain.Node;
@@ -13,7 +16,9 @@ import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.TypeId;
 import fi.thl.termed.domain.User;
 import fi.thl.termed.service.node.sort.NodeSorts;
+import fi.thl.termed.service.node.util.NodeToJsonStream;
 import fi.thl.termed.service.type.specification.TypesByGraphId;
+import fi.thl.termed.util.json.JsonWriters;
 import fi.thl.termed.util.query.MatchAll;
 import fi.thl.termed.util.query.Query;
 import fi.thl.termed.util.query.Sort;
@@ -21,9 +26,11 @@ import fi.thl.termed.util.query.Specification;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.spring.annotation.GetJsonMapping;
 import fi.thl.termed.util.spring.exception.NotFoundException;
+import java.io.IOException;
 import java.util.List;
 import java.util.UUID;
 import java.util.stream.Stream;
+import javax.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -43,27 +50,33 @@ public class NodeReadController {
   private Service<NodeId, Node> nodeService;
 
   @GetJsonMapping("/nodes")
-  public Stream<Node> get(
+  public void get(
       @RequestParam(value = "query", defaultValue = "") String query,
       @RequestParam(value = "sort", defaultValue = EMPTY_LIST) List<String> sort,
       @RequestParam(value = "max", defaultValue = "50") int max,
-      @AuthenticationPrincipal User user) {
+      @RequestParam(value = "pretty", defaultValue = "false") boolean pretty,
+      @RequestParam(value = "htmlSafe", defaultValue = "true") boolean htmlSafe,
+      @AuthenticationPrincipal User user,
+      HttpServletResponse resp) throws IOException {
 
     Specification<NodeId, Node> spec = or(toListAndClose(
         typeService.values(new Query<>(new MatchAll<>()), user)
             .map(type -> specifyByAnyPropertyPrefix(type, query))));
     List<Sort> sorts = NodeSorts.parse(sort);
 
-    return nodeService.values(new Query<>(spec, sorts, max), user);
+    writeJson(nodeService.values(new Query<>(spec, sorts, max), user), pretty, htmlSafe, resp);
   }
 
   @GetJsonMapping("/graphs/{graphId}/nodes")
-  public Stream<Node> get(
+  public void get(
       @PathVariable("graphId") UUID graphId,
       @RequestParam(value = "query", defaultValue = "") String query,
       @RequestParam(value = "sort", defaultValue = EMPTY_LIST) List<String> sort,
       @RequestParam(value = "max", defaultValue = "50") int max,
-      @AuthenticationPrincipal User user) {
+      @RequestParam(value = "pretty", defaultValue = "false") boolean pretty,
+      @RequestParam(value = "htmlSafe", defaultValue = "true") boolean htmlSafe,
+      @AuthenticationPrincipal User user,
+      HttpServletResponse resp) throws IOException {
 
     if (!graphService.exists(new GraphId(graphId), user)) {
       throw new NotFoundException();
@@ -74,17 +87,20 @@ public class NodeReadController {
             .map(type -> specifyByAnyPropertyPrefix(type, query))));
     List<Sort> sorts = NodeSorts.parse(sort);
 
-    return nodeService.values(new Query<>(spec, sorts, max), user);
+    writeJson(nodeService.values(new Query<>(spec, sorts, max), user), pretty, htmlSafe, resp);
   }
 
   @GetJsonMapping("/graphs/{graphId}/types/{typeId}/nodes")
-  public Stream<Node> get(
+  public void get(
       @PathVariable("graphId") UUID graphId,
       @PathVariable("typeId") String typeId,
       @RequestParam(value = "query", defaultValue = "") String query,
       @RequestParam(value = "sort", defaultValue = EMPTY_LIST) List<String> sort,
       @RequestParam(value = "max", defaultValue = "50") int max,
-      @AuthenticationPrincipal User user) {
+      @RequestParam(value = "pretty", defaultValue = "false") boolean pretty,
+      @RequestParam(value = "htmlSafe", defaultValue = "true") boolean htmlSafe,
+      @AuthenticationPrincipal User user,
+      HttpServletResponse resp) throws IOException {
 
     Type type = typeService.get(TypeId.of(typeId, graphId), user)
         .orElseThrow(NotFoundException::new);
@@ -92,7 +108,7 @@ public class NodeReadController {
     Specification<NodeId, Node> spec = specifyByAnyPropertyPrefix(type, query);
     List<Sort> sorts = NodeSorts.parse(sort);
 
-    return nodeService.values(new Query<>(spec, sorts, max), user);
+    writeJson(nodeService.values(new Query<>(spec, sorts, max), user), pretty, htmlSafe, resp);
   }
 
   @GetJsonMapping("/graphs/{graphId}/types/{typeId}/nodes/{id}")
@@ -106,4 +122,16 @@ public class NodeReadController {
         .orElseThrow(NotFoundException::new);
   }
 
+  // node lists are written with hand-written serializer instead of reflection based GSON
+  private void writeJson(Stream<Node> nodes, boolean pretty, boolean htmlSafe,
+      HttpServletResponse resp) throws IOException {
+    resp.setContentType(APPLICATION_JSON_UTF8_VALUE);
+    resp.setCharacterEncoding(UTF_8.toString());
+
+    try (Stream<Node> closeable = nodes;
+        JsonWriter writer = JsonWriters.from(resp.getOutputStream(), pretty, htmlSafe)) {
+      NodeToJsonStream.toJson(closeable.iterator(), writer);
+    }
+  }
+
 }
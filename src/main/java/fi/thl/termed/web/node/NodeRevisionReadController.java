@@ -1,16 +1,21 @@
 package fi.thl.termed.web.node;
 
 import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
+import static fi.thl.termed.util.json.JsonUtils.toCompactJson;
 import static fi.thl.termed.util.query.AndSpecification.and;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Comparator.comparing;
 
+import com.google.gson.Gson;
 import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeDiff;
 import fi.thl.termed.domain.NodeId;
 import fi.thl.termed.domain.ObjectRevision;
 import fi.thl.termed.domain.Revision;
 import fi.thl.termed.domain.RevisionId;
 import fi.thl.termed.domain.RevisionType;
 import fi.thl.termed.domain.User;
+import fi.thl.termed.service.node.internal.NodeRevisionDiffer;
 import fi.thl.termed.service.node.specification.NodeRevisionsByGraphId;
 import fi.thl.termed.service.node.specification.NodeRevisionsById;
 import fi.thl.termed.service.node.specification.NodeRevisionsByTypeId;
@@ -19,14 +24,23 @@ import fi.thl.termed.util.collect.Tuple2;
 import fi.thl.termed.util.query.Queries;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.spring.annotation.GetJsonMapping;
+import fi.thl.termed.util.spring.annotation.GetNdjsonMapping;
+import fi.thl.termed.util.spring.exception.BadRequestException;
 import fi.thl.termed.util.spring.exception.NotFoundException;
+import fi.thl.termed.util.spring.http.MediaTypes;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
 import java.util.stream.Stream;
+import javax.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
@@ -39,6 +53,12 @@ public class NodeRevisionReadController {
   @Autowired
   private Service<Long, Revision> revisionService;
 
+  @Autowired
+  private NodeRevisionDiffer nodeRevisionDiffer;
+
+  @Autowired
+  private Gson gson;
+
   @GetJsonMapping("/graphs/{graphId}/types/{typeId}/nodes/{id}/revisions")
   public List<ObjectRevision<NodeId>> getNodeRevisions(
       @PathVariable("graphId") UUID graphId,
@@ -97,4 +117,50 @@ public class NodeRevisionReadController {
     }
   }
 
+  /**
+   * Streams attribute level changes of graph nodes between given revisions as JSON lines.
+   */
+  @GetNdjsonMapping("/graphs/{graphId}/revisions/diff")
+  public void getGraphNodeDiff(
+      @PathVariable("graphId") UUID graphId,
+      @RequestParam("from") Long from,
+      @RequestParam("to") Long to,
+      @AuthenticationPrincipal User user,
+      HttpServletResponse response) throws IOException {
+    writeDiff(graphId, null, from, to, user, response);
+  }
+
+  /**
+   * Streams attribute level changes of type nodes between given revisions as JSON lines.
+   */
+  @GetNdjsonMapping("/graphs/{graphId}/types/{typeId}/revisions/diff")
+  public void getTypeNodeDiff(
+      @PathVariable("graphId") UUID graphId,
+      @PathVariable("typeId") String typeId,
+      @RequestParam("from") Long from,
+      @RequestParam("to") Long to,
+      @AuthenticationPrincipal User user,
+      HttpServletResponse response) throws IOException {
+    writeDiff(graphId, typeId, from, to, user, response);
+  }
+
+  private void writeDiff(UUID graphId, String typeId, Long from, Long to, User user,
+      HttpServletResponse response) throws IOException {
+    if (from > to) {
+      throw new BadRequestException("Revision 'from' must not be greater than 'to'");
+    }
+
+    response.setContentType(MediaTypes.APPLICATION_NDJSON_VALUE);
+    response.setCharacterEncoding(UTF_8.toString());
+
+    try (Stream<NodeDiff> diffs = nodeRevisionDiffer.diff(graphId, typeId, from, to, user);
+        Writer writer = new OutputStreamWriter(response.getOutputStream(), UTF_8)) {
+      Iterator<NodeDiff> iterator = diffs.iterator();
+      while (iterator.hasNext()) {
+        writer.write(toCompactJson(gson, iterator.next(), NodeDiff.class));
+        writer.write('\n');
+      }
+    }
+  }
+
 }
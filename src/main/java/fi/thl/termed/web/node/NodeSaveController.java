@@ -9,6 +9,7 @@ import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeId;
 import fi.thl.termed.domain.TypeId;
 import fi.thl.termed.domain.User;
+import fi.thl.termed.util.concurrent.PipelineExecutor;
 import fi.thl.termed.util.json.JsonStream;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.spring.annotation.PostJsonMapping;
@@ -40,6 +41,9 @@ public class NodeSaveController {
   @Autowired
   private Gson gson;
 
+  @Autowired
+  private PipelineExecutor nodeSavePipeline;
+
   @PostJsonMapping(path = "/nodes", params = "batch=true", produces = {})
   @ResponseStatus(NO_CONTENT)
   public void saveAll(
@@ -52,7 +56,7 @@ public class NodeSaveController {
       HttpServletRequest request) throws IOException {
     try (InputStream input = request.getInputStream()) {
       nodeService.save(
-          JsonStream.readArray(gson, Node.class, input), saveMode(mode),
+          JsonStream.readArray(gson, Node.class, input, nodeSavePipeline), saveMode(mode),
           opts(sync, uriNamespace, generateCodes, generateUris), user);
     }
   }
@@ -70,7 +74,8 @@ public class NodeSaveController {
       HttpServletRequest request) throws IOException {
 
     try (InputStream input = request.getInputStream()) {
-      Stream<Node> nodesWithTypes = JsonStream.readArray(gson, Node.class, input)
+      Stream<Node> nodesWithTypes = JsonStream
+          .readArray(gson, Node.class, input, nodeSavePipeline)
           .map(node -> Objects.equals(node.getType(), TypeId.of(node.getTypeId(), graphId))
               ? node
               : Node.builder()
@@ -99,7 +104,8 @@ public class NodeSaveController {
     try (InputStream input = request.getInputStream()) {
       TypeId type = TypeId.of(typeId, graphId);
 
-      Stream<Node> nodesWithTypes = JsonStream.readArray(gson, Node.class, input)
+      Stream<Node> nodesWithTypes = JsonStream
+          .readArray(gson, Node.class, input, nodeSavePipeline)
           .map(node -> Objects.equals(node.getType(), type)
               ? node
               : Node.builder()
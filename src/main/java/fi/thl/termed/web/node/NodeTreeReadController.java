@@ -11,28 +11,19 @@ import static fi.thl.termed.util.spring.SpEL.EMPTY_LIST;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.springframework.http.MediaType.APPLICATION_JSON_UTF8_VALUE;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.collect.ImmutableSet;
 import com.google.gson.stream.JsonWriter;
-import fi.thl.termed.domain.DepthLimitedNodeTree;
-import fi.thl.termed.domain.FilteredNodeTree;
 import fi.thl.termed.domain.Graph;
 import fi.thl.termed.domain.GraphId;
-import fi.thl.termed.domain.LazyLoadingNodeTree;
 import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeId;
-import fi.thl.termed.domain.NodeTree;
 import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.TypeId;
 import fi.thl.termed.domain.User;
-import fi.thl.termed.service.node.select.NodeSelects;
 import fi.thl.termed.service.node.sort.NodeSorts;
 import fi.thl.termed.service.node.specification.NodesByGraphId;
 import fi.thl.termed.service.node.specification.NodesById;
 import fi.thl.termed.service.node.specification.NodesByTypeId;
-import fi.thl.termed.service.node.util.IndexedReferenceLoader;
-import fi.thl.termed.service.node.util.IndexedReferrerLoader;
+import fi.thl.termed.service.node.util.IndexedNodeTreeLoader;
 import fi.thl.termed.service.node.util.NodeTreeToJsonStream;
 import fi.thl.termed.service.type.specification.TypesByGraphId;
 import fi.thl.termed.util.json.JsonWriters;
@@ -90,7 +81,8 @@ public class NodeTreeReadController {
 
     try (Stream<Node> nodes = nodeService.values(new Query<>(selects, spec, sorts, max), user);
         JsonWriter writer = JsonWriters.from(resp.getOutputStream(), pretty, htmlSafe)) {
-      NodeTreeToJsonStream.toJson(toTrees(nodes, selects, user).iterator(), writer);
+      NodeTreeToJsonStream.toJson(new IndexedNodeTreeLoader(nodeService, user, selects)
+          .toTrees(nodes).iterator(), writer);
     }
   }
 
@@ -124,7 +116,8 @@ public class NodeTreeReadController {
 
     try (Stream<Node> nodes = nodeService.values(new Query<>(selects, spec, sorts, max), user);
         JsonWriter writer = JsonWriters.from(resp.getOutputStream(), pretty, htmlSafe)) {
-      NodeTreeToJsonStream.toJson(toTrees(nodes, selects, user).iterator(), writer);
+      NodeTreeToJsonStream.toJson(new IndexedNodeTreeLoader(nodeService, user, selects)
+          .toTrees(nodes).iterator(), writer);
     }
   }
 
@@ -155,7 +148,8 @@ public class NodeTreeReadController {
 
     try (Stream<Node> nodes = nodeService.values(new Query<>(selects, spec, sorts, max), user);
         JsonWriter writer = JsonWriters.from(resp.getOutputStream(), pretty, htmlSafe)) {
-      NodeTreeToJsonStream.toJson(toTrees(nodes, selects, user).iterator(), writer);
+      NodeTreeToJsonStream.toJson(new IndexedNodeTreeLoader(nodeService, user, selects)
+          .toTrees(nodes).iterator(), writer);
     }
   }
 
@@ -191,26 +185,9 @@ public class NodeTreeReadController {
     try (Stream<Node> nodes = nodeService.values(new Query<>(selects, spec), user);
         JsonWriter writer = JsonWriters.from(resp.getOutputStream(), pretty, htmlSafe)) {
       Node root = nodes.findFirst().orElseThrow(NotFoundException::new);
-      NodeTreeToJsonStream.toJson(toTree(root, selects, user,
-          CacheBuilder.newBuilder().softValues().build()), writer);
+      NodeTreeToJsonStream.toJson(
+          new IndexedNodeTreeLoader(nodeService, user, selects).toTree(root), writer);
     }
   }
 
-  private Stream<NodeTree> toTrees(Stream<Node> nodes, List<Select> selects, User user) {
-    Cache<NodeId, Node> cache = CacheBuilder.newBuilder().softValues().build();
-    return nodes.map(node -> toTree(node, selects, user, cache));
-  }
-
-  private NodeTree toTree(Node node, List<Select> selects, User user, Cache<NodeId, Node> cache) {
-    NodeTree tree = new LazyLoadingNodeTree(node,
-        new IndexedReferenceLoader(nodeService, user, selects, cache),
-        new IndexedReferrerLoader(nodeService, user, selects, cache));
-
-    tree = new DepthLimitedNodeTree(tree,
-        NodeSelects.toReferenceSelectsWithDepths(selects),
-        NodeSelects.toReferrerSelectsWithDepths(selects));
-
-    return new FilteredNodeTree(tree, ImmutableSet.copyOf(selects));
-  }
-
 }
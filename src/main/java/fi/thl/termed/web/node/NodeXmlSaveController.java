@@ -0,0 +1,93 @@
+package fi.thl.termed.web.node;
+
+import static fi.thl.termed.util.service.SaveMode.saveMode;
+import static fi.thl.termed.util.service.WriteOptions.opts;
+import static org.springframework.http.HttpStatus.NO_CONTENT;
+
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.service.node.util.XmlStreamToNodes;
+import fi.thl.termed.util.service.Service;
+import fi.thl.termed.util.spring.annotation.PostXmlMapping;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.UUID;
+import java.util.stream.Stream;
+import javax.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Saves nodes posted as XML array. Request parameters are same as in batch JSON APIs.
+ */
+@RestController
+@RequestMapping("/api")
+public class NodeXmlSaveController {
+
+  @Autowired
+  private Service<NodeId, Node> nodeService;
+
+  @PostXmlMapping(path = "/nodes", produces = {})
+  @ResponseStatus(NO_CONTENT)
+  public void saveAll(
+      @RequestParam(name = "mode", defaultValue = "upsert") String mode,
+      @RequestParam(name = "sync", defaultValue = "false") boolean sync,
+      @RequestParam(name = "uriNamespace", required = false) String uriNamespace,
+      @RequestParam(name = "generateCodes", defaultValue = "true") boolean generateCodes,
+      @RequestParam(name = "generateUris", defaultValue = "true") boolean generateUris,
+      @AuthenticationPrincipal User user,
+      HttpServletRequest request) throws IOException {
+
+    try (InputStream input = request.getInputStream();
+        Stream<Node> nodes = XmlStreamToNodes.readArray(input, null, null)) {
+      nodeService.save(nodes, saveMode(mode),
+          opts(sync, uriNamespace, generateCodes, generateUris), user);
+    }
+  }
+
+  @PostXmlMapping(path = "/graphs/{graphId}/nodes", produces = {})
+  @ResponseStatus(NO_CONTENT)
+  public void saveAllOfGraph(
+      @PathVariable("graphId") UUID graphId,
+      @RequestParam(name = "mode", defaultValue = "upsert") String mode,
+      @RequestParam(name = "sync", defaultValue = "false") boolean sync,
+      @RequestParam(name = "uriNamespace", required = false) String uriNamespace,
+      @RequestParam(name = "generateCodes", defaultValue = "true") boolean generateCodes,
+      @RequestParam(name = "generateUris", defaultValue = "true") boolean generateUris,
+      @AuthenticationPrincipal User user,
+      HttpServletRequest request) throws IOException {
+
+    try (InputStream input = request.getInputStream();
+        Stream<Node> nodes = XmlStreamToNodes.readArray(input, graphId, null)) {
+      nodeService.save(nodes, saveMode(mode),
+          opts(sync, uriNamespace, generateCodes, generateUris), user);
+    }
+  }
+
+  @PostXmlMapping(path = "/graphs/{graphId}/types/{typeId}/nodes", produces = {})
+  @ResponseStatus(NO_CONTENT)
+  public void saveAllOfType(
+      @PathVariable("graphId") UUID graphId,
+      @PathVariable("typeId") String typeId,
+      @RequestParam(name = "mode", defaultValue = "upsert") String mode,
+      @RequestParam(name = "sync", defaultValue = "false") boolean sync,
+      @RequestParam(name = "uriNamespace", required = false) String uriNamespace,
+      @RequestParam(name = "generateCodes", defaultValue = "true") boolean generateCodes,
+      @RequestParam(name = "generateUris", defaultValue = "true") boolean generateUris,
+      @AuthenticationPrincipal User user,
+      HttpServletRequest request) throws IOException {
+
+    try (InputStream input = request.getInputStream();
+        Stream<Node> nodes = XmlStreamToNodes.readArray(input, graphId, typeId)) {
+      nodeService.save(nodes, saveMode(mode),
+          opts(sync, uriNamespace, generateCodes, generateUris), user);
+    }
+  }
+
+}
@@ -2,6 +2,8 @@ package fi.thl.termed.web.webhook;
 
 import fi.thl.termed.domain.User;
 import fi.thl.termed.domain.Webhook;
+import fi.thl.termed.domain.WebhookDelivery;
+import fi.thl.termed.service.webhook.specification.WebhookDeliveriesByDead;
 import fi.thl.termed.util.query.MatchAll;
 import fi.thl.termed.util.query.Query;
 import fi.thl.termed.util.service.Service;
@@ -22,11 +24,22 @@ public class WebhookReadController {
   @Autowired
   private Service<UUID, Webhook> webhookService;
 
+  @Autowired
+  private Service<Long, WebhookDelivery> webhookDeliveryService;
+
   @GetJsonMapping
   public Stream<Webhook> get(@AuthenticationPrincipal User user) {
     return webhookService.values(new Query<>(new MatchAll<>()), user);
   }
 
+  /**
+   * Lists deliveries that failed too many times and are no longer retried.
+   */
+  @GetJsonMapping("/dead-letters")
+  public Stream<WebhookDelivery> getDeadLetters(@AuthenticationPrincipal User user) {
+    return webhookDeliveryService.values(new Query<>(WebhookDeliveriesByDead.of(true)), user);
+  }
+
   @GetJsonMapping("/{id}")
   public Webhook get(@PathVariable("id") UUID id, @AuthenticationPrincipal User user) {
     return webhookService.get(id, user).orElseThrow(NotFoundException::new);
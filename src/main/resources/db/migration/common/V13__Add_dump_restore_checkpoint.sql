@@ -0,0 +1,9 @@
+--
+-- Last committed chunk of each resumable dump restore
+--
+
+CREATE TABLE dump_restore_checkpoint (
+  id varchar(255),
+  checkpoint bigint NOT NULL,
+  CONSTRAINT dump_restore_checkpoint_pkey PRIMARY KEY (id)
+);
@@ -0,0 +1,20 @@
+--
+-- Outbox of pending webhook deliveries, one row per webhook and node revision
+--
+
+CREATE SEQUENCE webhook_delivery_seq;
+
+CREATE TABLE webhook_delivery (
+  id bigint,
+  webhook_id uuid NOT NULL,
+  revision bigint NOT NULL,
+  attempts integer NOT NULL,
+  last_error varchar(2000),
+  dead boolean NOT NULL,
+  CONSTRAINT webhook_delivery_pkey PRIMARY KEY (id),
+  CONSTRAINT webhook_delivery_webhook_fkey
+    FOREIGN KEY (webhook_id)
+    REFERENCES webhook(id) ON DELETE CASCADE
+);
+
+CREATE INDEX webhook_delivery_webhook_idx ON webhook_delivery(webhook_id);
@@ -0,0 +1,53 @@
+--
+-- Node revision checkpoints. A checkpoint stores all attribute values of a node as they were in
+-- given node revision, so that historical reads only replay value revisions after the nearest
+-- checkpoint. Value tables have the same columns as value revision tables.
+--
+
+CREATE TABLE node_checkpoint (
+  graph_id uuid,
+  type_id varchar(255),
+  id uuid,
+  revision bigint,
+  CONSTRAINT node_checkpoint_pkey
+    PRIMARY KEY (graph_id, type_id, id, revision),
+  CONSTRAINT node_checkpoint_node_aud_fkey
+    FOREIGN KEY (graph_id, type_id, id, revision)
+    REFERENCES node_aud(graph_id, type_id, id, revision) ON DELETE CASCADE
+);
+
+CREATE TABLE node_text_attribute_value_checkpoint (
+  node_graph_id uuid,
+  node_type_id varchar(255),
+  node_id uuid,
+  attribute_id varchar(255),
+  index integer,
+  lang varchar(35),
+  value text,
+  regex varchar(255),
+  revision bigint NOT NULL,
+  revision_type char(6) NOT NULL,
+  CONSTRAINT node_text_attribute_value_checkpoint_pkey
+    PRIMARY KEY (node_graph_id, node_type_id, node_id, attribute_id, index, revision),
+  CONSTRAINT node_text_attribute_value_checkpoint_fkey
+    FOREIGN KEY (node_graph_id, node_type_id, node_id, revision)
+    REFERENCES node_checkpoint(graph_id, type_id, id, revision) ON DELETE CASCADE
+);
+
+CREATE TABLE node_reference_attribute_value_checkpoint (
+  node_graph_id uuid,
+  node_type_id varchar(255),
+  node_id uuid,
+  attribute_id varchar(255),
+  index integer,
+  value_graph_id uuid,
+  value_type_id varchar(255),
+  value_id uuid,
+  revision bigint NOT NULL,
+  revision_type char(6) NOT NULL,
+  CONSTRAINT node_reference_attribute_value_checkpoint_pkey
+    PRIMARY KEY (node_graph_id, node_type_id, node_id, attribute_id, index, revision),
+  CONSTRAINT node_reference_attribute_value_checkpoint_fkey
+    FOREIGN KEY (node_graph_id, node_type_id, node_id, revision)
+    REFERENCES node_checkpoint(graph_id, type_id, id, revision) ON DELETE CASCADE
+);
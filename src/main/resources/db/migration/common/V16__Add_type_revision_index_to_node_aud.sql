@@ -0,0 +1,6 @@
+--
+-- Index for finding nodes of a graph or a type changed in a revision range
+-- (JdbcNodeChangeDao.changedNodes)
+--
+CREATE INDEX node_aud_graph_id_type_id_revision_idx
+    ON node_aud(graph_id, type_id, revision);
@@ -0,0 +1,9 @@
+--
+-- Revisions up to which node revision history has been compacted, by compaction period
+--
+
+CREATE TABLE node_revision_compaction_watermark (
+  id varchar(255),
+  revision bigint NOT NULL,
+  CONSTRAINT node_revision_compaction_watermark_pkey PRIMARY KEY (id)
+);
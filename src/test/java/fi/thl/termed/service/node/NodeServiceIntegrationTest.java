@@ -1,20 +1,36 @@
 package fi.thl.termed.service.node;
 
+import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
+import static fi.thl.termed.util.query.Queries.query;
+import static fi.thl.termed.util.query.Specifications.asLucene;
+import static fi.thl.termed.util.query.Specifications.asSql;
 import static fi.thl.termed.util.service.SaveMode.INSERT;
 import static fi.thl.termed.util.service.SaveMode.UPDATE;
 import static fi.thl.termed.util.service.SaveMode.UPSERT;
 import static fi.thl.termed.util.service.WriteOptions.defaultOpts;
+import static java.util.Collections.singletonList;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.google.common.collect.ImmutableMultimap;
+import fi.thl.termed.domain.AppRole;
+import fi.thl.termed.domain.Graph;
+import fi.thl.termed.domain.GraphId;
+import fi.thl.termed.domain.GraphRole;
 import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.Permission;
 import fi.thl.termed.domain.StrictLangValue;
+import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.service.node.specification.NodesByGraphId;
+import fi.thl.termed.util.query.LuceneSpecification;
+import fi.thl.termed.util.query.SortRelevance;
 import fi.thl.termed.util.query.Specifications;
+import java.util.List;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
 import org.springframework.dao.DataIntegrityViolationException;
@@ -379,4 +395,38 @@ class NodeServiceIntegrationTest extends BaseNodeServiceIntegrationTest {
     assertTrue(nodeService.exists(jackId, user));
   }
 
-}
\ No newline at end of file
+  @Test
+  void shouldApplyMaxAndCountToReadableNodesOnly() {
+    graphService.save(Graph.builder().id(graphId).roles(singletonList("reader")).build(),
+        UPSERT, defaultOpts(), user);
+    Type person = typeService.get(TypeId.of("Person", graphId), user)
+        .orElseThrow(AssertionError::new);
+    typeService.save(Type.builderFromCopyOf(person)
+            .permissions(ImmutableMultimap.of("reader", Permission.READ)).build(),
+        UPSERT, defaultOpts(), user);
+
+    // reader can read persons but not groups
+    User reader = new User("reader", "", AppRole.USER,
+        singletonList(new GraphRole(GraphId.of(graphId), "reader")));
+
+    nodeService.save(Stream.of(
+        Node.builder().random(TypeId.of("Group", graphId)).build(),
+        Node.builder().random(TypeId.of("Group", graphId)).build(),
+        Node.builder().random(TypeId.of("Group", graphId)).build(),
+        Node.builder().random(TypeId.of("Person", graphId)).build(),
+        Node.builder().random(TypeId.of("Person", graphId)).build()),
+        INSERT, defaultOpts(), user);
+
+    LuceneSpecification<NodeId, Node> graphNodes = asLucene(new NodesByGraphId(graphId));
+
+    assertEquals(5, nodeService.count(graphNodes, user));
+    assertEquals(2, nodeService.count(graphNodes, reader));
+    assertEquals(2, nodeService.count(asSql(new NodesByGraphId(graphId)), reader));
+
+    List<Node> nodes = toListAndClose(
+        nodeService.values(query(graphNodes, SortRelevance.INSTANCE, 2), reader));
+    assertEquals(2, nodes.size());
+    assertTrue(nodes.stream().allMatch(n -> n.getTypeId().equals("Person")));
+  }
+
+}
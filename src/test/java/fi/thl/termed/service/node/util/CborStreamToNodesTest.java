@@ -0,0 +1,73 @@
+package fi.thl.termed.service.node.util;
+
+import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.collect.ImmutableList;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.util.json.CborGenerators;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+class CborStreamToNodesTest {
+
+  @Test
+  void shouldReadNodesWrittenAsCbor() throws IOException {
+    TypeId personType = TypeId.of("Person", UUID.randomUUID());
+    LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+
+    List<Node> nodes = ImmutableList.of(
+        Node.builder().random(personType)
+            .code("john")
+            .uri("http://example.org/john")
+            .number(1L)
+            .createdBy("admin")
+            .createdDate(now)
+            .lastModifiedBy("admin")
+            .lastModifiedDate(now)
+            .addProperty("name", "en", "John")
+            .addProperty("name", "fi", "Juhani")
+            .addReference("knows", NodeId.random(personType))
+            .build(),
+        Node.builder().random(personType)
+            .number(2L)
+            .build());
+
+    assertEquals(nodes, toListAndClose(
+        CborStreamToNodes.readArray(new ByteArrayInputStream(toCbor(nodes)), null, null)));
+  }
+
+  @Test
+  void shouldReadNodesWithGivenType() throws IOException {
+    TypeId personType = TypeId.of("Person", UUID.randomUUID());
+    TypeId groupType = TypeId.of("Group", UUID.randomUUID());
+
+    Node person = Node.builder().random(personType).code("john").build();
+
+    List<Node> read = toListAndClose(CborStreamToNodes.readArray(
+        new ByteArrayInputStream(toCbor(ImmutableList.of(person))),
+        groupType.getGraphId(), groupType.getId()));
+
+    assertEquals(
+        ImmutableList.of(Node.builder().id(person.getId(), groupType).code("john").build()),
+        read);
+  }
+
+  private byte[] toCbor(List<Node> nodes) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (JsonGenerator generator = CborGenerators.from(out)) {
+      NodeToCborStream.toCbor(nodes.iterator(), generator);
+    }
+    return out.toByteArray();
+  }
+
+}
@@ -3,6 +3,7 @@ package fi.thl.termed.service.node.util;
 import static com.google.common.collect.ImmutableList.of;
 import static fi.thl.termed.util.UUIDs.nilUuid;
 import static fi.thl.termed.util.query.AndSpecification.and;
+import static fi.thl.termed.util.query.OrSpecification.or;
 import static java.util.stream.Collectors.toList;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -18,16 +19,17 @@ import fi.thl.termed.service.node.specification.NodesByGraphId;
 import fi.thl.termed.service.node.specification.NodesByPropertyString;
 import fi.thl.termed.service.node.specification.NodesByTypeId;
 import fi.thl.termed.util.csv.CsvOptions;
+import fi.thl.termed.util.query.Query;
 import fi.thl.termed.util.query.SelectAll;
-import fi.thl.termed.util.query.Specification;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
 import java.util.UUID;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
 
 class CsvToNodesTest {
@@ -146,28 +148,27 @@ class CsvToNodesTest {
                 .build())
         .build();
 
-    Function<Specification<NodeId, Node>, Optional<NodeId>> nodeIdResolver = (specification) -> {
-      if (specification.equals(and(
-          new NodesByGraphId(graphId),
-          new NodesByTypeId(typeId),
-          new NodesByPropertyString("name", "John")
-      ))) {
-        return Optional.of(NodeId.of(node1Id, personTypeId));
-      }
-      if (specification.equals(and(
-          new NodesByGraphId(graphId),
-          new NodesByTypeId(typeId),
-          new NodesByPropertyString("name", "Mary")
-      ))) {
-        return Optional.of(NodeId.of(node2Id, personTypeId));
-      }
-      throw new AssertionError("Can't resolve: " + specification);
+    Node john = Node.builder().id(node1Id, personTypeId).addProperty("name", "John").build();
+    Node mary = Node.builder().id(node2Id, personTypeId).addProperty("name", "Mary").build();
+
+    List<Query<NodeId, Node>> queries = new ArrayList<>();
+    Function<Query<NodeId, Node>, Stream<Node>> referenceLoader = (query) -> {
+      queries.add(query);
+      return Stream.of(john, mary).filter(n -> query.getWhere().test(n.identifier(), n));
     };
 
-    List<Node> nodes = new CsvToNodes(of(personType), nodeIdResolver)
+    List<Node> nodes = new CsvToNodes(of(personType), referenceLoader)
         .parseNodesFromCsv(CsvOptions.builder().build(), csv)
         .collect(toList());
 
+    // labels of both rows are resolved with one query
+    assertEquals(1, queries.size());
+    assertEquals(and(
+        new NodesByGraphId(graphId),
+        new NodesByTypeId(typeId),
+        or(new NodesByPropertyString("name", "Mary"), new NodesByPropertyString("name", "John"))),
+        queries.get(0).getWhere());
+
     Node node1 = nodes.get(0);
     assertEquals(node1Id, node1.getId());
     assertEquals(typeId, node1.getTypeId());
@@ -192,7 +193,7 @@ class CsvToNodesTest {
   private void assertNodesAreEqualAfterConvertingCsvAndBack(List<Node> nodes) {
     ByteArrayOutputStream out = new ByteArrayOutputStream();
     new NodesToCsv()
-        .writeAsCsv(nodes.stream(), of(new SelectAll()), CsvOptions.builder().build(), out);
+        .writeAsCsv(nodes, of(new SelectAll()), CsvOptions.builder().build(), out);
 
     List<Node> results = new CsvToNodes()
         .parseNodesFromCsv(CsvOptions.builder().build(),
@@ -0,0 +1,76 @@
+package fi.thl.termed.service.node.util;
+
+import static com.google.common.collect.Iterables.getOnlyElement;
+import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import fi.thl.termed.domain.AppRole;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.NodeTree;
+import fi.thl.termed.domain.ReferenceAttributeId;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.service.node.select.SelectId;
+import fi.thl.termed.service.node.select.SelectTypeQualifiedReference;
+import fi.thl.termed.util.query.Query;
+import fi.thl.termed.util.query.Select;
+import fi.thl.termed.util.service.Service;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+class IndexedNodeTreeLoaderTest {
+
+  private TypeId conceptType = TypeId.of("Concept", UUID.randomUUID());
+  private User user = new User("test", "", AppRole.ADMIN);
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void shouldLoadEachTreeLevelWithOneQueryPerAttribute() {
+    Node grandparent = Node.builder().random(conceptType).build();
+    Node parent = Node.builder().random(conceptType)
+        .addReference("broader", grandparent.identifier())
+        .build();
+
+    List<Node> roots = ImmutableList.of(
+        Node.builder().random(conceptType).addReference("broader", parent.identifier()).build(),
+        Node.builder().random(conceptType).addReference("broader", parent.identifier()).build(),
+        Node.builder().random(conceptType).addReference("broader", parent.identifier()).build());
+
+    List<Node> nodes = ImmutableList.<Node>builder()
+        .addAll(roots).add(parent).add(grandparent).build();
+
+    Service<NodeId, Node> nodeService = mock(Service.class);
+    when(nodeService.values(any(Query.class), any(User.class))).thenAnswer(invocation -> {
+      Query<NodeId, Node> query = invocation.getArgument(0);
+      return nodes.stream().filter(n -> query.getWhere().test(n.identifier(), n));
+    });
+
+    List<Select> selects = ImmutableList.of(new SelectId(), new SelectTypeQualifiedReference(
+        new ReferenceAttributeId(conceptType, "broader"), 2));
+
+    List<NodeTree> trees = toListAndClose(
+        new IndexedNodeTreeLoader(nodeService, user, selects).toTrees(roots.stream()));
+
+    for (NodeTree tree : trees) {
+      NodeTree treeParent = getOnlyElement(tree.getReferences().get("broader"));
+      assertEquals(parent.getId(), treeParent.getId());
+
+      NodeTree treeGrandparent = getOnlyElement(treeParent.getReferences().get("broader"));
+      assertEquals(grandparent.getId(), treeGrandparent.getId());
+      assertTrue(treeGrandparent.getReferences().isEmpty());
+    }
+
+    // one query for parents and one for grandparents
+    verify(nodeService, times(2)).values(any(Query.class), any(User.class));
+  }
+
+}
@@ -0,0 +1,96 @@
+package fi.thl.termed.service.node.util;
+
+import com.google.common.io.ByteStreams;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import fi.thl.termed.Application;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.util.json.JsonWriters;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares hand-written node JSON serialization to GSON serialization. Run main method with test
+ * classpath, e.g. from IDE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NodeToJsonStreamBenchmark {
+
+  private static final int NODE_COUNT = 1000;
+
+  private Gson gson = new Application().gson();
+  private List<Node> nodes;
+
+  @Setup
+  public void setUp() {
+    TypeId type = TypeId.of("Concept", UUID.randomUUID());
+    LocalDateTime now = LocalDateTime.now();
+
+    nodes = new ArrayList<>();
+    for (int i = 0; i < NODE_COUNT; i++) {
+      nodes.add(Node.builder().random(type)
+          .code("concept-" + i)
+          .uri("http://example.org/concept-" + i)
+          .number((long) i)
+          .createdBy("admin")
+          .createdDate(now)
+          .lastModifiedBy("admin")
+          .lastModifiedDate(now)
+          .addProperty("prefLabel", "en", "Concept " + i)
+          .addProperty("prefLabel", "fi", "Käsite " + i)
+          .addProperty("definition", "en", "Definition of concept " + i)
+          .addReference("broader", NodeId.random(type))
+          .addReference("related", NodeId.random(type), NodeId.random(type))
+          .build());
+    }
+  }
+
+  @Benchmark
+  public void gson() throws IOException {
+    try (JsonWriter writer = JsonWriters.from(ByteStreams.nullOutputStream(), false, true)) {
+      writer.beginArray();
+      for (Node node : nodes) {
+        gson.toJson(node, Node.class, writer);
+      }
+      writer.endArray();
+    }
+  }
+
+  @Benchmark
+  public void nodeToJsonStream() throws IOException {
+    try (JsonWriter writer = JsonWriters.from(ByteStreams.nullOutputStream(), false, true)) {
+      NodeToJsonStream.toJson(nodes.iterator(), writer);
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(NodeToJsonStreamBenchmark.class.getSimpleName())
+        .build()).run();
+  }
+
+}
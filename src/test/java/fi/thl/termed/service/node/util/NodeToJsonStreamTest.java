@@ -0,0 +1,63 @@
+package fi.thl.termed.service.node.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
+import fi.thl.termed.Application;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.TypeId;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+class NodeToJsonStreamTest {
+
+  private Gson gson = new Application().gson();
+
+  @Test
+  void shouldWriteSameJsonAsGson() throws IOException {
+    TypeId personType = TypeId.of("Person", UUID.randomUUID());
+    TypeId groupType = TypeId.of("Group", UUID.randomUUID());
+    LocalDateTime now = LocalDateTime.now();
+
+    NodeId group = NodeId.random(groupType);
+
+    List<Node> nodes = ImmutableList.of(
+        Node.builder().random(personType)
+            .code("john")
+            .uri("http://example.org/john")
+            .number(1L)
+            .createdBy("admin")
+            .createdDate(now)
+            .lastModifiedBy("admin")
+            .lastModifiedDate(now)
+            .addProperty("name", "en", "John <Smith>")
+            .addProperty("name", "fi", "Juhani")
+            .addProperty("email", "john@example.org")
+            .addReference("memberOf", group)
+            .addReferrer("knows", ImmutableList.of(NodeId.random(personType)))
+            .build(),
+        Node.builder().random(personType)
+            .number(2L)
+            .build());
+
+    StringWriter json = new StringWriter();
+    try (JsonWriter writer = new JsonWriter(json)) {
+      NodeToJsonStream.toJson(nodes.iterator(), writer);
+    }
+
+    assertEquals(
+        new JsonParser().parse(gson.toJson(nodes, new TypeToken<List<Node>>() {
+        }.getType())),
+        new JsonParser().parse(json.toString()));
+  }
+
+}
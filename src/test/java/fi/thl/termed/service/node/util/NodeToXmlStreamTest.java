@@ -0,0 +1,63 @@
+package fi.thl.termed.service.node.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import fi.thl.termed.Application;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.util.xml.JsonXmlStreamWriter;
+import fi.thl.termed.util.xml.XmlToJsonConverter;
+import fi.thl.termed.util.xml.XmlUtils;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import javax.xml.stream.XMLStreamException;
+import org.junit.jupiter.api.Test;
+
+class NodeToXmlStreamTest {
+
+  private Gson gson = new Application().gson();
+
+  @Test
+  void shouldWriteSameStructureAsNodeJson() throws XMLStreamException {
+    TypeId personType = TypeId.of("Person", UUID.randomUUID());
+    TypeId groupType = TypeId.of("Group", UUID.randomUUID());
+    LocalDateTime now = LocalDateTime.now();
+
+    List<Node> nodes = ImmutableList.of(
+        Node.builder().random(personType)
+            .code("john")
+            .uri("http://example.org/john")
+            .number(1L)
+            .createdBy("admin")
+            .createdDate(now)
+            .lastModifiedBy("admin")
+            .lastModifiedDate(now)
+            .addProperty("name", "en", "John <Smith> & co")
+            .addProperty("name", "fi", "Juhani")
+            .addReference("memberOf", NodeId.random(groupType))
+            .addReferrer("knows", ImmutableList.of(NodeId.random(personType)))
+            .build(),
+        Node.builder().random(personType)
+            .number(2L)
+            .build());
+
+    ByteArrayOutputStream xml = new ByteArrayOutputStream();
+    try (JsonXmlStreamWriter writer = JsonXmlStreamWriter.from(xml)) {
+      NodeToXmlStream.toXml(nodes.iterator(), writer);
+    }
+
+    assertEquals(
+        gson.toJsonTree(nodes, new TypeToken<List<Node>>() {
+        }.getType()),
+        new XmlToJsonConverter().apply(
+            XmlUtils.parseDocument(new String(xml.toByteArray(), StandardCharsets.UTF_8))));
+  }
+
+}
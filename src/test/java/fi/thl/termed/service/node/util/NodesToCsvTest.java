@@ -3,13 +3,20 @@ package fi.thl.termed.service.node.util;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.ReferenceAttribute;
+import fi.thl.termed.domain.TextAttribute;
+import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.service.node.select.SelectAllProperties;
+import fi.thl.termed.service.node.select.SelectAllReferences;
 import fi.thl.termed.service.node.select.SelectProperty;
 import fi.thl.termed.util.csv.CsvOptions;
 import fi.thl.termed.util.query.Selects;
 import java.io.ByteArrayOutputStream;
 import java.io.UnsupportedEncodingException;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
@@ -32,7 +39,7 @@ class NodesToCsvTest {
     NodesToCsv nodesToCsv = new NodesToCsv();
     ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
 
-    nodesToCsv.writeAsCsv(Stream.of(node1),
+    nodesToCsv.writeAsCsv(ImmutableList.of(node1),
         ImmutableList.of(
             Selects.field("number"),
             Selects.field("code"),
@@ -50,4 +57,88 @@ class NodesToCsvTest {
     assertEquals(expectedCsv, csv);
   }
 
-}
\ No newline at end of file
+  @Test
+  void shouldWriteColumnsOfAllNodes() throws UnsupportedEncodingException {
+    UUID graphId = UUID.randomUUID();
+    TypeId typeId = TypeId.of("Person", graphId);
+
+    Node node1 = Node.builder().random(typeId)
+        .code("example-node-1")
+        .addProperty("firstName", "John")
+        .build();
+    Node node2 = Node.builder().random(typeId)
+        .code("example-node-2")
+        .addProperty("firstName", "fi", "Juha")
+        .addProperty("email", "juha@example.com")
+        .build();
+
+    NodesToCsv nodesToCsv = new NodesToCsv();
+    ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+
+    nodesToCsv.writeAsCsv(ImmutableList.of(node1, node2),
+        ImmutableList.of(
+            Selects.field("code"),
+            new SelectProperty("firstName"),
+            new SelectProperty("email")),
+        CsvOptions.builder().build(),
+        byteArrayOutputStream);
+
+    String csv = byteArrayOutputStream.toString("UTF-8");
+
+    String expectedCsv =
+        "code,properties.firstName,properties.firstName.fi,properties.email\n"
+            + "example-node-1,John,,\n"
+            + "example-node-2,,Juha,juha@example.com\n";
+
+    assertEquals(expectedCsv, csv);
+  }
+
+  @Test
+  void shouldDeriveColumnsFromTypesAndIndexFieldNames() {
+    UUID graphId = UUID.randomUUID();
+    TypeId typeId = TypeId.of("Person", graphId);
+    Type type = Type.builder().id(typeId)
+        .textAttributes(
+            TextAttribute.builder().id("name", typeId).regexAll().build(),
+            TextAttribute.builder().id("email", typeId).regexAll().build())
+        .referenceAttributes(
+            ReferenceAttribute.builder().id("knows", typeId).range(typeId).build(),
+            ReferenceAttribute.builder().id("likes", typeId).range(typeId).build())
+        .build();
+
+    Set<String> indexFieldNames = ImmutableSet.of(
+        "id", "code",
+        "properties.name", "properties.name.string", "properties.name.sortable",
+        "properties.name.sv", "properties.name.sv.string", "properties.name.sv.sortable",
+        "properties.name.fi", "properties.name.fi.string", "properties.name.fi.sortable",
+        "references.knows.id");
+
+    assertEquals(
+        ImmutableList.of("code", "properties.name", "properties.name.fi", "properties.name.sv",
+            "references.knows.id"),
+        new NodesToCsv().columns(ImmutableList.of(type), indexFieldNames,
+            ImmutableList.of(Selects.field("code"), new SelectAllProperties(),
+                new SelectAllReferences())));
+  }
+
+  @Test
+  void shouldNotWriteValuesOutsideColumns() throws UnsupportedEncodingException {
+    UUID graphId = UUID.randomUUID();
+    TypeId typeId = TypeId.of("Person", graphId);
+
+    Node node = Node.builder().random(typeId)
+        .addProperty("firstName", "John")
+        .addProperty("email", "john@example.com")
+        .build();
+
+    ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+
+    new NodesToCsv().writeAsCsv(ImmutableList.of("properties.firstName"), Stream.of(node),
+        ImmutableList.of(new SelectProperty("firstName"), new SelectProperty("email")),
+        CsvOptions.builder().build(),
+        byteArrayOutputStream);
+
+    assertEquals("properties.firstName\nJohn\n", byteArrayOutputStream.toString("UTF-8"));
+  }
+
+}
@@ -0,0 +1,167 @@
+package fi.thl.termed.service.node.util;
+
+import static fi.thl.termed.util.UUIDs.nameUUIDFromString;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toSet;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import fi.thl.termed.Application;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.ReferenceAttribute;
+import fi.thl.termed.domain.StrictLangValue;
+import fi.thl.termed.domain.TextAttribute;
+import fi.thl.termed.domain.Type;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.util.jena.JenaRdfModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.vocabulary.SKOS;
+import org.junit.jupiter.api.Test;
+
+class RdfStreamToNodesTest {
+
+  private Gson gson = new Application().gson();
+
+  private UUID graphId = nameUUIDFromString("test-graph");
+  private TypeId conceptId = new TypeId("Concept", graphId);
+  private Type concept = Type.builder().id(conceptId)
+      .uri(SKOS.Concept.getURI())
+      .textAttributes(TextAttribute.builder().id("prefLabel", conceptId)
+          .regexAll().uri(SKOS.prefLabel.getURI()).build())
+      .referenceAttributes(ReferenceAttribute.builder().id("broader", conceptId)
+          .range(conceptId).uri(SKOS.broader.getURI()).build())
+      .build();
+
+  private String turtle = String.join("\n",
+      "@prefix skos: <http://www.w3.org/2004/02/skos/core#> .",
+      "@prefix ex: <http://example.org/> .",
+      "ex:Concept_1 a skos:Concept ;",
+      "  skos:prefLabel \"Cat\"@en, \"Kissa\"@fi .",
+      "ex:Concept_2 a skos:Concept ;",
+      "  skos:prefLabel \"Tiger\"@en ;",
+      "  skos:broader ex:Concept_1, ex:Concept_3 .");
+
+  @Test
+  void shouldProduceSameNodesAsModelBasedImport() throws IOException {
+    Model model = ModelFactory.createDefaultModel();
+    RDFDataMgr.read(model, new StringReader(turtle), null, Lang.TURTLE);
+
+    Set<List<Object>> expected =
+        new RdfModelToNodes(ImmutableList.of(concept), q -> Stream.empty(), true)
+            .apply(new JenaRdfModel(model)).stream().map(this::ignoringValueOrder)
+            .collect(toSet());
+
+    RdfStreamToNodes rdfStreamToNodes =
+        new RdfStreamToNodes(ImmutableList.of(concept), q -> Stream.empty(), true, gson);
+
+    try (Stream<Node> nodes = rdfStreamToNodes.apply(input(turtle), Lang.TURTLE)) {
+      assertEquals(expected, nodes.map(this::ignoringValueOrder).collect(toSet()));
+    }
+  }
+
+  @Test
+  void shouldProduceSameNodesWhenBuildersAreSpilled() throws IOException {
+    Set<List<Object>> expected;
+    try (Stream<Node> nodes = new RdfStreamToNodes(
+        ImmutableList.of(concept), q -> Stream.empty(), true, gson)
+        .apply(input(turtle), Lang.TURTLE)) {
+      expected = nodes.map(this::ignoringValueOrder).collect(toSet());
+    }
+
+    RdfStreamToNodes rdfStreamToNodes =
+        new RdfStreamToNodes(ImmutableList.of(concept), q -> Stream.empty(), true, gson, 1);
+
+    try (Stream<Node> nodes = rdfStreamToNodes.apply(input(turtle), Lang.TURTLE)) {
+      assertEquals(expected, nodes.map(this::ignoringValueOrder).collect(toSet()));
+    }
+  }
+
+  @Test
+  void shouldFailIfSpillingBuildersFails() {
+    Gson failingGson = gson.newBuilder()
+        .registerTypeAdapter(StrictLangValue.class, new TypeAdapter<StrictLangValue>() {
+          @Override
+          public void write(JsonWriter out, StrictLangValue value) throws IOException {
+            throw new IOException("Failed to write value");
+          }
+
+          @Override
+          public StrictLangValue read(JsonReader in) {
+            throw new UnsupportedOperationException();
+          }
+        })
+        .create();
+
+    RdfStreamToNodes rdfStreamToNodes =
+        new RdfStreamToNodes(ImmutableList.of(concept), q -> Stream.empty(), true, failingGson, 1);
+
+    assertThrows(JsonIOException.class,
+        () -> rdfStreamToNodes.apply(input(turtle), Lang.TURTLE).close());
+  }
+
+  @Test
+  void shouldResolveReferencesToExistingNodes() throws IOException {
+    NodeId existingId = NodeId.of(UUID.randomUUID(), conceptId);
+    Node existing = Node.builder().id(existingId).uri("http://example.org/Concept_3").build();
+
+    RdfStreamToNodes rdfStreamToNodes =
+        new RdfStreamToNodes(ImmutableList.of(concept), q -> Stream.of(existing), true, gson);
+
+    try (Stream<Node> nodes = rdfStreamToNodes.apply(gzippedInput(turtle), Lang.TURTLE)) {
+      Node concept2 = nodes
+          .filter(n -> n.getUri().equals(Optional.of("http://example.org/Concept_2")))
+          .findFirst()
+          .orElseThrow(AssertionError::new);
+
+      assertEquals(
+          ImmutableList.of(
+              NodeId.of(nameUUIDFromString("http://example.org/Concept_1"), conceptId),
+              existingId),
+          concept2.getReferences().get("broader"));
+    }
+  }
+
+  // model based import returns values in model order, streaming import in document order
+  private List<Object> ignoringValueOrder(Node node) {
+    return Arrays.asList(node.identifier(), node.getCode(), node.getUri(),
+        ImmutableSet.copyOf(node.getProperties().entries()),
+        ImmutableSet.copyOf(node.getReferences().entries()));
+  }
+
+  private InputStream input(String data) {
+    return new ByteArrayInputStream(data.getBytes(UTF_8));
+  }
+
+  private InputStream gzippedInput(String data) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (OutputStream out = new GZIPOutputStream(bytes)) {
+      out.write(data.getBytes(UTF_8));
+    }
+    return new ByteArrayInputStream(bytes.toByteArray());
+  }
+
+}
@@ -0,0 +1,84 @@
+package fi.thl.termed.service.node.util;
+
+import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.common.collect.ImmutableList;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.util.xml.JsonXmlStreamWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+import javax.xml.stream.XMLStreamException;
+import org.junit.jupiter.api.Test;
+
+class XmlStreamToNodesTest {
+
+  @Test
+  void shouldReadNodesWrittenAsXml() throws XMLStreamException {
+    TypeId personType = TypeId.of("Person", UUID.randomUUID());
+    LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+
+    List<Node> nodes = ImmutableList.of(
+        Node.builder().random(personType)
+            .code("john")
+            .uri("http://example.org/john")
+            .number(1L)
+            .createdBy("admin")
+            .createdDate(now)
+            .lastModifiedBy("admin")
+            .lastModifiedDate(now)
+            .addProperty("name", "en", "John")
+            .addProperty("name", "fi", "Juhani")
+            .addReference("knows", NodeId.random(personType))
+            .build(),
+        Node.builder().random(personType)
+            .number(2L)
+            .build());
+
+    assertEquals(nodes, toListAndClose(
+        XmlStreamToNodes.readArray(new ByteArrayInputStream(toXml(nodes)), null, null)));
+  }
+
+  @Test
+  void shouldReadNodesWithGivenType() throws XMLStreamException {
+    TypeId personType = TypeId.of("Person", UUID.randomUUID());
+    TypeId groupType = TypeId.of("Group", UUID.randomUUID());
+
+    Node person = Node.builder().random(personType).code("john").build();
+
+    List<Node> read = toListAndClose(XmlStreamToNodes.readArray(
+        new ByteArrayInputStream(toXml(ImmutableList.of(person))),
+        groupType.getGraphId(), groupType.getId()));
+
+    assertEquals(
+        ImmutableList.of(Node.builder().id(person.getId(), groupType).code("john").build()),
+        read);
+  }
+
+  @Test
+  void shouldNotResolveExternalEntities() {
+    String xml = "<?xml version=\"1.0\"?>"
+        + "<!DOCTYPE array [<!ENTITY x SYSTEM \"file:///etc/passwd\">]>"
+        + "<array><object><entry key=\"code\"><string>&x;</string></entry></object></array>";
+
+    assertThrows(UncheckedIOException.class, () -> toListAndClose(XmlStreamToNodes.readArray(
+        new ByteArrayInputStream(xml.getBytes()), UUID.randomUUID(), "Person")));
+  }
+
+  private byte[] toXml(List<Node> nodes) throws XMLStreamException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (JsonXmlStreamWriter writer = JsonXmlStreamWriter.from(out)) {
+      NodeToXmlStream.toXml(nodes.iterator(), writer);
+    }
+    return out.toByteArray();
+  }
+
+}
@@ -0,0 +1,65 @@
+package fi.thl.termed.service.revision.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import fi.thl.termed.domain.AppRole;
+import fi.thl.termed.domain.Revision;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.util.query.Query;
+import fi.thl.termed.util.service.SequenceService;
+import fi.thl.termed.util.service.Service;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+class PendingRevisionsTest {
+
+  private User user = new User("test", "", AppRole.ADMIN);
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void shouldReadCompletedRevisionsFromServiceBeforeFirstWrite() {
+    Service<Long, Revision> revisionService = mock(Service.class);
+    when(revisionService.keys(any(Query.class), any(User.class)))
+        .thenReturn(Stream.of(7L, 6L));
+
+    PendingRevisions pendingRevisions =
+        new PendingRevisions(mock(SequenceService.class), revisionService);
+
+    assertEquals(7L, pendingRevisions.completedUpTo());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void shouldNotCompletePastOldestPendingRevision() {
+    SequenceService sequenceService = mock(SequenceService.class);
+    when(sequenceService.getAndAdvance(user)).thenReturn(10L, 11L);
+
+    PendingRevisions pendingRevisions =
+        new PendingRevisions(sequenceService, mock(Service.class));
+
+    AtomicInteger completions = new AtomicInteger();
+    pendingRevisions.addCompletionListener(completions::incrementAndGet);
+
+    pendingRevisions.write(user, first -> {
+      assertEquals(10L, (long) first);
+      assertEquals(9L, pendingRevisions.completedUpTo());
+
+      // later revision completes first
+      pendingRevisions.write(user, second -> {
+        assertEquals(11L, (long) second);
+        return null;
+      });
+
+      assertEquals(9L, pendingRevisions.completedUpTo());
+      return null;
+    });
+
+    assertEquals(11L, pendingRevisions.completedUpTo());
+    assertEquals(2, completions.get());
+  }
+
+}
@@ -0,0 +1,156 @@
+package fi.thl.termed.util.concurrent;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+class PipelineExecutorTest {
+
+  @Test
+  void shouldMapInEncounterOrder() {
+    try (PipelineExecutor pipeline = PipelineExecutor.newPipelineExecutor("test", 4, 10)) {
+      List<Integer> expected = IntStream.range(0, 1000).map(i -> i * 2).boxed().collect(toList());
+      List<Integer> actual = pipeline.map(IntStream.range(0, 1000).boxed(), i -> i * 2)
+          .collect(toList());
+
+      assertEquals(expected, actual);
+    }
+  }
+
+  @Test
+  void shouldMapThroughChainedStages() {
+    try (PipelineExecutor pipeline = PipelineExecutor.newPipelineExecutor("test", 2, 5)) {
+      Stream<String> stage1 = pipeline.map(Stream.of("a", "b", "c"), String::toUpperCase);
+      Stream<String> stage2 = pipeline.map(stage1, s -> s + s);
+
+      assertEquals("AA, BB, CC", String.join(", ", stage2.collect(toList())));
+    }
+  }
+
+  @Test
+  void shouldReadOnlyBufferSizeAheadOfConsumer() {
+    try (PipelineExecutor pipeline = PipelineExecutor.newPipelineExecutor("test", 2, 3)) {
+      AtomicInteger read = new AtomicInteger();
+
+      Stream<Integer> mapped = pipeline.map(
+          IntStream.range(0, 100).boxed().peek(i -> read.incrementAndGet()), i -> i);
+
+      assertEquals(0, (int) mapped.iterator().next());
+      assertEquals(3, read.get());
+    }
+  }
+
+  @Test
+  void shouldRethrowMapperExceptions() {
+    try (PipelineExecutor pipeline = PipelineExecutor.newPipelineExecutor("test", 2, 3)) {
+      Stream<Integer> mapped = pipeline.map(Stream.of(1, 2, 3), i -> {
+        if (i == 2) {
+          throw new IllegalArgumentException();
+        }
+        return i;
+      });
+
+      assertThrows(IllegalArgumentException.class, () -> mapped.collect(toList()));
+    }
+  }
+
+  @Test
+  void shouldCloseSourceStream() {
+    try (PipelineExecutor pipeline = PipelineExecutor.newPipelineExecutor("test", 2, 3)) {
+      AtomicBoolean closed = new AtomicBoolean();
+
+      pipeline.map(Stream.of(1, 2, 3).onClose(() -> closed.set(true)), i -> i).close();
+
+      assertTrue(closed.get());
+    }
+  }
+
+  @Test
+  void shouldMapDirectlyWithZeroThreads() {
+    PipelineExecutor pipeline = PipelineExecutor.newPipelineExecutor("test", 0, 3);
+
+    assertTrue(pipeline.isDirect());
+    assertEquals("1, 2", String.join(", ",
+        pipeline.map(Stream.of(1, 2), String::valueOf).collect(toList())));
+  }
+
+  @Test
+  void shouldConcatPartitionsInListOrder() {
+    try (PipelineExecutor pipeline = PipelineExecutor.newPipelineExecutor("test", 3, 4)) {
+      List<Supplier<Stream<Integer>>> partitions = IntStream.range(0, 10)
+          .mapToObj(p -> (Supplier<Stream<Integer>>) () ->
+              IntStream.range(p * 100, p * 100 + 100).boxed())
+          .collect(toList());
+
+      List<Integer> expected = IntStream.range(0, 1000).boxed().collect(toList());
+
+      try (Stream<Integer> concatenated = pipeline.concat(partitions)) {
+        assertEquals(expected, concatenated.collect(toList()));
+      }
+    }
+  }
+
+  @Test
+  void shouldCloseConcatenatedPartitions() {
+    try (PipelineExecutor pipeline = PipelineExecutor.newPipelineExecutor("test", 2, 4)) {
+      AtomicInteger closed = new AtomicInteger();
+
+      List<Supplier<Stream<Integer>>> partitions = IntStream.range(0, 5)
+          .mapToObj(p -> (Supplier<Stream<Integer>>) () ->
+              Stream.of(p).onClose(closed::incrementAndGet))
+          .collect(toList());
+
+      try (Stream<Integer> concatenated = pipeline.concat(partitions)) {
+        assertEquals(5, concatenated.count());
+      }
+
+      assertEquals(5, closed.get());
+    }
+  }
+
+  @Test
+  void shouldRethrowPartitionExceptions() {
+    try (PipelineExecutor pipeline = PipelineExecutor.newPipelineExecutor("test", 2, 4)) {
+      List<Supplier<Stream<Integer>>> partitions = Arrays.asList(
+          () -> Stream.of(1, 2),
+          () -> {
+            throw new IllegalArgumentException();
+          });
+
+      try (Stream<Integer> concatenated = pipeline.concat(partitions)) {
+        assertThrows(IllegalArgumentException.class, () -> concatenated.collect(toList()));
+      }
+    }
+  }
+
+  @Test
+  void shouldMapConcatenatedPartitionsInSamePool() {
+    try (PipelineExecutor pipeline = PipelineExecutor.newPipelineExecutor("test", 2, 4)) {
+      List<Supplier<Stream<Integer>>> partitions = IntStream.range(0, 10)
+          .mapToObj(p -> (Supplier<Stream<Integer>>) () ->
+              IntStream.range(p * 100, p * 100 + 100).boxed())
+          .collect(toList());
+
+      List<Integer> expected = IntStream.range(0, 1000).map(i -> i * 2).boxed().collect(toList());
+
+      assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+        try (Stream<Integer> mapped = pipeline.map(pipeline.concat(partitions), i -> i * 2)) {
+          assertEquals(expected, mapped.collect(toList()));
+        }
+      });
+    }
+  }
+
+}
@@ -0,0 +1,150 @@
+package fi.thl.termed.util.event;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.eventbus.Subscribe;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class AsyncDispatchingEventBusTest {
+
+  private AsyncDispatchingEventBus<TestEvent> eventBus = new AsyncDispatchingEventBus<>(
+      TestEvent.class,
+      e -> e.sync,
+      (first, later) -> first.sync || later.sync ? Optional.empty()
+          : Optional.of(new TestEvent(false, ImmutableList.<String>builder()
+              .addAll(first.values).addAll(later.values).build())),
+      10,
+      Duration.ofMillis(200),
+      new SimpleMeterRegistry());
+
+  @AfterEach
+  void tearDown() {
+    eventBus.close();
+  }
+
+  @Test
+  void shouldDeliverOtherEventsSynchronously() {
+    RecordingListener listener = new RecordingListener();
+    eventBus.register(listener);
+
+    eventBus.post("foo");
+
+    assertEquals(ImmutableList.of("foo"), listener.strings);
+    assertSame(Thread.currentThread(), listener.stringThreads.get(0));
+  }
+
+  @Test
+  void shouldDeliverSyncEventsBeforePostReturns() {
+    RecordingListener listener = new RecordingListener();
+    eventBus.register(listener);
+
+    eventBus.post(new TestEvent(true, ImmutableList.of("a")));
+
+    assertEquals(1, listener.events.size());
+    assertNotSame(Thread.currentThread(), listener.eventThreads.get(0));
+  }
+
+  @Test
+  void shouldCoalesceAsyncEvents() throws InterruptedException {
+    RecordingListener listener = new RecordingListener();
+    eventBus.register(listener);
+
+    eventBus.post(new TestEvent(false, ImmutableList.of("a")));
+    eventBus.post(new TestEvent(false, ImmutableList.of("b")));
+    eventBus.post(new TestEvent(false, ImmutableList.of("c")));
+
+    assertTrue(listener.eventReceived.await(5, TimeUnit.SECONDS));
+
+    assertEquals(1, listener.events.size());
+    assertEquals(ImmutableList.of("a", "b", "c"), listener.events.get(0).values);
+  }
+
+  @Test
+  void shouldNotBlockOnSlowUnrelatedSubscriber() throws InterruptedException {
+    CountDownLatch release = new CountDownLatch(1);
+    BlockingListener slow = new BlockingListener(release);
+    eventBus.register(slow);
+
+    eventBus.post(new OtherTestEvent(false, ImmutableList.of("a")));
+
+    RecordingListener listener = new RecordingListener();
+    eventBus.register(listener);
+
+    eventBus.post(new TestEvent(true, ImmutableList.of("b")));
+    assertEquals(1, listener.events.size());
+
+    release.countDown();
+  }
+
+  private static class TestEvent {
+
+    private final boolean sync;
+    private final List<String> values;
+
+    TestEvent(boolean sync, List<String> values) {
+      this.sync = sync;
+      this.values = values;
+    }
+
+  }
+
+  private static class OtherTestEvent extends TestEvent {
+
+    OtherTestEvent(boolean sync, List<String> values) {
+      super(sync, values);
+    }
+
+  }
+
+  public static class RecordingListener {
+
+    private List<TestEvent> events = new CopyOnWriteArrayList<>();
+    private List<Thread> eventThreads = new CopyOnWriteArrayList<>();
+    private CountDownLatch eventReceived = new CountDownLatch(1);
+
+    private List<String> strings = new CopyOnWriteArrayList<>();
+    private List<Thread> stringThreads = new CopyOnWriteArrayList<>();
+
+    @Subscribe
+    public void onEvent(TestEvent e) {
+      events.add(e);
+      eventThreads.add(Thread.currentThread());
+      eventReceived.countDown();
+    }
+
+    @Subscribe
+    public void onString(String s) {
+      strings.add(s);
+      stringThreads.add(Thread.currentThread());
+    }
+
+  }
+
+  public static class BlockingListener {
+
+    private CountDownLatch release;
+
+    BlockingListener(CountDownLatch release) {
+      this.release = release;
+    }
+
+    @Subscribe
+    public void onEvent(OtherTestEvent e) throws InterruptedException {
+      release.await();
+    }
+
+  }
+
+}
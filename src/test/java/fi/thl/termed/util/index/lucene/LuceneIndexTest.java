@@ -2,12 +2,19 @@ package fi.thl.termed.util.index.lucene;
 
 import static fi.thl.termed.util.collect.StreamUtils.findFirstAndClose;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.gson.Gson;
 import fi.thl.termed.util.query.LuceneSpecification;
 import fi.thl.termed.util.query.Specification;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.TermQuery;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -64,6 +71,37 @@ class LuceneIndexTest {
     assertEquals(0, index.count(term("body", "horses")));
   }
 
+  @Test
+  void shouldRestoreFromSnapshot() throws IOException {
+    Path snapshot = Files.createTempFile("index-snapshot", ".tar");
+
+    try {
+      try (OutputStream out = Files.newOutputStream(snapshot)) {
+        index.writeSnapshot(ImmutableMap.of("revision", "42"), out);
+      }
+
+      LuceneIndex<Integer, TestObject> restored = new LuceneIndex<>(
+          "",
+          snapshot.toString(),
+          new JsonStringConverter<>(Integer.class),
+          new JsonDocumentConverter<>(new Gson(), TestObject.class));
+
+      try {
+        assertTrue(restored.isRestoredFromSnapshot());
+        assertEquals("42", restored.getCommitData().get("revision"));
+        assertEquals(3, restored.count(new RawLuceneSpecification<>(new MatchAllDocsQuery())));
+        assertEquals(new Integer(3),
+            findFirstAndClose(restored.get(term("body", "horses"), null, -1))
+                .orElseThrow(AssertionError::new)
+                .id);
+      } finally {
+        restored.close();
+      }
+    } finally {
+      Files.delete(snapshot);
+    }
+  }
+
   private <K extends Serializable, V> Specification<K, V> term(String field, String value) {
     return new RawLuceneSpecification<>(new TermQuery(new Term(field, value)));
   }
@@ -0,0 +1,124 @@
+package fi.thl.termed.util.permission;
+
+import static fi.thl.termed.util.dao.CachedSystemDao.cache;
+import static fi.thl.termed.util.dao.VersionedSystemDao.versioned;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.eventbus.EventBus;
+import fi.thl.termed.domain.AppRole;
+import fi.thl.termed.domain.GrantedPermission;
+import fi.thl.termed.domain.GraphId;
+import fi.thl.termed.domain.GraphRole;
+import fi.thl.termed.domain.ObjectRolePermission;
+import fi.thl.termed.domain.Permission;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.domain.event.InvalidateCachesEvent;
+import fi.thl.termed.util.dao.MemoryBasedSystemDao;
+import fi.thl.termed.util.dao.SystemDao;
+import fi.thl.termed.util.dao.VersionedSystemDao;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+class DaoPermissionEvaluatorTest {
+
+  private GraphId graph = GraphId.random();
+  private GraphRole reader = new GraphRole(graph, "reader");
+  private GraphRole writer = new GraphRole(graph, "writer");
+
+  @Test
+  void shouldEvaluatePermissionsOfAllUserRoles() {
+    VersionedSystemDao<ObjectRolePermission<String>, GrantedPermission> dao =
+        versioned(new MemoryBasedSystemDao<>());
+    dao.insert(new ObjectRolePermission<>("foo", reader, Permission.READ),
+        GrantedPermission.INSTANCE);
+    dao.insert(new ObjectRolePermission<>("foo", writer, Permission.UPDATE),
+        GrantedPermission.INSTANCE);
+
+    DaoPermissionEvaluator<String> evaluator = new DaoPermissionEvaluator<>(dao);
+
+    User readerUser = user(singletonList(reader));
+    assertTrue(evaluator.hasPermission(readerUser, "foo", Permission.READ));
+    assertFalse(evaluator.hasPermission(readerUser, "foo", Permission.UPDATE));
+    assertFalse(evaluator.hasPermission(readerUser, "bar", Permission.READ));
+
+    User readerWriterUser = user(asList(reader, writer));
+    assertTrue(evaluator.hasPermission(readerWriterUser, "foo", Permission.READ));
+    assertTrue(evaluator.hasPermission(readerWriterUser, "foo", Permission.UPDATE));
+    assertFalse(evaluator.hasPermission(readerWriterUser, "foo", Permission.DELETE));
+  }
+
+  @Test
+  void shouldRecompilePermissionsOnWrite() {
+    VersionedSystemDao<ObjectRolePermission<String>, GrantedPermission> dao =
+        versioned(new MemoryBasedSystemDao<>());
+
+    DaoPermissionEvaluator<String> evaluator = new DaoPermissionEvaluator<>(dao);
+    User readerUser = user(singletonList(reader));
+
+    assertFalse(evaluator.hasPermission(readerUser, "foo", Permission.READ));
+
+    dao.insert(new ObjectRolePermission<>("foo", reader, Permission.READ),
+        GrantedPermission.INSTANCE);
+    assertTrue(evaluator.hasPermission(readerUser, "foo", Permission.READ));
+
+    dao.delete(new ObjectRolePermission<>("foo", reader, Permission.READ));
+    assertFalse(evaluator.hasPermission(readerUser, "foo", Permission.READ));
+  }
+
+  @Test
+  void shouldRecompilePermissionsOnInvalidateCachesEvent() {
+    SystemDao<ObjectRolePermission<String>, GrantedPermission> data =
+        new MemoryBasedSystemDao<>();
+
+    EventBus eventBus = new EventBus();
+    DaoPermissionEvaluator<String> evaluator = new DaoPermissionEvaluator<>(versioned(data));
+    eventBus.register(evaluator);
+
+    User readerUser = user(singletonList(reader));
+    assertFalse(evaluator.hasPermission(readerUser, "foo", Permission.READ));
+
+    // written directly to underlying data, not seen until caches are invalidated
+    data.insert(new ObjectRolePermission<>("foo", reader, Permission.READ),
+        GrantedPermission.INSTANCE);
+    assertFalse(evaluator.hasPermission(readerUser, "foo", Permission.READ));
+
+    eventBus.post(new InvalidateCachesEvent());
+    assertTrue(evaluator.hasPermission(readerUser, "foo", Permission.READ));
+  }
+
+  @Test
+  void shouldCompilePermissionsFromUncachedData() {
+    SystemDao<ObjectRolePermission<String>, GrantedPermission> data =
+        new MemoryBasedSystemDao<>();
+    VersionedSystemDao<ObjectRolePermission<String>, GrantedPermission> versioned =
+        versioned(data);
+
+    EventBus eventBus = new EventBus();
+    SystemDao<ObjectRolePermission<String>, GrantedPermission> cached = cache(versioned);
+    DaoPermissionEvaluator<String> evaluator = new DaoPermissionEvaluator<>(versioned);
+    eventBus.register(evaluator);
+    eventBus.register(cached);
+
+    // cache a missing permission, evaluator must not depend on when the cache is cleared
+    User readerUser = user(singletonList(reader));
+    assertFalse(cached.exists(new ObjectRolePermission<>("foo", reader, Permission.READ)));
+    assertFalse(evaluator.hasPermission(readerUser, "foo", Permission.READ));
+
+    data.insert(new ObjectRolePermission<>("foo", reader, Permission.READ),
+        GrantedPermission.INSTANCE);
+    eventBus.post(new InvalidateCachesEvent());
+    assertTrue(evaluator.hasPermission(readerUser, "foo", Permission.READ));
+
+    cached.delete(new ObjectRolePermission<>("foo", reader, Permission.READ));
+    assertFalse(evaluator.hasPermission(readerUser, "foo", Permission.READ));
+  }
+
+  private User user(List<GraphRole> graphRoles) {
+    return new User(UUID.randomUUID().toString(), "", AppRole.USER, graphRoles);
+  }
+
+}
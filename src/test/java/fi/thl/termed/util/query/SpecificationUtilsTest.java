@@ -3,10 +3,13 @@ package fi.thl.termed.util.query;
 import static fi.thl.termed.util.query.AndSpecification.and;
 import static fi.thl.termed.util.query.NotSpecification.not;
 import static fi.thl.termed.util.query.OrSpecification.or;
+import static fi.thl.termed.util.query.SpecificationUtils.isSqlSpecification;
 import static fi.thl.termed.util.query.SpecificationUtils.simplify;
 import static java.util.stream.Collectors.toList;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeId;
@@ -32,6 +35,16 @@ class SpecificationUtilsTest {
             or(SimpleSpec.of("A"), SimpleSpec.of("A"), SimpleSpec.of("B")))));
   }
 
+  @Test
+  void shouldRecognizeSqlSpecifications() {
+    Specification<NodeId, Node> sql = NodesByTypeId.of("Concept");
+    Specification<NodeId, Node> luceneOnly = Specifications.asLucene(NodesByTypeId.of("Concept"));
+
+    assertTrue(isSqlSpecification(and(sql, not(or(sql, sql)))));
+    assertFalse(isSqlSpecification(luceneOnly));
+    assertFalse(isSqlSpecification(and(sql, not(or(sql, luceneOnly)))));
+  }
+
   @Test
   void shouldFlattenSingletonCompositeSpecs() {
     assertEquals("A",
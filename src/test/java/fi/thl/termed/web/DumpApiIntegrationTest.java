@@ -3,12 +3,19 @@ package fi.thl.termed.web;
 import static fi.thl.termed.util.json.JsonElementFactory.array;
 import static fi.thl.termed.util.json.JsonElementFactory.object;
 import static fi.thl.termed.util.json.JsonElementFactory.primitive;
+import static fi.thl.termed.util.spring.http.MediaTypes.APPLICATION_NDJSON_VALUE;
 import static io.restassured.RestAssured.given;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.springframework.http.MediaType.APPLICATION_JSON_UTF8_VALUE;
 import static uk.co.datumedge.hamcrest.json.SameJSONAs.sameJSONAs;
 
 import com.google.gson.JsonObject;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
 import org.apache.http.HttpStatus;
 import org.junit.jupiter.api.Test;
 
@@ -69,4 +76,148 @@ class DumpApiIntegrationTest extends BaseApiIntegrationTest {
     given(adminAuthorizedRequest).delete("/api/graphs/" + graphId);
   }
 
+  @Test
+  void shouldPostGzippedDump() throws IOException {
+    String graphId = UUID.randomUUID().toString();
+    String typeId = "Concept";
+    String nodeId = UUID.randomUUID().toString();
+
+    JsonObject graphIdObject = object("id", primitive(graphId));
+    JsonObject typeIdObject = object("id", primitive(typeId), "graph", graphIdObject);
+    JsonObject nodeIdObject = object("id", primitive(nodeId), "type", typeIdObject);
+
+    JsonObject dump = object(
+        "graphs", array(graphIdObject),
+        "types", array(typeIdObject),
+        "nodes", array(nodeIdObject));
+
+    ByteArrayOutputStream gzippedDump = new ByteArrayOutputStream();
+    try (OutputStream out = new GZIPOutputStream(gzippedDump)) {
+      out.write(dump.toString().getBytes(UTF_8));
+    }
+
+    given(adminAuthorizedJsonSaveRequest)
+        .body(gzippedDump.toByteArray())
+        .post("/api/dump?mode=insert")
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    given(adminAuthorizedJsonGetRequest)
+        .get("/api/dump?graphId=" + graphId)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body(sameJSONAs(dump.toString())
+            .allowingExtraUnexpectedFields()
+            .allowingAnyArrayOrdering());
+
+    // clean up
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/nodes");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/types");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId);
+  }
+
+  @Test
+  void shouldGetAndPostNdjsonDump() {
+    String graphId = UUID.randomUUID().toString();
+    String typeId = "Concept";
+
+    JsonObject graphIdObject = object("id", primitive(graphId));
+    JsonObject typeIdObject = object("id", primitive(typeId), "graph", graphIdObject);
+    JsonObject node1IdObject = object("id", primitive(UUID.randomUUID().toString()),
+        "type", typeIdObject);
+    JsonObject node2IdObject = object("id", primitive(UUID.randomUUID().toString()),
+        "type", typeIdObject);
+
+    JsonObject dump = object(
+        "graphs", array(graphIdObject),
+        "types", array(typeIdObject),
+        "nodes", array(node1IdObject, node2IdObject));
+
+    given(adminAuthorizedJsonSaveRequest)
+        .body(dump.toString())
+        .post("/api/dump?mode=insert")
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    String ndjsonDump = given(adminAuthorizedRequest)
+        .accept(APPLICATION_NDJSON_VALUE)
+        .get("/api/graphs/" + graphId + "/dump?chunkSize=1")
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .extract().asString();
+
+    // graph, type, two nodes and a checkpoint after each node
+    assertEquals(6, ndjsonDump.split("\n").length);
+
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/nodes");
+
+    given(adminAuthorizedRequest)
+        .contentType(APPLICATION_NDJSON_VALUE)
+        .body(ndjsonDump.getBytes(UTF_8))
+        .post("/api/dump")
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    given(adminAuthorizedJsonGetRequest)
+        .get("/api/dump?graphId=" + graphId)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body(sameJSONAs(dump.toString())
+            .allowingExtraUnexpectedFields()
+            .allowingAnyArrayOrdering());
+
+    // clean up
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/nodes");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/types");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId);
+  }
+
+  @Test
+  void shouldResumeNdjsonRestore() {
+    String graphId = UUID.randomUUID().toString();
+    String restoreId = UUID.randomUUID().toString();
+
+    JsonObject graphIdObject = object("id", primitive(graphId));
+    JsonObject typeIdObject = object("id", primitive("Concept"), "graph", graphIdObject);
+    JsonObject node1IdObject = object("id", primitive(UUID.randomUUID().toString()),
+        "type", typeIdObject);
+    JsonObject node2IdObject = object("id", primitive(UUID.randomUUID().toString()),
+        "type", typeIdObject);
+
+    String firstChunk = String.join("\n",
+        object("graph", graphIdObject).toString(),
+        object("type", typeIdObject).toString(),
+        object("node", node1IdObject).toString(),
+        object("checkpoint", primitive(1)).toString());
+
+    // second chunk is broken, first one should get committed anyway
+    given(adminAuthorizedRequest)
+        .contentType(APPLICATION_NDJSON_VALUE)
+        .body((firstChunk + "\n" + object("unknown", node2IdObject) + "\n").getBytes(UTF_8))
+        .post("/api/dump?mode=insert&restoreId=" + restoreId)
+        .then()
+        .statusCode(HttpStatus.SC_BAD_REQUEST);
+
+    // resuming skips the committed chunk, re-inserting it would fail
+    given(adminAuthorizedRequest)
+        .contentType(APPLICATION_NDJSON_VALUE)
+        .body((firstChunk + "\n" + object("node", node2IdObject) + "\n").getBytes(UTF_8))
+        .post("/api/dump?mode=insert&restoreId=" + restoreId)
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    given(adminAuthorizedJsonGetRequest)
+        .get("/api/dump?graphId=" + graphId)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body(sameJSONAs(object("nodes", array(node1IdObject, node2IdObject)).toString())
+            .allowingExtraUnexpectedFields()
+            .allowingAnyArrayOrdering());
+
+    // clean up
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/nodes");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/types");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId);
+  }
+
 }
@@ -0,0 +1,93 @@
+package fi.thl.termed.web;
+
+import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
+import static io.restassured.RestAssured.given;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.collect.ImmutableList;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.service.node.util.CborStreamToNodes;
+import fi.thl.termed.service.node.util.NodeToCborStream;
+import fi.thl.termed.util.json.CborGenerators;
+import fi.thl.termed.util.spring.http.MediaTypes;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import org.apache.http.HttpStatus;
+import org.junit.jupiter.api.Test;
+
+class NodeCborApiIntegrationTest extends BaseApiIntegrationTest {
+
+  @Test
+  void shouldSaveAndGetNodesInCbor() throws IOException {
+    UUID graphId = UUID.randomUUID();
+    TypeId typeId = TypeId.of("Concept", graphId);
+
+    given(adminAuthorizedJsonSaveRequest)
+        .body("{'id':'" + graphId + "'}")
+        .post("/api/graphs?mode=insert");
+    given(adminAuthorizedJsonSaveRequest)
+        .body("{'id':'Concept','textAttributes':[{'id':'prefLabel','regex':'(?s)^.*$'}]}")
+        .post("/api/graphs/" + graphId + "/types?mode=insert");
+
+    // type is given by the path
+    Node node = Node.builder().random(TypeId.of("Unknown", UUID.randomUUID()))
+        .code("cbor-node")
+        .addProperty("prefLabel", "en", "CBOR node")
+        .build();
+
+    given(adminAuthorizedRequest)
+        .contentType(MediaTypes.APPLICATION_CBOR_VALUE)
+        .body(toCbor(ImmutableList.of(node)))
+        .post("/api/graphs/" + graphId + "/types/Concept/nodes")
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    byte[] cbor = given(adminAuthorizedRequest)
+        .accept(MediaTypes.APPLICATION_CBOR_VALUE)
+        .get("/api/graphs/" + graphId + "/types/Concept/nodes")
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .contentType(MediaTypes.APPLICATION_CBOR_VALUE)
+        .extract().asByteArray();
+
+    List<Node> nodes = toListAndClose(
+        CborStreamToNodes.readArray(new ByteArrayInputStream(cbor), null, null));
+
+    assertEquals(1, nodes.size());
+    assertEquals(node.getId(), nodes.get(0).getId());
+    assertEquals(typeId, nodes.get(0).getType());
+    assertEquals(node.getCode(), nodes.get(0).getCode());
+    assertEquals(node.getProperties(), nodes.get(0).getProperties());
+
+    byte[] treeCbor = given(adminAuthorizedRequest)
+        .accept(MediaTypes.APPLICATION_CBOR_VALUE)
+        .get("/api/graphs/" + graphId + "/types/Concept/node-trees?select=code")
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .extract().asByteArray();
+
+    List<Node> trees = toListAndClose(
+        CborStreamToNodes.readArray(new ByteArrayInputStream(treeCbor), graphId, "Concept"));
+
+    assertEquals(1, trees.size());
+    assertEquals(node.getCode(), trees.get(0).getCode());
+
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/nodes");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/types");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId);
+  }
+
+  private byte[] toCbor(List<Node> nodes) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (JsonGenerator generator = CborGenerators.from(out)) {
+      NodeToCborStream.toCbor(nodes.iterator(), generator);
+    }
+    return out.toByteArray();
+  }
+
+}
@@ -0,0 +1,98 @@
+package fi.thl.termed.web;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasItem;
+
+import io.restassured.response.Response;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import org.apache.http.HttpStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class NodeChangeFeedApiIntegrationTest extends BaseApiIntegrationTest {
+
+  private String graphId = UUID.randomUUID().toString();
+
+  @BeforeEach
+  void saveGraphAndType() {
+    given(adminAuthorizedJsonSaveRequest)
+        .body("{'id':'" + graphId + "'}")
+        .post("/api/graphs?mode=insert");
+    given(adminAuthorizedJsonSaveRequest)
+        .body("{'id':'Concept'}")
+        .post("/api/graphs/" + graphId + "/types");
+  }
+
+  @AfterEach
+  void deleteGraphAndType() {
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/nodes");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/types");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId);
+  }
+
+  @Test
+  void shouldReadChangesFromGivenPosition() {
+    String nodeId = UUID.randomUUID().toString();
+
+    saveNode(nodeId, "first");
+    long revision = latestRevision(nodeId);
+
+    given(adminAuthorizedJsonGetRequest)
+        .get("/api/changes?sinceRevision=" + (revision - 1) + "&max=1")
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("[0].number", equalTo((int) revision))
+        .body("[0].type", equalTo("INSERT"))
+        .body("[0].object.id", equalTo(nodeId));
+
+    saveNode(nodeId, "second");
+
+    String after = graphId + ".Concept." + nodeId;
+
+    given(adminAuthorizedJsonGetRequest)
+        .get("/api/changes?sinceRevision=" + revision + "&after=" + after + "&bodies=true")
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("[0].type", equalTo("UPDATE"))
+        .body("[0].object.code", equalTo("second"));
+  }
+
+  @Test
+  void shouldWaitForNewChanges() {
+    String nodeId = UUID.randomUUID().toString();
+
+    String previousNodeId = UUID.randomUUID().toString();
+    saveNode(previousNodeId, "previous");
+    long revision = latestRevision(previousNodeId);
+
+    CompletableFuture<Response> changes = CompletableFuture.supplyAsync(() ->
+        given(adminAuthorizedJsonGetRequest)
+            .get("/api/changes?sinceRevision=" + revision + "&waitSeconds=30"));
+
+    saveNode(nodeId, "new");
+
+    changes.join()
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("object.id", hasItem(nodeId));
+  }
+
+  private void saveNode(String nodeId, String code) {
+    given(adminAuthorizedJsonSaveRequest)
+        .body("{'id':'" + nodeId + "','code':'" + code + "'}")
+        .post("/api/graphs/" + graphId + "/types/Concept/nodes")
+        .then()
+        .statusCode(HttpStatus.SC_OK);
+  }
+
+  private long latestRevision(String nodeId) {
+    return given(adminAuthorizedJsonGetRequest)
+        .get("/api/graphs/" + graphId + "/types/Concept/nodes/" + nodeId + "/revisions")
+        .then()
+        .extract().jsonPath().getLong("number.max()");
+  }
+
+}
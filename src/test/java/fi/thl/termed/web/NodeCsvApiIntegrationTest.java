@@ -7,8 +7,10 @@ import static fi.thl.termed.web.ApiExampleData.exampleNode1;
 import static fi.thl.termed.web.ApiExampleData.personType;
 import static fi.thl.termed.web.ApiExampleData.personTypeId;
 import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.isEmptyString;
 import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
 import static org.hamcrest.core.IsEqual.equalTo;
 
 import com.opencsv.CSVWriter;
@@ -55,6 +57,47 @@ class NodeCsvApiIntegrationTest extends BaseApiIntegrationTest {
     given(adminAuthorizedRequest).delete("/api/graphs/" + graphId);
   }
 
+  @Test
+  void shouldGetNodesWithLabeledReferencesInCsv() {
+    String graphId = UUID.randomUUID().toString();
+    String typeId = "Person";
+    String janeId = UUID.randomUUID().toString();
+    String johnId = UUID.randomUUID().toString();
+    String typeRef = "{'id':'" + typeId + "','graph':{'id':'" + graphId + "'}}";
+
+    // save test data
+    given(adminAuthorizedJsonSaveRequest)
+        .body("{'id':'" + graphId + "'}")
+        .post("/api/graphs?mode=insert");
+    given(adminAuthorizedJsonSaveRequest)
+        .body("{'id':'" + typeId + "','textAttributes':[{'id':'name'}],"
+            + "'referenceAttributes':[{'id':'knows','range':" + typeRef + "}]}")
+        .post("/api/graphs/" + graphId + "/types?mode=insert");
+    given(adminAuthorizedJsonSaveRequest)
+        .body("{'id':'" + janeId + "','code':'jane',"
+            + "'properties':{'name':[{'value':'Jane'}]}}")
+        .post("/api/graphs/" + graphId + "/types/" + typeId + "/nodes?mode=insert");
+    given(adminAuthorizedJsonSaveRequest)
+        .body("{'id':'" + johnId + "','code':'john',"
+            + "'properties':{'name':[{'value':'John'}]},"
+            + "'references':{'knows':[{'id':'" + janeId + "','type':" + typeRef + "}]}}")
+        .post("/api/graphs/" + graphId + "/types/" + typeId + "/nodes?mode=insert");
+
+    // get node data in csv with reference labels
+    given(adminAuthorizedRequest)
+        .get("/api/graphs/" + graphId + "/types/" + typeId + "/nodes.csv"
+            + "?select=code,r.knows&useLabeledReferences=true&labelAttribute=name")
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body(startsWith("code,r.knows.p.name\n"))
+        .body(containsString("\njohn,Jane\n"));
+
+    // clean up
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/nodes");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/types");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId);
+  }
+
   @Test
   void shouldSaveNodesFromCsv() {
     given(adminAuthorizedJsonSaveRequest)
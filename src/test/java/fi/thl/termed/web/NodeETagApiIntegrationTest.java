@@ -0,0 +1,187 @@
+package fi.thl.termed.web;
+
+import static fi.thl.termed.util.io.ResourceUtils.resourceToString;
+import static fi.thl.termed.util.json.JsonElementFactory.array;
+import static fi.thl.termed.util.json.JsonElementFactory.object;
+import static fi.thl.termed.util.json.JsonElementFactory.primitive;
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.util.UUID;
+import org.apache.http.HttpStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class NodeETagApiIntegrationTest extends BaseApiIntegrationTest {
+
+  private String graphId = UUID.randomUUID().toString();
+  private String otherGraphId = UUID.randomUUID().toString();
+
+  @BeforeEach
+  void insertTestData() {
+    given(adminAuthorizedJsonSaveRequest)
+        .body(resourceToString("examples/termed/animals-graph.json"))
+        .put("/api/graphs/{graphId}?mode=insert", graphId);
+    given(adminAuthorizedJsonSaveRequest)
+        .body(resourceToString("examples/termed/animals-types.json"))
+        .post("/api/graphs/{graphId}/types?batch=true&mode=insert", graphId);
+    given(adminAuthorizedJsonSaveRequest)
+        .body(resourceToString("examples/termed/animals-nodes.json"))
+        .post("/api/graphs/{graphId}/types/Concept/nodes?batch=true&mode=insert", graphId);
+
+    given(adminAuthorizedJsonSaveRequest)
+        .body(object("id", primitive(otherGraphId)))
+        .post("/api/graphs?mode=insert");
+    given(adminAuthorizedJsonSaveRequest)
+        .body(object("id", primitive("Term")))
+        .post("/api/graphs/{graphId}/types?mode=insert", otherGraphId);
+  }
+
+  @AfterEach
+  void removeTestData() {
+    for (String id : new String[]{graphId, otherGraphId}) {
+      given(adminAuthorizedRequest).delete("/api/graphs/{graphId}/nodes", id);
+      given(adminAuthorizedRequest).delete("/api/graphs/{graphId}/types", id);
+      given(adminAuthorizedRequest).delete("/api/graphs/{graphId}", id);
+    }
+  }
+
+  @Test
+  void shouldAnswerNotModifiedUntilNodesChange() {
+    String etag = given(adminAuthorizedJsonGetRequest)
+        .get("/api/graphs/{graphId}/types/Concept/nodes", graphId)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .extract().header("ETag");
+
+    assertNotNull(etag);
+
+    given(adminAuthorizedJsonGetRequest)
+        .header("If-None-Match", etag)
+        .get("/api/graphs/{graphId}/types/Concept/nodes", graphId)
+        .then()
+        .statusCode(HttpStatus.SC_NOT_MODIFIED);
+
+    given(adminAuthorizedJsonSaveRequest)
+        .body(object("properties", object("prefLabel", array(
+            object("value", primitive("Changed"))))))
+        .patch("/api/graphs/{graphId}/types/Concept/nodes?append=false&where=", graphId)
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    given(adminAuthorizedJsonGetRequest)
+        .header("If-None-Match", etag)
+        .get("/api/graphs/{graphId}/types/Concept/nodes", graphId)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .header("ETag", not(equalTo(etag)));
+  }
+
+  @Test
+  void shouldNotChangeETagOnChangesInUnlinkedTypes() {
+    String etag = given(adminAuthorizedJsonGetRequest)
+        .get("/api/graphs/{graphId}/node-trees?select=*", graphId)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .extract().header("ETag");
+
+    given(adminAuthorizedJsonSaveRequest)
+        .body(object("code", primitive("term")))
+        .post("/api/graphs/{graphId}/types/Term/nodes", otherGraphId)
+        .then()
+        .statusCode(HttpStatus.SC_OK);
+
+    given(adminAuthorizedJsonGetRequest)
+        .header("If-None-Match", etag)
+        .get("/api/graphs/{graphId}/node-trees?select=*", graphId)
+        .then()
+        .statusCode(HttpStatus.SC_NOT_MODIFIED);
+  }
+
+  @Test
+  void shouldChangeETagOnSchemaChanges() {
+    String etag = given(adminAuthorizedJsonGetRequest)
+        .get("/api/graphs/{graphId}/types", graphId)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .extract().header("ETag");
+
+    given(adminAuthorizedJsonGetRequest)
+        .header("If-None-Match", etag)
+        .get("/api/graphs/{graphId}/types", graphId)
+        .then()
+        .statusCode(HttpStatus.SC_NOT_MODIFIED);
+
+    given(adminAuthorizedJsonSaveRequest)
+        .body(object("id", primitive("Collection")))
+        .post("/api/graphs/{graphId}/types?mode=insert", graphId)
+        .then()
+        .statusCode(HttpStatus.SC_OK);
+
+    given(adminAuthorizedJsonGetRequest)
+        .header("If-None-Match", etag)
+        .get("/api/graphs/{graphId}/types", graphId)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .header("ETag", not(equalTo(etag)));
+  }
+
+  @Test
+  void shouldChangeETagOnRevisionCompaction() throws InterruptedException {
+    String nodeRevisionsPath = "/api/graphs/{graphId}/types/Concept/nodes/{id}/revisions";
+    String animalsId = "194a6da0-9e1a-4f4c-be21-0fcfd44e81e8";
+
+    given(adminAuthorizedJsonSaveRequest)
+        .body(object("code", primitive("animals")))
+        .patch("/api/graphs/{graphId}/types/Concept/nodes/{id}", graphId, animalsId)
+        .then()
+        .statusCode(HttpStatus.SC_OK);
+
+    given(adminAuthorizedJsonGetRequest)
+        .get(nodeRevisionsPath, graphId, animalsId)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("size()", greaterThan(1));
+
+    String etag = awaitETag(nodeRevisionsPath, graphId, animalsId);
+
+    given(superuserAuthorizedRequest)
+        .post("/api/revisions/compaction?keepAll=PT0S")
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    given(adminAuthorizedJsonGetRequest)
+        .header("If-None-Match", etag)
+        .get(nodeRevisionsPath, graphId, animalsId)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("size()", equalTo(1));
+  }
+
+  @Test
+  void shouldCompressNodeTrees() {
+    given(adminAuthorizedJsonGetRequest)
+        .header("Accept-Encoding", "gzip")
+        .get("/api/graphs/{graphId}/node-trees?select=*&max=-1", graphId)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .header("Content-Encoding", "gzip");
+  }
+
+  // ETag is left out while indexing is in progress, e.g. until index searcher is refreshed
+  private String awaitETag(String path, Object... pathParams) throws InterruptedException {
+    for (int i = 0; i < 50; i++) {
+      String etag = given(adminAuthorizedJsonGetRequest).get(path, pathParams).header("ETag");
+      if (etag != null) {
+        return etag;
+      }
+      Thread.sleep(100);
+    }
+    throw new AssertionError("No ETag for " + path);
+  }
+
+}
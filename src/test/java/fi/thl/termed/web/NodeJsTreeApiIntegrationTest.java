@@ -0,0 +1,117 @@
+package fi.thl.termed.web;
+
+import static fi.thl.termed.util.io.ResourceUtils.resourceToString;
+import static io.restassured.RestAssured.given;
+import static java.util.stream.Collectors.toSet;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.google.common.collect.ImmutableSet;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.service.node.internal.ReferenceHierarchyIndex;
+import java.util.UUID;
+import org.apache.http.HttpStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+class NodeJsTreeApiIntegrationTest extends BaseApiIntegrationTest {
+
+  private static final String ANIMALS = "194a6da0-9e1a-4f4c-be21-0fcfd44e81e8";
+  private static final String INVERTEBRATES = "7b0ae701-d8c9-463d-9707-48e92494bb59";
+  private static final String VERTEBRATES = "26e6d6e4-6189-4c83-b2d9-637044fbdb65";
+  private static final String MAMMALS = "b91e6f65-0aca-4055-b2dc-b35106f6aa7c";
+  private static final String REPTILES = "0aa44b72-1101-44d1-b058-5e70c43c8b8c";
+  private static final String RODENTS = "41dd2ea2-e59c-4ecd-ba4c-83202b49199e";
+  private static final String BEAVERS = "ca1cf5d0-5cb2-4563-aa8d-d22e16bc18f0";
+
+  @Autowired
+  private ReferenceHierarchyIndex referenceHierarchyIndex;
+
+  private String graphId = UUID.randomUUID().toString();
+
+  @BeforeEach
+  void insertTestData() {
+    given(adminAuthorizedJsonSaveRequest)
+        .body(resourceToString("examples/termed/animals-graph.json"))
+        .put("/api/graphs/{graphId}?mode=insert", graphId);
+    given(adminAuthorizedJsonSaveRequest)
+        .body(resourceToString("examples/termed/animals-types.json"))
+        .post("/api/graphs/{graphId}/types?batch=true&mode=insert", graphId);
+    given(adminAuthorizedJsonSaveRequest)
+        .body(resourceToString("examples/termed/animals-nodes.json"))
+        .post("/api/graphs/{graphId}/types/Concept/nodes?batch=true&mode=insert", graphId);
+  }
+
+  @AfterEach
+  void removeTestData() {
+    given(adminAuthorizedRequest).delete("/api/graphs/{graphId}/nodes", graphId);
+    given(adminAuthorizedRequest).delete("/api/graphs/{graphId}/types", graphId);
+    given(adminAuthorizedRequest).delete("/api/graphs/{graphId}", graphId);
+  }
+
+  @Test
+  void shouldGetContextTreeOfNode() {
+    given(adminAuthorizedJsonGetRequest)
+        .get("/api/graphs/{graphId}/types/Concept/nodes/{id}/trees?jstree=true&context=true",
+            graphId, BEAVERS)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("li_attr.nodeId", contains(ANIMALS))
+        .body("[0].children.li_attr.nodeId",
+            containsInAnyOrder(INVERTEBRATES, VERTEBRATES))
+        .body(child(INVERTEBRATES) + ".children", equalTo(false))
+        .body(child(VERTEBRATES) + ".state.opened", equalTo(true))
+        .body(child(VERTEBRATES, MAMMALS) + ".state.opened", equalTo(true))
+        .body(child(VERTEBRATES, REPTILES) + ".state.opened", equalTo(false))
+        .body(child(VERTEBRATES, MAMMALS, RODENTS, BEAVERS) + ".state.selected",
+            equalTo(true));
+  }
+
+  @Test
+  void shouldGetContextTreeOfMovedNode() {
+    // loads the hierarchy before moving
+    given(adminAuthorizedJsonGetRequest)
+        .get("/api/graphs/{graphId}/types/Concept/nodes/{id}/trees?jstree=true&context=true",
+            graphId, BEAVERS)
+        .then()
+        .statusCode(HttpStatus.SC_OK);
+
+    given(adminAuthorizedJsonSaveRequest)
+        .body("{'id':'" + BEAVERS + "','code':'beavers',"
+            + "'references':{'broader':[{'id':'" + REPTILES + "'}]}}")
+        .post("/api/graphs/{graphId}/types/Concept/nodes?sync=true", graphId)
+        .then()
+        .statusCode(HttpStatus.SC_OK);
+
+    given(adminAuthorizedJsonGetRequest)
+        .get("/api/graphs/{graphId}/types/Concept/nodes/{id}/trees?jstree=true&context=true",
+            graphId, BEAVERS)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body(child(VERTEBRATES, MAMMALS) + ".state.opened", equalTo(false))
+        .body(child(VERTEBRATES, REPTILES) + ".state.opened", equalTo(true))
+        .body(child(VERTEBRATES, REPTILES, BEAVERS) + ".state.selected", equalTo(true));
+
+    NodeId beavers = new NodeId(UUID.fromString(BEAVERS), "Concept", UUID.fromString(graphId));
+    assertEquals(
+        ImmutableSet.of(BEAVERS, REPTILES, VERTEBRATES, ANIMALS),
+        referenceHierarchyIndex.referenceClosure(beavers, "broader").stream()
+            .map(id -> id.getId().toString())
+            .collect(toSet()));
+  }
+
+  // path to a descendant of the first root
+  private String child(String... ids) {
+    StringBuilder path = new StringBuilder("[0]");
+    for (String id : ids) {
+      path.append(".children.find { it.li_attr.nodeId == '")
+          .append(id).append("' }");
+    }
+    return path.toString();
+  }
+
+}
@@ -0,0 +1,225 @@
+package fi.thl.termed.web;
+
+import static io.restassured.RestAssured.given;
+import static java.util.stream.Collectors.toMap;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.restassured.path.json.JsonPath;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.apache.http.HttpStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class NodeRevisionApiIntegrationTest extends BaseApiIntegrationTest {
+
+  // more than default checkpoint interval to make reads store checkpoints
+  private static final int SAVE_COUNT = 120;
+
+  private String graphId;
+  private String nodeId;
+
+  @BeforeEach
+  void saveGraphAndType() {
+    graphId = UUID.randomUUID().toString();
+    nodeId = UUID.randomUUID().toString();
+
+    given(adminAuthorizedJsonSaveRequest)
+        .body("{'id':'" + graphId + "'}")
+        .post("/api/graphs?mode=insert");
+    given(adminAuthorizedJsonSaveRequest)
+        .body("{'id':'Concept','textAttributes':[{'id':'prefLabel','regex':'(?s)^.*$'}]}")
+        .post("/api/graphs/" + graphId + "/types");
+  }
+
+  @AfterEach
+  void deleteGraphAndType() {
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/nodes");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/types");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId);
+  }
+
+  @Test
+  void shouldReadNodeRevisionsAcrossCheckpoints() {
+    for (int i = 0; i < SAVE_COUNT; i++) {
+      saveNode(i);
+    }
+
+    List<Integer> revisions = revisions();
+
+    // read latest first so that later reads can start from a checkpoint
+    assertNodeRevision(revisions.get(SAVE_COUNT - 1), SAVE_COUNT - 1);
+
+    for (int i = 0; i < SAVE_COUNT; i++) {
+      assertNodeRevision(revisions.get(i), i);
+    }
+
+    saveNode(SAVE_COUNT);
+    assertNodeRevision(revisions().get(SAVE_COUNT), SAVE_COUNT);
+  }
+
+  @Test
+  void shouldRevertGraphNodesToRevision() {
+    for (int i = 0; i < SAVE_COUNT; i++) {
+      saveNode(i);
+    }
+
+    List<Integer> revisions = revisions();
+    assertNodeRevision(revisions.get(SAVE_COUNT - 1), SAVE_COUNT - 1);
+
+    given(superuserAuthorizedRequest)
+        .contentType("application/json")
+        .post("/api/graphs/" + graphId + "/nodes?sync=true&targetRevision=" + revisions.get(50))
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    given(adminAuthorizedJsonGetRequest)
+        .get("/api/graphs/" + graphId + "/types/Concept/nodes/" + nodeId)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("code", equalTo("code-50"))
+        .body("properties.prefLabel[0].value", equalTo("label-50"));
+  }
+
+  @Test
+  void shouldCompactRevisionHistory() {
+    for (int i = 0; i < 5; i++) {
+      saveNode(i);
+    }
+
+    List<Integer> revisions = revisions();
+
+    given(superuserAuthorizedRequest)
+        .post("/api/revisions/compaction?keepAll=PT0S")
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    // all revisions were saved today, so only the last one is kept
+    List<Integer> compacted = revisions();
+    assertEquals(Collections.singletonList(revisions.get(4)), compacted);
+    assertNodeRevision(compacted.get(0), 4);
+
+    given(adminAuthorizedJsonGetRequest)
+        .get("/api/graphs/" + graphId + "/types/Concept/nodes/" + nodeId
+            + "/revisions/" + compacted.get(0))
+        .then()
+        .body("type", equalTo("INSERT"));
+    given(adminAuthorizedJsonGetRequest)
+        .get("/api/graphs/" + graphId + "/types/Concept/nodes/" + nodeId
+            + "/revisions/" + revisions.get(3))
+        .then()
+        .statusCode(HttpStatus.SC_NOT_FOUND);
+  }
+
+  @Test
+  void shouldCompactRevisionsAfterPreviousCompaction() {
+    saveNode(0);
+    saveNode(1);
+
+    given(superuserAuthorizedRequest)
+        .post("/api/revisions/compaction?keepAll=PT0S")
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    assertEquals(1, revisions().size());
+
+    saveNode(2);
+    saveNode(3);
+
+    given(superuserAuthorizedRequest)
+        .post("/api/revisions/compaction?keepAll=PT0S")
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    List<Integer> compacted = revisions();
+    assertEquals(1, compacted.size());
+    assertNodeRevision(compacted.get(0), 3);
+  }
+
+  @Test
+  void shouldDiffNodesBetweenRevisions() {
+    String deletedId = UUID.randomUUID().toString();
+    String insertedId = UUID.randomUUID().toString();
+
+    // codes are unique within type
+    saveNode(deletedId, 10);
+    saveNode(nodeId, 0);
+    int from = revisions().get(0);
+
+    saveNode(nodeId, 1);
+    given(adminAuthorizedRequest)
+        .delete("/api/graphs/" + graphId + "/types/Concept/nodes/" + deletedId)
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+    saveNode(insertedId, 2);
+
+    String[] lines = given(adminAuthorizedRequest)
+        .get("/api/graphs/" + graphId + "/types/Concept/revisions/diff"
+            + "?from=" + from + "&to=" + Integer.MAX_VALUE)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .extract().asString().split("\n");
+
+    Map<String, JsonPath> diffs = Arrays.stream(lines)
+        .map(JsonPath::from)
+        .collect(toMap(diff -> diff.getString("id"), diff -> diff));
+
+    assertEquals(3, diffs.size());
+
+    JsonPath updated = diffs.get(nodeId);
+    assertEquals("UPDATE", updated.getString("change"));
+    assertEquals("code-0", updated.getString("code.from"));
+    assertEquals("code-1", updated.getString("code.to"));
+    assertEquals("label-1", updated.getString("properties.prefLabel.added[0].value"));
+    assertEquals("label-0", updated.getString("properties.prefLabel.removed[0].value"));
+
+    JsonPath deleted = diffs.get(deletedId);
+    assertEquals("DELETE", deleted.getString("change"));
+    assertEquals("label-10", deleted.getString("properties.prefLabel.removed[0].value"));
+
+    JsonPath inserted = diffs.get(insertedId);
+    assertEquals("INSERT", inserted.getString("change"));
+    assertEquals("code-2", inserted.getString("code.to"));
+  }
+
+  private void saveNode(int i) {
+    saveNode(nodeId, i);
+  }
+
+  private void saveNode(String nodeId, int i) {
+    given(adminAuthorizedJsonSaveRequest)
+        .body("{'id':'" + nodeId + "','code':'code-" + i + "',"
+            + "'properties':{'prefLabel':[{'lang':'en','value':'label-" + i + "'}]}}")
+        .post("/api/graphs/" + graphId + "/types/Concept/nodes")
+        .then()
+        .statusCode(HttpStatus.SC_OK);
+  }
+
+  private List<Integer> revisions() {
+    List<Integer> revisions = new ArrayList<>(given(adminAuthorizedJsonGetRequest)
+        .get("/api/graphs/" + graphId + "/types/Concept/nodes/" + nodeId + "/revisions")
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .extract().jsonPath().getList("number", Integer.class));
+    Collections.sort(revisions);
+    return revisions;
+  }
+
+  private void assertNodeRevision(int revision, int i) {
+    given(adminAuthorizedJsonGetRequest)
+        .get("/api/graphs/" + graphId + "/types/Concept/nodes/" + nodeId
+            + "/revisions/" + revision)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("object.code", equalTo("code-" + i))
+        .body("object.properties.prefLabel.size()", equalTo(1))
+        .body("object.properties.prefLabel[0].value", equalTo("label-" + i));
+  }
+
+}
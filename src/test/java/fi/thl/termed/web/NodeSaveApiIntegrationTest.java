@@ -46,6 +46,25 @@ class NodeSaveApiIntegrationTest extends BaseApiIntegrationTest {
     given(adminAuthorizedRequest).delete("/api/graphs/" + graphId);
   }
 
+  @Test
+  void shouldNotSaveNodesOfUnknownType() {
+    String graphId = UUID.randomUUID().toString();
+
+    given(adminAuthorizedJsonSaveRequest)
+        .body("{'id':'" + graphId + "'}")
+        .post("/api/graphs?mode=insert");
+
+    given(adminAuthorizedJsonSaveRequest)
+        .body("[{'id':'" + UUID.randomUUID() + "','type':{'id':'Unknown'}}]")
+        .post("/api/graphs/" + graphId + "/nodes?batch=true")
+        .then()
+        .statusCode(HttpStatus.SC_BAD_REQUEST)
+        .body("message", equalTo("Type 'Unknown' not found"));
+
+    // clean up
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId);
+  }
+
   @Test
   void shouldSaveAndGetSimpleVocabulary() {
     String graphId = UUID.randomUUID().toString();
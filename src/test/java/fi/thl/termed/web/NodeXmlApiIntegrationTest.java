@@ -0,0 +1,118 @@
+package fi.thl.termed.web;
+
+import static com.google.common.collect.Iterables.getOnlyElement;
+import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
+import static fi.thl.termed.util.io.ResourceUtils.resourceToString;
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static uk.co.datumedge.hamcrest.json.SameJSONAs.sameJSONAs;
+
+import com.google.common.collect.ImmutableList;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.service.node.util.NodeToXmlStream;
+import fi.thl.termed.service.node.util.XmlStreamToNodes;
+import fi.thl.termed.util.spring.http.MediaTypes;
+import fi.thl.termed.util.xml.JsonXmlStreamWriter;
+import fi.thl.termed.util.xml.XmlToJsonConverter;
+import fi.thl.termed.util.xml.XmlUtils;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.UUID;
+import javax.xml.stream.XMLStreamException;
+import org.apache.http.HttpStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class NodeXmlApiIntegrationTest extends BaseApiIntegrationTest {
+
+  private String graphId = UUID.randomUUID().toString();
+
+  @BeforeEach
+  void insertTestData() {
+    given(adminAuthorizedJsonSaveRequest)
+        .body(resourceToString("examples/termed/animals-graph.json"))
+        .put("/api/graphs/{graphId}?mode=insert", graphId);
+    given(adminAuthorizedJsonSaveRequest)
+        .body(resourceToString("examples/termed/animals-types.json"))
+        .post("/api/graphs/{graphId}/types?batch=true&mode=insert", graphId);
+    given(adminAuthorizedJsonSaveRequest)
+        .body(resourceToString("examples/termed/animals-nodes.json"))
+        .post("/api/graphs/{graphId}/types/Concept/nodes?batch=true&mode=insert", graphId);
+  }
+
+  @AfterEach
+  void removeTestData() {
+    given(adminAuthorizedRequest).delete("/api/graphs/{graphId}/nodes", graphId);
+    given(adminAuthorizedRequest).delete("/api/graphs/{graphId}/types", graphId);
+    given(adminAuthorizedRequest).delete("/api/graphs/{graphId}", graphId);
+  }
+
+  @Test
+  void shouldGetNodesAsXml() {
+    assertSameAsJson("/api/graphs/{graphId}/types/Concept/nodes?max=-1");
+  }
+
+  @Test
+  void shouldGetNodeTreesAsXml() {
+    assertSameAsJson("/api/graphs/{graphId}/node-trees?select=*&select=references.broader:2"
+        + "&max=-1");
+  }
+
+  @Test
+  void shouldSaveNodesPostedAsXml() throws XMLStreamException {
+    Node node = Node.builder().random(TypeId.of("Unknown", UUID.randomUUID()))
+        .code("xml-node")
+        .addProperty("prefLabel", "en", "XML node")
+        .build();
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (JsonXmlStreamWriter writer = JsonXmlStreamWriter.from(out)) {
+      NodeToXmlStream.toXml(ImmutableList.of(node).iterator(), writer);
+    }
+
+    // type is given by the path
+    given(adminAuthorizedRequest)
+        .contentType(MediaTypes.TEXT_XML_VALUE)
+        .body(out.toByteArray())
+        .post("/api/graphs/{graphId}/types/Concept/nodes", graphId)
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    byte[] xml = given(adminAuthorizedRequest)
+        .accept(MediaTypes.TEXT_XML_VALUE)
+        .get("/api/graphs/{graphId}/types/Concept/nodes?max=-1", graphId)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .extract().asByteArray();
+
+    Node saved = getOnlyElement(toListAndClose(
+        XmlStreamToNodes.readArray(new ByteArrayInputStream(xml), null, null)
+            .filter(n -> n.getId().equals(node.getId()))));
+
+    assertEquals("xml-node", saved.getCode().orElse(null));
+    assertEquals(TypeId.of("Concept", UUID.fromString(graphId)), saved.getType());
+  }
+
+  private void assertSameAsJson(String path) {
+    String json = given(adminAuthorizedJsonGetRequest)
+        .get(path, graphId)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .extract().asString();
+
+    String xml = given(adminAuthorizedRequest)
+        .accept(MediaTypes.TEXT_XML_VALUE)
+        .get(path, graphId)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .contentType(MediaTypes.TEXT_XML_VALUE)
+        .extract().asString();
+
+    assertThat(new XmlToJsonConverter().apply(XmlUtils.parseDocument(xml)).toString(),
+        sameJSONAs(json).allowingAnyArrayOrdering());
+  }
+
+}
@@ -53,6 +53,38 @@ class RdfImportIntegrationTest extends BaseApiIntegrationTest {
     given(adminAuthorizedRequest).delete("/api/graphs/" + graphId);
   }
 
+  @Test
+  void shouldSaveRdfVocabularyInStreamingMode() {
+    String graphId = UUID.randomUUID().toString();
+
+    // save graph and types
+    given(adminAuthorizedJsonSaveRequest)
+        .body(ResourceUtils.resourceToString("examples/nasa/example-graph.json"))
+        .put("/api/graphs/" + graphId + "?mode=insert");
+    given(adminAuthorizedJsonSaveRequest)
+        .body(ResourceUtils.resourceToString("examples/nasa/example-types.json"))
+        .post("/api/graphs/" + graphId + "/types?batch=true");
+
+    // save nodes
+    given(adminAuthorizedRequest)
+        .contentType("application/rdf+xml")
+        .body(ResourceUtils.resourceToString("examples/nasa/example-nodes.rdf"))
+        .post("/api/graphs/" + graphId + "/nodes?streaming=true")
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    // verify that nodes got saved
+    given(adminAuthorizedJsonGetRequest)
+        .get("/api/graphs/" + graphId + "/node-count")
+        .then()
+        .body(equalTo("16"));
+
+    // clean up
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/nodes");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/types");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId);
+  }
+
   @Test
   void shouldPickNodeIdFromUuidUrn() throws IOException {
     String graphId = UUID.randomUUID().toString();
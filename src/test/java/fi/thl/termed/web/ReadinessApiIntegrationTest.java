@@ -0,0 +1,20 @@
+package fi.thl.termed.web;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+import org.apache.http.HttpStatus;
+import org.junit.jupiter.api.Test;
+
+class ReadinessApiIntegrationTest extends BaseApiIntegrationTest {
+
+  @Test
+  void shouldReportReadinessWithoutCredentials() {
+    given()
+        .get("/readiness")
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("status", equalTo("READY"));
+  }
+
+}
@@ -0,0 +1,106 @@
+package fi.thl.termed.web;
+
+import static io.restassured.RestAssured.given;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.HttpStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class WebhookApiIntegrationTest extends BaseApiIntegrationTest {
+
+  private HttpServer receiver;
+  private BlockingQueue<String> received = new LinkedBlockingQueue<>();
+  private AtomicInteger failuresLeft = new AtomicInteger();
+
+  private String graphId = UUID.randomUUID().toString();
+  private String hookId;
+
+  @BeforeEach
+  void startReceiver() throws IOException {
+    receiver = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    receiver.createContext("/", exchange -> {
+      String body = new String(ByteStreams.toByteArray(exchange.getRequestBody()), UTF_8);
+      if (failuresLeft.getAndDecrement() > 0) {
+        exchange.sendResponseHeaders(HttpStatus.SC_SERVICE_UNAVAILABLE, -1);
+      } else {
+        received.add(body);
+        exchange.sendResponseHeaders(HttpStatus.SC_OK, -1);
+      }
+      exchange.close();
+    });
+    receiver.start();
+
+    hookId = given(adminAuthorizedRequest)
+        .post("/api/hooks?url=http://localhost:" + receiver.getAddress().getPort() + "/")
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .extract().asString().replace("\"", "");
+
+    given(adminAuthorizedJsonSaveRequest)
+        .body("{'id':'" + graphId + "'}")
+        .post("/api/graphs?mode=insert");
+    given(adminAuthorizedJsonSaveRequest)
+        .body("{'id':'Concept'}")
+        .post("/api/graphs/" + graphId + "/types");
+  }
+
+  @AfterEach
+  void stopReceiver() {
+    given(adminAuthorizedRequest).delete("/api/hooks/" + hookId);
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/nodes");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/types");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId);
+    receiver.stop(0);
+  }
+
+  @Test
+  void shouldDeliverSyncNodeSaveBeforeResponding() {
+    String nodeId = UUID.randomUUID().toString();
+
+    given(adminAuthorizedJsonSaveRequest)
+        .body("{'id':'" + nodeId + "'}")
+        .post("/api/graphs/" + graphId + "/types/Concept/nodes?sync=true")
+        .then()
+        .statusCode(HttpStatus.SC_OK);
+
+    assertTrue(received.stream().anyMatch(body ->
+        body.contains("NodeSavedEvent") && body.contains(nodeId)));
+  }
+
+  @Test
+  void shouldRetryFailedDelivery() throws InterruptedException {
+    String nodeId = UUID.randomUUID().toString();
+    failuresLeft.set(1);
+
+    given(adminAuthorizedJsonSaveRequest)
+        .body("{'id':'" + nodeId + "'}")
+        .post("/api/graphs/" + graphId + "/types/Concept/nodes")
+        .then()
+        .statusCode(HttpStatus.SC_OK);
+
+    String body;
+    do {
+      body = received.poll(30, TimeUnit.SECONDS);
+      assertNotNull(body, "Delivery was not retried");
+    } while (!body.contains(nodeId));
+
+    given(adminAuthorizedJsonGetRequest)
+        .get("/api/hooks/dead-letters")
+        .then()
+        .statusCode(HttpStatus.SC_OK);
+  }
+
+}
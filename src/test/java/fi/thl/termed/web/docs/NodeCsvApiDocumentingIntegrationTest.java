@@ -240,7 +240,7 @@ class NodeCsvApiDocumentingIntegrationTest extends BaseNodeApiDocumentingIntegra
     ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
     NodesToCsv nodesToCsv = new NodesToCsv();
     nodesToCsv.writeAsCsv(
-        nodes.stream(),
+        nodes,
         selects,
         CsvOptions.builder().build(),
         byteArrayOutputStream);
@@ -0,0 +1,126 @@
+package fi.thl.termed.web.dump;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.io.ByteStreams;
+import com.google.gson.Gson;
+import fi.thl.termed.Application;
+import fi.thl.termed.domain.Dump;
+import fi.thl.termed.domain.Graph;
+import fi.thl.termed.domain.GraphId;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.Type;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.util.concurrent.PipelineExecutor;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures writing NDJSON dumps with and without gzip compression and node serialization
+ * pipeline. Run main method with test classpath, e.g. from IDE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DumpNdjsonStreamBenchmark {
+
+  private static final int NODE_COUNT = 10_000;
+  private static final int CHUNK_SIZE = 5000;
+
+  private Gson gson = new Application().gson();
+  private Graph graph;
+  private Type type;
+  private List<Node> nodes;
+  private PipelineExecutor pipeline;
+
+  @Setup
+  public void setUp() {
+    GraphId graphId = GraphId.random();
+    TypeId typeId = TypeId.of("Concept", graphId);
+    LocalDateTime now = LocalDateTime.now();
+
+    graph = Graph.builder().id(graphId).code("example-graph").build();
+    type = Type.builder().id(typeId).build();
+
+    nodes = new ArrayList<>();
+    for (int i = 0; i < NODE_COUNT; i++) {
+      nodes.add(Node.builder().random(typeId)
+          .code("concept-" + i)
+          .uri("http://example.org/concept-" + i)
+          .number((long) i)
+          .createdBy("admin")
+          .createdDate(now)
+          .lastModifiedBy("admin")
+          .lastModifiedDate(now)
+          .addProperty("prefLabel", "en", "Concept " + i)
+          .addProperty("prefLabel", "fi", "Käsite " + i)
+          .addProperty("definition", "en", "Definition of concept " + i)
+          .addReference("broader", NodeId.random(typeId))
+          .addReference("related", NodeId.random(typeId), NodeId.random(typeId))
+          .build());
+    }
+
+    pipeline = PipelineExecutor.newPipelineExecutor("dump-benchmark-pipeline",
+        Runtime.getRuntime().availableProcessors(), 1000);
+  }
+
+  @TearDown
+  public void tearDown() {
+    pipeline.close();
+  }
+
+  @Benchmark
+  public void writeDump() throws IOException {
+    writeDump(ByteStreams.nullOutputStream(), PipelineExecutor.direct());
+  }
+
+  @Benchmark
+  public void writeGzippedDump() throws IOException {
+    writeDump(new GZIPOutputStream(ByteStreams.nullOutputStream()), PipelineExecutor.direct());
+  }
+
+  @Benchmark
+  public void writeDumpWithPipeline() throws IOException {
+    writeDump(ByteStreams.nullOutputStream(), pipeline);
+  }
+
+  private void writeDump(OutputStream out, PipelineExecutor pipeline) throws IOException {
+    Dump dump = new Dump(Stream.of(graph), Stream.of(type), nodes.stream());
+    try (Writer writer = new OutputStreamWriter(out, UTF_8)) {
+      DumpNdjsonStream.writeDump(gson, dump, CHUNK_SIZE, pipeline, writer);
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(DumpNdjsonStreamBenchmark.class.getSimpleName())
+        .build()).run();
+  }
+
+}